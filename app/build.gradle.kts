@@ -40,6 +40,10 @@ android {
         viewBinding = true
         dataBinding = true
     }
+    testOptions {
+        // android.util.Log calls in services return defaults in plain JVM tests
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
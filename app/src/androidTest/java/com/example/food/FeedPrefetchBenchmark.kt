@@ -0,0 +1,154 @@
+package com.example.food
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.graphics.Color
+import android.graphics.drawable.BitmapDrawable
+import android.net.Uri
+import android.util.Log
+import android.view.Choreographer
+import android.view.ViewGroup
+import android.widget.ImageView
+import androidx.activity.ComponentActivity
+import androidx.recyclerview.widget.RecyclerView
+import androidx.recyclerview.widget.StaggeredGridLayoutManager
+import androidx.test.core.app.ActivityScenario
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.bumptech.glide.Glide
+import com.example.food.adapters.ReviewImagePreloader
+import com.example.food.adapters.ReviewWidgetAdapter
+import com.example.food.data.Review
+import com.example.food.model.Restaurant
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.io.File
+import java.io.FileOutputStream
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * Counts frames in which a visible feed card still shows its placeholder during a scripted
+ * fling, with and without ReviewImagePreloader. Images are local files so the numbers reflect
+ * decode and cache behaviour rather than the network. Results go to logcat under the TAG.
+ */
+@RunWith(AndroidJUnit4::class)
+class FeedPrefetchBenchmark {
+
+    @Test
+    fun placeholderFramesDuringFling() {
+        val reviews = createReviews(REVIEW_COUNT)
+
+        val baseline = runFling(reviews, withPreloader = false)
+        val preloaded = runFling(reviews, withPreloader = true)
+
+        Log.i(TAG, "placeholder frames without preloader: ${baseline.placeholderFrames}/${baseline.frames}")
+        Log.i(TAG, "placeholder frames with preloader: ${preloaded.placeholderFrames}/${preloaded.frames}")
+        assertTrue("no frames recorded", baseline.frames > 0 && preloaded.frames > 0)
+        // without placeholders in the baseline there is nothing for the preloader to improve
+        assumeTrue("baseline fling showed no placeholders", baseline.placeholderFrames > 0)
+        assertTrue("preloader did not reduce placeholder frames: " +
+                "${preloaded.placeholderFraction} vs ${baseline.placeholderFraction} without it",
+            preloaded.placeholderFraction <= baseline.placeholderFraction * MAX_PLACEHOLDER_RATIO)
+    }
+
+    private class FlingResult(val frames: Int, val placeholderFrames: Int) {
+        // the two runs can draw a different number of frames, so they are compared as fractions
+        val placeholderFraction: Double get() = placeholderFrames.toDouble() / frames
+    }
+
+    private fun runFling(reviews: List<Review>, withPreloader: Boolean): FlingResult {
+        val instrumentation = InstrumentationRegistry.getInstrumentation()
+        val context = instrumentation.targetContext
+        // every run starts cold
+        Glide.get(context).clearDiskCache()
+        instrumentation.runOnMainSync { Glide.get(context).clearMemory() }
+
+        ActivityScenario.launch(ComponentActivity::class.java).use { scenario ->
+            lateinit var recyclerView: RecyclerView
+            scenario.onActivity { activity ->
+                recyclerView = RecyclerView(activity)
+                recyclerView.layoutManager = StaggeredGridLayoutManager(2, StaggeredGridLayoutManager.VERTICAL)
+                val adapter = ReviewWidgetAdapter(reviews, object : ReviewWidgetAdapter.OnReviewClickListener {
+                    override fun onReviewClick(review: Review, restaurant: Restaurant?) {}
+                    override fun onUserClick(userId: String) {}
+                }, false)
+                recyclerView.adapter = adapter
+                if (withPreloader) {
+                    ReviewImagePreloader(activity, adapter).attach(recyclerView)
+                }
+                activity.setContentView(recyclerView, ViewGroup.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.MATCH_PARENT))
+            }
+            // let the first screen load before flinging
+            Thread.sleep(SETTLE_MILLIS)
+
+            var frames = 0
+            var placeholderFrames = 0
+            var recording = true
+            val done = CountDownLatch(1)
+            val frameCallback = object : Choreographer.FrameCallback {
+                override fun doFrame(frameTimeNanos: Long) {
+                    if (!recording) {
+                        done.countDown()
+                        return
+                    }
+                    frames++
+                    if (showsPlaceholder(recyclerView)) placeholderFrames++
+                    Choreographer.getInstance().postFrameCallback(this)
+                }
+            }
+
+            instrumentation.runOnMainSync {
+                Choreographer.getInstance().postFrameCallback(frameCallback)
+                recyclerView.fling(0, FLING_VELOCITY)
+            }
+            Thread.sleep(FLING_MILLIS)
+            instrumentation.runOnMainSync { recording = false }
+            done.await(1, TimeUnit.SECONDS)
+            return FlingResult(frames, placeholderFrames)
+        }
+    }
+
+    private fun showsPlaceholder(recyclerView: RecyclerView): Boolean {
+        for (i in 0 until recyclerView.childCount) {
+            val image = recyclerView.getChildAt(i).findViewById<ImageView>(R.id.ivRestaurantImage) ?: continue
+            // loaded photos arrive as bitmaps, the placeholder is a vector drawable
+            if (image.drawable !is BitmapDrawable) return true
+        }
+        return false
+    }
+
+    private fun createReviews(count: Int): List<Review> {
+        val context = InstrumentationRegistry.getInstrumentation().targetContext
+        val dir = File(context.cacheDir, "feed_benchmark").apply { mkdirs() }
+        val types = listOf("PORTRAIT", "SQUARE", "HORIZONTAL")
+        return (0 until count).map { i ->
+            val file = File(dir, "image_$i.jpg")
+            if (!file.exists()) {
+                val bitmap = Bitmap.createBitmap(1600, 1200, Bitmap.Config.ARGB_8888)
+                Canvas(bitmap).drawColor(Color.HSVToColor(floatArrayOf(i * 360f / count, 0.6f, 0.9f)))
+                FileOutputStream(file).use { bitmap.compress(Bitmap.CompressFormat.JPEG, 82, it) }
+                bitmap.recycle()
+            }
+            Review().apply {
+                id = "review_$i"
+                caption = "Review $i"
+                imageUrls = listOf(Uri.fromFile(file).toString())
+                firstImageType = types[i % types.size]
+            }
+        }
+    }
+
+    companion object {
+        private const val TAG = "FeedPrefetchBenchmark"
+        private const val REVIEW_COUNT = 120
+        private const val FLING_VELOCITY = 12000
+        private const val SETTLE_MILLIS = 1500L
+        private const val FLING_MILLIS = 2500L
+        // the preloader must at least halve the share of frames showing a placeholder
+        private const val MAX_PLACEHOLDER_RATIO = 0.5
+    }
+}
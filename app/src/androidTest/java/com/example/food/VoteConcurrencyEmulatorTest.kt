@@ -0,0 +1,178 @@
+package com.example.food
+
+import androidx.test.ext.junit.runners.AndroidJUnit4
+import androidx.test.platform.app.InstrumentationRegistry
+import com.example.food.data.Review
+import com.example.food.service.ReviewService
+import com.google.android.gms.tasks.Tasks
+import com.google.firebase.FirebaseApp
+import com.google.firebase.firestore.FirebaseFirestore
+import com.google.firebase.firestore.FirebaseFirestoreSettings
+import com.google.firebase.firestore.MemoryCacheSettings
+import com.google.firebase.firestore.Source
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import java.net.InetSocketAddress
+import java.net.Socket
+import java.util.Date
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * Two Firestore clients voting on the same review at once, against the local emulator
+ * (firebase emulators:start --only firestore). Every vote must survive and the stored
+ * counters must match the votes map. Skipped when no emulator is listening.
+ */
+@RunWith(AndroidJUnit4::class)
+class VoteConcurrencyEmulatorTest {
+
+    @Before
+    fun requireEmulator() {
+        assumeTrue("Firestore emulator not reachable on $HOST:$PORT", emulatorReachable())
+    }
+
+    @Test
+    fun concurrentVotesFromTwoClientsAreAllCounted() {
+        val reviewId = createReview(withCounters = true)
+
+        castVotes(reviewId) { client, i -> VoteCall("voter-$client-$i", i % 2 == 0) }
+
+        val stored = readReview(reviewId)
+        assertEquals(CLIENTS.size * VOTERS_PER_CLIENT, stored.votes.size)
+        assertEquals(CLIENTS.size * VOTERS_PER_CLIENT.toLong(), stored.totalVoteCount)
+        assertEquals(CLIENTS.size * ((VOTERS_PER_CLIENT + 1) / 2).toLong(), stored.accurateVoteCount)
+    }
+
+    @Test
+    fun concurrentChangedAndWithdrawnVotesKeepCountersExact() {
+        val reviewId = createReview(withCounters = true)
+        castVotes(reviewId) { client, i -> VoteCall("voter-$client-$i", true) }
+
+        // odd voters withdraw, even voters change their mind, all at once
+        castVotes(reviewId) { client, i -> VoteCall("voter-$client-$i", if (i % 2 == 0) false else null) }
+
+        val stored = readReview(reviewId)
+        val remaining = CLIENTS.size * ((VOTERS_PER_CLIENT + 1) / 2)
+        assertEquals(remaining, stored.votes.size)
+        assertEquals(remaining.toLong(), stored.totalVoteCount)
+        assertEquals(0L, stored.accurateVoteCount)
+    }
+
+    @Test
+    fun reviewWithoutCountersIsSeededFromItsVotes() {
+        val reviewId = createReview(withCounters = false)
+
+        // one vote per client seeds the counters in competing transactions, the rest increment
+        castVotes(reviewId, votersPerClient = 1) { client, i -> VoteCall("seed-$client-$i", true) }
+        castVotes(reviewId) { client, i -> VoteCall("voter-$client-$i", true) }
+
+        val stored = readReview(reviewId)
+        val total = LEGACY_VOTES + CLIENTS.size * (1 + VOTERS_PER_CLIENT)
+        assertEquals(total, stored.votes.size)
+        assertEquals(total.toLong(), stored.totalVoteCount)
+        assertEquals(total.toLong(), stored.accurateVoteCount)
+    }
+
+    @Test
+    fun staleViewOfTheVoterDoesNotSkewCounters() {
+        val reviewId = createReview(withCounters = true)
+        castVotes(reviewId) { client, i -> VoteCall("voter-$client-$i", true) }
+
+        // both clients repeat the votes from the review as it was before any of them
+        castVotes(reviewId, before = Review().apply { accurateVoteCount = 0L; totalVoteCount = 0L }) { client, i ->
+            VoteCall("voter-$client-$i", true)
+        }
+
+        val stored = readReview(reviewId)
+        val total = CLIENTS.size * VOTERS_PER_CLIENT
+        assertEquals(total, stored.votes.size)
+        assertEquals(total.toLong(), stored.totalVoteCount)
+        assertEquals(total.toLong(), stored.accurateVoteCount)
+    }
+
+    private class VoteCall(val voterId: String, val vote: Boolean?)
+
+    // Every client casts its votes without waiting for the others
+    private fun castVotes(reviewId: String, votersPerClient: Int = VOTERS_PER_CLIENT,
+                          before: Review = readReview(reviewId),
+                          call: (client: Int, i: Int) -> VoteCall) {
+        val done = CountDownLatch(CLIENTS.size * votersPerClient)
+        val failures = AtomicInteger()
+        CLIENTS.forEachIndexed { client, firestore ->
+            val service = ReviewService(firestore)
+            for (i in 0 until votersPerClient) {
+                val vote = call(client, i)
+                // each voter's own view of the review, as the dialog would have it
+                val review = Review().apply {
+                    id = reviewId
+                    accurateVoteCount = before.accurateVoteCount
+                    totalVoteCount = before.totalVoteCount
+                }
+                service.setVote(review, vote.voterId, vote.vote, object : ReviewService.VoteSaveCallback {
+                    override fun onSuccess(result: ReviewService.VoteResult) = done.countDown()
+                    override fun onError(e: Exception) {
+                        failures.incrementAndGet()
+                        done.countDown()
+                    }
+                })
+            }
+        }
+        assertTrue("votes timed out", done.await(30, TimeUnit.SECONDS))
+        assertEquals(0, failures.get())
+    }
+
+    private fun createReview(withCounters: Boolean): String {
+        val data = HashMap<String, Any>()
+        data["createdAt"] = Date()
+        if (withCounters) {
+            data["votes"] = HashMap<String, Any>()
+            data["accurateVoteCount"] = 0L
+            data["totalVoteCount"] = 0L
+        } else {
+            data["votes"] = (0 until LEGACY_VOTES).associate { "legacy-$it" to mapOf("accurate" to true) }
+        }
+        val ref = CLIENTS[0].collection("reviews").document()
+        Tasks.await(ref.set(data), 10, TimeUnit.SECONDS)
+        return ref.id
+    }
+
+    private fun readReview(reviewId: String): Review {
+        val snapshot = Tasks.await(CLIENTS[0].collection("reviews").document(reviewId).get(Source.SERVER),
+            10, TimeUnit.SECONDS)
+        return snapshot.toObject(Review::class.java)!!
+    }
+
+    private fun emulatorReachable(): Boolean = try {
+        Socket().use { it.connect(InetSocketAddress(HOST, PORT), 500) }
+        true
+    } catch (e: Exception) {
+        false
+    }
+
+    companion object {
+        private const val HOST = "10.0.2.2" // the host machine, seen from the Android emulator
+        private const val PORT = 8080
+        private const val VOTERS_PER_CLIENT = 25
+        private const val LEGACY_VOTES = 3
+
+        // separate FirebaseApps so the two clients share no local state
+        private val CLIENTS: List<FirebaseFirestore> by lazy {
+            val context = InstrumentationRegistry.getInstrumentation().targetContext
+            val options = FirebaseApp.initializeApp(context)!!.options
+            listOf("voteClientA", "voteClientB").map { name ->
+                val app = FirebaseApp.initializeApp(context, options, name)
+                FirebaseFirestore.getInstance(app).apply {
+                    useEmulator(HOST, PORT)
+                    firestoreSettings = FirebaseFirestoreSettings.Builder()
+                        .setLocalCacheSettings(MemoryCacheSettings.newBuilder().build())
+                        .build()
+                }
+            }
+        }
+    }
+}
@@ -4,7 +4,6 @@ import android.Manifest;
 import android.app.Activity;
 import android.content.Intent;
 import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -33,8 +32,12 @@ import androidx.fragment.app.Fragment;
 
 import com.example.food.data.Review;
 import com.example.food.model.Restaurant;
+import com.example.food.service.RestaurantRepository;
 import com.example.food.service.ReviewService;
 import com.example.food.services.UserStatsService;
+import com.example.food.utils.ImagePreprocessor;
+import com.example.food.utils.ImageVariants;
+import com.example.food.utils.PreviewBitmapLoader;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.storage.FirebaseStorage;
@@ -58,6 +61,8 @@ public class AddFragment extends Fragment {
     private static final int PICK_IMAGE_REQUEST = 1;
     private static final int TAKE_PHOTO_REQUEST = 2;
     private static final int MAX_IMAGES = 5;
+    // preview cells are 100dp tall and about a third of the row wide
+    private static final int PREVIEW_SIZE_DP = 120;
     
     private EditText etCaption, etDescription, etRatingInput;
     private AutoCompleteTextView etRestaurantSearch;
@@ -71,7 +76,9 @@ public class AddFragment extends Fragment {
     private List<Restaurant> restaurants;
     private Restaurant selectedRestaurant;
     private List<Uri> selectedImageUris;
-    private List<String> uploadedImageUrls;
+    private List<ImageVariants> uploadedImages;
+    private SupabaseStorageService supabaseService;
+    private PreviewBitmapLoader previewLoader;
     private float selectedRating = 0.0f;
     private Uri cameraImageUri;
     
@@ -109,6 +116,7 @@ public class AddFragment extends Fragment {
         ivPreview3 = view.findViewById(R.id.iv_preview_3);
         ivPreview4 = view.findViewById(R.id.iv_preview_4);
         ivPreview5 = view.findViewById(R.id.iv_preview_5);
+        previewLoader = new PreviewBitmapLoader(requireContext());
         
         // delete buttons
         btnDelete1 = view.findViewById(R.id.btn_delete_1);
@@ -126,7 +134,7 @@ public class AddFragment extends Fragment {
         
         restaurants = new ArrayList<>();
         selectedImageUris = new ArrayList<>();
-        uploadedImageUrls = new ArrayList<>();
+        uploadedImages = new ArrayList<>();
         
         setupStarClickListeners();
     }
@@ -218,23 +226,16 @@ public class AddFragment extends Fragment {
     }
     
     private void loadRestaurants() {
-        db.collection("restaurants")
-            .get()
-            .addOnSuccessListener(queryDocumentSnapshots -> {
-                restaurants.clear();
-                for (com.google.firebase.firestore.DocumentSnapshot document : queryDocumentSnapshots.getDocuments()) {
-                    Restaurant restaurant = document.toObject(Restaurant.class);
-                    if (restaurant != null) {
-                        restaurant.setId(document.getId());
-                        restaurants.add(restaurant);
-                    }
-                }
-                setupRestaurantSearch();
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Error loading restaurants", e);
+        RestaurantRepository.getInstance(requireContext()).loadRestaurants(restaurantsById -> {
+            if (!isAdded()) return;
+            if (restaurantsById.isEmpty()) {
                 Toast.makeText(getContext(), "Failed to load restaurants", Toast.LENGTH_SHORT).show();
-            });
+                return;
+            }
+            restaurants.clear();
+            restaurants.addAll(restaurantsById.values());
+            setupRestaurantSearch();
+        });
     }
     
     private void setupRestaurantSearch() {
@@ -387,6 +388,10 @@ public class AddFragment extends Fragment {
         
         if (selectedImageUris.isEmpty()) {
             imagePreviewsContainer.setVisibility(View.GONE);
+            for (ImageView preview : new ImageView[]{ivPreview1, ivPreview2, ivPreview3, ivPreview4, ivPreview5}) {
+                preview.setImageDrawable(null);
+            }
+            previewLoader.retainOnly(selectedImageUris);
             return;
         }
         
@@ -409,16 +414,15 @@ public class AddFragment extends Fragment {
             imageRow2.setVisibility(View.VISIBLE);
         }
         
+        // decoded off the main thread at preview size, removed photos free their bitmaps
+        previewLoader.retainOnly(selectedImageUris);
+        int previewSizePx = (int) (PREVIEW_SIZE_DP * getResources().getDisplayMetrics().density);
+        
         // set previews for selected images and show delete buttons
         for (int i = 0; i < Math.min(selectedImageUris.size(), MAX_IMAGES); i++) {
-            try {
-                Bitmap bitmap = MediaStore.Images.Media.getBitmap(getActivity().getContentResolver(), selectedImageUris.get(i));
-                previews[i].setImageBitmap(bitmap);
-                previews[i].setVisibility(View.VISIBLE);
-                deleteButtons[i].setVisibility(View.VISIBLE);
-            } catch (IOException e) {
-                Log.e(TAG, "error loading image preview", e);
-            }
+            previewLoader.load(selectedImageUris.get(i), previews[i], previewSizePx);
+            previews[i].setVisibility(View.VISIBLE);
+            deleteButtons[i].setVisibility(View.VISIBLE);
         }
         
         // update photo count
@@ -467,50 +471,65 @@ public class AddFragment extends Fragment {
             return;
         }
         
-        uploadedImageUrls.clear();
+        uploadedImages.clear();
         uploadImagesWithSupabase();
     }
     
     private void uploadImagesWithSupabase() {
         String reviewId = UUID.randomUUID().toString();
-        SupabaseStorageService supabaseService = new SupabaseStorageService(requireContext());
-        
-        // use a simple thread for upload
-        new Thread(() -> {
-            try {
-                for (int i = 0; i < selectedImageUris.size(); i++) {
-                    Uri imageUri = selectedImageUris.get(i);
-                    String fileName = "reviews/" + reviewId + "/image_" + (i + 1) + ".jpg";
-                    
-                    // upload to supabase - this handled in Kotlin
-                    String signedUrl = supabaseService.uploadReviewImageSync(fileName, imageUri);
-                    if (signedUrl != null) {
-                        uploadedImageUrls.add(signedUrl);
-                    } else {
-                        throw new Exception("Failed to upload image " + (i + 1));
+        if (supabaseService == null) {
+            supabaseService = new SupabaseStorageService(requireContext());
+        }
+
+        // Images upload concurrently, the button shows combined progress
+        int imageCount = selectedImageUris.size();
+        long[] bytesSent = new long[imageCount];
+        long[] bytesTotal = new long[imageCount];
+        supabaseService.uploadReviewImages(reviewId, new ArrayList<>(selectedImageUris),
+            new SupabaseStorageService.ReviewImagesUploadListener() {
+                @Override
+                public void onImageProgress(int index, long sent, long total) {
+                    if (!isAdded()) return;
+                    bytesSent[index] = sent;
+                    bytesTotal[index] = total;
+                    long sentSum = 0;
+                    long totalSum = 0;
+                    for (int i = 0; i < imageCount; i++) {
+                        sentSum += bytesSent[i];
+                        totalSum += bytesTotal[i];
+                    }
+                    if (totalSum > 0) {
+                        btnSubmit.setText("Uploading " + (sentSum * 100 / totalSum) + "%...");
                     }
                 }
-                
-                // all images uploaded successfully - run on main thread
-                if (getActivity() != null) {
-                    getActivity().runOnUiThread(() -> {
-                        createReview(uploadedImageUrls);
-                    });
+
+                @Override
+                public void onComplete(List<ImageVariants> images) {
+                    if (!isAdded()) return;
+                    uploadedImages.addAll(images);
+                    btnSubmit.setText("Submitting...");
+                    createReview(uploadedImages);
                 }
-                
-            } catch (Exception e) {
-                Log.e(TAG, "Error uploading images to Supabase", e);
-                if (getActivity() != null) {
-                    getActivity().runOnUiThread(() -> {
-                        Toast.makeText(getContext(), "Error uploading images: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                resetSubmitButton();
-            });
+
+                @Override
+                public void onError(Exception e) {
+                    Log.e(TAG, "Error uploading images to Supabase", e);
+                    if (!isAdded()) return;
+                    Toast.makeText(getContext(), "Error uploading images: " + e.getMessage(), Toast.LENGTH_SHORT).show();
+                    resetSubmitButton();
                 }
-        }
-        }).start();
+            });
     }
     
-    private void createReview(List<String> imageUrls) {
+    private void createReview(List<ImageVariants> images) {
+        final List<String> imageUrls = new ArrayList<>();
+        final List<String> thumbnailUrls = new ArrayList<>();
+        final List<String> mediumUrls = new ArrayList<>();
+        for (ImageVariants image : images) {
+            imageUrls.add(image.getFullUrl());
+            thumbnailUrls.add(image.getThumbnailUrl());
+            mediumUrls.add(image.getMediumUrl());
+        }
         final String userId = mAuth.getCurrentUser().getUid();
         String userName = mAuth.getCurrentUser().getDisplayName();
         if (userName == null || userName.isEmpty()) {
@@ -558,6 +577,8 @@ public class AddFragment extends Fragment {
                 review.setDescription(description);
                 review.setRating(rating);
                 review.setImageUrls(imageUrls);
+                review.setThumbnailUrls(thumbnailUrls);
+                review.setMediumUrls(mediumUrls);
                 review.setFirstImageType(finalFirstImageType);
                 review.setCreatedAt(new Date()); // Use current date
                 review.setVotes(votes);
@@ -568,6 +589,7 @@ public class AddFragment extends Fragment {
                 reviewService.saveReview(review, new ReviewService.ReviewSaveCallback() {
                     @Override
                     public void onSuccess() {
+                        UserStatsService.updateUserScoresOnReviewAdded(review);
                         if (getActivity() != null) {
                             getActivity().runOnUiThread(() -> {
                                 Toast.makeText(getContext(), "Review submitted successfully!", Toast.LENGTH_SHORT).show();
@@ -601,6 +623,8 @@ public class AddFragment extends Fragment {
                 review.setDescription(description);
                 review.setRating(rating);
                 review.setImageUrls(imageUrls);
+                review.setThumbnailUrls(thumbnailUrls);
+                review.setMediumUrls(mediumUrls);
                 review.setFirstImageType(finalFirstImageType);
                 review.setCreatedAt(new Date());
                 review.setVotes(votes);
@@ -611,6 +635,7 @@ public class AddFragment extends Fragment {
                 reviewService.saveReview(review, new ReviewService.ReviewSaveCallback() {
                     @Override
                     public void onSuccess() {
+                        UserStatsService.updateUserScoresOnReviewAdded(review);
                         if (getActivity() != null) {
                             getActivity().runOnUiThread(() -> {
                                 Toast.makeText(getContext(), "Review submitted successfully!", Toast.LENGTH_SHORT).show();
@@ -643,7 +668,7 @@ public class AddFragment extends Fragment {
         etRestaurantSearch.setText("");
         selectedRestaurant = null;
         selectedImageUris.clear();
-        uploadedImageUrls.clear();
+        uploadedImages.clear();
         updateImagePreviews();
         updatePhotoCount();
     }
@@ -657,22 +682,13 @@ public class AddFragment extends Fragment {
     
     private String getImageOrientation(Uri imageUri) {
         try {
-            Bitmap bitmap = MediaStore.Images.Media.getBitmap(getActivity().getContentResolver(), imageUri);
-            int width = bitmap.getWidth();
-            int height = bitmap.getHeight();
-            
-            // Calculate aspect ratio
-            float aspectRatio = (float) width / height;
-            
-            // Determine orientation based on aspect ratio
-            if (aspectRatio > 1.2f) {
-                return "HORIZONTAL"; // Width is significantly larger than height
-            } else if (aspectRatio < 0.8f) {
-                return "PORTRAIT"; // Height is significantly larger than width
-            } else {
-                return "SQUARE"; // Width and height are roughly equal
+            // header and EXIF only, so a rotated camera photo is classified as displayed
+            int[] size = ImagePreprocessor.readOrientedSize(requireContext(), imageUri);
+            if (size == null) {
+                return "SQUARE";
             }
-        } catch (IOException e) {
+            return ImagePreprocessor.classifyOrientation(size[0], size[1]);
+        } catch (IOException | SecurityException e) {
             Log.e(TAG, "Error reading image for orientation detection", e);
             return "SQUARE"; // Default fallback
         }
@@ -682,4 +698,21 @@ public class AddFragment extends Fragment {
         btnSubmit.setEnabled(true);
         btnSubmit.setText("Post Review");
     }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (previewLoader != null) {
+            previewLoader.close();
+            previewLoader = null;
+        }
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        if (supabaseService != null) {
+            supabaseService.cancelUploads();
+        }
+    }
 }
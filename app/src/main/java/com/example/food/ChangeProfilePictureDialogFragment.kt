@@ -20,6 +20,7 @@ import androidx.core.content.FileProvider
 import androidx.activity.result.contract.ActivityResultContracts
 import androidx.fragment.app.DialogFragment
 import com.bumptech.glide.Glide
+import com.example.food.service.UserDirectory
 import com.google.android.material.button.MaterialButton
 import com.google.firebase.auth.FirebaseAuth
 import com.google.firebase.firestore.FirebaseFirestore
@@ -321,6 +322,7 @@ class ChangeProfilePictureDialogFragment : DialogFragment() {
             .update("avatarUrl", imageUrl)
             .addOnSuccessListener { _ ->
                 Log.d(TAG, "Successfully updated avatarUrl in Firestore")
+                UserDirectory.getInstance().invalidate(currentUser.uid)
                 Toast.makeText(requireContext(), getString(R.string.profile_picture_updated_successfully), Toast.LENGTH_SHORT).show()
                 listener?.onProfilePictureChanged()
                 dismiss()
@@ -349,6 +351,7 @@ class ChangeProfilePictureDialogFragment : DialogFragment() {
         db.collection("users").document(currentUser.uid)
             .update("avatarUrl", "")
             .addOnSuccessListener { _ ->
+                UserDirectory.getInstance().invalidate(currentUser.uid)
                 // then try to delete from storage
                 val supabaseService = SupabaseStorageService(requireContext())
                 CoroutineScope(Dispatchers.Main).launch {
@@ -2,6 +2,8 @@ package com.example.food;
 
 import android.content.Intent;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.Editable;
 import android.text.TextWatcher;
 import android.util.Log;
@@ -19,15 +21,21 @@ import androidx.recyclerview.widget.StaggeredGridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import androidx.swiperefreshlayout.widget.SwipeRefreshLayout;
 
+import com.example.food.adapters.ReviewImagePreloader;
 import com.example.food.adapters.ReviewWidgetAdapter;
+import com.example.food.cache.LocalReviewStore;
 import com.example.food.data.Review;
 import com.example.food.dialogs.ReviewDetailsDialog;
 import com.example.food.model.Restaurant;
+import com.example.food.service.RestaurantRepository;
+import com.example.food.service.ReviewChanges;
 import com.example.food.service.ReviewService;
+import com.example.food.service.UserDirectory;
+import com.example.food.utils.FrameUpdateCoalescer;
+import com.example.food.utils.ReviewSearchIndex;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.util.ArrayList;
 import java.util.HashMap;
@@ -36,6 +44,9 @@ import java.util.Map;
 
 public class HomeFragment extends Fragment {
     private static final String TAG = "HomeFragment";
+    private static final int PAGE_SIZE = ReviewService.DEFAULT_PAGE_SIZE;
+    private static final int PREFETCH_DISTANCE = 6; // start the next page this many cards before the end
+    private static final long SEARCH_DEBOUNCE_MS = 150;
     
     private RecyclerView rvReviews;
     private ReviewWidgetAdapter reviewAdapter;
@@ -44,26 +55,49 @@ public class HomeFragment extends Fragment {
     private LinearLayout layoutEmptyState;
     
     private ReviewService reviewService;
+    private RestaurantRepository restaurantRepository;
     private List<Review> allReviews;
     private Map<String, Restaurant> restaurantMap;
-    private Map<String, String> userNamesMap; // Cache for user names
     private FirebaseFirestore db;
 
+    // Feed pagination
+    private ReviewService.PageCursor nextPageCursor;
+    private boolean hasMorePages = true;
+    private boolean isLoadingPage = false;
+    private int pageGeneration = 0;
+    private boolean feedLoaded = false; // a first page or a synced cached feed is showing
+
+    // Reviews from the last session, shown while the network catches up
+    private LocalReviewStore localReviewStore;
+
+    // Search
+    private ReviewSearchIndex searchIndex;
+    private final Handler searchHandler = new Handler(Looper.getMainLooper());
+    private Runnable pendingSearch;
+
+    private ReviewImagePreloader imagePreloader;
+
+    // restaurant and user lookups land one by one, the feed refreshes at most once a frame
+    private final FrameUpdateCoalescer feedUpdates = new FrameUpdateCoalescer(this::updateUI);
+
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_home, container, false);
         
+        searchIndex = ReviewSearchIndex.getInstance();
+
         initViews(view);
         setupRecyclerView();
         setupSwipeRefresh();
         setupSearch();
         
         reviewService = new ReviewService();
+        restaurantRepository = RestaurantRepository.getInstance(requireContext());
         allReviews = new ArrayList<>();
         restaurantMap = new HashMap<>();
-        userNamesMap = new HashMap<>();
         db = FirebaseFirestore.getInstance();
+        localReviewStore = LocalReviewStore.getInstance(requireContext());
         
         loadReviews();
         
@@ -88,7 +122,8 @@ public class HomeFragment extends Fragment {
                     for (int i = 0; i < allReviews.size(); i++) {
                         if (allReviews.get(i).getId().equals(updatedReview.getId())) {
                             allReviews.set(i, updatedReview);
-                            reviewAdapter.notifyItemChanged(i);
+                            reviewAdapter.refresh();
+                            localReviewStore.saveReview(updatedReview);
                             break;
                         }
                     }
@@ -139,6 +174,20 @@ public class HomeFragment extends Fragment {
         });
         
         rvReviews.setAdapter(reviewAdapter);
+
+        // Warm the image cache for the cards about to scroll in
+        imagePreloader = new ReviewImagePreloader(requireContext(), reviewAdapter);
+        imagePreloader.attach(rvReviews);
+
+        // Endless scroll, prefetch the next page before the user reaches the end
+        rvReviews.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0) {
+                    prefetchIfNearEnd();
+                }
+            }
+        });
         
         // Set restaurant map to adapter
         reviewAdapter.setRestaurantMap(restaurantMap);
@@ -160,120 +209,166 @@ public class HomeFragment extends Fragment {
             @Override
             public void afterTextChanged(Editable s) {
                 String query = s.toString().trim();
-                filterReviews(query);
+                // debounce so a burst of keystrokes runs one query
+                if (pendingSearch != null) {
+                    searchHandler.removeCallbacks(pendingSearch);
+                }
+                pendingSearch = () -> filterReviews(query);
+                searchHandler.postDelayed(pendingSearch, SEARCH_DEBOUNCE_MS);
             }
         });
     }
 
 
+    /**
+     * Render the reviews kept from the last session straight away. If they come with a
+     * high-water mark only what changed since is downloaded, otherwise the first page
+     * replaces them when it arrives
+     */
     private void loadReviews() {
         showLoading(true);
-        
-        reviewService.loadReviews(new ReviewService.ReviewsLoadCallback() {
-            @Override
-            public void onSuccess(List<Review> reviews) {
-                if (getActivity() == null) return;
-                
-                getActivity().runOnUiThread(() -> {
-                    allReviews.clear();
-                    allReviews.addAll(reviews);
-                    loadUserInfoForReviews(reviews);
-                    loadRestaurants();
-                    showLoading(false);
-                });
+        long start = System.currentTimeMillis();
+        int generation = pageGeneration;
+        localReviewStore.readFeed(PAGE_SIZE, (cached, highWaterMark) -> {
+            // a pull-to-refresh already started a load
+            if (!isAdded() || generation != pageGeneration) return;
+
+            if (!cached.isEmpty()) {
+                allReviews.addAll(cached);
+                searchIndex.indexReviews(cached);
+                loadRestaurants();
+                Log.d(TAG, "Showing " + cached.size() + " cached reviews after " + (System.currentTimeMillis() - start) + " ms");
             }
 
-            @Override
-            public void onError(Exception e) {
-                if (getActivity() == null) return;
-                
-                getActivity().runOnUiThread(() -> {
-                    showLoading(false);
-                    showError("Failed to load reviews: " + e.getMessage());
-                    Log.e(TAG, "Error loading reviews", e);
-                });
+            Review last = cached.isEmpty() ? null : cached.get(cached.size() - 1);
+            if (highWaterMark == null || last == null || last.getCreatedAt() == null) {
+                loadPage(true);
+                return;
             }
+            // continue paging after the cached reviews, as if they were the first page
+            nextPageCursor = new ReviewService.PageCursor(last.getCreatedAt(), last.getId());
+            hasMorePages = cached.size() >= PAGE_SIZE;
+            feedLoaded = true;
+            ReviewService.restoreHighWaterMark(highWaterMark);
+            syncChanges();
         });
     }
 
     private void refreshReviews() {
-        reviewService.loadReviews(new ReviewService.ReviewsLoadCallback() {
+        if (feedLoaded && ReviewService.getHighWaterMark() != null) {
+            syncChanges();
+        } else {
+            loadPage(true);
+        }
+    }
+
+    /**
+     * Download only the reviews created, edited or deleted since the high-water mark and merge
+     * them into the feed. An unchanged feed costs one query and no documents
+     */
+    private void syncChanges() {
+        int generation = pageGeneration;
+        reviewService.loadReviewChanges(new ReviewService.ReviewChangesCallback() {
             @Override
-            public void onSuccess(List<Review> reviews) {
-                if (getActivity() == null) return;
-                
-                getActivity().runOnUiThread(() -> {
-                    allReviews.clear();
-                    allReviews.addAll(reviews);
-                    loadUserNames();
+            public void onSuccess(ReviewChanges changes) {
+                if (getActivity() == null || generation != pageGeneration) return;
+
+                if (!changes.isComplete()) {
+                    // too much changed to patch, start from the first page. The reload keeps the
+                    // mark past the skipped changes, so the next sync doesn't fetch them again
+                    loadPage(true);
+                    return;
+                }
+                showLoading(false);
+                if (changes.isEmpty()) return;
+
+                feedUpdates.post(() -> {
+                    // the service already updated the search index, names are re-indexed below
+                    List<Review> applied = changes.applyTo(allReviews, hasMorePages);
+
+                    localReviewStore.deleteReviews(changes.getDeletedIds());
+                    localReviewStore.saveReviews(applied);
+                    localReviewStore.saveHighWaterMark(changes.getHighWaterMark());
+
+                    loadUserInfoForReviews(applied);
                     loadRestaurants();
-                    swipeRefreshLayout.setRefreshing(false);
                 });
             }
 
             @Override
             public void onError(Exception e) {
-                if (getActivity() == null) return;
-                
-                getActivity().runOnUiThread(() -> {
-                    swipeRefreshLayout.setRefreshing(false);
-                    showError("Failed to refresh reviews");
-                    Log.e(TAG, "Error refreshing reviews", e);
-                });
+                if (getActivity() == null || generation != pageGeneration) return;
+
+                showLoading(false);
+                showError("Failed to refresh reviews");
+                Log.e(TAG, "Error syncing review changes", e);
             }
         });
     }
 
-    private void loadUserNames() {
-        if (allReviews.isEmpty()) {
-            return;
+    private void prefetchIfNearEnd() {
+        // unsynced cached reviews have no cursor to continue from
+        if (!feedLoaded || isLoadingPage || !hasMorePages || rvReviews == null) return;
+
+        StaggeredGridLayoutManager layoutManager = (StaggeredGridLayoutManager) rvReviews.getLayoutManager();
+        if (layoutManager == null) return;
+
+        int lastVisible = 0;
+        for (int position : layoutManager.findLastVisibleItemPositions(null)) {
+            lastVisible = Math.max(lastVisible, position);
+        }
+        if (lastVisible >= reviewAdapter.getItemCount() - PREFETCH_DISTANCE) {
+            loadPage(false);
         }
+    }
 
-        List<String> userIds = new ArrayList<>();
-        for (Review review : allReviews) {
-            if (review.getUserId() != null && !userIds.contains(review.getUserId())) {
-                userIds.add(review.getUserId());
+    /**
+     * Load the first page (reset) or the page after nextPageCursor
+     */
+    private void loadPage(boolean reset) {
+        isLoadingPage = true;
+        int generation = reset ? ++pageGeneration : pageGeneration;
+        ReviewService.PageCursor cursor = reset ? null : nextPageCursor;
+
+        reviewService.loadReviewsPage(cursor, PAGE_SIZE, new ReviewService.ReviewsPageCallback() {
+            @Override
+            public void onSuccess(List<Review> reviews, ReviewService.PageCursor nextCursor, boolean hasMore) {
+                // a pull-to-refresh started after this page was requested
+                if (getActivity() == null || generation != pageGeneration) return;
+
+                isLoadingPage = false;
+                if (reset) {
+                    allReviews.clear();
+                    feedLoaded = true;
+                    localReviewStore.replaceFeed(reviews, ReviewService.getHighWaterMark());
+                } else {
+                    localReviewStore.saveReviews(reviews);
+                }
+                allReviews.addAll(reviews);
+                searchIndex.indexReviews(reviews);
+                nextPageCursor = nextCursor;
+                hasMorePages = hasMore;
+
+                loadUserInfoForReviews(reviews);
+                loadRestaurants();
+                showLoading(false);
             }
-        }
 
-        if (userIds.isEmpty()) {
-            return;
-        }
+            @Override
+            public void onError(Exception e) {
+                if (getActivity() == null || generation != pageGeneration) return;
 
-        int batchSize = 10;
-        for (int i = 0; i < userIds.size(); i += batchSize) {
-            int endIndex = Math.min(i + batchSize, userIds.size());
-            List<String> batch = userIds.subList(i, endIndex);
-            
-            db.collection("users")
-                .whereIn("__name__", batch)
-                .get()
-                .addOnSuccessListener(querySnapshot -> {
-                    for (QueryDocumentSnapshot document : querySnapshot) {
-                        String userId = document.getId();
-                        String userName = document.getString("name");
-                        if (userName == null || userName.trim().isEmpty()) {
-                            userName = document.getString("username");
-                        }
-                        if (userName != null && !userName.trim().isEmpty()) {
-                            userNamesMap.put(userId, userName);
-                            for (Review review : allReviews) {
-                                if (review.getUserId().equals(userId)) {
-                                    review.setUserName(userName);
-                                }
-                            }
-                        }
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error loading user batch", e);
-                });
-        }
+                isLoadingPage = false;
+                showLoading(false);
+                showError(reset ? "Failed to load reviews: " + e.getMessage() : "Failed to load more reviews");
+                Log.e(TAG, "Error loading reviews page", e);
+            }
+        });
     }
 
     private void loadRestaurants() {
         if (allReviews.isEmpty()) {
-            updateUI();
+            feedUpdates.requestBatch();
             return;
         }
 
@@ -285,81 +380,63 @@ public class HomeFragment extends Fragment {
         }
 
         if (restaurantIds.isEmpty()) {
-            updateUI();
+            feedUpdates.requestBatch();
             return;
         }
 
-        for (String restaurantId : restaurantIds) {
-            db.collection("restaurants")
-                .document(restaurantId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        try {
-                            Restaurant restaurant = documentSnapshot.toObject(Restaurant.class);
-                            if (restaurant != null) {
-                                restaurant.setId(documentSnapshot.getId());
-                                restaurantMap.put(restaurantId, restaurant);
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error parsing restaurant document", e);
-                        }
-                    }
-                    updateUI();
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error loading restaurant: " + restaurantId, e);
-                    updateUI();
-                });
-        }
-    }
+        // Shared catalogue, one query per session instead of one read per restaurant
+        restaurantRepository.getRestaurants(restaurantIds, restaurants -> {
+            if (!isAdded()) return;
+            feedUpdates.post(() -> {
+                restaurantMap.putAll(restaurants);
 
-    private void filterReviews(String query) {
-        if (reviewAdapter != null) {
-            // Enhanced filtering based on review content, user names, and restaurant names
-            List<Review> filteredReviews = new ArrayList<>();
-            if (query == null || query.trim().isEmpty()) {
-                filteredReviews.addAll(allReviews);
-            } else {
-                String lowerCaseQuery = query.toLowerCase().trim();
+                // restaurant names are searchable, re-index reviews that just got one
+                List<Review> named = new ArrayList<>();
                 for (Review review : allReviews) {
-                    boolean matches = false;
-                    
-                    // Search in description
-                    if (review.getDescription() != null && review.getDescription().toLowerCase().contains(lowerCaseQuery)) {
-                        matches = true;
-                    }
-                    
-                    // Search in caption
-                    if (!matches && review.getCaption() != null && review.getCaption().toLowerCase().contains(lowerCaseQuery)) {
-                        matches = true;
-                    }
-                    
-                    // Search in restaurant name
-                    if (!matches && review.getRestaurantName() != null && review.getRestaurantName().toLowerCase().contains(lowerCaseQuery)) {
-                        matches = true;
-                    }
-                    
-                    // Search in user name
-                    if (!matches && review.getUserName() != null && review.getUserName().toLowerCase().contains(lowerCaseQuery)) {
-                        matches = true;
-                    }
-                    
-                    if (matches) {
-                        filteredReviews.add(review);
+                    Restaurant restaurant = restaurantMap.get(review.getRestaurantId());
+                    if (review.getRestaurantName() == null && restaurant != null) {
+                        review.setRestaurantName(restaurant.getName());
+                        named.add(review);
                     }
                 }
-            }
-            reviewAdapter.setReviews(filteredReviews);
-            updateEmptyState();
+                searchIndex.indexReviews(named);
+                localReviewStore.saveReviews(named);
+            });
+        });
+    }
+
+    private void filterReviews(String query) {
+        if (reviewAdapter == null) return;
+
+        if (query == null || query.trim().isEmpty()) {
+            reviewAdapter.setReviews(allReviews, this::updateEmptyState);
+            return;
         }
+
+        // Ranked lookup in the background index over caption, description, restaurant and user names
+        searchIndex.search(query, (searchedQuery, results) -> {
+            if (!isAdded() || etSearch == null) return;
+            // drop results for a query the user has already typed past
+            if (!searchedQuery.equals(etSearch.getText().toString().trim())) return;
+            reviewAdapter.setReviews(results, this::updateEmptyState);
+        });
     }
 
     private void updateUI() {
-        if (reviewAdapter != null) {
-            reviewAdapter.setReviews(allReviews);
+        // batches can land a frame after the view went away
+        if (reviewAdapter != null && getView() != null) {
             reviewAdapter.setRestaurantMap(restaurantMap);
-            updateEmptyState();
+            // keep an active search applied as more pages arrive
+            String query = etSearch != null ? etSearch.getText().toString().trim() : "";
+            if (!query.isEmpty()) {
+                filterReviews(query);
+                return;
+            }
+            reviewAdapter.setReviews(allReviews, () -> {
+                updateEmptyState();
+                // a short page may not fill the screen, so no scroll event would follow
+                rvReviews.post(this::prefetchIfNearEnd);
+            });
         }
     }
 
@@ -387,6 +464,16 @@ public class HomeFragment extends Fragment {
         }
     }
     
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        searchHandler.removeCallbacksAndMessages(null);
+        if (imagePreloader != null) {
+            imagePreloader.detach(rvReviews);
+            imagePreloader = null;
+        }
+    }
+
     private void loadUserInfoForReviews(List<Review> reviews) {
         if (reviews.isEmpty()) return;
         
@@ -398,37 +485,30 @@ public class HomeFragment extends Fragment {
             }
         }
         
-        // Load user information for each unique user
-        for (String userId : userIds) {
-            db.collection("users").document(userId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        String userName = documentSnapshot.getString("name");
-                        String userAvatarUrl = documentSnapshot.getString("avatarUrl");
-                        
-                        // Update all reviews for this user
-                        for (Review review : allReviews) {
-                            if (userId.equals(review.getUserId())) {
-                                if (userName != null) {
-                                    review.setUserName(userName);
-                                }
-                                if (userAvatarUrl != null) {
-                                    review.setUserAvatarUrl(userAvatarUrl);
-                                }
-                            }
-                        }
-                        
-                        // Notify adapter of changes
-                        if (reviewAdapter != null) {
-                            reviewAdapter.notifyDataSetChanged();
-                        }
+        // Batched, cached lookup shared with the other screens
+        UserDirectory.getInstance(requireContext()).resolve(userIds, users -> {
+            if (!isAdded()) return;
+            // Only the cards whose author was filled in rebind, together with any
+            // restaurant names that arrived in the same frame
+            feedUpdates.post(() -> {
+                List<Review> named = new ArrayList<>();
+                for (Review review : allReviews) {
+                    UserDirectory.UserInfo user = users.get(review.getUserId());
+                    if (user == null) continue;
+                    if (user.hasName()) {
+                        review.setUserName(user.getName());
+                        named.add(review);
                     }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error loading user info for user: " + userId, e);
-                });
-        }
+                    if (user.hasAvatar()) {
+                        review.setUserAvatarUrl(user.getAvatarUrl());
+                    }
+                }
+                // author names are searchable too
+                searchIndex.indexReviews(named);
+                // keep names on disk so the next launch renders complete cards
+                localReviewStore.saveReviews(named);
+            });
+        });
     }
 }
 
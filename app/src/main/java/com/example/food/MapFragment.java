@@ -29,11 +29,17 @@ import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.example.food.adapters.ReviewImagePreloader;
 import com.example.food.adapters.ReviewWidgetAdapter;
 import com.example.food.data.Review;
 import com.example.food.data.CrowdFeedback;
 import com.example.food.dialogs.ReviewDetailsDialog;
+import com.example.food.services.RestaurantAggregateDelta;
+import com.example.food.service.CrowdDensityMonitor;
 import com.example.food.service.CrowdDensityService;
+import com.example.food.service.RestaurantRepository;
+import com.example.food.service.ReviewService;
+import com.example.food.service.UserDirectory;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.bottomsheet.BottomSheetDialog;
@@ -52,8 +58,6 @@ import com.google.android.gms.maps.model.BitmapDescriptorFactory;
 import com.google.android.libraries.places.api.Places;
 import com.google.android.libraries.places.api.net.PlacesClient;
 
-import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.example.food.model.Restaurant;
 // FirebaseDataUploader removed, no longer need upload functionality
 
@@ -65,11 +69,15 @@ import java.util.Map;
 public class MapFragment extends Fragment implements OnMapReadyCallback {
 
     private static final String TAG = "MapFragment";
+    private static final int SHEET_PAGE_SIZE = 10;
+    private static final int SHEET_PREFETCH_DISTANCE = 4; // cards left before the next page
     private GoogleMap googleMap;
     private FusedLocationProviderClient fusedLocationClient;
     private PlacesClient placesClient;
-    private FirebaseFirestore db;
+    private RestaurantRepository restaurantRepository;
+    private ReviewService reviewService;
     private CrowdDensityService crowdDensityService;
+    private CrowdDensityMonitor crowdDensityMonitor;
     private FirebaseAuth mAuth;
     
     // Map control buttons
@@ -87,6 +95,13 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
     // Store markers with restaurant IDs for color updates
     private Map<String, Marker> restaurantMarkers;
 
+    // Crowd density views of the open bottom sheet, updated live by the monitor
+    private String sheetRestaurantId;
+    private View sheetCrowdIndicator;
+    private TextView sheetCrowdStatus;
+    private TextView sheetCrowdDescription;
+    private TextView sheetFeedbackCount;
+
     private final ActivityResultLauncher<String[]> permissionLauncher =
             registerForActivityResult(new ActivityResultContracts.RequestMultiplePermissions(), result -> {
                 boolean fine = Boolean.TRUE.equals(result.getOrDefault(Manifest.permission.ACCESS_FINE_LOCATION, false));
@@ -133,9 +148,10 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         }
         placesClient = Places.createClient(requireContext());
         
-        // Initialize Firebase Firestore
-        db = FirebaseFirestore.getInstance();
+        restaurantRepository = RestaurantRepository.getInstance(requireContext());
+        reviewService = new ReviewService();
         crowdDensityService = new CrowdDensityService();
+        crowdDensityMonitor = CrowdDensityMonitor.create();
         mAuth = FirebaseAuth.getInstance();
 
         // Simplified map initialization
@@ -153,18 +169,13 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         if (args != null && args.containsKey("open_restaurant_id")) {
             String targetRestaurantId = args.getString("open_restaurant_id");
             if (targetRestaurantId != null) {
-                // Fetch from Firestore and show bottom sheet
-                db.collection("restaurants").document(targetRestaurantId)
-                    .get()
-                    .addOnSuccessListener(doc -> {
-                        if (doc.exists()) {
-                            Restaurant restaurant = doc.toObject(Restaurant.class);
-                            if (restaurant != null) {
-                                restaurant.setId(doc.getId());
-                                showRestaurantPostsBottomSheet(restaurant);
-                            }
-                        }
-                    });
+                // Resolve from the shared catalogue and show bottom sheet
+                restaurantRepository.getRestaurants(java.util.Collections.singletonList(targetRestaurantId), restaurantsById -> {
+                    Restaurant restaurant = restaurantsById.get(targetRestaurantId);
+                    if (restaurant != null) {
+                        showRestaurantPostsBottomSheet(restaurant);
+                    }
+                });
                 // Remove the argument so it doesnt repeat
                 args.remove("open_restaurant_id");
             }
@@ -221,58 +232,37 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         
         Log.d(TAG, "Starting to load restaurant data from Firebase...");
         
-        db.collection("restaurants")
-                .get()
-                .addOnSuccessListener(queryDocumentSnapshots -> {
-                    Log.d(TAG, "Firebase connection successful, document count: " + queryDocumentSnapshots.size());
-                    
-                    if (!isAdded() || getContext() == null) {
-                        return;
-                    }
-                    
-                    if (queryDocumentSnapshots.isEmpty()) {
-                        // No data in Firebase
-                        Log.d(TAG, "No restaurant data in Firebase");
-                    } else {
-                        // Data exists in Firebase, load and display
-                        List<Restaurant> restaurantsList = new ArrayList<>();
-                        for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                            try {
-                                Restaurant restaurant = document.toObject(Restaurant.class);
-                                restaurant.setId(document.getId());
-                                restaurantsList.add(restaurant);
-                                
-                                // Add map marker with default green color (will be updated based on crowd density)
-                                if (googleMap != null) {
-                                    LatLng position = new LatLng(restaurant.getLatitude(), restaurant.getLongitude());
-                                    MarkerOptions markerOptions = new MarkerOptions()
-                                            .position(position)
-                                            .title(restaurant.getName())
-                                            .snippet(restaurant.getAddress())
-                                            .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_GREEN));
-                                    
-                                    Marker marker = googleMap.addMarker(markerOptions);
-                                    if (marker != null) {
-                                        marker.setTag(restaurant);
-                                        restaurantMarkers.put(restaurant.getId(), marker);
-                                    }
-                                }
-                            } catch (Exception e) {
-                                Log.e(TAG, "Failed to parse restaurant data: " + document.getId(), e);
-                            }
-                        }
-                        
-                        // Load crowd density for each restaurant and update marker colors
-                        for (Restaurant restaurant : restaurantsList) {
-                            loadCrowdDensityForMarker(restaurant.getId());
-                        }
-                        
-                        Log.d(TAG, "Successfully loaded " + restaurantsList.size() + " restaurants");
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Firebase loading failed", e);
-                });
+        restaurantRepository.loadRestaurants(restaurantsById -> {
+            if (!isAdded() || getContext() == null || googleMap == null) {
+                return;
+            }
+
+            if (restaurantsById.isEmpty()) {
+                Log.d(TAG, "No restaurant data in Firebase");
+                return;
+            }
+
+            for (Restaurant restaurant : restaurantsById.values()) {
+                // Add map marker with default green color (will be updated based on crowd density)
+                LatLng position = new LatLng(restaurant.getLatitude(), restaurant.getLongitude());
+                MarkerOptions markerOptions = new MarkerOptions()
+                        .position(position)
+                        .title(restaurant.getName())
+                        .snippet(restaurant.getAddress())
+                        .icon(BitmapDescriptorFactory.defaultMarker(BitmapDescriptorFactory.HUE_GREEN));
+
+                Marker marker = googleMap.addMarker(markerOptions);
+                if (marker != null) {
+                    marker.setTag(restaurant);
+                    restaurantMarkers.put(restaurant.getId(), marker);
+                }
+            }
+
+            // Live feedback listener colours every marker and keeps them current
+            startCrowdDensityUpdates();
+
+            Log.d(TAG, "Successfully loaded " + restaurantsById.size() + " restaurants");
+        });
     }
 
     /**
@@ -290,6 +280,7 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         TextView tvRestaurantName = view.findViewById(R.id.tv_restaurant_name);
         TextView tvRestaurantAddress = view.findViewById(R.id.tv_restaurant_address);
         TextView tvPostsCount = view.findViewById(R.id.tv_posts_count);
+        TextView tvPostsSummary = view.findViewById(R.id.tv_posts_summary);
         RecyclerView rvPosts = view.findViewById(R.id.rv_posts);
         TextView tvNoPosts = view.findViewById(R.id.tv_no_posts);
         androidx.appcompat.widget.AppCompatButton btnNavigate = view.findViewById(R.id.btn_navigate);
@@ -312,8 +303,26 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         tvRestaurantName.setText(restaurant.getName());
         tvRestaurantAddress.setText(restaurant.getAddress());
 
-        // Load and display crowd density
-        loadCrowdDensity(restaurant.getId(), vCrowdIndicator, tvCrowdStatus, tvCrowdDescription, tvFeedbackCount);
+        // Load and display crowd density, the monitor keeps it current while the sheet is open
+        sheetRestaurantId = restaurant.getId();
+        sheetCrowdIndicator = vCrowdIndicator;
+        sheetCrowdStatus = tvCrowdStatus;
+        sheetCrowdDescription = tvCrowdDescription;
+        sheetFeedbackCount = tvFeedbackCount;
+        final ReviewImagePreloader[] preloaderHolder = new ReviewImagePreloader[1];
+        bottomSheet.setOnDismissListener(dialog -> {
+            if (restaurant.getId().equals(sheetRestaurantId)) {
+                clearSheetCrowdViews();
+            }
+            if (preloaderHolder[0] != null) {
+                preloaderHolder[0].detach(rvPosts);
+            }
+        });
+        if (crowdDensityMonitor.isReady()) {
+            bindCrowdDensity(crowdDensityMonitor.getResult(restaurant.getId()), vCrowdIndicator, tvCrowdStatus, tvCrowdDescription, tvFeedbackCount);
+        } else {
+            loadCrowdDensity(restaurant.getId(), vCrowdIndicator, tvCrowdStatus, tvCrowdDescription, tvFeedbackCount);
+        }
 
         // Set up feedback button click listeners with refresh functionality
         btnNotCrowded.setOnClickListener(v -> submitCrowdFeedback(restaurant.getId(), 1, vCrowdIndicator, tvCrowdStatus, tvCrowdDescription, tvFeedbackCount));
@@ -345,7 +354,7 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
                             if (reviews.get(i).getId().equals(updatedReview.getId())) {
                                 reviews.set(i, updatedReview);
                                 if (adapterHolder[0] != null) {
-                                    adapterHolder[0].notifyItemChanged(i);
+                                    adapterHolder[0].refresh();
                                 }
                                 break;
                             }
@@ -390,60 +399,216 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
                 new androidx.recyclerview.widget.StaggeredGridLayoutManager(2, androidx.recyclerview.widget.StaggeredGridLayoutManager.VERTICAL);
             rvPosts.setLayoutManager(layoutManager);
             rvPosts.setAdapter(adapter);
+            preloaderHolder[0] = new ReviewImagePreloader(context, adapter);
+            preloaderHolder[0].attach(rvPosts);
         }
 
-        // Load reviews for this restaurant
-        loadRestaurantReviews(restaurant.getId(), adapter, rvPosts, tvNoPosts, tvPostsCount);
+        // Header from the restaurant's aggregates, the list a page at a time
+        loadRestaurantSummary(restaurant.getId(), tvPostsCount, tvPostsSummary);
+        RestaurantReviewPager pager = new RestaurantReviewPager(restaurant.getId(), reviews, adapter, rvPosts, tvNoPosts);
+        rvPosts.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy > 0) {
+                    pager.loadMoreIfNearEnd();
+                }
+            }
+        });
+        pager.loadNextPage();
 
         bottomSheet.show();
     }
 
     /**
-     * Load reviews for a specific restaurant
+     * Count, average rating and accuracy from the restaurant's aggregates, one document read
+     * however many reviews it has
      */
-    private void loadRestaurantReviews(String restaurantId, ReviewWidgetAdapter adapter, 
-                                     RecyclerView rvPosts, TextView tvNoPosts, TextView tvPostsCount) {
-        db.collection("reviews")
-            .whereEqualTo("restaurantId", restaurantId)
-            .get()
-            .addOnSuccessListener(queryDocumentSnapshots -> {
-                List<Review> reviews = new ArrayList<>();
-                for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                    Review review = document.toObject(Review.class);
-                    review.setId(document.getId());
-                    review.refreshAccuracyFromVotes(); // Calculate accuracy from votes
-                    reviews.add(review);
+    private void loadRestaurantSummary(String restaurantId, TextView tvPostsCount, TextView tvPostsSummary) {
+        reviewService.loadRestaurantAggregates(restaurantId, new ReviewService.RestaurantAggregatesCallback() {
+            @Override
+            public void onSuccess(Map<String, Object> aggregates) {
+                if (!isAdded()) return;
+
+                int reviewCount = RestaurantAggregateDelta.getReviewCount(aggregates);
+                tvPostsCount.setText(String.valueOf(reviewCount));
+                if (reviewCount == 0) {
+                    tvPostsSummary.setVisibility(View.GONE);
+                    return;
                 }
+                String summary = RestaurantAggregateDelta.hasVotedReviews(aggregates)
+                        ? getString(R.string.restaurant_posts_summary,
+                                RestaurantAggregateDelta.getAverageRating(aggregates),
+                                RestaurantAggregateDelta.getAverageAccuracy(aggregates))
+                        : getString(R.string.restaurant_posts_summary_no_votes,
+                                RestaurantAggregateDelta.getAverageRating(aggregates));
+                tvPostsSummary.setText(summary);
+                tvPostsSummary.setVisibility(View.VISIBLE);
+            }
 
-                // Sort by timestamp (newest first)
-                reviews.sort((r1, r2) -> {
-                    if (r1.getCreatedAt() == null) return 1;
-                    if (r2.getCreatedAt() == null) return -1;
-                    return r2.getCreatedAt().compareTo(r1.getCreatedAt());
-                });
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Error loading restaurant aggregates", e);
+            }
+        });
+    }
 
-                adapter.setReviews(reviews);
-                tvPostsCount.setText(String.valueOf(reviews.size()));
+    /**
+     * Pages a restaurant's reviews into the sheet, newest first, as the list is scrolled
+     */
+    private class RestaurantReviewPager {
+        private final String restaurantId;
+        private final List<Review> reviews;
+        private final ReviewWidgetAdapter adapter;
+        private final RecyclerView rvPosts;
+        private final TextView tvNoPosts;
+        private ReviewService.PageCursor cursor;
+        private boolean hasMore = true;
+        private boolean loading;
+
+        RestaurantReviewPager(String restaurantId, List<Review> reviews, ReviewWidgetAdapter adapter,
+                              RecyclerView rvPosts, TextView tvNoPosts) {
+            this.restaurantId = restaurantId;
+            this.reviews = reviews;
+            this.adapter = adapter;
+            this.rvPosts = rvPosts;
+            this.tvNoPosts = tvNoPosts;
+        }
 
-                if (reviews.isEmpty()) {
-                    tvNoPosts.setVisibility(View.VISIBLE);
-                    rvPosts.setVisibility(View.GONE);
-                } else {
-                    tvNoPosts.setVisibility(View.GONE);
-                    rvPosts.setVisibility(View.VISIBLE);
-                    // Load user info for reviews to properly display names and avatars
-                    loadUserInfoForReviews(reviews, adapter);
+        void loadMoreIfNearEnd() {
+            if (loading || !hasMore) return;
+
+            androidx.recyclerview.widget.StaggeredGridLayoutManager layoutManager =
+                    (androidx.recyclerview.widget.StaggeredGridLayoutManager) rvPosts.getLayoutManager();
+            if (layoutManager == null) return;
+
+            int lastVisible = 0;
+            for (int position : layoutManager.findLastVisibleItemPositions(null)) {
+                lastVisible = Math.max(lastVisible, position);
+            }
+            if (lastVisible >= adapter.getItemCount() - SHEET_PREFETCH_DISTANCE) {
+                loadNextPage();
+            }
+        }
+
+        void loadNextPage() {
+            loading = true;
+            reviewService.loadRestaurantReviewsPage(restaurantId, cursor, SHEET_PAGE_SIZE,
+                    new ReviewService.ReviewsPageCallback() {
+                @Override
+                public void onSuccess(List<Review> page, ReviewService.PageCursor nextCursor, boolean more) {
+                    loading = false;
+                    if (!isAdded()) return;
+
+                    cursor = nextCursor;
+                    hasMore = more;
+                    reviews.addAll(page);
+                    adapter.setReviews(reviews);
+
+                    if (reviews.isEmpty()) {
+                        tvNoPosts.setVisibility(View.VISIBLE);
+                        rvPosts.setVisibility(View.GONE);
+                    } else {
+                        tvNoPosts.setVisibility(View.GONE);
+                        rvPosts.setVisibility(View.VISIBLE);
+                        // Load user info for reviews to properly display names and avatars
+                        loadUserInfoForReviews(page, adapter);
+                    }
                 }
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Error loading restaurant reviews", e);
-                if (isAdded() && getContext() != null) {
-                    Toast.makeText(getContext(), "Failed to load reviews", Toast.LENGTH_SHORT).show();
+
+                @Override
+                public void onError(Exception e) {
+                    loading = false;
+                    Log.e(TAG, "Error loading restaurant reviews", e);
+                    if (isAdded() && getContext() != null) {
+                        Toast.makeText(getContext(), "Failed to load reviews", Toast.LENGTH_SHORT).show();
+                    }
                 }
             });
+        }
     }
-    
-    // Load crowd density for marker and update color
+
+    // Subscribe to live crowd feedback, only restaurants whose result changed are repainted
+    private void startCrowdDensityUpdates() {
+        crowdDensityMonitor.start(new CrowdDensityMonitor.OnCrowdDensityChangedListener() {
+            @Override
+            public void onCrowdDensityChanged(Map<String, CrowdDensityService.CrowdDensityResult> changed) {
+                if (!isAdded() || googleMap == null) {
+                    return;
+                }
+                for (Map.Entry<String, CrowdDensityService.CrowdDensityResult> entry : changed.entrySet()) {
+                    applyMarkerColor(restaurantMarkers.get(entry.getKey()), entry.getValue().getCrowdingLevel());
+                    if (entry.getKey().equals(sheetRestaurantId)) {
+                        bindCrowdDensity(entry.getValue(), sheetCrowdIndicator, sheetCrowdStatus,
+                                sheetCrowdDescription, sheetFeedbackCount);
+                    }
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                // Listener failed, fall back to a one-off query
+                loadCrowdDensityForAllMarkers();
+            }
+        });
+
+        // Markers may have been re-created since the monitor last published
+        if (crowdDensityMonitor.isReady()) {
+            for (Map.Entry<String, CrowdDensityService.CrowdDensityResult> entry : crowdDensityMonitor.getResults().entrySet()) {
+                applyMarkerColor(restaurantMarkers.get(entry.getKey()), entry.getValue().getCrowdingLevel());
+            }
+        }
+    }
+
+    private void clearSheetCrowdViews() {
+        sheetRestaurantId = null;
+        sheetCrowdIndicator = null;
+        sheetCrowdStatus = null;
+        sheetCrowdDescription = null;
+        sheetFeedbackCount = null;
+    }
+
+    // One query for the last hour of feedback, then recolour the markers that have any
+    private void loadCrowdDensityForAllMarkers() {
+        crowdDensityService.calculateAllCrowdDensities(new CrowdDensityService.CrowdDensityBatchCallback() {
+            @Override
+            public void onSuccess(Map<String, CrowdDensityService.CrowdDensityResult> results) {
+                if (!isAdded() || googleMap == null) {
+                    return;
+                }
+                // Markers start green, only restaurants with recent feedback need a new colour
+                for (Map.Entry<String, CrowdDensityService.CrowdDensityResult> entry : results.entrySet()) {
+                    applyMarkerColor(restaurantMarkers.get(entry.getKey()), entry.getValue().getCrowdingLevel());
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                // On error, keep default green color
+                Log.e(TAG, "Error loading crowd density for markers", e);
+            }
+        });
+    }
+
+    private void applyMarkerColor(Marker marker, int crowdingLevel) {
+        if (marker == null) {
+            return;
+        }
+        // Set marker color based on crowding level
+        float markerHue;
+        
+        // 3 = Very Crowded (red), 2 = Moderately Crowded (yellow), 1 = Not Crowded (green), 0 = No Data (green)
+        if (crowdingLevel == 3) {
+            markerHue = BitmapDescriptorFactory.HUE_RED;
+        } else if (crowdingLevel == 2) {
+            markerHue = BitmapDescriptorFactory.HUE_YELLOW;
+        } else {
+            // Level 1 (not crowded) or 0 (no data) = green
+            markerHue = BitmapDescriptorFactory.HUE_GREEN;
+        }
+        
+        marker.setIcon(BitmapDescriptorFactory.defaultMarker(markerHue));
+    }
+
     private void loadCrowdDensityForMarker(String restaurantId) {
         if (!isAdded() || googleMap == null) {
             return;
@@ -460,24 +625,7 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
                             return;
                         }
                         
-                        Marker marker = restaurantMarkers.get(restaurantId);
-                        if (marker != null) {
-                            // Set marker color based on crowding level
-                            float markerHue;
-                            int crowdingLevel = result.getCrowdingLevel();
-                            
-                            // 3 = Very Crowded (red), 2 = Moderately Crowded (yellow), 1 = Not Crowded (green), 0 = No Data (green)
-                            if (crowdingLevel == 3) {
-                                markerHue = BitmapDescriptorFactory.HUE_RED;
-                            } else if (crowdingLevel == 2) {
-                                markerHue = BitmapDescriptorFactory.HUE_YELLOW;
-                            } else {
-                                // Level 1 (not crowded) or 0 (no data) = green
-                                markerHue = BitmapDescriptorFactory.HUE_GREEN;
-                            }
-                            
-                            marker.setIcon(BitmapDescriptorFactory.defaultMarker(markerHue));
-                        }
+                        applyMarkerColor(restaurantMarkers.get(restaurantId), result.getCrowdingLevel());
                     });
                 }
             }
@@ -502,40 +650,25 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
             }
         }
         
-        // Load user information for each unique user
-        for (String userId : userIds) {
-            db.collection("users").document(userId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists() && isAdded()) {
-                        String userName = documentSnapshot.getString("name");
-                        if (userName == null || userName.trim().isEmpty()) {
-                            userName = documentSnapshot.getString("username");
-                        }
-                        String userAvatarUrl = documentSnapshot.getString("avatarUrl");
-                        
-                        // Update all reviews for this user
-                        for (Review review : reviews) {
-                            if (userId.equals(review.getUserId())) {
-                                if (userName != null && !userName.trim().isEmpty()) {
-                                    review.setUserName(userName);
-                                }
-                                if (userAvatarUrl != null && !userAvatarUrl.trim().isEmpty()) {
-                                    review.setUserAvatarUrl(userAvatarUrl);
-                                }
-                            }
-                        }
-                        
-                        // Notify adapter of changes
-                        if (adapter != null) {
-                            adapter.notifyDataSetChanged();
-                        }
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error loading user info for user: " + userId, e);
-                });
-        }
+        // Batched, cached lookup shared with the other screens
+        UserDirectory.getInstance().resolve(userIds, users -> {
+            if (!isAdded()) return;
+            for (Review review : reviews) {
+                UserDirectory.UserInfo user = users.get(review.getUserId());
+                if (user == null) continue;
+                if (user.hasName()) {
+                    review.setUserName(user.getName());
+                }
+                if (user.hasAvatar()) {
+                    review.setUserAvatarUrl(user.getAvatarUrl());
+                }
+            }
+
+            // Only the cards whose author was filled in rebind
+            if (adapter != null) {
+                adapter.refresh();
+            }
+        });
     }
     
     // Zoom in functionality
@@ -578,28 +711,18 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
     
     // Load restaurants for search
     private void loadRestaurants() {
-        db.collection("restaurants")
-            .get()
-            .addOnSuccessListener(queryDocumentSnapshots -> {
-                if (!isAdded() || getContext() == null) {
-                    return;
-                }
-                restaurants.clear();
-                for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                    Restaurant restaurant = document.toObject(Restaurant.class);
-                    if (restaurant != null) {
-                        restaurant.setId(document.getId());
-                        restaurants.add(restaurant);
-                    }
-                }
-                setupRestaurantSearch();
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Error loading restaurants", e);
-                if (isAdded() && getContext() != null) {
-                    Toast.makeText(getContext(), "Failed to load restaurants", Toast.LENGTH_SHORT).show();
-                }
-            });
+        restaurantRepository.loadRestaurants(restaurantsById -> {
+            if (!isAdded() || getContext() == null) {
+                return;
+            }
+            if (restaurantsById.isEmpty()) {
+                Toast.makeText(getContext(), "Failed to load restaurants", Toast.LENGTH_SHORT).show();
+                return;
+            }
+            restaurants.clear();
+            restaurants.addAll(restaurantsById.values());
+            setupRestaurantSearch();
+        });
     }
     
     // Setup restaurant search adapter
@@ -670,23 +793,7 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
                 android.app.Activity activity = getActivity();
                 if (activity != null && isAdded()) {
                     activity.runOnUiThread(() -> {
-                        if (!isAdded() || getContext() == null) {
-                            return;
-                        }
-                        // Set indicator color
-                        int colorResId = result.getColorResId();
-                        indicator.setBackgroundColor(ContextCompat.getColor(getContext(), colorResId));
-                        
-                        // Set status text
-                        status.setText(result.getStatusText());
-                        description.setText(result.getDescription());
-                        
-                        // Set feedback count
-                        if (result.hasRecentData()) {
-                            feedbackCount.setText(result.getFeedbackCount() + " feedbacks");
-                        } else {
-                            feedbackCount.setText("No recent data");
-                        }
+                        bindCrowdDensity(result, indicator, status, description, feedbackCount);
                     });
                 }
             }
@@ -708,6 +815,27 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         });
     }
 
+    private void bindCrowdDensity(CrowdDensityService.CrowdDensityResult result, View indicator, TextView status,
+                                  TextView description, TextView feedbackCount) {
+        if (!isAdded() || getContext() == null) {
+            return;
+        }
+        // Set indicator color
+        int colorResId = result.getColorResId();
+        indicator.setBackgroundColor(ContextCompat.getColor(getContext(), colorResId));
+
+        // Set status text
+        status.setText(result.getStatusText());
+        description.setText(result.getDescription());
+
+        // Set feedback count
+        if (result.hasRecentData()) {
+            feedbackCount.setText(result.getFeedbackCount() + " feedbacks");
+        } else {
+            feedbackCount.setText("No recent data");
+        }
+    }
+
     /**
      * Submit crowd feedback
      */
@@ -733,6 +861,10 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
                             android.content.Context context = getContext();
                             if (context != null && isAdded()) {
                                 Toast.makeText(context, "Feedback submitted successfully!", Toast.LENGTH_SHORT).show();
+                                if (crowdDensityMonitor.isReady()) {
+                                    // the live listener already picks up the new feedback
+                                    return;
+                                }
                                 // Refresh crowd density display after successful submission
                                 loadCrowdDensity(restaurantId, indicator, status, description, feedbackCount);
                                 // Refresh the map marker color
@@ -861,9 +993,24 @@ public class MapFragment extends Fragment implements OnMapReadyCallback {
         if (hidden) {
             // Fragment is hidden, restore status bar
             restoreStatusBar();
+            if (crowdDensityMonitor != null) {
+                crowdDensityMonitor.stop();
+            }
         } else if (isAdded()) {
             // Fragment is visible, make status bar transparent
             makeStatusBarTransparent();
+            if (crowdDensityMonitor != null && restaurantMarkers != null && !restaurantMarkers.isEmpty()) {
+                startCrowdDensityUpdates();
+            }
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        if (crowdDensityMonitor != null) {
+            crowdDensityMonitor.stop();
         }
+        clearSheetCrowdViews();
     }
 }
\ No newline at end of file
@@ -13,6 +13,7 @@ import com.google.android.material.bottomsheet.BottomSheetDialog;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.core.widget.NestedScrollView;
 import androidx.fragment.app.Fragment;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
@@ -30,15 +31,23 @@ import com.example.food.data.Review;
 import com.example.food.data.UserProfile;
 import com.example.food.dialogs.ReviewDetailsDialog;
 import com.example.food.model.Restaurant;
+import com.example.food.service.ActivityInbox;
+import com.example.food.service.RestaurantRepository;
+import com.example.food.service.ReviewService;
+import com.example.food.service.UserDirectory;
 import com.example.food.services.UserStatsService;
+import com.example.food.utils.FrameUpdateCoalescer;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
 import com.google.android.material.tabs.TabLayout;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -70,7 +79,6 @@ public class ProfileFragment extends Fragment {
     private ReviewWidgetAdapter reviewAdapter;
     private GroupedActivityAdapter activityAdapter;
     private List<Review> reviews;
-    private List<ActivityItem> activities;
     private Map<String, Restaurant> restaurantMap;
     private Map<String, Review> reviewMap;
     private UserProfile userProfile;
@@ -78,9 +86,18 @@ public class ProfileFragment extends Fragment {
     // Firebase
     private FirebaseAuth auth;
     private FirebaseFirestore db;
+    private RestaurantRepository restaurantRepository;
     private ListenerRegistration profileListener;
     private ListenerRegistration activityListener;
+    private final ActivityInbox activityInbox = new ActivityInbox();
+    private DocumentSnapshot activityCursor; // last activity read, the next page starts after it
+    private boolean activityHasMore;
+    private boolean activityPageLoading;
     private ProfileCacheManager cacheManager;
+
+    // lookups for reviews and activity land one by one, each list refreshes at most once a frame
+    private final FrameUpdateCoalescer reviewUpdates = new FrameUpdateCoalescer(this::updateReviews);
+    private final FrameUpdateCoalescer activityUpdates = new FrameUpdateCoalescer(this::updateActivities);
     
     // view mode control
     private String targetUserId;
@@ -172,6 +189,7 @@ public class ProfileFragment extends Fragment {
         auth = FirebaseAuth.getInstance();
         db = FirebaseFirestore.getInstance();
         cacheManager = ProfileCacheManager.getInstance(requireContext());
+        restaurantRepository = RestaurantRepository.getInstance(requireContext());
     }
 
     private void setupCardClickListeners() {
@@ -484,26 +502,51 @@ public class ProfileFragment extends Fragment {
     }
 
     private void setupActivityRecyclerView() {
-        activities = new ArrayList<>();
         reviewMap = new HashMap<>();
         
         activityAdapter = new GroupedActivityAdapter(new ArrayList<>(), new GroupedActivityAdapter.OnActivityClickListener() {
             @Override
             public void onActivityClick(ActivityItem activity, Review review, Restaurant restaurant) {
+                if (restaurant == null && activity.getRestaurantId() != null) {
+                    restaurant = restaurantMap.get(activity.getRestaurantId());
+                }
                 if (review != null) {
-                    if (activity.getType() == ActivityItem.ActivityType.COMMENT) {
-                        // For comment activities show review details and open comments
-                        showReviewDetailsWithComments(review, restaurant);
-                    } else {
-                        // for vote activities just show review details normally
-                        showReviewDetails(review, restaurant);
-                    }
+                    openActivityReview(activity, review, restaurant);
+                } else if (activity.getReviewId() != null) {
+                    // older than the reviews loaded for the grid
+                    Restaurant knownRestaurant = restaurant;
+                    db.collection("reviews").document(activity.getReviewId())
+                        .get()
+                        .addOnSuccessListener(document -> {
+                            if (!isAdded() || !document.exists()) return;
+                            Review loaded = ReviewService.parseReview(document);
+                            reviewMap.put(loaded.getId(), loaded);
+                            openActivityReview(activity, loaded, knownRestaurant);
+                        })
+                        .addOnFailureListener(e -> Log.e(TAG, "Error loading review for activity", e));
                 }
             }
         });
         
         rvActivity.setLayoutManager(new androidx.recyclerview.widget.LinearLayoutManager(requireContext()));
         rvActivity.setAdapter(activityAdapter);
+
+        // the profile scrolls as a whole, so activity pages follow the outer scroll view
+        if (getView() instanceof NestedScrollView) {
+            NestedScrollView scrollView = (NestedScrollView) getView();
+            scrollView.setOnScrollChangeListener((NestedScrollView.OnScrollChangeListener)
+                    (v, scrollX, scrollY, oldScrollX, oldScrollY) -> onProfileScrolled(scrollView));
+        }
+    }
+
+    private void openActivityReview(ActivityItem activity, Review review, Restaurant restaurant) {
+        if (activity.getType() == ActivityItem.ActivityType.COMMENT) {
+            // For comment activities show review details and open comments
+            showReviewDetailsWithComments(review, restaurant);
+        } else {
+            // for vote activities just show review details normally
+            showReviewDetails(review, restaurant);
+        }
     }
 
     private void setupTabLayout() {
@@ -584,23 +627,33 @@ public class ProfileFragment extends Fragment {
             return;
         }
 
-        if (!isViewingOtherUser) {
-            loadCachedData();
-        }
-        
         tvCredibilityScore.setText(getString(R.string.credibility_placeholder));
         tvExperienceScore.setText(getString(R.string.experience_placeholder));
         tvEngagementScore.setText(getString(R.string.engagement_placeholder));
-        
-        loadUserProfileOnce();
+
+        loadCachedData();
     }
 
+    /**
+     * Render the cached profile straight away, fetching it only if it is missing or stale
+     */
     private void loadCachedData() {
-        UserProfile cachedProfile = cacheManager.getCachedUserProfile();
-        if (cachedProfile != null) {
-            userProfile = cachedProfile;
-            updateUserUI();
-        }
+        String userId = isViewingOtherUser ? targetUserId : auth.getCurrentUser().getUid();
+        cacheManager.get(userId, (cachedProfile, fresh) -> {
+            if (!isAdded()) return;
+
+            // a network load puts its profile here first, so the cached one is never older
+            if (cachedProfile != null) {
+                userProfile = cachedProfile;
+                updateUserUI();
+                if (fresh) {
+                    UserStatsService.reconcileUserScoresIfStale(userId, userProfile.getStats());
+                }
+            }
+            if (!fresh) {
+                loadUserProfileOnce();
+            }
+        });
     }
 
     private void loadUserProfileOnce() {
@@ -613,11 +666,10 @@ public class ProfileFragment extends Fragment {
                 if (documentSnapshot != null && documentSnapshot.exists()) {
                     userProfile = documentSnapshot.toObject(UserProfile.class);
                     if (userProfile != null) {
-                        if (!isViewingOtherUser) {
-                            cacheManager.cacheUserProfile(userProfile);
-                        }
+                        cacheManager.put(userId, userProfile);
                         updateUserUI();
-                        UserStatsService.updateUserScores(userId);
+                        // counters are kept current per event, this only reconciles now and then
+                        UserStatsService.reconcileUserScoresIfStale(userId, userProfile.getStats());
                     }
                 } else {
                     if (!isViewingOtherUser) {
@@ -752,10 +804,9 @@ public class ProfileFragment extends Fragment {
                     reviews.clear();
                     for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
                         try {
-                            Review review = document.toObject(Review.class);
-                            review.setId(document.getId());
-                            review.refreshAccuracyFromVotes(); // Calculate accuracy from votes
+                            Review review = ReviewService.parseReview(document);
                             reviews.add(review);
+                            reviewMap.put(review.getId(), review); // opened from the activity tab
                         } catch (Exception ex) {
                             Log.e(TAG, "Error parsing review document", ex);
                         }
@@ -784,36 +835,19 @@ public class ProfileFragment extends Fragment {
         }
 
         if (restaurantIds.isEmpty()) {
-            updateReviews();
+            reviewUpdates.requestBatch();
             return;
         }
 
-        for (String restaurantId : restaurantIds) {
-            db.collection("restaurants")
-                .document(restaurantId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        try {
-                            Restaurant restaurant = documentSnapshot.toObject(Restaurant.class);
-                            if (restaurant != null) {
-                                restaurant.setId(documentSnapshot.getId());
-                                restaurantMap.put(restaurantId, restaurant);
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error parsing restaurant document", e);
-                        }
-                    }
-                    updateReviews();
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error loading restaurant: " + restaurantId, e);
-                    updateReviews();
-                });
-        }
+        // Shared catalogue, one query per session instead of one read per restaurant
+        restaurantRepository.getRestaurants(restaurantIds, restaurants -> {
+            if (!isAdded()) return;
+            reviewUpdates.post(() -> restaurantMap.putAll(restaurants));
+        });
     }
 
     private void updateReviews() {
+        if (reviewAdapter == null || getView() == null) return;
         reviewAdapter.setReviews(reviews);
         reviewAdapter.setRestaurantMap(restaurantMap);
     }
@@ -827,7 +861,7 @@ public class ProfileFragment extends Fragment {
             for (int i = 0; i < reviews.size(); i++) {
                 if (reviews.get(i).getId().equals(updatedReview.getId())) {
                     reviews.set(i, updatedReview);
-                    reviewAdapter.notifyItemChanged(i);
+                    reviewAdapter.refresh();
                     break;
                 }
             }
@@ -844,7 +878,7 @@ public class ProfileFragment extends Fragment {
             for (int i = 0; i < reviews.size(); i++) {
                 if (reviews.get(i).getId().equals(updatedReview.getId())) {
                     reviews.set(i, updatedReview);
-                    reviewAdapter.notifyItemChanged(i);
+                    reviewAdapter.refresh();
                     break;
                 }
             }
@@ -888,358 +922,161 @@ public class ProfileFragment extends Fragment {
         }
 
         String userId = auth.getCurrentUser().getUid();
-        activities.clear();
+        activityAdapter.setActivities(Collections.emptyList());
+        activityCursor = null;
+        activityHasMore = false;
+        if (activityListener != null) {
+            activityListener.remove();
+            activityListener = null;
+        }
 
-        loadInitialActivities(userId);
-        setupActivityListener(userId);
+        // activity from before the inbox is copied in once, after that only pages are read
+        activityInbox.backfillIfNeeded(userId, () -> {
+            if (!isAdded()) return;
+            loadActivityPage(userId);
+        });
     }
     
-    private void loadInitialActivities(String userId) {
-        // Query all reviews by current user
-        db.collection("reviews")
-            .whereEqualTo("userId", userId)
-            .get()
-            .addOnSuccessListener(queryDocumentSnapshots -> {
-                List<ActivityItem> allActivities = new ArrayList<>();
-                
-                for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
-                    try {
-                        Review review = document.toObject(Review.class);
-                        review.setId(document.getId());
-                        review.refreshAccuracyFromVotes(); // Calculate accuracy from votes
-                        reviewMap.put(review.getId(), review);
-                        
-                        // Process votes - only show accurate votes
-                        if (review.getVotes() != null) {
-                            for (Map.Entry<String, Map<String, Object>> voteEntry : review.getVotes().entrySet()) {
-                                String voterId = voteEntry.getKey();
-                                Map<String, Object> voteData = voteEntry.getValue();
-                                Boolean voteType = (Boolean) voteData.get("accurate");
-                                java.util.Date voteTimestamp = null;
-                                Object timestampObj = voteData.get("timestamp");
-                                if (timestampObj instanceof com.google.firebase.Timestamp) {
-                                    voteTimestamp = ((com.google.firebase.Timestamp) timestampObj).toDate();
-                                } else if (timestampObj instanceof java.util.Date) {
-                                    voteTimestamp = (java.util.Date) timestampObj;
-                                }
-                                
-                                // Skip if it's the review author voting on their own review
-                                // Only show accurate votes
-                                if (!voterId.equals(userId) && voteType != null && voteType) {
-                                    ActivityItem activity = new ActivityItem(
-                                        ActivityItem.ActivityType.VOTE,
-                                        voterId,
-                                        null, // Will be filled later
-                                        null, // Will be filled later
-                                        review.getId(),
-                                        review.getCaption(),
-                                        review.getRestaurantName(),
-                                        voteTimestamp != null ? voteTimestamp : (review.getUpdatedAt() != null ? review.getUpdatedAt() : review.getCreatedAt())
-                                    );
-                                    activity.setVoteType(voteType);
-                                    // Set the first image URL from the review
-                                    if (review.getImageUrls() != null && !review.getImageUrls().isEmpty()) {
-                                        activity.setReviewFirstImageUrl(review.getImageUrls().get(0));
-                                    }
-                                    allActivities.add(activity);
-                                }
-                            }
-                        }
-                        
-                        // Process comments (if they exist)
-                        if (review.getComments() != null) {
-                            for (com.example.food.data.Comment comment : review.getComments()) {
-                                // Skip if it's the review author commenting on their own review
-                                if (!comment.getUserId().equals(userId)) {
-                                    ActivityItem activity = new ActivityItem(
-                                        ActivityItem.ActivityType.COMMENT,
-                                        comment.getUserId(),
-                                        null, // Will be filled later
-                                        null, // Will be filled later
-                                        review.getId(),
-                                        review.getCaption(),
-                                        review.getRestaurantName(),
-                                        comment.getCreatedAt()
-                                    );
-                                    activity.setCommentText(comment.getText());
-                                    // Set the first image URL from the review
-                                    if (review.getImageUrls() != null && !review.getImageUrls().isEmpty()) {
-                                        activity.setReviewFirstImageUrl(review.getImageUrls().get(0));
-                                    }
-                                    allActivities.add(activity);
-                                }
-                            }
-                        }
-                        
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error parsing review document", e);
-                    }
-                }
-                
-                // Filter to only show last 30 days no more than that
-                long thirtyDaysAgo = System.currentTimeMillis() - (30L * 24 * 60 * 60 * 1000);
-                List<ActivityItem> recentActivities = new ArrayList<>();
-                for (ActivityItem activity : allActivities) {
-                    if (activity.getTimestamp() != null && activity.getTimestamp().getTime() >= thirtyDaysAgo) {
-                        recentActivities.add(activity);
-                    }
+    private void loadActivityPage(String userId) {
+        if (activityPageLoading) return;
+        activityPageLoading = true;
+        boolean firstPage = activityCursor == null;
+        activityInbox.loadPage(userId, activityCursor, ActivityInbox.PAGE_SIZE, new ActivityInbox.ActivityPageCallback() {
+            @Override
+            public void onSuccess(List<ActivityItem> page, DocumentSnapshot nextCursor, boolean hasMore) {
+                activityPageLoading = false;
+                if (!isAdded()) return;
+                activityCursor = nextCursor;
+                activityHasMore = hasMore;
+                if (firstPage) {
+                    // an empty inbox has nothing to skip, the listener reads whatever arrives
+                    Date newest = !page.isEmpty() && page.get(0).getTimestamp() != null
+                            ? page.get(0).getTimestamp() : new Date(0);
+                    setupActivityListener(userId, newest);
                 }
+                loadRestaurantsForActivities(page);
+            }
 
-                // Sort by timestamp descending (most recent first)
-                recentActivities.sort((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()));
-                
-                // Load restaurant data for activities
-                loadRestaurantsForActivities(recentActivities);
-                
-            })
-            .addOnFailureListener(e -> {
+            @Override
+            public void onError(Exception e) {
+                activityPageLoading = false;
                 Log.e(TAG, "Error loading activity feed", e);
-                showEmptyActivityState();
-            });
+                if (firstPage && isAdded()) {
+                    showEmptyActivityState();
+                }
+            }
+        });
+    }
+
+    // Next page once the activity list is scrolled near its end
+    private void onProfileScrolled(NestedScrollView scrollView) {
+        if (!activityHasMore || activityPageLoading || activityContainer.getVisibility() != View.VISIBLE
+                || auth.getCurrentUser() == null) {
+            return;
+        }
+        View content = scrollView.getChildAt(0);
+        int remaining = content.getBottom() - (scrollView.getHeight() + scrollView.getScrollY());
+        if (remaining < scrollView.getHeight()) {
+            loadActivityPage(auth.getCurrentUser().getUid());
+        }
     }
     
-    private void setupActivityListener(String userId) {
+    private void setupActivityListener(String userId, Date since) {
         // Remove existing listener if any
         if (activityListener != null) {
             activityListener.remove();
         }
         
-        // Set up real-time listener for reviews by current user so that we can update the activity feed in real time
-        activityListener = db.collection("reviews")
-            .whereEqualTo("userId", userId)
-            .addSnapshotListener((queryDocumentSnapshots, error) -> {
-                if (error != null) {
-                    Log.e(TAG, "Error in activity listener", error);
-                    return;
-                }
-                
-                if (queryDocumentSnapshots != null) {
-                    Log.d(TAG, "Activity listener triggered with " + queryDocumentSnapshots.getDocumentChanges().size() + " changes");
-                    // Process changes and append new activities
-                    processActivityChanges(queryDocumentSnapshots, userId);
-                }
-            });
+        // Only activity newer than the first page is listened to, older pages are read on demand
+        activityListener = activityInbox.listenForNew(userId, since, this::processActivityChanges);
     }
     
-    private void processActivityChanges(com.google.firebase.firestore.QuerySnapshot queryDocumentSnapshots, String userId) {
-        for (com.google.firebase.firestore.DocumentChange change : queryDocumentSnapshots.getDocumentChanges()) {
-            if (change.getType() == com.google.firebase.firestore.DocumentChange.Type.MODIFIED) {
-                try {
-                    Review review = change.getDocument().toObject(Review.class);
-                    review.setId(change.getDocument().getId());
-                    review.refreshAccuracyFromVotes(); // Calculate accuracy from votes
-                    
-                    Log.d(TAG, "Processing modified review: " + review.getId() + " with " + (review.getVotes() != null ? review.getVotes().size() : 0) + " votes");
-                    
-                    // update review in map
-                    reviewMap.put(review.getId(), review);
-                    
-                    // Check for any new votes
-                    if (review.getVotes() != null) {
-                        for (Map.Entry<String, Map<String, Object>> voteEntry : review.getVotes().entrySet()) {
-                            String voterId = voteEntry.getKey();
-                            Map<String, Object> voteData = voteEntry.getValue();
-                            Boolean voteType = (Boolean) voteData.get("accurate");
-                            java.util.Date voteTimestamp = null;
-                            Object timestampObj = voteData.get("timestamp");
-                            if (timestampObj instanceof com.google.firebase.Timestamp) {
-                                voteTimestamp = ((com.google.firebase.Timestamp) timestampObj).toDate();
-                            } else if (timestampObj instanceof java.util.Date) {
-                                voteTimestamp = (java.util.Date) timestampObj;
-                            }
-                            
-                            // Skip if the review author is voting on their own review
-                            // Only show accurate votes
-                            if (!voterId.equals(userId) && voteType != null && voteType) {
-                                // Check if this vote activity already exists
-                                boolean voteExists = false;
-                                for (ActivityItem existingActivity : activities) {
-                                    if (existingActivity.getType() == ActivityItem.ActivityType.VOTE &&
-                                        existingActivity.getReviewId().equals(review.getId()) &&
-                                        existingActivity.getUserId().equals(voterId)) {
-                                        voteExists = true;
-                                        break;
-                                    }
-                                }
-                                
-                                if (!voteExists) {
-                                    Log.d(TAG, "Creating new vote activity for user: " + voterId + " on review: " + review.getId());
-                                    // Create new vote activity
-                                    ActivityItem newActivity = new ActivityItem(
-                                        ActivityItem.ActivityType.VOTE,
-                                        voterId,
-                                        null, // Will be filled later
-                                        null, // Will be filled later
-                                        review.getId(),
-                                        review.getCaption(),
-                                        review.getRestaurantName(),
-                                        voteTimestamp != null ? voteTimestamp : new java.util.Date()
-                                    );
-                                    newActivity.setVoteType(voteType);
-                                    if (review.getImageUrls() != null && !review.getImageUrls().isEmpty()) {
-                                        newActivity.setReviewFirstImageUrl(review.getImageUrls().get(0));
-                                    }
-                                    
-                                    // Append to activities list
-                                    appendNewActivity(newActivity);
-                                }
-                            }
-                        }
-                    }
-                    
-                    // Check for new comments
-                    if (review.getComments() != null) {
-                        for (com.example.food.data.Comment comment : review.getComments()) {
-                            // Skip if the review author is commenting on their own review
-                            if (!comment.getUserId().equals(userId)) {
-                                // Check if this comment activity already exists
-                                boolean commentExists = false;
-                                for (ActivityItem existingActivity : activities) {
-                                    if (existingActivity.getType() == ActivityItem.ActivityType.COMMENT &&
-                                        existingActivity.getReviewId().equals(review.getId()) &&
-                                        existingActivity.getUserId().equals(comment.getUserId()) &&
-                                        existingActivity.getCommentText() != null &&
-                                        existingActivity.getCommentText().equals(comment.getText())) {
-                                        commentExists = true;
-                                        break;
-                                    }
-                                }
-                                
-                                if (!commentExists) {
-                                    // Create new comment activity
-                                    ActivityItem newActivity = new ActivityItem(
-                                        ActivityItem.ActivityType.COMMENT,
-                                        comment.getUserId(),
-                                        null, // Will be filled later name
-                                        null, // Will be filled later avatar url
-                                        review.getId(),
-                                        review.getCaption(),
-                                        review.getRestaurantName(),
-                                        comment.getCreatedAt()
-                                    );
-                                    newActivity.setCommentText(comment.getText());
-                                    if (review.getImageUrls() != null && !review.getImageUrls().isEmpty()) {
-                                        newActivity.setReviewFirstImageUrl(review.getImageUrls().get(0));
-                                    }
-                                    
-                                    // Append to activities list
-                                    appendNewActivity(newActivity);
-                                }
-                            }
-                        }
-                    }
-                    
-                } catch (Exception e) {
-                    Log.e(TAG, "Error processing activity change", e);
-                }
-            }
+    // Only the inbox entries that changed arrive here, the adapter finds each one by id
+    private void processActivityChanges(List<ActivityItem> added, List<String> removedIds) {
+        for (String removedId : removedIds) {
+            activityAdapter.removeActivity(removedId);
+        }
+        for (ActivityItem activity : added) {
+            appendNewActivity(activity);
         }
+        activityUpdates.requestBatch(); // empty state
     }
     
     private void appendNewActivity(ActivityItem newActivity) {
-        // Add to activities list
-        activities.add(0, newActivity); // Add to beginning for newest first
-        
-        // Sort activities by timestamp
-        activities.sort((a, b) -> b.getTimestamp().compareTo(a.getTimestamp()));
-        
-        // Update adapter
-        activityAdapter.setActivities(activities);
-        activityAdapter.setReviewMap(reviewMap);
-        activityAdapter.setRestaurantMap(restaurantMap);
+        // Inserted under its date, a changed vote comes back with the same id and replaces its row
+        activityAdapter.addActivity(newActivity);
         
         // Load user details for the new activity
         loadUserDetailsForNewActivity(newActivity);
         
         // Load restaurant details for the new activity
         loadRestaurantDetailsForNewActivity(newActivity);
-        
-        // Hide empty state if it was showing
-        hideEmptyActivityState();
     }
     
     private void loadUserDetailsForNewActivity(ActivityItem activity) {
-        db.collection("users").document(activity.getUserId())
-            .get()
-            .addOnSuccessListener(documentSnapshot -> {
-                if (documentSnapshot.exists()) {
-                    String userName = documentSnapshot.getString("name");
-                    String userAvatarUrl = documentSnapshot.getString("profilePictureUrl");
-                    
-                    if (userName != null) {
-                        activity.setUserName(userName);
-                    }
-                    if (userAvatarUrl != null) {
-                        activity.setUserAvatarUrl(userAvatarUrl);
-                    }
-                    
-                    // Update the adapter to reflect the new user details
-                    activityAdapter.notifyDataSetChanged();
+        UserDirectory.getInstance().resolve(activity.getUserId(), user -> {
+            if (user == null || !isAdded()) return;
+            activityUpdates.post(() -> {
+                if (user.getName() != null) {
+                    activity.setUserName(user.getName());
                 }
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Error fetching user details for new activity", e);
+                if (user.getAvatarUrl() != null) {
+                    activity.setUserAvatarUrl(user.getAvatarUrl());
+                }
+                activityAdapter.activityChanged(activity);
             });
+        });
     }
     
     private void loadRestaurantDetailsForNewActivity(ActivityItem activity) {
-        Review review = reviewMap.get(activity.getReviewId());
-        if (review == null || review.getRestaurantId() == null) {
+        String restaurantId = activity.getRestaurantId();
+        if (restaurantId == null) {
             return;
         }
         
-        String restaurantId = review.getRestaurantId();
-        
         // Check if restaurant is already loaded
         if (restaurantMap.containsKey(restaurantId)) {
             Restaurant restaurant = restaurantMap.get(restaurantId);
             if (restaurant != null) {
                 activity.setRestaurantName(restaurant.getName());
-                activityAdapter.notifyDataSetChanged();
+                activityAdapter.activityChanged(activity);
             }
             return;
         }
         
-        // Load restaurant data
-        db.collection("restaurants")
-            .document(restaurantId)
-            .get()
-            .addOnSuccessListener(documentSnapshot -> {
-                if (documentSnapshot.exists()) {
-                    try {
-                        Restaurant restaurant = documentSnapshot.toObject(Restaurant.class);
-                        if (restaurant != null) {
-                            restaurant.setId(documentSnapshot.getId());
-                            restaurantMap.put(restaurantId, restaurant);
-                            
-                            // Update the activity with restaurant name
-                            activity.setRestaurantName(restaurant.getName());
-                            
-                            // Update the adapter to reflect the new restaurant details
-                            activityAdapter.notifyDataSetChanged();
-                        }
-                    } catch (Exception e) {
-                        Log.e(TAG, "Error parsing restaurant document for new activity", e);
-                    }
-                }
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Error fetching restaurant details for new activity", e);
+        restaurantRepository.getRestaurants(Collections.singletonList(restaurantId), restaurants -> {
+            Restaurant restaurant = restaurants.get(restaurantId);
+            if (restaurant == null || !isAdded()) return;
+            activityUpdates.post(() -> {
+                restaurantMap.put(restaurantId, restaurant);
+
+                // Update the activity with restaurant name
+                activity.setRestaurantName(restaurant.getName());
+                activityAdapter.activityChanged(activity);
             });
+        });
     }
 
+    /**
+     * Fill in names for a page of activities, then append it. Pages are older than anything
+     * already shown, live activity is inserted by appendNewActivity
+     */
     private void loadRestaurantsForActivities(List<ActivityItem> recentActivities) {
         if (recentActivities.isEmpty()) {
-            showEmptyActivityState();
+            activityUpdates.requestBatch(); // shows the empty state for an empty inbox
             return;
         }
         
-        // Get unique restaurant IDs from reviews
+        // Get unique restaurant IDs, the ones already loaded are filled in right away
         java.util.Set<String> restaurantIds = new java.util.HashSet<>();
         for (ActivityItem activity : recentActivities) {
-            Review review = reviewMap.get(activity.getReviewId());
-            if (review != null && review.getRestaurantId() != null) {
-                restaurantIds.add(review.getRestaurantId());
+            String restaurantId = activity.getRestaurantId();
+            if (restaurantId == null) continue;
+            Restaurant known = restaurantMap.get(restaurantId);
+            if (known != null) {
+                activity.setRestaurantName(known.getName());
+            } else {
+                restaurantIds.add(restaurantId);
             }
         }
         
@@ -1248,109 +1085,56 @@ public class ProfileFragment extends Fragment {
             return;
         }
         
-        // Load restaurant data
-        for (String restaurantId : restaurantIds) {
-            db.collection("restaurants")
-                .document(restaurantId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        try {
-                            Restaurant restaurant = documentSnapshot.toObject(Restaurant.class);
-                            if (restaurant != null) {
-                                restaurant.setId(documentSnapshot.getId());
-                                restaurantMap.put(restaurantId, restaurant);
-                                
-                                // Update activities with restaurant names
-                                for (ActivityItem activity : recentActivities) {
-                                    Review review = reviewMap.get(activity.getReviewId());
-                                    if (review != null && restaurantId.equals(review.getRestaurantId())) {
-                                        activity.setRestaurantName(restaurant.getName());
-                                    }
-                                }
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error parsing restaurant document", e);
-                        }
-                    }
-                    
-                    // Check if all restaurants are loaded
-                    boolean allRestaurantsLoaded = true;
-                    for (String id : restaurantIds) {
-                        if (!restaurantMap.containsKey(id)) {
-                            allRestaurantsLoaded = false;
-                            break;
-                        }
-                    }
-                    
-                    if (allRestaurantsLoaded) {
-                        fetchUserDetailsForActivities(recentActivities);
-                    }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error loading restaurant: " + restaurantId, e);
-                    fetchUserDetailsForActivities(recentActivities);
-                });
-        }
+        restaurantRepository.getRestaurants(restaurantIds, restaurants -> {
+            if (!isAdded()) return;
+            restaurantMap.putAll(restaurants);
+
+            // Update activities with restaurant names
+            for (ActivityItem activity : recentActivities) {
+                Restaurant restaurant = restaurants.get(activity.getRestaurantId());
+                if (restaurant != null) {
+                    activity.setRestaurantName(restaurant.getName());
+                }
+            }
+
+            fetchUserDetailsForActivities(recentActivities);
+        });
     }
 
     private void fetchUserDetailsForActivities(List<ActivityItem> recentActivities) {
-        if (recentActivities.isEmpty()) {
-            showEmptyActivityState();
-            return;
-        }
-        
         // Get unique user IDs
         java.util.Set<String> userIds = new java.util.HashSet<>();
         for (ActivityItem activity : recentActivities) {
             userIds.add(activity.getUserId());
         }
         
-        // Fetch user details for each unique user
-        for (String userId : userIds) {
-            db.collection("users")
-                .document(userId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        String userName = documentSnapshot.getString("name");
-                        String userAvatarUrl = documentSnapshot.getString("avatarUrl");
-                        
-                        // Update all activities for this user
-                        for (ActivityItem activity : recentActivities) {
-                            if (activity.getUserId().equals(userId)) {
-                                activity.setUserName(userName);
-                                activity.setUserAvatarUrl(userAvatarUrl);
-                            }
-                        }
-                        
-                        // Check if all user details are loaded
-                        boolean allLoaded = true;
-                        for (ActivityItem activity : recentActivities) {
-                            if (activity.getUserName() == null) {
-                                allLoaded = false;
-                                break;
-                            }
-                        }
-                        
-                        if (allLoaded) {
-                            activities.clear();
-                            activities.addAll(recentActivities);
-                            activityAdapter.setActivities(activities);
-                            activityAdapter.setReviewMap(reviewMap);
-                            activityAdapter.setRestaurantMap(restaurantMap);
-                            
-                            if (activities.isEmpty()) {
-                                showEmptyActivityState();
-                            } else {
-                                hideEmptyActivityState();
-                            }
-                        }
+        // One batched lookup for all actors instead of a read per user
+        UserDirectory.getInstance().resolve(userIds, users -> {
+            if (!isAdded()) return;
+            activityUpdates.post(() -> {
+                // Update all activities for each user
+                for (ActivityItem activity : recentActivities) {
+                    UserDirectory.UserInfo user = users.get(activity.getUserId());
+                    if (user != null) {
+                        activity.setUserName(user.getName());
+                        activity.setUserAvatarUrl(user.getAvatarUrl());
                     }
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error fetching user details for activity", e);
-                });
+                }
+
+                activityAdapter.addActivities(recentActivities);
+            });
+        });
+    }
+
+    private void updateActivities() {
+        if (activityAdapter == null || getView() == null) return;
+        activityAdapter.setReviewMap(reviewMap);
+        activityAdapter.setRestaurantMap(restaurantMap);
+
+        if (activityAdapter.getItemCount() == 0) {
+            showEmptyActivityState();
+        } else {
+            hideEmptyActivityState();
         }
     }
 
@@ -1386,9 +1170,7 @@ public class ProfileFragment extends Fragment {
 
                     if (freshProfile != null) {
                         userProfile = freshProfile;
-                        if (!isViewingOtherUser) {
-                            cacheManager.cacheUserProfile(freshProfile);
-                        }
+                        cacheManager.put(userId, freshProfile);
                         loadAnalyticsData();
                     }
                 }
@@ -16,6 +16,7 @@ import androidx.fragment.app.Fragment;
 import com.bumptech.glide.Glide;
 import com.example.food.data.UserProfile;
 import com.example.food.cache.ProfileCacheManager;
+import com.example.food.service.UserDirectory;
 import com.google.android.material.button.MaterialButton;
 import com.google.android.material.card.MaterialCardView;
 import com.google.android.material.textfield.TextInputEditText;
@@ -174,7 +175,7 @@ public class SettingsFragment extends Fragment {
                             userProfile = documentSnapshot.toObject(UserProfile.class);
                             if (userProfile != null) {
                                 // Cache the fresh data
-                                cacheManager.cacheUserProfile(userProfile);
+                                cacheManager.put(currentUser.getUid(), userProfile);
                                 // Update UI on main thread
                                 if (getActivity() != null) {
                                     getActivity().runOnUiThread(this::updateUI);
@@ -188,11 +189,12 @@ public class SettingsFragment extends Fragment {
     }
     
     private void loadCachedData() {
-        UserProfile cachedProfile = cacheManager.getCachedUserProfile();
-        if (cachedProfile != null) {
+        cacheManager.get(currentUser.getUid(), (cachedProfile, fresh) -> {
+            // the snapshot listener keeps the profile current, stale copies are fine to show
+            if (!isAdded() || cachedProfile == null || userProfile != null) return;
             userProfile = cachedProfile;
             updateUI();
-        }
+        });
     }
 
     private void loadProfilePicture() {
@@ -242,7 +244,7 @@ public class SettingsFragment extends Fragment {
                 .addOnSuccessListener(aVoid -> {
                     Log.d(TAG, "User profile created successfully");
                     // Cache the new profile
-                    cacheManager.cacheUserProfile(userProfile);
+                    cacheManager.put(currentUser.getUid(), userProfile);
                     updateUI();
                 })
                 .addOnFailureListener(e -> {
@@ -304,8 +306,9 @@ public class SettingsFragment extends Fragment {
                         if (userProfile != null) {
                             userProfile.setName(name);
                             userProfile.setBio(bio);
-                            cacheManager.cacheUserProfile(userProfile);
+                            cacheManager.put(currentUser.getUid(), userProfile);
                         }
+                        UserDirectory.getInstance().invalidate(currentUser.getUid());
                         showToast(getString(R.string.profile_updated_successfully));
                         clearErrors();
                     } else {
@@ -376,6 +379,8 @@ public class SettingsFragment extends Fragment {
     private void logout() {
         if (currentUser == null) return;
 
+        // profiles cached for this account shouldn't outlive it
+        cacheManager.clearCache();
         mAuth.signOut();
         showToast(getString(R.string.logged_out_successfully));
         
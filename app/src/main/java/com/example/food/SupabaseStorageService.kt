@@ -1,16 +1,36 @@
 package com.example.food
 
 import android.content.Context
+import android.graphics.Bitmap
 import android.net.Uri
+import android.os.Handler
+import android.os.Looper
 import android.util.Log
+import com.example.food.utils.ImagePreprocessor
+import com.example.food.utils.ImageVariants
 import io.github.jan.supabase.createSupabaseClient
+import io.github.jan.supabase.exceptions.HttpRequestException
+import io.github.jan.supabase.exceptions.RestException
 import io.github.jan.supabase.gotrue.Auth
 import io.github.jan.supabase.gotrue.auth
 import io.github.jan.supabase.storage.Storage
+import io.github.jan.supabase.storage.UploadStatus
 import io.github.jan.supabase.storage.storage
+import kotlinx.coroutines.CancellationException
+import kotlinx.coroutines.CoroutineScope
 import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.Job
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.async
+import kotlinx.coroutines.awaitAll
+import kotlinx.coroutines.cancelChildren
+import kotlinx.coroutines.coroutineScope
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.launch
+import kotlinx.coroutines.sync.Semaphore
+import kotlinx.coroutines.sync.withPermit
 import kotlinx.coroutines.withContext
-import java.io.InputStream
+import java.io.IOException
 import java.net.HttpURLConnection
 import java.net.URL
 
@@ -27,25 +47,28 @@ class SupabaseStorageService(private val context: Context) {
         install(Storage)
         install(Auth)
     }
+
+    private val uploadScope = CoroutineScope(SupervisorJob() + Dispatchers.IO)
+    private val mainHandler = Handler(Looper.getMainLooper())
+    private val reviewPreprocessor = ImagePreprocessor.createDefault()
+    private val avatarPreprocessor = ImagePreprocessor(
+        AVATAR_MAX_EDGE, 0, AVATAR_THUMBNAIL_EDGE, ImagePreprocessor.DEFAULT_QUALITY, Bitmap.CompressFormat.JPEG
+    )
     
     
     suspend fun uploadProfilePicture(uid: String, imageUri: Uri): String? = withContext(Dispatchers.IO) {
         try {
             Log.d("SupabaseStorage", "Starting upload for user")
             
-            val inputStream: InputStream = context.contentResolver.openInputStream(imageUri) ?: run {
-                Log.e("SupabaseStorage", "Failed to open input stream")
-                return@withContext null
-            }
-            
-            val bytes = inputStream.readBytes()
-            inputStream.close()
-            Log.d("SupabaseStorage", "Read ${bytes.size} bytes from image")
+            // avatars never render larger than a few hundred pixels
+            val processed = avatarPreprocessor.process(context, imageUri)
+            Log.d("SupabaseStorage", "Preprocessed image to ${processed.imageBytes.size} bytes")
             
             val path = "pfp/$uid.jpg"
             Log.d("SupabaseStorage", "Uploading to storage")
 
-            supabase.storage.from("palate").upload(path, bytes, upsert = true)
+            supabase.storage.from("palate").upload(path, processed.imageBytes, upsert = true)
+            supabase.storage.from("palate").upload(thumbnailPath(path), processed.thumbnailBytes, upsert = true)
             Log.d("SupabaseStorage", "Upload successful, creating signed URL")
 
             val signedUrlPath = supabase.storage.from("palate").createSignedUrl(path, kotlin.time.Duration.parse("P365D"))
@@ -65,7 +88,7 @@ class SupabaseStorageService(private val context: Context) {
     suspend fun deleteProfilePicture(uid: String): Boolean = withContext(Dispatchers.IO) {
         try {
             val path = "pfp/$uid.jpg"
-            supabase.storage.from("palate").delete(path)
+            supabase.storage.from("palate").delete(path, thumbnailPath(path))
             true
         } catch (e: Exception) {
             Log.e("SupabaseStorage", "Error deleting profile picture", e)
@@ -76,60 +99,138 @@ class SupabaseStorageService(private val context: Context) {
     suspend fun uploadReviewImage(fileName: String, imageUri: Uri): String? = withContext(Dispatchers.IO) {
         try {
             Log.d("SupabaseStorage", "Starting review image upload: $fileName")
-            
-            val inputStream: InputStream = context.contentResolver.openInputStream(imageUri) ?: run {
-                Log.e("SupabaseStorage", "Failed to open input stream")
-                return@withContext null
-            }
-            
-            val bytes = inputStream.readBytes()
-            inputStream.close()
-            Log.d("SupabaseStorage", "Read ${bytes.size} bytes from review image")
-            
-            Log.d("SupabaseStorage", "Uploading to storage")
-            supabase.storage.from("palate").upload(fileName, bytes, upsert = true)
+            uploadProcessed(fileName, reviewPreprocessor.process(context, imageUri)) { _, _ -> }
             Log.d("SupabaseStorage", "Upload successful, creating signed URL")
-
-            val signedUrlPath = supabase.storage.from("palate").createSignedUrl(fileName, kotlin.time.Duration.parse("P365D"))
-            val fullSignedUrl = "${Config.getSupabaseUrl()}/storage/v1/$signedUrlPath"
-            Log.d("SupabaseStorage", "Signed URL created successfully")
-
-            fullSignedUrl
+            createSignedUrl(fileName)
         } catch (e: Exception) {
             Log.e("SupabaseStorage", "Error uploading review image", e)
-            e.printStackTrace()
             null
         }
     }
-    
-    fun uploadReviewImageSync(fileName: String, imageUri: Uri): String? {
-        return kotlinx.coroutines.runBlocking {
+
+    /**
+     * Callbacks for uploadReviewImages, always delivered on the main thread
+     */
+    interface ReviewImagesUploadListener {
+        fun onImageProgress(index: Int, bytesSent: Long, totalBytes: Long)
+        fun onComplete(images: List<ImageVariants>)
+        fun onError(error: Exception)
+    }
+
+    /**
+     * Upload review images with at most MAX_PARALLEL_UPLOADS in flight. Each photo is downscaled
+     * and re-encoded first, transient failures are retried with backoff and each image is signed
+     * as soon as it lands. Variants are returned in the same order as imageUris
+     */
+    fun uploadReviewImages(reviewId: String, imageUris: List<Uri>, listener: ReviewImagesUploadListener): Job {
+        val permits = Semaphore(MAX_PARALLEL_UPLOADS)
+        return uploadScope.launch {
             try {
-                Log.d("SupabaseStorage", "Starting sync review image upload: $fileName")
-                
-                val inputStream: InputStream = context.contentResolver.openInputStream(imageUri) ?: run {
-                    Log.e("SupabaseStorage", "Failed to open input stream")
-                    return@runBlocking null
+                val images = coroutineScope {
+                    imageUris.mapIndexed { index, uri ->
+                        async {
+                            val path = "reviews/$reviewId/image_${index + 1}.jpg"
+                            permits.withPermit {
+                                // decode once, only the network part is retried
+                                val processed = reviewPreprocessor.process(context, uri)
+                                withRetry("upload $path") {
+                                    uploadProcessed(path, processed) { sent, total ->
+                                        mainHandler.post { listener.onImageProgress(index, sent, total) }
+                                    }
+                                }
+                            }
+                            // signing does not hold an upload slot
+                            withRetry("sign $path") {
+                                ImageVariants(
+                                    createSignedUrl(thumbnailPath(path)),
+                                    createSignedUrl(mediumPath(path)),
+                                    createSignedUrl(path)
+                                )
+                            }
+                        }
+                    }.awaitAll()
                 }
-                
-                val bytes = inputStream.readBytes()
-                inputStream.close()
-                Log.d("SupabaseStorage", "Read ${bytes.size} bytes from review image")
-                
-                Log.d("SupabaseStorage", "Uploading to storage")
-                supabase.storage.from("palate").upload(fileName, bytes, upsert = true)
-                Log.d("SupabaseStorage", "Upload successful, creating signed URL")
-
-                val signedUrlPath = supabase.storage.from("palate").createSignedUrl(fileName, kotlin.time.Duration.parse("P365D"))
-                val fullSignedUrl = "${Config.getSupabaseUrl()}/storage/v1/$signedUrlPath"
-                Log.d("SupabaseStorage", "Signed URL created successfully")
-
-                fullSignedUrl
+                Log.d("SupabaseStorage", "Uploaded ${images.size} review images")
+                mainHandler.post { listener.onComplete(images) }
+            } catch (e: CancellationException) {
+                throw e
             } catch (e: Exception) {
-                Log.e("SupabaseStorage", "Error uploading review image", e)
-                e.printStackTrace()
-                null
+                Log.e("SupabaseStorage", "Error uploading review images", e)
+                mainHandler.post { listener.onError(e) }
             }
         }
     }
+
+    fun cancelUploads() {
+        uploadScope.coroutineContext.cancelChildren()
+    }
+
+    /**
+     * Upload a preprocessed photo with its thumbnail and medium copy (stored next to it as
+     * name_thumb.jpg and name_medium.jpg), smallest first. Progress covers all files
+     */
+    private suspend fun uploadProcessed(
+        path: String,
+        processed: ImagePreprocessor.Result,
+        onProgress: (Long, Long) -> Unit
+    ) {
+        val bucket = supabase.storage.from(BUCKET)
+        val files = listOfNotNull(
+            thumbnailPath(path) to processed.thumbnailBytes,
+            processed.mediumBytes?.let { mediumPath(path) to it },
+            path to processed.imageBytes
+        )
+        val totalBytes = files.sumOf { it.second.size.toLong() }
+
+        var doneBytes = 0L
+        for ((filePath, bytes) in files) {
+            bucket.uploadAsFlow(filePath, bytes, upsert = true).collect { status ->
+                if (status is UploadStatus.Progress) {
+                    onProgress(doneBytes + status.totalBytesSend, totalBytes)
+                }
+            }
+            doneBytes += bytes.size
+        }
+    }
+
+    private fun thumbnailPath(path: String): String = path.substringBeforeLast('.') + "_thumb.jpg"
+
+    private fun mediumPath(path: String): String = path.substringBeforeLast('.') + "_medium.jpg"
+
+    private suspend fun createSignedUrl(path: String): String {
+        val signedUrlPath = supabase.storage.from(BUCKET).createSignedUrl(path, kotlin.time.Duration.parse("P365D"))
+        return "${Config.getSupabaseUrl()}/storage/v1/$signedUrlPath"
+    }
+
+    private suspend fun <T> withRetry(label: String, block: suspend () -> T): T {
+        var backoffMillis = INITIAL_BACKOFF_MILLIS
+        repeat(MAX_ATTEMPTS - 1) { attempt ->
+            try {
+                return block()
+            } catch (e: CancellationException) {
+                throw e
+            } catch (e: Exception) {
+                if (!isTransient(e)) throw e
+                Log.w("SupabaseStorage", "$label failed (attempt ${attempt + 1}), retrying in ${backoffMillis}ms", e)
+                delay(backoffMillis)
+                backoffMillis *= 2
+            }
+        }
+        return block()
+    }
+
+    private fun isTransient(e: Exception): Boolean = when (e) {
+        is IOException, is HttpRequestException -> true
+        is RestException -> e.statusCode >= 500 || e.statusCode == 429
+        else -> false
+    }
+
+    companion object {
+        private const val BUCKET = "palate"
+        private const val MAX_PARALLEL_UPLOADS = 3
+        private const val MAX_ATTEMPTS = 3
+        private const val INITIAL_BACKOFF_MILLIS = 500L
+        private const val AVATAR_MAX_EDGE = 512
+        private const val AVATAR_THUMBNAIL_EDGE = 128
+    }
 }
@@ -19,7 +19,9 @@ import com.example.food.data.Review;
 import com.example.food.data.UserProfile;
 import com.example.food.dialogs.ReviewDetailsDialog;
 import com.example.food.model.Restaurant;
+import com.example.food.service.RestaurantRepository;
 import com.example.food.service.ReviewService;
+import com.example.food.utils.FrameUpdateCoalescer;
 import com.google.firebase.firestore.FirebaseFirestore;
 
 import java.util.ArrayList;
@@ -48,6 +50,10 @@ public class UserProfileActivity extends AppCompatActivity {
     private List<Review> userReviews;
     private Map<String, Restaurant> restaurantMap;
     private ReviewService reviewService;
+    private RestaurantRepository restaurantRepository;
+
+    // the review list and its restaurants arrive separately, refresh once per frame
+    private final FrameUpdateCoalescer reviewUpdates = new FrameUpdateCoalescer(this::updateReviews);
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -108,6 +114,7 @@ public class UserProfileActivity extends AppCompatActivity {
     private void initData() {
         db = FirebaseFirestore.getInstance();
         reviewService = new ReviewService();
+        restaurantRepository = RestaurantRepository.getInstance(this);
     }
     
     private void loadUserProfile() {
@@ -173,16 +180,16 @@ public class UserProfileActivity extends AppCompatActivity {
         reviewService.getReviewsByUser(userId, new ReviewService.OnReviewsLoadedListener() {
             @Override
             public void onReviewsLoaded(List<Review> reviews) {
-                userReviews.clear();
-                userReviews.addAll(reviews);
+                reviewUpdates.post(() -> {
+                    userReviews.clear();
+                    userReviews.addAll(reviews);
+                });
                 
                 // Update reviews count
                 tvReviewsCount.setText(String.format(Locale.getDefault(), "%d reviews", reviews.size()));
                 
                 // Load restaurant information for reviews
                 loadRestaurantInfoForReviews(reviews);
-                
-                reviewAdapter.notifyDataSetChanged();
             }
             
             @Override
@@ -196,26 +203,26 @@ public class UserProfileActivity extends AppCompatActivity {
     private void loadRestaurantInfoForReviews(List<Review> reviews) {
         restaurantMap.clear();
         
+        List<String> restaurantIds = new ArrayList<>();
         for (Review review : reviews) {
             String restaurantId = review.getRestaurantId();
-            if (restaurantId != null && !restaurantMap.containsKey(restaurantId)) {
-                // Load restaurant info from Firestore
-                db.collection("restaurants").document(restaurantId)
-                    .get()
-                    .addOnSuccessListener(documentSnapshot -> {
-                        if (documentSnapshot.exists()) {
-                            Restaurant restaurant = documentSnapshot.toObject(Restaurant.class);
-                            if (restaurant != null) {
-                                restaurantMap.put(restaurantId, restaurant);
-                                reviewAdapter.setRestaurantMap(restaurantMap);
-                            }
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Error loading restaurant: " + restaurantId, e);
-                    });
+            if (restaurantId != null && !restaurantIds.contains(restaurantId)) {
+                restaurantIds.add(restaurantId);
             }
         }
+        if (restaurantIds.isEmpty()) return;
+
+        // Shared catalogue, one query per session instead of one read per restaurant
+        restaurantRepository.getRestaurants(restaurantIds, restaurants -> {
+            if (isFinishing()) return;
+            reviewUpdates.post(() -> restaurantMap.putAll(restaurants));
+        });
+    }
+
+    private void updateReviews() {
+        if (isFinishing()) return;
+        reviewAdapter.setRestaurantMap(restaurantMap);
+        reviewAdapter.refresh();
     }
     
     private void showUserNotFound() {
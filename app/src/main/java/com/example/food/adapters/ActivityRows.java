@@ -0,0 +1,286 @@
+package com.example.food.adapters;
+
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import com.example.food.data.ActivityItem;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The activity tab's rows, newest first under date headers. Activities are kept per date
+ * group and indexed by key, so adding, replacing or removing one touches its own group only
+ * and reports the exact rows that moved instead of regrouping the whole list.
+ */
+class ActivityRows {
+    static final int CHANGED_USER = 1;
+    static final int CHANGED_RESTAURANT = 1 << 1;
+
+    // in list order, timestamps only move an activity further down
+    static final String[] GROUPS = {"Today", "Yesterday", "This Week", "This Month", "Older", "Unknown"};
+    private static final int UNKNOWN = GROUPS.length - 1;
+    private static final long DAY_MS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * A date header or an activity as shown when it was added. Activities get their user and
+     * restaurant names filled in place later, so changes are found by comparing these copies
+     */
+    static class Row {
+        final String key;
+        final String header;
+        final ActivityItem activity;
+        private final String userName;
+        private final String userAvatarUrl;
+        private final String restaurantName;
+        private final Boolean voteType;
+        private final String imageUrl;
+        private final String thumbnailUrl;
+
+        Row(String header) {
+            this.key = "header:" + header;
+            this.header = header;
+            this.activity = null;
+            this.userName = null;
+            this.userAvatarUrl = null;
+            this.restaurantName = null;
+            this.voteType = null;
+            this.imageUrl = null;
+            this.thumbnailUrl = null;
+        }
+
+        Row(ActivityItem activity) {
+            this.key = keyOf(activity);
+            this.header = null;
+            this.activity = activity;
+            this.userName = activity.getUserName();
+            this.userAvatarUrl = activity.getUserAvatarUrl();
+            this.restaurantName = activity.getRestaurantName();
+            this.voteType = activity.getVoteType();
+            this.imageUrl = activity.getReviewFirstImageUrl();
+            this.thumbnailUrl = activity.getReviewFirstThumbnailUrl();
+        }
+
+        /**
+         * CHANGED_* flags, null when more than the names changed and the row needs a full rebind
+         */
+        static Integer changes(Row before, Row after) {
+            if (before.activity == null || after.activity == null) {
+                return Objects.equals(before.header, after.header) ? 0 : null;
+            }
+            if (!Objects.equals(before.voteType, after.voteType)
+                    || !Objects.equals(before.imageUrl, after.imageUrl)
+                    || !Objects.equals(before.thumbnailUrl, after.thumbnailUrl)) {
+                return null;
+            }
+            int flags = 0;
+            if (!Objects.equals(before.userName, after.userName)
+                    || !Objects.equals(before.userAvatarUrl, after.userAvatarUrl)) {
+                flags |= CHANGED_USER;
+            }
+            if (!Objects.equals(before.restaurantName, after.restaurantName)) {
+                flags |= CHANGED_RESTAURANT;
+            }
+            return flags;
+        }
+    }
+
+    private final ListUpdateCallback callback;
+    private final Row[] headers = new Row[GROUPS.length];
+    // one list per date group in GROUPS order, a group's header is only shown while it's not empty
+    private final List<List<Row>> groups = new ArrayList<>();
+    // activity key -> its row, the row's timestamp finds the group and the spot in it
+    private final Map<String, Row> rowsByKey = new HashMap<>();
+    // date groups are relative to this, so they don't shift while the list is shown
+    private long now;
+    private int size;
+
+    ActivityRows(ListUpdateCallback callback, long now) {
+        this.callback = callback;
+        this.now = now;
+        for (int i = 0; i < GROUPS.length; i++) {
+            headers[i] = new Row(GROUPS[i]);
+            groups.add(new ArrayList<>());
+        }
+    }
+
+    static String keyOf(ActivityItem activity) {
+        if (activity.getId() != null) {
+            return activity.getId();
+        }
+        return activity.getType() + "|" + activity.getUserId() + "|" + activity.getReviewId() + "|"
+                + (activity.getTimestamp() != null ? activity.getTimestamp().getTime() : 0) + "|"
+                + activity.getCommentText();
+    }
+
+    // pending server timestamps read as null until the write lands
+    static int compareNewestFirst(ActivityItem a, ActivityItem b) {
+        if (a.getTimestamp() == null) return b.getTimestamp() == null ? 0 : -1;
+        if (b.getTimestamp() == null) return 1;
+        return b.getTimestamp().compareTo(a.getTimestamp());
+    }
+
+    int size() {
+        return size;
+    }
+
+    Row get(int position) {
+        for (int g = 0; g < GROUPS.length; g++) {
+            List<Row> group = groups.get(g);
+            if (group.isEmpty()) continue;
+            if (position == 0) return headers[g];
+            if (position <= group.size()) return group.get(position - 1);
+            position -= group.size() + 1;
+        }
+        throw new IndexOutOfBoundsException("No activity row at " + position);
+    }
+
+    /**
+     * Show these activities instead of the current ones, grouped relative to now
+     */
+    void replaceAll(List<ActivityItem> activities, long now) {
+        int removed = size;
+        for (List<Row> group : groups) {
+            group.clear();
+        }
+        rowsByKey.clear();
+        size = 0;
+        this.now = now;
+        if (removed > 0) {
+            callback.onRemoved(0, removed);
+        }
+
+        for (ActivityItem activity : activities) {
+            removeKey(keyOf(activity), false);
+            place(new Row(activity));
+        }
+        if (size > 0) {
+            callback.onInserted(0, size);
+        }
+    }
+
+    /**
+     * Insert an activity at its place by date, replacing the one with the same key unless
+     * that one is newer, e.g. delivered by the listener before an older page arrived
+     */
+    void add(ActivityItem activity) {
+        Row row = new Row(activity);
+        Row existing = rowsByKey.get(row.key);
+        if (existing != null && compareNewestFirst(existing.activity, activity) < 0) return;
+        removeKey(row.key, true);
+        int position = place(row);
+        if (groups.get(groupIndex(activity.getTimestamp())).size() == 1) {
+            // first of its date, the header comes with it
+            callback.onInserted(position - 1, 2);
+        } else {
+            callback.onInserted(position, 1);
+        }
+    }
+
+    boolean remove(String key) {
+        return removeKey(key, true);
+    }
+
+    /**
+     * Rebind the activity's row if its names were filled in since it was added. Ignored for
+     * an activity that is not the one shown, such as a copy the row was since replaced with
+     */
+    void changed(ActivityItem activity) {
+        Row before = rowsByKey.get(keyOf(activity));
+        if (before == null || before.activity != activity) return;
+        int g = groupIndex(before.activity.getTimestamp());
+        List<Row> group = groups.get(g);
+        int index = indexOf(group, before);
+        Row after = new Row(activity);
+        Integer changes = Row.changes(before, after);
+        group.set(index, after);
+        rowsByKey.put(after.key, after);
+        if (changes == null) {
+            callback.onChanged(startOf(g) + 1 + index, 1, null);
+        } else if (changes != 0) {
+            callback.onChanged(startOf(g) + 1 + index, 1, changes);
+        }
+    }
+
+    // Adds the row to its group without reporting it, returns its position
+    private int place(Row row) {
+        int g = groupIndex(row.activity.getTimestamp());
+        List<Row> group = groups.get(g);
+        int index = insertionIndex(group, row.activity);
+        group.add(index, row);
+        rowsByKey.put(row.key, row);
+        size += group.size() == 1 ? 2 : 1;
+        return startOf(g) + 1 + index;
+    }
+
+    private boolean removeKey(String key, boolean notify) {
+        Row row = rowsByKey.remove(key);
+        if (row == null) return false;
+        int g = groupIndex(row.activity.getTimestamp());
+        List<Row> group = groups.get(g);
+        int index = indexOf(group, row);
+        int start = startOf(g);
+        group.remove(index);
+        if (group.isEmpty()) {
+            size -= 2;
+            if (notify) callback.onRemoved(start, 2);
+        } else {
+            size -= 1;
+            if (notify) callback.onRemoved(start + 1 + index, 1);
+        }
+        return true;
+    }
+
+    // Position of the group's header
+    private int startOf(int g) {
+        int position = 0;
+        for (int i = 0; i < g; i++) {
+            int count = groups.get(i).size();
+            if (count > 0) position += count + 1;
+        }
+        return position;
+    }
+
+    // After the rows at the same time, so a page appended in order stays in order
+    private static int insertionIndex(List<Row> group, ActivityItem activity) {
+        int low = 0;
+        int high = group.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (compareNewestFirst(group.get(mid).activity, activity) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    // Binary search by date, then back through the rows at the same time
+    private static int indexOf(List<Row> group, Row row) {
+        for (int i = insertionIndex(group, row.activity) - 1; i >= 0; i--) {
+            Row candidate = group.get(i);
+            if (candidate == row) return i;
+            if (compareNewestFirst(candidate.activity, row.activity) != 0) break;
+        }
+        throw new IllegalStateException("Activity " + row.key + " missing from its group");
+    }
+
+    private int groupIndex(Date timestamp) {
+        if (timestamp == null) return UNKNOWN;
+        long days = (now - timestamp.getTime()) / DAY_MS;
+        if (days <= 0) {
+            return 0; // Today
+        } else if (days == 1) {
+            return 1; // Yesterday
+        } else if (days < 7) {
+            return 2; // This Week
+        } else if (days < 30) {
+            return 3; // This Month
+        }
+        return 4; // Older
+    }
+}
@@ -7,24 +7,45 @@ import android.widget.TextView;
 
 import androidx.annotation.NonNull;
 import androidx.core.content.ContextCompat;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
 import com.example.food.R;
 import com.example.food.data.Comment;
-import com.google.firebase.firestore.FirebaseFirestore;
+import com.example.food.service.UserDirectory;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import de.hdodenhof.circleimageview.CircleImageView;
 
 public class CommentsAdapter extends RecyclerView.Adapter<CommentsAdapter.CommentViewHolder> {
-    private List<Comment> comments;
-    private FirebaseFirestore db;
+    // comments are not edited once posted, so the objects themselves can be compared
+    private static final DiffUtil.ItemCallback<Comment> DIFF_CALLBACK = new DiffUtil.ItemCallback<Comment>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull Comment oldItem, @NonNull Comment newItem) {
+            if (oldItem.getId() != null || newItem.getId() != null) {
+                return Objects.equals(oldItem.getId(), newItem.getId());
+            }
+            // comments stored inline on the review have no id
+            return Objects.equals(oldItem.getUserId(), newItem.getUserId())
+                    && Objects.equals(oldItem.getCreatedAt(), newItem.getCreatedAt());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull Comment oldItem, @NonNull Comment newItem) {
+            return Objects.equals(oldItem.getText(), newItem.getText())
+                    && Objects.equals(oldItem.getUserName(), newItem.getUserName());
+        }
+    };
+
+    private final AsyncListDiffer<Comment> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
 
     public CommentsAdapter(List<Comment> comments) {
-        this.comments = comments;
-        this.db = FirebaseFirestore.getInstance();
+        setComments(comments);
     }
 
     @NonNull
@@ -37,20 +58,22 @@ public class CommentsAdapter extends RecyclerView.Adapter<CommentsAdapter.Commen
 
     @Override
     public void onBindViewHolder(@NonNull CommentViewHolder holder, int position) {
-        Comment comment = comments.get(position);
+        Comment comment = differ.getCurrentList().get(position);
         if (comment != null) {
-            holder.bind(comment, db);
+            holder.bind(comment);
         }
     }
 
     @Override
     public int getItemCount() {
-        return comments != null ? comments.size() : 0;
+        return differ.getCurrentList().size();
     }
 
+    /**
+     * Callers add to and re-sort the review's own list, so it is copied for the differ
+     */
     public void setComments(List<Comment> comments) {
-        this.comments = comments;
-        notifyDataSetChanged();
+        differ.submitList(comments != null ? new ArrayList<>(comments) : null);
     }
 
     static class CommentViewHolder extends RecyclerView.ViewHolder {
@@ -67,7 +90,7 @@ public class CommentsAdapter extends RecyclerView.Adapter<CommentsAdapter.Commen
             tvCommentText = itemView.findViewById(R.id.tv_comment_content);
         }
 
-        public void bind(Comment comment, FirebaseFirestore db) {
+        public void bind(Comment comment) {
             if (tvUserName != null) {
                 tvUserName.setText(comment.getUserName());
             }
@@ -83,40 +106,44 @@ public class CommentsAdapter extends RecyclerView.Adapter<CommentsAdapter.Commen
                 ivAvatar.setBorderWidth(0);
                 ivAvatar.setImageResource(R.drawable.ic_person);
 
+                // set before any return, so a previous author's pending lookup sees the row moved on
                 String userId = comment.getUserId();
+                itemView.setTag(userId);
                 if (userId == null || userId.trim().isEmpty()) {
                     return;
                 }
 
-                db.collection("users").document(userId)
-                    .get()
-                    .addOnSuccessListener(doc -> {
-                        if (doc.exists()) {
-                            String avatarUrl = doc.getString("avatarUrl");
-                            if (avatarUrl != null && !avatarUrl.trim().isEmpty()) {
-                                ivAvatar.setBorderWidth(2);
-                                ivAvatar.setBorderColor(ContextCompat.getColor(itemView.getContext(), R.color.logo_primary));
-                                Glide.with(itemView.getContext())
-                                    .load(avatarUrl)
-                                    .placeholder(R.drawable.ic_person)
-                                    .error(R.drawable.ic_person)
-                                    .diskCacheStrategy(com.bumptech.glide.load.engine.DiskCacheStrategy.ALL)
-                                    .centerCrop()
-                                    .override(72, 72)
-                                    .into(ivAvatar);
-                            } else {
-                                ivAvatar.setBorderWidth(0);
-                                ivAvatar.setImageResource(R.drawable.ic_person);
-                            }
-                        } else {
-                            ivAvatar.setBorderWidth(0);
-                            ivAvatar.setImageResource(R.drawable.ic_person);
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        ivAvatar.setBorderWidth(0);
-                        ivAvatar.setImageResource(R.drawable.ic_person);
-                    });
+                // Cached authors render synchronously, misses share one batched read per frame
+                UserDirectory directory = UserDirectory.getInstance();
+                UserDirectory.UserInfo cached = directory.getCached(userId);
+                if (cached != null) {
+                    showAvatar(cached);
+                    return;
+                }
+
+                directory.resolve(userId, user -> {
+                    // the row may have been recycled for another comment
+                    if (!userId.equals(itemView.getTag())) return;
+                    showAvatar(user);
+                });
+            }
+        }
+
+        private void showAvatar(UserDirectory.UserInfo user) {
+            if (user != null && user.hasAvatar()) {
+                ivAvatar.setBorderWidth(2);
+                ivAvatar.setBorderColor(ContextCompat.getColor(itemView.getContext(), R.color.logo_primary));
+                Glide.with(itemView.getContext())
+                    .load(user.getAvatarUrl())
+                    .placeholder(R.drawable.ic_person)
+                    .error(R.drawable.ic_person)
+                    .diskCacheStrategy(com.bumptech.glide.load.engine.DiskCacheStrategy.ALL)
+                    .centerCrop()
+                    .override(72, 72)
+                    .into(ivAvatar);
+            } else {
+                ivAvatar.setBorderWidth(0);
+                ivAvatar.setImageResource(R.drawable.ic_person);
             }
         }
     }
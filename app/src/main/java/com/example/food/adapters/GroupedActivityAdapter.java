@@ -13,6 +13,7 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
@@ -20,8 +21,8 @@ import com.example.food.R;
 import com.example.food.data.ActivityItem;
 import com.example.food.data.Review;
 import com.example.food.model.Restaurant;
+import com.example.food.utils.ImageVariants;
 
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
@@ -30,8 +31,10 @@ public class GroupedActivityAdapter extends RecyclerView.Adapter<RecyclerView.Vi
     
     private static final int VIEW_TYPE_HEADER = 0;
     private static final int VIEW_TYPE_ACTIVITY = 1;
-    
-    private List<Object> items; 
+    private static final int ACTIVITY_IMAGE_SIZE_PX = 60;
+
+    // inserts, removals and name changes are reported row by row
+    private final ActivityRows rows = new ActivityRows(new AdapterListUpdateCallback(this), System.currentTimeMillis());
     private Map<String, Review> reviewMap;
     private Map<String, Restaurant> restaurantMap;
     private OnActivityClickListener listener;
@@ -42,53 +45,12 @@ public class GroupedActivityAdapter extends RecyclerView.Adapter<RecyclerView.Vi
 
     public GroupedActivityAdapter(List<ActivityItem> activities, OnActivityClickListener listener) {
         this.listener = listener;
-        this.items = new ArrayList<>();
-        groupActivities(activities);
-    }
-
-    private void groupActivities(List<ActivityItem> activities) {
-        items.clear();
-        
-        if (activities == null || activities.isEmpty()) {
-            return;
-        }
-        
-        // Group activities by date
-        String currentGroup = null;
-        for (ActivityItem activity : activities) {
-            String group = getDateGroup(activity.getTimestamp());
-            if (!group.equals(currentGroup)) {
-                items.add(group);
-                currentGroup = group;
-            }
-            items.add(activity);
-        }
-    }
-
-    private String getDateGroup(Date timestamp) {
-        if (timestamp == null) return "Unknown";
-        
-        long now = System.currentTimeMillis();
-        long diff = now - timestamp.getTime();
-        long days = diff / (24 * 60 * 60 * 1000);
-        
-        if (days == 0) {
-            return "Today";
-        } else if (days == 1) {
-            return "Yesterday";
-        } else if (days < 7) {
-            return "This Week";
-        } else if (days < 30) {
-            return "This Month";
-        } else {
-            return "Older";
-        }
+        setActivities(activities);
     }
 
     @Override
     public int getItemViewType(int position) {
-        Object item = items.get(position);
-        return item instanceof String ? VIEW_TYPE_HEADER : VIEW_TYPE_ACTIVITY;
+        return rows.get(position).activity == null ? VIEW_TYPE_HEADER : VIEW_TYPE_ACTIVITY;
     }
 
     @NonNull
@@ -107,33 +69,87 @@ public class GroupedActivityAdapter extends RecyclerView.Adapter<RecyclerView.Vi
 
     @Override
     public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position) {
+        ActivityRows.Row row = rows.get(position);
         if (holder instanceof HeaderViewHolder) {
-            String header = (String) items.get(position);
-            ((HeaderViewHolder) holder).bind(header);
+            ((HeaderViewHolder) holder).bind(row.header);
         } else if (holder instanceof ActivityViewHolder) {
-            ActivityItem activity = (ActivityItem) items.get(position);
-            ((ActivityViewHolder) holder).bind(activity);
+            ((ActivityViewHolder) holder).bind(row.activity);
+        }
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        int changes = 0;
+        for (Object payload : payloads) {
+            if (!(payload instanceof Integer)) {
+                changes = -1;
+                break;
+            }
+            changes |= (Integer) payload;
+        }
+        if (payloads.isEmpty() || changes < 0 || !(holder instanceof ActivityViewHolder)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+
+        ActivityViewHolder activityHolder = (ActivityViewHolder) holder;
+        ActivityItem activity = rows.get(position).activity;
+        if ((changes & ActivityRows.CHANGED_USER) != 0) {
+            activityHolder.bindUser(activity);
+        }
+        if ((changes & ActivityRows.CHANGED_RESTAURANT) != 0) {
+            activityHolder.bindRestaurant(activity);
         }
     }
 
     @Override
     public int getItemCount() {
-        return items.size();
+        return rows.size();
     }
 
+    /**
+     * Show these activities instead of the current ones, regrouped by date
+     */
     public void setActivities(List<ActivityItem> activities) {
-        groupActivities(activities);
-        notifyDataSetChanged();
+        rows.replaceAll(activities, System.currentTimeMillis());
+    }
+
+    /**
+     * Insert an activity under its date, an activity with the same id is replaced
+     */
+    public void addActivity(ActivityItem activity) {
+        rows.add(activity);
+    }
+
+    /**
+     * Add a page of activities, each goes under its date
+     */
+    public void addActivities(List<ActivityItem> activities) {
+        for (ActivityItem activity : activities) {
+            rows.add(activity);
+        }
+    }
+
+    public void removeActivity(String activityId) {
+        rows.remove(activityId);
+    }
+
+    /**
+     * Pick up names filled in place on an activity already shown
+     */
+    public void activityChanged(ActivityItem activity) {
+        rows.changed(activity);
     }
 
+    /**
+     * Only used when an activity is clicked, so nothing is rebound
+     */
     public void setReviewMap(Map<String, Review> reviewMap) {
         this.reviewMap = reviewMap;
-        notifyDataSetChanged();
     }
 
     public void setRestaurantMap(Map<String, Restaurant> restaurantMap) {
         this.restaurantMap = restaurantMap;
-        notifyDataSetChanged();
     }
 
     class HeaderViewHolder extends RecyclerView.ViewHolder {
@@ -169,9 +185,8 @@ public class GroupedActivityAdapter extends RecyclerView.Adapter<RecyclerView.Vi
             itemView.setOnClickListener(v -> {
                 int position = getAdapterPosition();
                 if (position != RecyclerView.NO_POSITION && listener != null) {
-                    Object item = items.get(position);
-                    if (item instanceof ActivityItem) {
-                        ActivityItem activity = (ActivityItem) item;
+                    ActivityItem activity = rows.get(position).activity;
+                    if (activity != null) {
                         Review review = reviewMap != null ? reviewMap.get(activity.getReviewId()) : null;
                         Restaurant restaurant = restaurantMap != null ? restaurantMap.get(activity.getReviewId()) : null;
                         listener.onActivityClick(activity, review, restaurant);
@@ -181,6 +196,12 @@ public class GroupedActivityAdapter extends RecyclerView.Adapter<RecyclerView.Vi
         }
 
         public void bind(ActivityItem activity) {
+            bindUser(activity);
+            bindRestaurant(activity);
+            bindDetails(activity);
+        }
+
+        void bindUser(ActivityItem activity) {
             // Set user avatar. same implementation as profile page
             if (activity.getUserAvatarUrl() != null && !activity.getUserAvatarUrl().trim().isEmpty()) {
                 ivUserAvatar.setBorderWidth(2);
@@ -199,11 +220,15 @@ public class GroupedActivityAdapter extends RecyclerView.Adapter<RecyclerView.Vi
             // Set user name
             String userName = activity.getUserName() != null ? activity.getUserName() : "User";
             tvUserName.setText(userName);
+        }
 
+        void bindRestaurant(ActivityItem activity) {
             // Set restaurant name
             String restaurantName = activity.getRestaurantName() != null ? activity.getRestaurantName() : "Restaurant";
             tvRestaurantName.setText(restaurantName);
+        }
 
+        private void bindDetails(ActivityItem activity) {
             // Set activity text with colored action words
             if (activity.getType() == ActivityItem.ActivityType.VOTE) {
                 // Only show accurate votes
@@ -222,13 +247,15 @@ public class GroupedActivityAdapter extends RecyclerView.Adapter<RecyclerView.Vi
                 tvActivityText.setText(spannableString);
             }
 
-            // Set review image instead of icon
-            if (activity.getReviewFirstImageUrl() != null && !activity.getReviewFirstImageUrl().trim().isEmpty()) {
+            // Set review image instead of icon, the thumbnail covers the icon when there is one
+            String reviewImageUrl = ImageVariants.pick(activity.getReviewFirstThumbnailUrl(), null,
+                    activity.getReviewFirstImageUrl(), ACTIVITY_IMAGE_SIZE_PX);
+            if (reviewImageUrl != null && !reviewImageUrl.trim().isEmpty()) {
                 Glide.with(itemView.getContext())
-                        .load(activity.getReviewFirstImageUrl())
+                        .load(reviewImageUrl)
                         .diskCacheStrategy(com.bumptech.glide.load.engine.DiskCacheStrategy.ALL)
                         .centerCrop()
-                        .override(60, 60)
+                        .override(ACTIVITY_IMAGE_SIZE_PX, ACTIVITY_IMAGE_SIZE_PX)
                         .into(ivActivityIcon);
             } else {
                 // Fallback to a placeholder if no image is available
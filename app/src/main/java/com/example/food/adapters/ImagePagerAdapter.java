@@ -7,27 +7,62 @@ import android.view.ViewGroup;
 import android.widget.ImageView;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
 import com.example.food.R;
+import com.example.food.data.Review;
+import com.example.food.utils.ImageVariants;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 public class ImagePagerAdapter extends RecyclerView.Adapter<ImagePagerAdapter.ImageViewHolder> {
 
+    private static final DiffUtil.ItemCallback<ImageVariants> DIFF_CALLBACK = new DiffUtil.ItemCallback<ImageVariants>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ImageVariants oldItem, @NonNull ImageVariants newItem) {
+            return Objects.equals(oldItem.getFullUrl(), newItem.getFullUrl());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ImageVariants oldItem, @NonNull ImageVariants newItem) {
+            return Objects.equals(oldItem.getThumbnailUrl(), newItem.getThumbnailUrl())
+                    && Objects.equals(oldItem.getMediumUrl(), newItem.getMediumUrl());
+        }
+    };
+
     private Context context;
-    private List<String> images;
+    private final AsyncListDiffer<ImageVariants> differ = new AsyncListDiffer<>(this, DIFF_CALLBACK);
 
     public ImagePagerAdapter(Context context) {
         this.context = context;
-        this.images = new ArrayList<>();
     }
 
     public void setImages(List<String> images) {
-        this.images = images != null ? images : new ArrayList<>();
-        notifyDataSetChanged();
+        List<ImageVariants> variants = new ArrayList<>();
+        if (images != null) {
+            for (String url : images) {
+                variants.add(new ImageVariants(null, null, url));
+            }
+        }
+        differ.submitList(variants);
+    }
+
+    /**
+     * Show a review's photos, each page loads the smallest stored size that fills it
+     */
+    public void setImages(Review review) {
+        List<ImageVariants> variants = new ArrayList<>();
+        if (review.getImageUrls() != null) {
+            for (int i = 0; i < review.getImageUrls().size(); i++) {
+                variants.add(review.getImageVariants(i));
+            }
+        }
+        differ.submitList(variants);
     }
 
     @NonNull
@@ -39,13 +74,12 @@ public class ImagePagerAdapter extends RecyclerView.Adapter<ImagePagerAdapter.Im
 
     @Override
     public void onBindViewHolder(@NonNull ImageViewHolder holder, int position) {
-        String imageUrl = images.get(position);
-        holder.bind(imageUrl);
+        holder.bind(differ.getCurrentList().get(position));
     }
 
     @Override
     public int getItemCount() {
-        return images.size();
+        return differ.getCurrentList().size();
     }
 
     class ImageViewHolder extends RecyclerView.ViewHolder {
@@ -56,7 +90,8 @@ public class ImagePagerAdapter extends RecyclerView.Adapter<ImagePagerAdapter.Im
             imageView = itemView.findViewById(R.id.imageView);
         }
 
-        public void bind(String imageUrl) {
+        public void bind(ImageVariants image) {
+            String imageUrl = image.pick(getPageEdgePx());
             if ("placeholder".equals(imageUrl)) {
                 imageView.setImageResource(R.drawable.ic_restaurant);
             } else if (imageUrl != null && !imageUrl.trim().isEmpty()) {
@@ -70,6 +105,14 @@ public class ImagePagerAdapter extends RecyclerView.Adapter<ImagePagerAdapter.Im
                 imageView.setImageResource(R.drawable.ic_restaurant);
             }
         }
+
+        /**
+         * Pages fill the pager, before the first layout assume the screen width
+         */
+        private int getPageEdgePx() {
+            int edge = Math.max(itemView.getWidth(), itemView.getHeight());
+            return edge > 0 ? edge : context.getResources().getDisplayMetrics().widthPixels;
+        }
     }
 }
 
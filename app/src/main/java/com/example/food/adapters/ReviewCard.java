@@ -0,0 +1,75 @@
+package com.example.food.adapters;
+
+import com.example.food.data.Review;
+import com.example.food.utils.ImageVariants;
+
+import java.util.Objects;
+
+/**
+ * What a feed card shows for a review, copied when the list is submitted. Reviews are filled
+ * in place (user names, votes), so the differ compares these copies rather than the reviews.
+ */
+class ReviewCard {
+    static final int CHANGED_TEXT = 1;
+    static final int CHANGED_ACCURACY = 1 << 1;
+    static final int CHANGED_USER = 1 << 2;
+
+    final Review review;
+    private final String id;
+    private final String caption;
+    private final float rating;
+    private final double accuracyPercent;
+    private final String userName;
+    private final String userAvatarUrl;
+    private final String firstImageType;
+    private final String thumbnailUrl;
+    private final String mediumUrl;
+    private final String fullUrl;
+
+    ReviewCard(Review review) {
+        this.review = review;
+        this.id = review.getId();
+        this.caption = review.getCaption();
+        this.rating = review.getRating();
+        this.accuracyPercent = review.getAccuracyPercent();
+        this.userName = review.getUserName();
+        this.userAvatarUrl = review.getUserAvatarUrl();
+        this.firstImageType = review.getFirstImageType();
+        ImageVariants image = review.getImageVariants(0);
+        this.thumbnailUrl = image.getThumbnailUrl();
+        this.mediumUrl = image.getMediumUrl();
+        this.fullUrl = image.getFullUrl();
+    }
+
+    boolean isSameReview(ReviewCard other) {
+        if (id == null || other.id == null) {
+            return review == other.review;
+        }
+        return id.equals(other.id);
+    }
+
+    /**
+     * CHANGED_* flags for the parts of the card that differ, 0 if nothing does. Null when the
+     * image or its size changed, which needs a full rebind
+     */
+    static Integer changes(ReviewCard before, ReviewCard after) {
+        if (!Objects.equals(before.firstImageType, after.firstImageType)
+                || !Objects.equals(before.thumbnailUrl, after.thumbnailUrl)
+                || !Objects.equals(before.mediumUrl, after.mediumUrl)
+                || !Objects.equals(before.fullUrl, after.fullUrl)) {
+            return null;
+        }
+        int flags = 0;
+        if (!Objects.equals(before.caption, after.caption) || before.rating != after.rating) {
+            flags |= CHANGED_TEXT;
+        }
+        if (before.accuracyPercent != after.accuracyPercent) {
+            flags |= CHANGED_ACCURACY;
+        }
+        if (!Objects.equals(before.userName, after.userName)
+                || !Objects.equals(before.userAvatarUrl, after.userAvatarUrl)) {
+            flags |= CHANGED_USER;
+        }
+        return flags;
+    }
+}
@@ -0,0 +1,206 @@
+package com.example.food.adapters;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.recyclerview.widget.StaggeredGridLayoutManager;
+
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.request.target.Target;
+import com.example.food.data.Review;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Loads the images of the cards just past the visible range into Glide's memory cache while
+ * the list scrolls, so they bind without a placeholder. Looks further ahead the faster the
+ * list moves and cancels preloads that fall out of range, e.g. when the scroll reverses.
+ * Requests come from ReviewWidgetAdapter so a preload and the later bind share a cache key.
+ */
+public class ReviewImagePreloader extends RecyclerView.OnScrollListener {
+    public static final int DEFAULT_MIN_AHEAD = 4;
+    public static final int DEFAULT_MAX_AHEAD = 16;
+
+    private final Context context;
+    private final ReviewWidgetAdapter adapter;
+    private final int minAhead;
+    private final int maxAhead;
+
+    // adapter position -> preload requests for that card
+    private final Map<Integer, List<Target<Drawable>>> preloads = new HashMap<>();
+
+    private final RecyclerView.AdapterDataObserver dataObserver = new RecyclerView.AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+            // positions shift on reload, start over
+            clear();
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            // a page appended past the preloaded cards leaves their positions alone
+            for (int position : preloads.keySet()) {
+                if (position >= positionStart) {
+                    clear();
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            clear();
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            clear();
+        }
+    };
+
+    public ReviewImagePreloader(Context context, ReviewWidgetAdapter adapter) {
+        this(context, adapter, DEFAULT_MIN_AHEAD, DEFAULT_MAX_AHEAD);
+    }
+
+    public ReviewImagePreloader(Context context, ReviewWidgetAdapter adapter, int minAhead, int maxAhead) {
+        this.context = context.getApplicationContext();
+        this.adapter = adapter;
+        this.minAhead = minAhead;
+        this.maxAhead = Math.max(minAhead, maxAhead);
+    }
+
+    /**
+     * Start preloading for recyclerView, which must be showing the adapter given to the constructor
+     */
+    public void attach(RecyclerView recyclerView) {
+        recyclerView.addOnScrollListener(this);
+        adapter.registerAdapterDataObserver(dataObserver);
+    }
+
+    public void detach(RecyclerView recyclerView) {
+        recyclerView.removeOnScrollListener(this);
+        adapter.unregisterAdapterDataObserver(dataObserver);
+        clear();
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        if (dy == 0) return;
+        int[] visible = findVisibleRange(recyclerView.getLayoutManager());
+        if (visible == null) return;
+
+        int ahead = calculateAhead(Math.abs(dy), averageChildHeight(recyclerView), minAhead, maxAhead);
+        int from;
+        int to;
+        if (dy > 0) {
+            from = visible[1] + 1;
+            to = Math.min(visible[1] + ahead, adapter.getItemCount() - 1);
+        } else {
+            from = Math.max(visible[0] - ahead, 0);
+            to = visible[0] - 1;
+        }
+        updateRange(from, to);
+    }
+
+    /**
+     * Cards to look ahead for a scroll of dyPx in one frame. A fling that covers a card per
+     * frame needs roughly a card per frame of the ~16 frames an image takes to arrive
+     */
+    static int calculateAhead(int dyPx, int cardHeightPx, int minAhead, int maxAhead) {
+        if (cardHeightPx <= 0) {
+            return minAhead;
+        }
+        // two columns, so each card height scrolled brings two new cards
+        int cardsPerFrame = 2 * dyPx / cardHeightPx;
+        return Math.max(minAhead, Math.min(maxAhead, minAhead + cardsPerFrame * 8));
+    }
+
+    private void updateRange(int from, int to) {
+        // cancel what fell out of range, including cards that are now visible: their bind
+        // shares the in-flight load, so only the preload's claim on it goes away
+        Iterator<Map.Entry<Integer, List<Target<Drawable>>>> iterator = preloads.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Integer, List<Target<Drawable>>> entry = iterator.next();
+            if (entry.getKey() < from || entry.getKey() > to) {
+                for (Target<Drawable> target : entry.getValue()) {
+                    Glide.with(context).clear(target);
+                }
+                iterator.remove();
+            }
+        }
+
+        for (int position = from; position <= to; position++) {
+            if (!preloads.containsKey(position)) {
+                preloads.put(position, preload(position));
+            }
+        }
+    }
+
+    private List<Target<Drawable>> preload(int position) {
+        List<Target<Drawable>> targets = new ArrayList<>();
+        Review review = adapter.getReviewAt(position);
+        if (review == null) return targets;
+
+        RequestBuilder<Drawable> image = adapter.buildImageRequest(context, review);
+        if (image != null) {
+            targets.add(image.preload());
+        }
+        String avatarUrl = review.getUserAvatarUrl();
+        if (adapter.showsUserInfo() && avatarUrl != null && !avatarUrl.trim().isEmpty()) {
+            targets.add(adapter.buildAvatarRequest(context, avatarUrl).preload());
+        }
+        return targets;
+    }
+
+    public void clear() {
+        for (List<Target<Drawable>> targets : preloads.values()) {
+            for (Target<Drawable> target : targets) {
+                Glide.with(context).clear(target);
+            }
+        }
+        preloads.clear();
+    }
+
+    /**
+     * First and last visible adapter positions across all spans, null if nothing is laid out
+     */
+    private static int[] findVisibleRange(RecyclerView.LayoutManager layoutManager) {
+        int first = Integer.MAX_VALUE;
+        int last = RecyclerView.NO_POSITION;
+        if (layoutManager instanceof StaggeredGridLayoutManager) {
+            StaggeredGridLayoutManager grid = (StaggeredGridLayoutManager) layoutManager;
+            for (int position : grid.findFirstVisibleItemPositions(null)) {
+                if (position != RecyclerView.NO_POSITION) first = Math.min(first, position);
+            }
+            for (int position : grid.findLastVisibleItemPositions(null)) {
+                last = Math.max(last, position);
+            }
+        } else if (layoutManager instanceof LinearLayoutManager) {
+            LinearLayoutManager linear = (LinearLayoutManager) layoutManager;
+            first = linear.findFirstVisibleItemPosition();
+            last = linear.findLastVisibleItemPosition();
+        }
+        if (first == Integer.MAX_VALUE || first == RecyclerView.NO_POSITION || last == RecyclerView.NO_POSITION) {
+            return null;
+        }
+        return new int[]{first, last};
+    }
+
+    private static int averageChildHeight(RecyclerView recyclerView) {
+        int count = recyclerView.getChildCount();
+        if (count == 0) return 0;
+        int total = 0;
+        for (int i = 0; i < count; i++) {
+            total += recyclerView.getChildAt(i).getHeight();
+        }
+        return total / count;
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.food.adapters;
 
+import android.content.Context;
+import android.graphics.drawable.Drawable;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
@@ -8,13 +10,19 @@ import android.widget.TextView;
 import android.util.TypedValue;
 
 import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.bumptech.glide.Glide;
+import com.bumptech.glide.RequestBuilder;
 import com.example.food.R;
 import com.example.food.data.Review;
 import com.example.food.model.Restaurant;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -23,12 +31,37 @@ import java.util.Map;
 public class ReviewWidgetAdapter extends RecyclerView.Adapter<RecyclerView.ViewHolder> {
     private static final int VIEW_TYPE_REVIEW = 0;
     private static final int VIEW_TYPE_SKELETON = 1;
+    private static final int SPAN_COUNT = 2;
+    private static final int AVATAR_SIZE_DP = 24;
+    private static final int SKELETON_COUNT = 8; // Show 8 skeleton cards so it looks better
 
+    private static final DiffUtil.ItemCallback<ReviewCard> DIFF_CALLBACK = new DiffUtil.ItemCallback<ReviewCard>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ReviewCard oldItem, @NonNull ReviewCard newItem) {
+            return oldItem.isSameReview(newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ReviewCard oldItem, @NonNull ReviewCard newItem) {
+            Integer changes = ReviewCard.changes(oldItem, newItem);
+            return changes != null && changes == 0;
+        }
+
+        @Override
+        public Object getChangePayload(@NonNull ReviewCard oldItem, @NonNull ReviewCard newItem) {
+            // null makes RecyclerView rebind the whole card
+            return ReviewCard.changes(oldItem, newItem);
+        }
+    };
+
+    // list the caller last handed in, re-read by refresh() after in-place edits
     private List<Review> reviews;
+    private final AsyncListDiffer<ReviewCard> differ;
     private Map<String, Restaurant> restaurantMap;
     private OnReviewClickListener listener;
     private boolean isLoading = false;
     private boolean showUserInfo = true;
+    private RecyclerView recyclerView;
 
 
     public interface OnReviewClickListener {
@@ -37,21 +70,41 @@ public class ReviewWidgetAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
     }
 
     public ReviewWidgetAdapter(List<Review> reviews, OnReviewClickListener listener) {
-        this.reviews = reviews;
-        this.listener = listener;
-        this.restaurantMap = new HashMap<>();
+        this(reviews, listener, true);
     }
 
     public ReviewWidgetAdapter(List<Review> reviews, OnReviewClickListener listener, boolean showUserInfo) {
-        this.reviews = reviews;
         this.listener = listener;
         this.restaurantMap = new HashMap<>();
         this.showUserInfo = showUserInfo;
+        // diffs run on a background thread, updates land shifted past the skeleton cards
+        this.differ = new AsyncListDiffer<>(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                notifyItemRangeInserted(position + skeletonCount(), count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                notifyItemRangeRemoved(position + skeletonCount(), count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                notifyItemMoved(fromPosition + skeletonCount(), toPosition + skeletonCount());
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                notifyItemRangeChanged(position + skeletonCount(), count, payload);
+            }
+        }, new AsyncDifferConfig.Builder<>(DIFF_CALLBACK).build());
+        setReviews(reviews);
     }
 
     @Override
     public int getItemViewType(int position) {
-        if (isLoading && position < 8) { // Show 8 skeleton cards so it looks better
+        if (position < skeletonCount()) {
             return VIEW_TYPE_SKELETON;
         }
         return VIEW_TYPE_REVIEW;
@@ -77,38 +130,183 @@ public class ReviewWidgetAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
            
             return;
         } else if (holder instanceof ReviewViewHolder) {
-            ReviewViewHolder reviewHolder = (ReviewViewHolder) holder;
-            int reviewPosition = isLoading ? position - 8 : position;
-            if (reviewPosition >= 0 && reviewPosition < reviews.size()) {
-                Review review = reviews.get(reviewPosition);
-                reviewHolder.bind(review);
+            Review review = getReviewAt(position);
+            if (review != null) {
+                ((ReviewViewHolder) holder).bind(review);
             }
         }
     }
 
+    @Override
+    public void onBindViewHolder(@NonNull RecyclerView.ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        int changes = 0;
+        for (Object payload : payloads) {
+            if (!(payload instanceof Integer)) {
+                changes = -1;
+                break;
+            }
+            changes |= (Integer) payload;
+        }
+        Review review = getReviewAt(position);
+        if (payloads.isEmpty() || changes < 0 || review == null || !(holder instanceof ReviewViewHolder)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+
+        // only the parts that changed, the image keeps its request
+        ReviewViewHolder reviewHolder = (ReviewViewHolder) holder;
+        if ((changes & ReviewCard.CHANGED_TEXT) != 0) {
+            reviewHolder.bindText(review);
+        }
+        if ((changes & ReviewCard.CHANGED_ACCURACY) != 0) {
+            reviewHolder.bindAccuracy(review);
+        }
+        if ((changes & ReviewCard.CHANGED_USER) != 0) {
+            reviewHolder.bindUser(review);
+        }
+    }
+
     @Override
     public int getItemCount() {
-        return isLoading ? (reviews != null ? reviews.size() + 8 : 8) : (reviews != null ? reviews.size() : 0);
+        return skeletonCount() + differ.getCurrentList().size();
     }
 
-    public void setReviews(List<Review> reviews) {
+    private int skeletonCount() {
+        return isLoading ? SKELETON_COUNT : 0;
+    }
+
+    /**
+     * Show reviews. Item changes are worked out off the main thread, so getItemCount only
+     * reflects the new list once onCommitted runs
+     */
+    public void setReviews(List<Review> reviews, Runnable onCommitted) {
         this.reviews = reviews;
-        notifyDataSetChanged();
+        List<ReviewCard> cards = new ArrayList<>();
+        if (reviews != null) {
+            for (Review review : reviews) {
+                cards.add(new ReviewCard(review));
+            }
+        }
+        differ.submitList(cards, onCommitted);
+    }
+
+    public void setReviews(List<Review> reviews) {
+        setReviews(reviews, null);
+    }
+
+    /**
+     * Pick up edits made in place to the reviews last passed in, e.g. resolved user names
+     * or votes. Only cards that actually changed are rebound
+     */
+    public void refresh() {
+        setReviews(reviews);
+    }
+
+    public void refresh(Runnable onCommitted) {
+        setReviews(reviews, onCommitted);
     }
 
     public void setLoading(boolean loading) {
+        if (isLoading == loading) {
+            refresh();
+            return;
+        }
         this.isLoading = loading;
-        notifyDataSetChanged();
+        if (loading) {
+            notifyItemRangeInserted(0, SKELETON_COUNT);
+        } else {
+            notifyItemRangeRemoved(0, SKELETON_COUNT);
+        }
+        refresh();
     }
 
+    /**
+     * Only used when a card is clicked, so nothing is rebound
+     */
     public void setRestaurantMap(Map<String, Restaurant> restaurantMap) {
         this.restaurantMap = restaurantMap != null ? restaurantMap : new HashMap<>();
-        notifyDataSetChanged();
     }
 
     public void setShowUserInfo(boolean showUserInfo) {
+        if (this.showUserInfo == showUserInfo) return;
         this.showUserInfo = showUserInfo;
-        notifyDataSetChanged();
+        notifyItemRangeChanged(skeletonCount(), differ.getCurrentList().size(), ReviewCard.CHANGED_USER);
+    }
+
+    /**
+     * Review shown at an adapter position, null for skeleton cards
+     */
+    public Review getReviewAt(int position) {
+        List<ReviewCard> cards = differ.getCurrentList();
+        int reviewPosition = position - skeletonCount();
+        if (reviewPosition < 0 || reviewPosition >= cards.size()) {
+            return null;
+        }
+        return cards.get(reviewPosition).review;
+    }
+
+    public boolean showsUserInfo() {
+        return showUserInfo;
+    }
+
+    @Override
+    public void onAttachedToRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onAttachedToRecyclerView(recyclerView);
+        this.recyclerView = recyclerView;
+    }
+
+    @Override
+    public void onDetachedFromRecyclerView(@NonNull RecyclerView recyclerView) {
+        super.onDetachedFromRecyclerView(recyclerView);
+        this.recyclerView = null;
+    }
+
+    /**
+     * Request for a card's first image: the smallest stored variant that covers the card,
+     * decoded at card size. Null when the review has no image
+     */
+    public RequestBuilder<Drawable> buildImageRequest(Context context, Review review) {
+        if (review.getImageUrls() == null || review.getImageUrls().isEmpty()) {
+            return null;
+        }
+        int widthPx = getCardWidthPx(context);
+        int heightPx = getImageHeightPx(context, review.getFirstImageType());
+        return Glide.with(context)
+                .load(review.getImageVariants(0).pick(Math.max(widthPx, heightPx)))
+                .override(widthPx, heightPx)
+                .centerCrop();
+    }
+
+    public RequestBuilder<Drawable> buildAvatarRequest(Context context, String avatarUrl) {
+        int sizePx = dpToPx(context, AVATAR_SIZE_DP);
+        return Glide.with(context)
+                .load(avatarUrl)
+                .override(sizePx, sizePx)
+                .circleCrop();
+    }
+
+    /**
+     * Cards are one column of the two-column grid. Derived from the list width rather than
+     * the card so that binds and preloads agree on the size
+     */
+    private int getCardWidthPx(Context context) {
+        if (recyclerView != null && recyclerView.getWidth() > 0) {
+            return (recyclerView.getWidth() - recyclerView.getPaddingLeft() - recyclerView.getPaddingRight()) / SPAN_COUNT;
+        }
+        return context.getResources().getDisplayMetrics().widthPixels / SPAN_COUNT;
+    }
+
+    private static int getImageHeightPx(Context context, String firstImageType) {
+        if ("PORTRAIT".equals(firstImageType)) {
+            return dpToPx(context, 300); // taller height
+        } else if ("HORIZONTAL".equals(firstImageType)) {
+            return dpToPx(context, 150); // shorter height
+        }
+        return dpToPx(context, 200); // square and unknown
+    }
+
+    private static int dpToPx(Context context, int dp) {
+        return (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, dp, context.getResources().getDisplayMetrics());
     }
 
     class ReviewViewHolder extends RecyclerView.ViewHolder {
@@ -135,9 +333,8 @@ public class ReviewWidgetAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
                 userInfoButton.setOnClickListener(v -> {
                     int position = getAdapterPosition();
                     if (position != RecyclerView.NO_POSITION && listener != null) {
-                        int reviewPosition = isLoading ? position - 8 : position;
-                        if (reviewPosition >= 0 && reviewPosition < reviews.size()) {
-                            Review review = reviews.get(reviewPosition);
+                        Review review = getReviewAt(position);
+                        if (review != null) {
                             listener.onUserClick(review.getUserId());
                         }
                     }
@@ -147,9 +344,8 @@ public class ReviewWidgetAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
             itemView.setOnClickListener(v -> {
                 int position = getAdapterPosition();
                 if (position != RecyclerView.NO_POSITION && listener != null) {
-                    int reviewPosition = isLoading ? position - 8 : position;
-                    if (reviewPosition >= 0 && reviewPosition < reviews.size()) {
-                        Review review = reviews.get(reviewPosition);
+                    Review review = getReviewAt(position);
+                    if (review != null) {
                         Restaurant restaurant = restaurantMap.get(review.getRestaurantId());
                         if (restaurant == null) {
                            
@@ -164,16 +360,28 @@ public class ReviewWidgetAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
         }
 
         public void bind(Review review) {
+            bindText(review);
+            bindAccuracy(review);
+            bindUser(review);
+            bindImage(review);
+        }
+
+        void bindText(Review review) {
             if (tvCaption != null && review.getCaption() != null) {
                 tvCaption.setText(review.getCaption());
             }
             if (tvRating != null) {
                 tvRating.setText(String.format(Locale.getDefault(), "%.1f", review.getRating()));
             }
+        }
+
+        void bindAccuracy(Review review) {
             if (tvAccuracy != null) {
                 tvAccuracy.setText(String.format(Locale.getDefault(), "%.0f%%", review.getAccuracyPercent()));
             }
-            
+        }
+
+        void bindUser(Review review) {
             // Bind user information
             if (showUserInfo) {
                 if (tvUserName != null) {
@@ -188,11 +396,9 @@ public class ReviewWidgetAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
                 if (ivUserAvatar != null) {
                     String avatarUrl = review.getUserAvatarUrl();
                     if (avatarUrl != null && !avatarUrl.trim().isEmpty()) {
-                        Glide.with(itemView.getContext())
-                                .load(avatarUrl)
+                        buildAvatarRequest(itemView.getContext(), avatarUrl)
                                 .placeholder(R.drawable.ic_person)
                                 .error(R.drawable.ic_person)
-                                .circleCrop()
                                 .into(ivUserAvatar);
                     } else {
                         ivUserAvatar.setImageResource(R.drawable.ic_person);
@@ -207,46 +413,24 @@ public class ReviewWidgetAdapter extends RecyclerView.Adapter<RecyclerView.ViewH
                     userInfoButton.setVisibility(View.GONE);
                 }
             }
+        }
+
+        private void bindImage(Review review) {
             if (ivRestaurantImage != null) {
                 // Clear any previous state
                 ivRestaurantImage.clearColorFilter();
                 ivRestaurantImage.setPadding(0, 0, 0, 0);
                 
                 if (review.getImageUrls() != null && !review.getImageUrls().isEmpty()) {
-                    String imageUrl = review.getImageUrls().get(0);
-
-                    // Set ImageView height and scale type based on Firestore field BEFORE loading
-                    if (review.getFirstImageType() != null) {
-                        int heightPx;
-                        if ("PORTRAIT".equals(review.getFirstImageType())) {
-                            // Portrait: taller height, centerCrop
-                            heightPx = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 300, itemView.getContext().getResources().getDisplayMetrics());
-                            ivRestaurantImage.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                        } else if ("SQUARE".equals(review.getFirstImageType())) {
-                            // Square: medium height, centerCrop
-                            heightPx = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 200, itemView.getContext().getResources().getDisplayMetrics());
-                            ivRestaurantImage.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                        } else if ("HORIZONTAL".equals(review.getFirstImageType())) {
-                            // Horizontal: shorter height, centerCrop
-                            heightPx = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 150, itemView.getContext().getResources().getDisplayMetrics());
-                            ivRestaurantImage.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                        } else {
-                            heightPx = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 200, itemView.getContext().getResources().getDisplayMetrics());
-                            ivRestaurantImage.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                        }
-                        ivRestaurantImage.getLayoutParams().height = heightPx;
-                        ivRestaurantImage.requestLayout();
-                    } else {
-                        // Default fallback
-                        int defaultHeightPx = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 200, itemView.getContext().getResources().getDisplayMetrics());
-                        ivRestaurantImage.getLayoutParams().height = defaultHeightPx;
-                        ivRestaurantImage.setScaleType(ImageView.ScaleType.CENTER_CROP);
-                        ivRestaurantImage.requestLayout();
-                    }
 
-                    // Load the image with predetermined size
-                    Glide.with(itemView.getContext())
-                            .load(imageUrl)
+                    // Set ImageView height based on Firestore field BEFORE loading
+                    int heightPx = getImageHeightPx(itemView.getContext(), review.getFirstImageType());
+                    ivRestaurantImage.getLayoutParams().height = heightPx;
+                    ivRestaurantImage.setScaleType(ImageView.ScaleType.CENTER_CROP);
+                    ivRestaurantImage.requestLayout();
+
+                    // Same request the preloader issues, so a preloaded card binds from memory
+                    buildImageRequest(itemView.getContext(), review)
                             .placeholder(R.drawable.ic_restaurant)
                             .error(R.drawable.ic_restaurant)
                             .into(ivRestaurantImage);
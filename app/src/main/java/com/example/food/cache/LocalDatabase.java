@@ -0,0 +1,337 @@
+package com.example.food.cache;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+
+import com.example.food.data.Review;
+import com.example.food.model.Restaurant;
+import com.example.food.service.UserDirectory;
+import com.google.gson.Gson;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * On-device copy of what the app needs to render before the network answers: recent reviews,
+ * the restaurant catalogue, user summaries and opened profiles. It is a cache, Firestore stays
+ * the source of truth. Queries are synchronous; callers on the main thread go through
+ * execute(), which runs tasks one at a time so writes land in the order they were made.
+ */
+public class LocalDatabase extends SQLiteOpenHelper {
+    private static final String TAG = "LocalDatabase";
+    private static final String DATABASE_NAME = "palate_local.db";
+    private static final int DATABASE_VERSION = 2;
+
+    private static final String TABLE_REVIEWS = "reviews";
+    private static final String TABLE_RESTAURANTS = "restaurants";
+    private static final String TABLE_USERS = "users";
+    private static final String TABLE_SYNC_STATE = "sync_state";
+    private static final String TABLE_PROFILES = "profiles";
+
+    private static LocalDatabase instance;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Gson gson = new Gson();
+
+    /**
+     * A review ready to be written, encoded on the caller's thread so the Review object is not
+     * read while the UI keeps filling it in
+     */
+    static class ReviewRow {
+        final String id;
+        final long createdAt;
+        final long updatedAt;
+        final String json;
+
+        ReviewRow(Review review) {
+            this.id = review.getId();
+            this.createdAt = review.getCreatedAt() != null ? review.getCreatedAt().getTime() : 0;
+            this.updatedAt = review.getUpdatedAt() != null ? review.getUpdatedAt().getTime() : this.createdAt;
+            this.json = ReviewCodec.encode(review);
+        }
+    }
+
+    static class ProfileRow {
+        final String json;
+        final long cachedAt;
+
+        ProfileRow(String json, long cachedAt) {
+            this.json = json;
+            this.cachedAt = cachedAt;
+        }
+    }
+
+    private LocalDatabase(Context context) {
+        super(context, DATABASE_NAME, null, DATABASE_VERSION);
+    }
+
+    public static synchronized LocalDatabase getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocalDatabase(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_REVIEWS + " ("
+                + "id TEXT PRIMARY KEY, "
+                + "created_at INTEGER NOT NULL, "
+                + "updated_at INTEGER NOT NULL, "
+                + "json TEXT NOT NULL)");
+        db.execSQL("CREATE INDEX idx_reviews_created ON " + TABLE_REVIEWS + " (created_at DESC, id DESC)");
+        db.execSQL("CREATE TABLE " + TABLE_RESTAURANTS + " ("
+                + "id TEXT PRIMARY KEY, "
+                + "json TEXT NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_USERS + " ("
+                + "id TEXT PRIMARY KEY, "
+                + "name TEXT, "
+                + "avatar_url TEXT, "
+                + "fetched_at INTEGER NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_SYNC_STATE + " ("
+                + "key TEXT PRIMARY KEY, "
+                + "value INTEGER NOT NULL)");
+        db.execSQL("CREATE TABLE " + TABLE_PROFILES + " ("
+                + "id TEXT PRIMARY KEY, "
+                + "json TEXT NOT NULL, "
+                + "cached_at INTEGER NOT NULL)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // everything here can be downloaded again
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_REVIEWS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_RESTAURANTS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_USERS);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_SYNC_STATE);
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_PROFILES);
+        onCreate(db);
+    }
+
+    /**
+     * Run a task on the database thread
+     */
+    public void execute(Runnable task) {
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                // a broken cache must never take the app down
+                Log.e(TAG, "Local database task failed", e);
+            }
+        });
+    }
+
+    // Reviews
+
+    /**
+     * Newest reviews first, in feed order
+     */
+    public List<Review> readReviews(int limit) {
+        List<Review> reviews = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_REVIEWS, new String[]{"json"},
+                null, null, null, null, "created_at DESC, id DESC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                Review review = ReviewCodec.decode(cursor.getString(0));
+                if (review != null) {
+                    reviews.add(review);
+                }
+            }
+        }
+        return reviews;
+    }
+
+    void upsertReviews(Collection<ReviewRow> rows) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (ReviewRow row : rows) {
+                if (row.id == null) continue;
+                values.clear();
+                values.put("id", row.id);
+                values.put("created_at", row.createdAt);
+                values.put("updated_at", row.updatedAt);
+                values.put("json", row.json);
+                db.insertWithOnConflict(TABLE_REVIEWS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void deleteReviews(Collection<String> reviewIds) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (String id : reviewIds) {
+                db.delete(TABLE_REVIEWS, "id = ?", new String[]{id});
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void deleteAllReviews() {
+        getWritableDatabase().delete(TABLE_REVIEWS, null, null);
+    }
+
+    /**
+     * Drop all but the newest keep reviews
+     */
+    public void trimReviews(int keep) {
+        getWritableDatabase().execSQL("DELETE FROM " + TABLE_REVIEWS + " WHERE id NOT IN ("
+                + "SELECT id FROM " + TABLE_REVIEWS + " ORDER BY created_at DESC, id DESC LIMIT " + keep + ")");
+    }
+
+    // Restaurants
+
+    public List<Restaurant> readRestaurants() {
+        List<Restaurant> restaurants = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_RESTAURANTS, new String[]{"json"},
+                null, null, null, null, null)) {
+            while (cursor.moveToNext()) {
+                try {
+                    restaurants.add(gson.fromJson(cursor.getString(0), Restaurant.class));
+                } catch (RuntimeException e) {
+                    Log.w(TAG, "Error decoding cached restaurant", e);
+                }
+            }
+        }
+        return restaurants;
+    }
+
+    public void replaceRestaurants(Collection<Restaurant> restaurants) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            db.delete(TABLE_RESTAURANTS, null, null);
+            ContentValues values = new ContentValues();
+            for (Restaurant restaurant : restaurants) {
+                if (restaurant.getId() == null) continue;
+                values.clear();
+                values.put("id", restaurant.getId());
+                values.put("json", gson.toJson(restaurant));
+                db.insert(TABLE_RESTAURANTS, null, values);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // Users
+
+    /**
+     * User summaries fetched after the given time
+     */
+    public List<UserDirectory.UserInfo> readUsers(long fetchedAfter) {
+        List<UserDirectory.UserInfo> users = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_USERS,
+                new String[]{"id", "name", "avatar_url", "fetched_at"},
+                "fetched_at > ?", new String[]{String.valueOf(fetchedAfter)}, null, null, null)) {
+            while (cursor.moveToNext()) {
+                users.add(new UserDirectory.UserInfo(cursor.getString(0), cursor.getString(1),
+                        cursor.getString(2), cursor.getLong(3)));
+            }
+        }
+        return users;
+    }
+
+    public void upsertUsers(Collection<UserDirectory.UserInfo> users) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            ContentValues values = new ContentValues();
+            for (UserDirectory.UserInfo user : users) {
+                values.clear();
+                values.put("id", user.getUserId());
+                values.put("name", user.getName());
+                values.put("avatar_url", user.getAvatarUrl());
+                values.put("fetched_at", user.getFetchedAt());
+                db.insertWithOnConflict(TABLE_USERS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    public void deleteUser(String userId) {
+        getWritableDatabase().delete(TABLE_USERS, "id = ?", new String[]{userId});
+    }
+
+    public void deleteUsersFetchedBefore(long time) {
+        getWritableDatabase().delete(TABLE_USERS, "fetched_at <= ?", new String[]{String.valueOf(time)});
+    }
+
+    // Profiles
+
+    ProfileRow readProfile(String userId) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_PROFILES, new String[]{"json", "cached_at"},
+                "id = ?", new String[]{userId}, null, null, null)) {
+            return cursor.moveToFirst() ? new ProfileRow(cursor.getString(0), cursor.getLong(1)) : null;
+        }
+    }
+
+    void upsertProfile(String userId, String json, long cachedAt) {
+        ContentValues values = new ContentValues();
+        values.put("id", userId);
+        values.put("json", json);
+        values.put("cached_at", cachedAt);
+        getWritableDatabase().insertWithOnConflict(TABLE_PROFILES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    void deleteProfile(String userId) {
+        getWritableDatabase().delete(TABLE_PROFILES, "id = ?", new String[]{userId});
+    }
+
+    void deleteAllProfiles() {
+        getWritableDatabase().delete(TABLE_PROFILES, null, null);
+    }
+
+    /**
+     * Drop the least recently cached profiles until their JSON fits in maxBytes
+     */
+    void trimProfiles(long maxBytes) {
+        List<String> evicted = new ArrayList<>();
+        long total = 0;
+        try (Cursor cursor = getReadableDatabase().query(TABLE_PROFILES, new String[]{"id", "length(json)"},
+                null, null, null, null, "cached_at DESC")) {
+            while (cursor.moveToNext()) {
+                total += cursor.getLong(1);
+                if (total > maxBytes) {
+                    evicted.add(cursor.getString(0));
+                }
+            }
+        }
+        for (String id : evicted) {
+            deleteProfile(id);
+        }
+    }
+
+    // Sync state, e.g. when a collection was last downloaded
+
+    public long readSyncValue(String key, long defaultValue) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_SYNC_STATE, new String[]{"value"},
+                "key = ?", new String[]{key}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getLong(0) : defaultValue;
+        }
+    }
+
+    public void writeSyncValue(String key, long value) {
+        ContentValues values = new ContentValues();
+        values.put("key", key);
+        values.put("value", value);
+        getWritableDatabase().insertWithOnConflict(TABLE_SYNC_STATE, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+    }
+}
@@ -0,0 +1,129 @@
+package com.example.food.cache;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.food.data.Review;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Reviews kept on disk so the feed can render on launch before Firestore answers, refreshed
+ * with every page and delta the feed downloads, plus the high-water mark they are current to.
+ * Reads call back on the main thread.
+ */
+public class LocalReviewStore {
+    private static final String TAG = "LocalReviewStore";
+    static final int MAX_CACHED_REVIEWS = 200;
+    private static final String KEY_HIGH_WATER_MARK = "reviews_high_water_mark";
+
+    private static LocalReviewStore instance;
+
+    private final LocalDatabase database;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    public interface OnFeedReadListener {
+        /**
+         * @param highWaterMark newest change the cached reviews reflect, null if unknown
+         */
+        void onFeedRead(List<Review> reviews, Date highWaterMark);
+    }
+
+    private LocalReviewStore(LocalDatabase database) {
+        this.database = database;
+    }
+
+    public static synchronized LocalReviewStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new LocalReviewStore(LocalDatabase.getInstance(context));
+        }
+        return instance;
+    }
+
+    /**
+     * The newest cached reviews in feed order, empty on a fresh install
+     */
+    public void readFeed(int limit, OnFeedReadListener listener) {
+        long start = System.currentTimeMillis();
+        database.execute(() -> {
+            List<Review> reviews;
+            Date highWaterMark;
+            try {
+                reviews = database.readReviews(limit);
+                long mark = database.readSyncValue(KEY_HIGH_WATER_MARK, 0);
+                highWaterMark = mark > 0 ? new Date(mark) : null;
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Error reading cached reviews", e);
+                reviews = Collections.emptyList();
+                highWaterMark = null;
+            }
+            List<Review> result = reviews;
+            Date resultMark = highWaterMark;
+            Log.d(TAG, "Read " + result.size() + " cached reviews in " + (System.currentTimeMillis() - start) + " ms");
+            mainHandler.post(() -> listener.onFeedRead(result, resultMark));
+        });
+    }
+
+    /**
+     * Remember the newest change the stored reviews reflect. Written after the reviews queued
+     * before it, so the mark never runs ahead of the rows
+     */
+    public void saveHighWaterMark(Date highWaterMark) {
+        long mark = highWaterMark != null ? highWaterMark.getTime() : 0;
+        database.execute(() -> database.writeSyncValue(KEY_HIGH_WATER_MARK, mark));
+    }
+
+    /**
+     * Start over from a freshly loaded first page. Cached reviews deleted since the last session
+     * would otherwise linger, their tombstones are older than the new mark
+     */
+    public void replaceFeed(Collection<Review> firstPage, Date highWaterMark) {
+        List<LocalDatabase.ReviewRow> rows = toRows(firstPage);
+        long mark = highWaterMark != null ? highWaterMark.getTime() : 0;
+        database.execute(() -> {
+            database.deleteAllReviews();
+            database.upsertReviews(rows);
+            database.writeSyncValue(KEY_HIGH_WATER_MARK, mark);
+        });
+    }
+
+    public void saveReviews(Collection<Review> reviews) {
+        if (reviews.isEmpty()) return;
+        List<LocalDatabase.ReviewRow> rows = toRows(reviews);
+        database.execute(() -> {
+            database.upsertReviews(rows);
+            database.trimReviews(MAX_CACHED_REVIEWS);
+        });
+    }
+
+    private static List<LocalDatabase.ReviewRow> toRows(Collection<Review> reviews) {
+        List<LocalDatabase.ReviewRow> rows = new ArrayList<>(reviews.size());
+        for (Review review : reviews) {
+            if (review.getId() != null) {
+                rows.add(new LocalDatabase.ReviewRow(review));
+            }
+        }
+        return rows;
+    }
+
+    public void saveReview(Review review) {
+        saveReviews(Collections.singletonList(review));
+    }
+
+    public void deleteReview(String reviewId) {
+        if (reviewId == null) return;
+        deleteReviews(Collections.singletonList(reviewId));
+    }
+
+    public void deleteReviews(Collection<String> reviewIds) {
+        if (reviewIds.isEmpty()) return;
+        List<String> ids = new ArrayList<>(reviewIds);
+        database.execute(() -> database.deleteReviews(ids));
+    }
+}
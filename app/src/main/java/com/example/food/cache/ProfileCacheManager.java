@@ -1,24 +1,95 @@
 package com.example.food.cache;
 
 import android.content.Context;
-import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
 import com.example.food.data.UserProfile;
 import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
 
+/**
+ * User profiles by user id, for the signed-in user and anyone else whose profile was opened.
+ * Parsed profiles sit in a size-bounded LRU in memory, their JSON in the LocalDatabase so they
+ * survive a relaunch. An entry younger than FRESH_TTL is served as is; an older one, up to
+ * MAX_STALE_AGE, is served marked stale so the caller can show it while it fetches a new copy.
+ */
 public class ProfileCacheManager {
-    private static final String PREFS_NAME = "profile_cache";
-    private static final String KEY_USER_PROFILE = "user_profile";
-    private static final String KEY_CACHE_TIMESTAMP = "cache_timestamp";
-    private static final long CACHE_EXPIRY_TIME = 5 * 60 * 1000; // 5 minutes
+    private static final String TAG = "ProfileCacheManager";
+    private static final String LEGACY_PREFS_NAME = "profile_cache";
+    private static final String LEGACY_PREFS_CLEARED = "profile_cache_prefs_cleared";
+    static final long FRESH_TTL = 5 * 60 * 1000; // 5 minutes
+    static final long MAX_STALE_AGE = 7 * 24 * 60 * 60 * 1000L; // 7 days
+    private static final long MAX_MEMORY_BYTES = 256 * 1024;
+    private static final long MAX_DISK_BYTES = 1024 * 1024;
 
     private static ProfileCacheManager instance;
-    private SharedPreferences prefs;
-    private Gson gson;
+
+    private final ProfileStore store;
+    private final MainThread mainThread;
+    private final Gson gson = new Gson();
+    private final SizedLruCache<String, Entry> memory = new SizedLruCache<>(MAX_MEMORY_BYTES);
+
+    private int memoryHits;
+    private int diskHits;
+    private int staleHits;
+    private int misses;
+
+    public interface OnProfileLoadedListener {
+        /**
+         * @param profile cached profile, null on a miss
+         * @param fresh false if the profile should be fetched again
+         */
+        void onProfileLoaded(UserProfile profile, boolean fresh);
+    }
+
+    /** Where the profiles' JSON is kept, tasks run off the main thread */
+    interface ProfileStore {
+        void execute(Runnable task);
+        LocalDatabase.ProfileRow read(String userId);
+        void write(String userId, String json, long cachedAt);
+        void delete(String userId);
+        void deleteAll();
+    }
+
+    interface MainThread {
+        void post(Runnable task);
+    }
+
+    static class Entry {
+        final UserProfile profile;
+        final long cachedAt;
+
+        Entry(UserProfile profile, long cachedAt) {
+            this.profile = profile;
+            this.cachedAt = cachedAt;
+        }
+
+        boolean isFresh(long now) {
+            return now - cachedAt <= FRESH_TTL;
+        }
+
+        boolean isUsable(long now) {
+            return now - cachedAt <= MAX_STALE_AGE;
+        }
+    }
 
     private ProfileCacheManager(Context context) {
-        prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        gson = new Gson();
+        this(new DatabaseProfileStore(LocalDatabase.getInstance(context)),
+                new Handler(Looper.getMainLooper())::post);
+        LocalDatabase database = LocalDatabase.getInstance(context);
+        database.execute(() -> {
+            // the single-profile cache this replaces, cleared once
+            if (database.readSyncValue(LEGACY_PREFS_CLEARED, 0) == 0) {
+                context.getSharedPreferences(LEGACY_PREFS_NAME, Context.MODE_PRIVATE).edit().clear().commit();
+                database.writeSyncValue(LEGACY_PREFS_CLEARED, 1);
+            }
+        });
+    }
+
+    ProfileCacheManager(ProfileStore store, MainThread mainThread) {
+        this.store = store;
+        this.mainThread = mainThread;
     }
 
     public static synchronized ProfileCacheManager getInstance(Context context) {
@@ -28,49 +99,169 @@ public class ProfileCacheManager {
         return instance;
     }
 
-    public void cacheUserProfile(UserProfile userProfile) {
-        if (userProfile == null) return;
+    /**
+     * Look a profile up. A profile in memory is delivered before this returns, otherwise the
+     * disk copy is read and delivered on the main thread
+     */
+    public void get(String userId, OnProfileLoadedListener listener) {
+        if (userId == null) {
+            listener.onProfileLoaded(null, false);
+            return;
+        }
 
-        String profileJson = gson.toJson(userProfile);
-        prefs.edit()
-                .putString(KEY_USER_PROFILE, profileJson)
-                .putLong(KEY_CACHE_TIMESTAMP, System.currentTimeMillis())
-                .apply();
-    }
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (this) {
+            entry = memory.get(userId);
+            if (entry != null && !entry.isUsable(now)) {
+                memory.remove(userId);
+                entry = null;
+            }
+            if (entry != null) {
+                memoryHits++;
+                if (!entry.isFresh(now)) staleHits++;
+            }
+        }
+        if (entry != null) {
+            listener.onProfileLoaded(entry.profile, entry.isFresh(now));
+            return;
+        }
 
-    public UserProfile getCachedUserProfile() {
-        long cacheTime = prefs.getLong(KEY_CACHE_TIMESTAMP, 0);
-        long currentTime = System.currentTimeMillis();
+        store.execute(() -> {
+            Entry stored = readFromDisk(userId, now);
+            Entry found;
+            synchronized (this) {
+                // put() may have cached a newer copy while the disk was read
+                found = memory.get(userId);
+                if (found == null && stored != null) {
+                    remember(userId, stored);
+                    found = stored;
+                }
+                if (found == null) {
+                    misses++;
+                } else {
+                    diskHits++;
+                    if (!found.isFresh(now)) staleHits++;
+                }
+            }
+            Entry delivered = found;
+            mainThread.post(() -> {
+                if (delivered == null) {
+                    listener.onProfileLoaded(null, false);
+                } else {
+                    listener.onProfileLoaded(delivered.profile, delivered.isFresh(now));
+                }
+            });
+        });
+    }
 
-        // Check if cache has expired
-        if (currentTime - cacheTime > CACHE_EXPIRY_TIME) {
-            clearCache();
+    private Entry readFromDisk(String userId, long now) {
+        LocalDatabase.ProfileRow row = store.read(userId);
+        if (row == null) return null;
+        if (now - row.cachedAt > MAX_STALE_AGE) {
+            store.delete(userId);
             return null;
         }
-
-        String profileJson = prefs.getString(KEY_USER_PROFILE, null);
-        if (profileJson == null) {
+        try {
+            UserProfile profile = gson.fromJson(row.json, UserProfile.class);
+            return profile != null ? new Entry(profile, row.cachedAt) : null;
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Error decoding cached profile " + userId, e);
+            store.delete(userId);
             return null;
         }
+    }
 
-        try {
-            return gson.fromJson(profileJson, UserProfile.class);
-        } catch (Exception e) {
-            // If parsing fails, clear the cache
-            clearCache();
-            return null;
+    /**
+     * Cache a profile just loaded or written, keyed by its uid
+     */
+    public void put(UserProfile profile) {
+        if (profile != null) {
+            put(profile.getUid(), profile);
+        }
+    }
+
+    public void put(String userId, UserProfile profile) {
+        if (userId == null || profile == null) return;
+
+        String json = gson.toJson(profile);
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            memory.put(userId, new Entry(profile, now), sizeOf(json));
+        }
+        store.execute(() -> store.write(userId, json, now));
+    }
+
+    private void remember(String userId, Entry entry) {
+        memory.put(userId, entry, sizeOf(gson.toJson(entry.profile)));
+    }
+
+    // UTF-16 in memory
+    private static long sizeOf(String json) {
+        return json.length() * 2L;
+    }
+
+    public void invalidate(String userId) {
+        if (userId == null) return;
+        synchronized (this) {
+            memory.remove(userId);
         }
+        store.execute(() -> store.delete(userId));
     }
 
+    /**
+     * Forget every profile, e.g. on logout
+     */
     public void clearCache() {
-        prefs.edit()
-                .remove(KEY_USER_PROFILE)
-                .remove(KEY_CACHE_TIMESTAMP)
-                .apply();
+        synchronized (this) {
+            memory.clear();
+        }
+        store.execute(store::deleteAll);
+    }
+
+    private static class DatabaseProfileStore implements ProfileStore {
+        private final LocalDatabase database;
+
+        DatabaseProfileStore(LocalDatabase database) {
+            this.database = database;
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            database.execute(task);
+        }
+
+        @Override
+        public LocalDatabase.ProfileRow read(String userId) {
+            return database.readProfile(userId);
+        }
+
+        @Override
+        public void write(String userId, String json, long cachedAt) {
+            database.upsertProfile(userId, json, cachedAt);
+            database.trimProfiles(MAX_DISK_BYTES);
+        }
+
+        @Override
+        public void delete(String userId) {
+            database.deleteProfile(userId);
+        }
+
+        @Override
+        public void deleteAll() {
+            database.deleteAllProfiles();
+        }
     }
 
-    public boolean hasCachedProfile() {
-        return prefs.contains(KEY_USER_PROFILE) && 
-               (System.currentTimeMillis() - prefs.getLong(KEY_CACHE_TIMESTAMP, 0)) <= CACHE_EXPIRY_TIME;
+    public synchronized int getHitCount() { return memoryHits + diskHits; }
+    public synchronized int getMemoryHitCount() { return memoryHits; }
+    public synchronized int getStaleHitCount() { return staleHits; }
+    public synchronized int getMissCount() { return misses; }
+
+    @Override
+    public synchronized String toString() {
+        return "ProfileCache{memory=" + memoryHits + ", disk=" + diskHits + ", stale=" + staleHits
+                + ", miss=" + misses + ", entries=" + memory.count() + ", bytes=" + memory.size()
+                + ", evictions=" + memory.evictionCount() + "}";
     }
 }
@@ -0,0 +1,96 @@
+package com.example.food.cache;
+
+import android.util.Log;
+
+import com.example.food.data.Review;
+import com.google.firebase.Timestamp;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonDeserializationContext;
+import com.google.gson.JsonDeserializer;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSerializationContext;
+import com.google.gson.JsonSerializer;
+import com.google.gson.reflect.TypeToken;
+
+import java.lang.reflect.Type;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Review to JSON and back for the local database. Dates are written as epoch millis so they
+ * read back regardless of locale, and vote timestamps (Firestore Timestamps) come back as
+ * Dates, which Firestore accepts when the votes map is written again. The display fields
+ * Firestore skips (user and restaurant names) are kept so a cached card renders complete.
+ */
+final class ReviewCodec {
+    private static final String TAG = "ReviewCodec";
+    private static final String VOTE_TIMESTAMP = "timestamp";
+    private static final Type VOTES_TYPE = new TypeToken<Map<String, Map<String, Object>>>() {}.getType();
+
+    private static final Gson GSON = new GsonBuilder()
+            .registerTypeAdapter(Date.class, new DateAdapter())
+            .registerTypeAdapter(Timestamp.class, (JsonSerializer<Timestamp>) (timestamp, type, context) ->
+                    new JsonPrimitive(timestamp.toDate().getTime()))
+            .registerTypeAdapter(VOTES_TYPE, (JsonDeserializer<Map<String, Map<String, Object>>>) (json, type, context) ->
+                    readVotes(json))
+            .create();
+
+    private ReviewCodec() {}
+
+    private static class DateAdapter implements JsonSerializer<Date>, JsonDeserializer<Date> {
+        @Override
+        public JsonElement serialize(Date date, Type type, JsonSerializationContext context) {
+            return new JsonPrimitive(date.getTime());
+        }
+
+        @Override
+        public Date deserialize(JsonElement json, Type type, JsonDeserializationContext context) {
+            return new Date(json.getAsLong());
+        }
+    }
+
+    static String encode(Review review) {
+        return GSON.toJson(review);
+    }
+
+    /**
+     * Null if the stored JSON can't be read, e.g. written by an incompatible version
+     */
+    static Review decode(String json) {
+        try {
+            return GSON.fromJson(json, Review.class);
+        } catch (RuntimeException e) {
+            Log.w(TAG, "Error decoding cached review", e);
+            return null;
+        }
+    }
+
+    private static Map<String, Map<String, Object>> readVotes(JsonElement json) {
+        Map<String, Map<String, Object>> votes = new HashMap<>();
+        if (!json.isJsonObject()) return votes;
+
+        for (Map.Entry<String, JsonElement> voter : json.getAsJsonObject().entrySet()) {
+            if (!voter.getValue().isJsonObject()) continue;
+            JsonObject fields = voter.getValue().getAsJsonObject();
+            Map<String, Object> vote = new HashMap<>();
+            for (Map.Entry<String, JsonElement> field : fields.entrySet()) {
+                if (!field.getValue().isJsonPrimitive()) continue;
+                JsonPrimitive value = field.getValue().getAsJsonPrimitive();
+                if (value.isBoolean()) {
+                    vote.put(field.getKey(), value.getAsBoolean());
+                } else if (value.isNumber()) {
+                    vote.put(field.getKey(), VOTE_TIMESTAMP.equals(field.getKey())
+                            ? new Date(value.getAsLong()) : value.getAsNumber());
+                } else {
+                    vote.put(field.getKey(), value.getAsString());
+                }
+            }
+            votes.put(voter.getKey(), vote);
+        }
+        return votes;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.food.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * LRU bounded by the total size of its entries rather than their count, so a few large
+ * values can't crowd out memory that many small ones would use. Sizes are whatever unit the
+ * caller measures in. Not thread safe.
+ */
+class SizedLruCache<K, V> {
+    private final long maxSize;
+    private final LinkedHashMap<K, Sized<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size;
+    private int evictionCount;
+
+    private static class Sized<V> {
+        final V value;
+        final long size;
+
+        Sized(V value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+
+    SizedLruCache(long maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    V get(K key) {
+        Sized<V> entry = entries.get(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Add or replace a value, then evict least recently used entries until the cache fits.
+     * A value larger than the whole cache is not kept
+     */
+    void put(K key, V value, long valueSize) {
+        remove(key);
+        if (valueSize > maxSize) return;
+
+        entries.put(key, new Sized<>(value, valueSize));
+        size += valueSize;
+        Iterator<Map.Entry<K, Sized<V>>> eldest = entries.entrySet().iterator();
+        while (size > maxSize && eldest.hasNext()) {
+            size -= eldest.next().getValue().size;
+            eldest.remove();
+            evictionCount++;
+        }
+    }
+
+    void remove(K key) {
+        Sized<V> removed = entries.remove(key);
+        if (removed != null) {
+            size -= removed.size;
+        }
+    }
+
+    void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    long size() { return size; }
+    int count() { return entries.size(); }
+    int evictionCount() { return evictionCount; }
+}
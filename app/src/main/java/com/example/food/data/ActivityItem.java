@@ -13,12 +13,14 @@ public class ActivityItem {
     private String userName;
     private String userAvatarUrl;
     private String reviewId;
+    private String restaurantId;
     private String reviewCaption;
     private String restaurantName;
     private Date timestamp;
     private Boolean voteType; // true for accurate, false for inaccurate, null for comments
     private String commentText;
     private String reviewFirstImageUrl;
+    private String reviewFirstThumbnailUrl; // null for reviews posted before thumbnails were stored
 
     public ActivityItem() {
         // Default constructor required for Firestore
@@ -55,6 +57,9 @@ public class ActivityItem {
     public String getReviewId() { return reviewId; }
     public void setReviewId(String reviewId) { this.reviewId = reviewId; }
 
+    public String getRestaurantId() { return restaurantId; }
+    public void setRestaurantId(String restaurantId) { this.restaurantId = restaurantId; }
+
     public String getReviewCaption() { return reviewCaption; }
     public void setReviewCaption(String reviewCaption) { this.reviewCaption = reviewCaption; }
 
@@ -72,5 +77,8 @@ public class ActivityItem {
 
     public String getReviewFirstImageUrl() { return reviewFirstImageUrl; }
     public void setReviewFirstImageUrl(String reviewFirstImageUrl) { this.reviewFirstImageUrl = reviewFirstImageUrl; }
+
+    public String getReviewFirstThumbnailUrl() { return reviewFirstThumbnailUrl; }
+    public void setReviewFirstThumbnailUrl(String reviewFirstThumbnailUrl) { this.reviewFirstThumbnailUrl = reviewFirstThumbnailUrl; }
 }
 
@@ -12,6 +12,7 @@ public class Comment {
     private String text;
     private Date createdAt;
     private Map<String, Boolean> likes;
+    private String reviewUserId; // author of the review commented on
 
     public Comment() {
         // Default constructor for Firestore
@@ -49,4 +50,7 @@ public class Comment {
 
     public Map<String, Boolean> getLikes() { return likes; }
     public void setLikes(Map<String, Boolean> likes) { this.likes = likes; }
+
+    public String getReviewUserId() { return reviewUserId; }
+    public void setReviewUserId(String reviewUserId) { this.reviewUserId = reviewUserId; }
 }
\ No newline at end of file
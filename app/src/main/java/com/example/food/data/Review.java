@@ -1,5 +1,6 @@
 package com.example.food.data;
 
+import com.example.food.utils.ImageVariants;
 import com.google.firebase.firestore.Exclude;
 import java.util.Date;
 import java.util.List;
@@ -20,12 +21,22 @@ public class Review {
     private int accuracy;
     private double accuracyPercent;
     private List<String> imageUrls;
+    private List<String> thumbnailUrls; // same order as imageUrls, absent on older reviews
+    private List<String> mediumUrls;
     private String firstImageType;
     private Date createdAt;
     private Date updatedAt;
     private int helpfulCount;
     private java.util.Map<String, java.util.Map<String, Object>> votes;
+    // counted from the votes map once, then moved by FieldValue.increment in each vote's
+    // transaction, see ReviewService.setVote. Absent on older reviews
+    private Long accurateVoteCount;
+    private Long totalVoteCount;
+    // false when read without the votes map (feed queries), see ReviewService.parseReview
+    private boolean votesLoaded = true;
+    // comments live in reviews/{id}/comments, the list only holds ones not yet migrated there
     private List<Comment> comments;
+    private int commentCount;
 
     public Review() {
         // Default constructor required for Firestore
@@ -89,6 +100,19 @@ public class Review {
     public List<String> getImageUrls() { return imageUrls; }
     public void setImageUrls(List<String> imageUrls) { this.imageUrls = imageUrls; }
 
+    public List<String> getThumbnailUrls() { return thumbnailUrls; }
+    public void setThumbnailUrls(List<String> thumbnailUrls) { this.thumbnailUrls = thumbnailUrls; }
+
+    public List<String> getMediumUrls() { return mediumUrls; }
+    public void setMediumUrls(List<String> mediumUrls) { this.mediumUrls = mediumUrls; }
+
+    /**
+     * Stored sizes of the image at index, pick one with ImageVariants.pick
+     */
+    public ImageVariants getImageVariants(int index) {
+        return ImageVariants.at(thumbnailUrls, mediumUrls, imageUrls, index);
+    }
+
     public String getFirstImageType() { return firstImageType; }
     public void setFirstImageType(String firstImageType) { this.firstImageType = firstImageType; }
 
@@ -105,11 +129,60 @@ public class Review {
     public void setAccuracyPercent(double accuracyPercent) { this.accuracyPercent = accuracyPercent; }
 
     public java.util.Map<String, java.util.Map<String, Object>> getVotes() { return votes; }
-    public void setVotes(java.util.Map<String, java.util.Map<String, Object>> votes) { this.votes = votes; }
+    public void setVotes(java.util.Map<String, java.util.Map<String, Object>> votes) {
+        this.votes = votes;
+        this.votesLoaded = true;
+    }
+
+    /**
+     * False if this copy was read without its votes map, load it before reading or
+     * changing anyone's vote
+     */
+    public boolean areVotesLoaded() { return votesLoaded; }
+
+    /**
+     * For parsers that skip the votes map because the counters carry the totals
+     */
+    public void markVotesNotLoaded() {
+        this.votes = new java.util.HashMap<>();
+        this.votesLoaded = false;
+    }
+
+    public Long getAccurateVoteCount() { return accurateVoteCount; }
+    public void setAccurateVoteCount(Long accurateVoteCount) { this.accurateVoteCount = accurateVoteCount; }
+
+    public Long getTotalVoteCount() { return totalVoteCount; }
+    public void setTotalVoteCount(Long totalVoteCount) { this.totalVoteCount = totalVoteCount; }
+
+    /**
+     * False for reviews written before the counters existed, they only have the votes map
+     */
+    public boolean hasVoteCounters() {
+        return accurateVoteCount != null && totalVoteCount != null;
+    }
+
+    /**
+     * Number of votes, from the counters when stored so the votes map isn't needed
+     */
+    @Exclude
+    public long getVoteCount() {
+        if (hasVoteCounters()) return totalVoteCount;
+        return votes != null ? votes.size() : 0;
+    }
 
     public List<Comment> getComments() { return comments; }
     public void setComments(List<Comment> comments) { this.comments = comments; }
 
+    public int getCommentCount() { return commentCount; }
+    public void setCommentCount(int commentCount) { this.commentCount = commentCount; }
+
+    /**
+     * True while the review still stores its comments inline, see ReviewService.migrateComments
+     */
+    public boolean hasLegacyComments() {
+        return comments != null && !comments.isEmpty();
+    }
+
     //if the first image is portrait based on stored image type
     //return true if the first image is portrait, false otherwise
     public boolean isFirstImagePortrait() {
@@ -129,11 +202,57 @@ public class Review {
     }
 
     /**
-     * Calculate and update accuracy percentage from votes map
+     * Calculate and update accuracy percentage from the vote counters, or from the votes
+     * map on reviews that predate them.
      * Call this method whenever votes change to keep accuracyPercent in sync
      */
     public void refreshAccuracyFromVotes() {
-        this.accuracyPercent = calculateAccuracyFromVotes(this.votes);
+        this.accuracyPercent = hasVoteCounters()
+                ? calculateAccuracyFromCounts(accurateVoteCount, totalVoteCount)
+                : calculateAccuracyFromVotes(this.votes);
+    }
+
+    /**
+     * Set (true or false) or clear (null) one voter's vote in this copy, keeping the counters
+     * in step. Returns the voter's previous vote, null if there was none
+     */
+    public Boolean applyVote(String voterId, Boolean accurate) {
+        if (votes == null) {
+            votes = new java.util.HashMap<>();
+        }
+        java.util.Map<String, Object> previousData = votes.get(voterId);
+        // an entry without accurate=true is a false vote, as the stored counters count it
+        Boolean previous = previousData != null ? Boolean.TRUE.equals(previousData.get("accurate")) : null;
+
+        if (accurate == null) {
+            votes.remove(voterId);
+        } else {
+            java.util.Map<String, Object> voteData = new java.util.HashMap<>();
+            voteData.put("accurate", accurate);
+            voteData.put("timestamp", new Date());
+            votes.put(voterId, voteData);
+        }
+        if (hasVoteCounters()) {
+            long[] change = voteCounterChange(previous, accurate);
+            accurateVoteCount += change[0];
+            totalVoteCount += change[1];
+        }
+        refreshAccuracyFromVotes();
+        return previous;
+    }
+
+    /**
+     * How the {accurate, total} counters move when one voter's vote goes from previous to
+     * next, null meaning no vote
+     */
+    public static long[] voteCounterChange(Boolean previous, Boolean next) {
+        long accurate = (Boolean.TRUE.equals(next) ? 1 : 0) - (Boolean.TRUE.equals(previous) ? 1 : 0);
+        long total = (next != null ? 1 : 0) - (previous != null ? 1 : 0);
+        return new long[]{accurate, total};
+    }
+
+    public static double calculateAccuracyFromCounts(long accurateVotes, long totalVotes) {
+        return totalVotes > 0 ? (accurateVotes * 100.0) / totalVotes : 0.0;
     }
 
     /**
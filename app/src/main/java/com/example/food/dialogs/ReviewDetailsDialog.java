@@ -34,14 +34,20 @@ import androidx.viewpager2.widget.ViewPager2;
 import com.example.food.R;
 import com.example.food.adapters.CommentsAdapter;
 import com.example.food.adapters.ImagePagerAdapter;
+import com.example.food.cache.LocalReviewStore;
 import com.example.food.data.Review;
 import com.example.food.model.Restaurant;
+import com.example.food.service.RestaurantRepository;
+import com.example.food.service.ReviewService;
 import com.example.food.services.UserStatsService;
+import com.example.food.utils.ReviewSearchIndex;
 import com.google.android.material.bottomsheet.BottomSheetDialog;
 import com.google.android.material.button.MaterialButton;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
 
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -92,6 +98,14 @@ public class ReviewDetailsDialog extends Dialog {
     // Data
     private String currentUserId;
     private Boolean currentUserVote;
+    private boolean votesLoading;
+    private ListenerRegistration commentsRegistration;
+    // the sheet's comments by id, the live newest page plus the older pages read so far.
+    // Comments are never edited or deleted, so a comment once read stays as it is
+    private final Map<String, com.example.food.data.Comment> loadedComments = new HashMap<>();
+    private DocumentSnapshot olderCommentsCursor;
+    private boolean olderCommentsPaged;
+    private boolean moreComments;
     private OnReviewUpdatedListener onReviewUpdatedListener;
 
     public interface OnReviewUpdatedListener {
@@ -115,6 +129,7 @@ public class ReviewDetailsDialog extends Dialog {
         if (onReviewUpdatedListener != null) {
             onReviewUpdatedListener.onReviewUpdated(review);
         }
+        stopListeningToComments();
         super.dismiss();
     }
 
@@ -278,7 +293,7 @@ public class ReviewDetailsDialog extends Dialog {
 
     private void setupImageGallery() {
         if (review.getImageUrls() != null && !review.getImageUrls().isEmpty()) {
-            imagePagerAdapter.setImages(review.getImageUrls());
+            imagePagerAdapter.setImages(review);
         } else {
             // Show placeholder
             List<String> placeholder = new ArrayList<>();
@@ -300,15 +315,11 @@ public class ReviewDetailsDialog extends Dialog {
 
     private void updateVoteDisplay() {
         if (tvVoteCount != null) {
-            if (review.getVotes() != null) {
-                int voteCount = review.getVotes().size();
-                String text = voteCount == 1 ?
-                    "1 person found this accurate" :
-                    voteCount + " people found this accurate";
-                tvVoteCount.setText(text);
-            } else {
-                tvVoteCount.setText("0 people found this accurate");
-            }
+            long voteCount = review.getVoteCount();
+            String text = voteCount == 1 ?
+                "1 person found this accurate" :
+                voteCount + " people found this accurate";
+            tvVoteCount.setText(text);
         }
     }
 
@@ -373,6 +384,14 @@ public class ReviewDetailsDialog extends Dialog {
             return;
         }
 
+        if (!review.areVotesLoaded()) {
+            // read from the feed without its votes, the buttons wait for this user's vote
+            btnAccurateIcon.setEnabled(false);
+            btnInaccurateIcon.setEnabled(false);
+            loadVotes();
+            return;
+        }
+
         // Check current user's vote
         if (review.getVotes() != null && review.getVotes().containsKey(currentUserId)) {
             Map<String, Object> voteData = review.getVotes().get(currentUserId);
@@ -496,18 +515,89 @@ public class ReviewDetailsDialog extends Dialog {
         TextView empty = view.findViewById(R.id.tvNoComments);
         EditText etCommentInput = view.findViewById(R.id.etCommentInput);
         ImageView btnSendComment = view.findViewById(R.id.btnSendComment);
+        TextView btnLoadOlder = view.findViewById(R.id.btnLoadOlderComments);
 
-        CommentsAdapter adapter = new CommentsAdapter(review.getComments() != null ? review.getComments() : new ArrayList<>());
+        CommentsAdapter adapter = new CommentsAdapter(new ArrayList<>());
         commentsList.setLayoutManager(new LinearLayoutManager(getContext()));
         commentsList.setAdapter(adapter);
+        commentsList.setVisibility(View.GONE);
+        empty.setVisibility(View.GONE);
+
+        ReviewService reviewService = new ReviewService();
+        loadedComments.clear();
+        olderCommentsCursor = null;
+        olderCommentsPaged = false;
+        moreComments = false;
+        Runnable showComments = () -> {
+            List<com.example.food.data.Comment> comments = new ArrayList<>(loadedComments.values());
+            comments.sort(ReviewDetailsDialog::compareNewestFirst);
+            adapter.setComments(comments);
+            commentsList.setVisibility(comments.isEmpty() ? View.GONE : View.VISIBLE);
+            empty.setVisibility(comments.isEmpty() ? View.VISIBLE : View.GONE);
+            btnLoadOlder.setVisibility(moreComments ? View.VISIBLE : View.GONE);
+        };
+        ReviewService.CommentsCallback newestComments = new ReviewService.CommentsCallback() {
+            @Override
+            public void onComments(List<com.example.food.data.Comment> comments, DocumentSnapshot oldest,
+                                   boolean hasMore) {
+                addComments(comments);
+                // until an older page is read, paging back starts below the live page
+                if (!olderCommentsPaged) {
+                    olderCommentsCursor = oldest;
+                    moreComments = hasMore;
+                }
+                showComments.run();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                btnLoadOlder.setVisibility(View.GONE);
+            }
+        };
+        btnLoadOlder.setOnClickListener(v -> {
+            if (olderCommentsCursor == null) return;
+            btnLoadOlder.setVisibility(View.GONE);
+            ListenerRegistration sheetRegistration = commentsRegistration;
+            reviewService.loadOlderComments(review.getId(), olderCommentsCursor, new ReviewService.CommentsCallback() {
+                @Override
+                public void onComments(List<com.example.food.data.Comment> comments, DocumentSnapshot oldest,
+                                       boolean hasMore) {
+                    // the sheet was closed meanwhile
+                    if (commentsRegistration != sheetRegistration) return;
+                    addComments(comments);
+                    olderCommentsPaged = true;
+                    if (oldest != null) {
+                        olderCommentsCursor = oldest;
+                    }
+                    moreComments = hasMore;
+                    showComments.run();
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    // offer the page again
+                    btnLoadOlder.setVisibility(View.VISIBLE);
+                }
+            });
+        });
 
-        if (review.getComments() != null && !review.getComments().isEmpty()) {
+        if (review.hasLegacyComments()) {
+            // show the inline comments right away, the listener takes over once they're moved
             adapter.setComments(review.getComments());
             commentsList.setVisibility(View.VISIBLE);
-            empty.setVisibility(View.GONE);
+            reviewService.migrateComments(review, new ReviewService.ReviewSaveCallback() {
+                @Override
+                public void onSuccess() {
+                    listenToComments(reviewService, newestComments);
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    // the inline comments stay on screen, the next open tries again
+                }
+            });
         } else {
-            commentsList.setVisibility(View.GONE);
-            empty.setVisibility(View.VISIBLE);
+            listenToComments(reviewService, newestComments);
         }
 
         // change navigation bar color to white when bottom sheet opens
@@ -532,6 +622,7 @@ public class ReviewDetailsDialog extends Dialog {
 
         // restore nav bar color when closed
         sheet.setOnDismissListener(dialog -> {
+            stopListeningToComments();
             // restore activity window navigation bar to match theme
             FragmentActivity activity = getHostActivity();
             if (activity != null && activity.getWindow() != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
@@ -579,37 +670,24 @@ public class ReviewDetailsDialog extends Dialog {
                             user.getEmail().split("@")[0] : "Anonymous";
                     }
 
-                    // Create comment data map
-                    Map<String, Object> commentData = new HashMap<>();
-                    commentData.put("userId", currentUserId);
-                    commentData.put("userName", username);
-                    commentData.put("text", commentText);
-                    commentData.put("createdAt", com.google.firebase.Timestamp.now());
-
-                    // Add comment to reviews document's comments array
-                    Map<String, Object> updates = new HashMap<>();
-                    updates.put("comments", com.google.firebase.firestore.FieldValue.arrayUnion(commentData));
-
-                    db.collection("reviews").document(review.getId())
-                        .update(updates)
-                        .addOnSuccessListener(aVoid -> {
-                            // Clear input
+                    com.example.food.data.Comment comment = new com.example.food.data.Comment(
+                        null, currentUserId, username, commentText, new java.util.Date());
+
+                    // The comments listener shows the new comment as soon as it's written locally
+                    reviewService.addComment(review, comment, new ReviewService.ReviewSaveCallback() {
+                        @Override
+                        public void onSuccess() {
                             etCommentInput.setText("");
                             btnSendComment.setEnabled(true);
-                            
-                            // Immediately add the new comment to the current review object
-                            addCommentToCurrentReview(commentData);
-                            
-                            // Refresh the comments in the bottom sheet
-                            refreshCommentsInBottomSheet(adapter, commentsList, empty);
-                            
                             Toast.makeText(getContext(), "Comment added", Toast.LENGTH_SHORT).show();
-                        })
-                        .addOnFailureListener(e -> {
-                            Log.e(TAG, "Error adding comment", e);
+                        }
+
+                        @Override
+                        public void onError(Exception e) {
                             btnSendComment.setEnabled(true);
                             Toast.makeText(getContext(), "Failed to add comment: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-                        });
+                        }
+                    });
                 })
                 .addOnFailureListener(e -> {
                     Log.e(TAG, "Error fetching username", e);
@@ -627,89 +705,50 @@ public class ReviewDetailsDialog extends Dialog {
         openCommentsBottomSheet();
     }
 
-    private void addCommentToCurrentReview(Map<String, Object> commentData) {
-        // Convert the comment data to Comment object
-        com.example.food.data.Comment newComment = new com.example.food.data.Comment();
-        newComment.setUserId((String) commentData.get("userId"));
-        newComment.setUserName((String) commentData.get("userName"));
-        newComment.setText((String) commentData.get("text"));
-        com.google.firebase.Timestamp timestamp = (com.google.firebase.Timestamp) commentData.get("createdAt");
-        newComment.setCreatedAt(timestamp != null ? timestamp.toDate() : null);
-        
-        // Add to current review's comments list
-        if (review.getComments() == null) {
-            review.setComments(new ArrayList<>());
+    // One listener per open sheet, on the newest page only
+    private void listenToComments(ReviewService reviewService, ReviewService.CommentsCallback callback) {
+        stopListeningToComments();
+        commentsRegistration = reviewService.listenToComments(review.getId(), callback);
+    }
+
+    private void addComments(List<com.example.food.data.Comment> comments) {
+        for (com.example.food.data.Comment comment : comments) {
+            loadedComments.put(comment.getId(), comment);
         }
-        review.getComments().add(newComment);
-        
-        // Sort comments by timestamp (newest first)
-        review.getComments().sort((c1, c2) -> {
-            if (c1.getCreatedAt() == null) return 1;
-            if (c2.getCreatedAt() == null) return -1;
-            return c2.getCreatedAt().compareTo(c1.getCreatedAt());
-        });
     }
 
-    private void refreshCommentsInBottomSheet(CommentsAdapter adapter, RecyclerView commentsList, TextView empty) {
-        // First try to use comments from current review object (for immediate updates)
-        if (review.getComments() != null && !review.getComments().isEmpty()) {
-            adapter.setComments(review.getComments());
-            
-            if (review.getComments().isEmpty()) {
-                commentsList.setVisibility(View.GONE);
-                empty.setVisibility(View.VISIBLE);
-            } else {
-                commentsList.setVisibility(View.VISIBLE);
-                empty.setVisibility(View.GONE);
-            }
-            return;
+    // pending comments have no server time yet and go first
+    private static int compareNewestFirst(com.example.food.data.Comment a, com.example.food.data.Comment b) {
+        if (a.getCreatedAt() == null) return b.getCreatedAt() == null ? 0 : -1;
+        if (b.getCreatedAt() == null) return 1;
+        return b.getCreatedAt().compareTo(a.getCreatedAt());
+    }
+
+    private void stopListeningToComments() {
+        if (commentsRegistration != null) {
+            commentsRegistration.remove();
+            commentsRegistration = null;
         }
-        
-        // If no comments in current review object, load from Firestore
-        db.collection("reviews").document(review.getId())
-            .get()
-            .addOnSuccessListener(documentSnapshot -> {
-                if (documentSnapshot.exists()) {
-                    List<Map<String, Object>> commentsData = 
-                        (List<Map<String, Object>>) documentSnapshot.get("comments");
-                    
-                    List<com.example.food.data.Comment> comments = new ArrayList<>();
-                    if (commentsData != null) {
-                        for (Map<String, Object> commentMap : commentsData) {
-                            com.example.food.data.Comment comment = new com.example.food.data.Comment();
-                            comment.setUserId((String) commentMap.get("userId"));
-                            comment.setUserName((String) commentMap.get("userName"));
-                            comment.setText((String) commentMap.get("text"));
-                            com.google.firebase.Timestamp timestamp = (com.google.firebase.Timestamp) commentMap.get("createdAt");
-                            comment.setCreatedAt(timestamp != null ? timestamp.toDate() : null);
-                            comments.add(comment);
-                        }
-                    }
+    }
 
-                    // Sort comments by timestamp (newest first)
-                    comments.sort((c1, c2) -> {
-                        if (c1.getCreatedAt() == null) return 1;
-                        if (c2.getCreatedAt() == null) return -1;
-                        return c2.getCreatedAt().compareTo(c1.getCreatedAt());
-                    });
+    private void loadVotes() {
+        if (votesLoading) return;
+        votesLoading = true;
+        new ReviewService().loadVotes(review, new ReviewService.ReviewSaveCallback() {
+            @Override
+            public void onSuccess() {
+                votesLoading = false;
+                updateVoteDisplay();
+                updateVoteButtons();
+                updateAccuracyDisplay();
+            }
 
-                    // Update the current review object with loaded comments
-                    review.setComments(comments);
-                    
-                    adapter.setComments(comments);
-                    
-                    if (comments.isEmpty()) {
-                        commentsList.setVisibility(View.GONE);
-                        empty.setVisibility(View.VISIBLE);
-                    } else {
-                        commentsList.setVisibility(View.VISIBLE);
-                        empty.setVisibility(View.GONE);
-                    }
-                }
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Error refreshing comments", e);
-            });
+            @Override
+            public void onError(Exception e) {
+                // buttons stay disabled, reopening the review tries again
+                votesLoading = false;
+            }
+        });
     }
 
     private void vote(boolean accurate) {
@@ -717,64 +756,50 @@ public class ReviewDetailsDialog extends Dialog {
             Toast.makeText(getContext(), "Please log in to vote", Toast.LENGTH_SHORT).show();
             return;
         }
+        if (!review.areVotesLoaded()) {
+            return;
+        }
 
         // Update local state first for immediate UI feedback
         if (review.getVotes() == null) {
             review.setVotes(new HashMap<>());
         }
 
-        boolean wasPreviouslyVoted = review.getVotes().containsKey(currentUserId);
-        final Boolean previousVote;
-        if (wasPreviouslyVoted && review.getVotes().get(currentUserId) != null) {
-            previousVote = (Boolean) review.getVotes().get(currentUserId).get("accurate");
-        } else {
-            previousVote = null;
-        }
+        Map<String, Object> previousData = review.getVotes().get(currentUserId);
+        final Boolean previousVote = previousData != null ? Boolean.TRUE.equals(previousData.get("accurate")) : null;
 
         // If clicking the same button, remove vote
-        if (wasPreviouslyVoted && ((previousVote != null && previousVote == accurate))) {
-            review.getVotes().remove(currentUserId);
-        } else {
-            Map<String, Object> voteData = new HashMap<>();
-            voteData.put("accurate", accurate);
-            voteData.put("timestamp", new java.util.Date());
-            review.getVotes().put(currentUserId, voteData);
-        }
+        final Boolean newVote = previousVote != null && previousVote == accurate ? null : accurate;
+        review.applyVote(currentUserId, newVote);
 
-            // Update UI immediately
-            updateVoteDisplay();
-            updateVoteButtons();
-            updateAccuracyDisplay(); // Recalculate accuracy after vote
-
-            // Update in Firebase
-        Map<String, Object> updates = new HashMap<>();
-        updates.put("votes", review.getVotes());
-        updates.put("accuracyPercent", review.getAccuracyPercent());
-
-        db.collection("reviews").document(review.getId())
-                .update(updates)
-                .addOnSuccessListener(aVoid -> {
-                    Log.d(TAG, "Vote and accuracy updated successfully");
-                    // Update the review author's scores when their review gets voted on
-                    UserStatsService.updateUserScoresOnVoteChange(review.getId());
-                })
-                .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error updating vote", e);
-                    Toast.makeText(getContext(), "Failed to update vote", Toast.LENGTH_SHORT).show();
-
-                    // Revert local changes on error
-                    if (wasPreviouslyVoted) {
-                        Map<String, Object> voteData = new HashMap<>();
-                        voteData.put("accurate", previousVote);
-                        voteData.put("timestamp", new java.util.Date());
-                        review.getVotes().put(currentUserId, voteData);
-                    } else {
-                        review.getVotes().remove(currentUserId);
-                    }
-                    updateVoteDisplay();
-                    updateVoteButtons();
-                    updateAccuracyDisplay();
-                });
+        // Update UI immediately
+        updateVoteDisplay();
+        updateVoteButtons();
+        updateAccuracyDisplay(); // Recalculate accuracy after vote
+
+        // Only this voter's entry and the counters are written
+        ReviewService reviewService = new ReviewService();
+        reviewService.setVote(review, currentUserId, newVote, new ReviewService.VoteSaveCallback() {
+            @Override
+            public void onSuccess(ReviewService.VoteResult result) {
+                Log.d(TAG, "Vote updated successfully");
+                // Update the review author's scores from the stored counts, not this copy's map
+                UserStatsService.updateUserScoresOnVoteChange(review.getUserId(),
+                        result.getCountsBefore(), result.getCountsAfter());
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Error updating vote", e);
+                Toast.makeText(getContext(), "Failed to update vote", Toast.LENGTH_SHORT).show();
+
+                // Revert local changes on error
+                review.applyVote(currentUserId, previousVote);
+                updateVoteDisplay();
+                updateVoteButtons();
+                updateAccuracyDisplay();
+            }
+        });
     }
 
     private void setStarRating(double rating) {
@@ -885,13 +910,12 @@ public class ReviewDetailsDialog extends Dialog {
             return;
         }
 
-        db.collection("restaurants")
-            .document(restaurantId)
-            .get()
-            .addOnSuccessListener(documentSnapshot -> {
-                if (documentSnapshot.exists()) {
+        RestaurantRepository.getInstance(getContext()).getRestaurants(
+            java.util.Collections.singletonList(restaurantId), restaurants -> {
+                Restaurant restaurant = restaurants.get(restaurantId);
+                if (restaurant != null) {
                     // Set restaurant name
-                    String restaurantName = documentSnapshot.getString("name");
+                    String restaurantName = restaurant.getName();
                     if (restaurantName != null && !restaurantName.trim().isEmpty()) {
                         tvRestaurantName.setText(restaurantName);
                     } else {
@@ -899,23 +923,24 @@ public class ReviewDetailsDialog extends Dialog {
                     }
 
                     // Set restaurant address
-                    String address = documentSnapshot.getString("address");
+                    String address = restaurant.getAddress();
                     if (tvRestaurantAddress != null) {
                         tvRestaurantAddress.setText(address != null && !address.trim().isEmpty() ? address : "Address not available");
                     }
 
                     // Set restaurant category
-                    String category = documentSnapshot.getString("category");
+                    String category = restaurant.getCategory();
                     if (tvRestaurantCategory != null) {
                         tvRestaurantCategory.setText(category != null && !category.trim().isEmpty() ? category : "Restaurant");
                     }
 
                     // Set restaurant location/region
-                    String region = documentSnapshot.getString("region");
+                    String region = restaurant.getRegion();
                     if (tvRestaurantLocation != null) {
                         tvRestaurantLocation.setText(region != null && !region.trim().isEmpty() ? region : "Location");
                     }
                 } else {
+                    Log.w(TAG, "Restaurant not found: " + restaurantId);
                     tvRestaurantName.setText(getContext().getString(R.string.restaurant_placeholder));
                     if (tvRestaurantAddress != null) {
                         tvRestaurantAddress.setText("Address not available");
@@ -923,12 +948,6 @@ public class ReviewDetailsDialog extends Dialog {
                     tvRestaurantCategory.setText("Restaurant");
                     tvRestaurantLocation.setText("Location");
                 }
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Error fetching restaurant name", e);
-                tvRestaurantName.setText(getContext().getString(R.string.restaurant_placeholder));
-                tvRestaurantCategory.setText("Restaurant");
-                tvRestaurantLocation.setText("Location");
             });
     }
 
@@ -1064,20 +1083,25 @@ public class ReviewDetailsDialog extends Dialog {
         // Show loading state
         Toast.makeText(getContext(), "Deleting review...", Toast.LENGTH_SHORT).show();
 
-        // Delete from Firestore
-        db.collection("reviews")
-            .document(review.getId())
-            .delete()
-            .addOnSuccessListener(aVoid -> {
+        // Tombstone in Firestore so other feeds drop it on their next sync
+        new ReviewService().deleteReview(review.getId(), new ReviewService.ReviewSaveCallback() {
+            @Override
+            public void onSuccess() {
                 Log.d(TAG, "Review deleted successfully");
                 Toast.makeText(getContext(), "Review deleted successfully", Toast.LENGTH_SHORT).show();
-                
+                ReviewSearchIndex.getInstance().removeReview(review.getId());
+                LocalReviewStore.getInstance(getContext()).deleteReview(review.getId());
+                UserStatsService.updateUserScoresOnReviewDeleted(review);
+
                 // Close the dialog
                 dismiss();
-            })
-            .addOnFailureListener(e -> {
+            }
+
+            @Override
+            public void onError(Exception e) {
                 Log.e(TAG, "Error deleting review", e);
                 Toast.makeText(getContext(), "Failed to delete review: " + e.getMessage(), Toast.LENGTH_SHORT).show();
-            });
+            }
+        });
     }
 }
\ No newline at end of file
@@ -0,0 +1,368 @@
+package com.example.food.service;
+
+import android.util.Log;
+
+import com.example.food.data.ActivityItem;
+import com.example.food.data.Comment;
+import com.example.food.data.Review;
+import com.google.android.gms.tasks.Task;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldValue;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.Query;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.SetOptions;
+import com.google.firebase.firestore.WriteBatch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Per-user activity inbox at users/{id}/activity. The voter or commenter appends one document
+ * when they act on someone's review, so the Activity tab reads its newest page in timestamp
+ * order instead of expanding every review the user ever wrote. Only accurate votes are kept,
+ * a vote that is withdrawn or turned inaccurate removes its document again
+ */
+public class ActivityInbox {
+    private static final String TAG = "ActivityInbox";
+    static final String COLLECTION_USERS = "users";
+    static final String COLLECTION_ACTIVITY = "activity";
+    static final String FIELD_TIMESTAMP = "timestamp";
+    // on the user document once their inbox holds the activity from before it existed
+    static final String FIELD_INBOX_VERSION = "activityInboxVersion";
+    static final int INBOX_VERSION = 1;
+    static final long BACKFILL_WINDOW = 30L * 24 * 60 * 60 * 1000; // what the tab used to show
+    private static final int BATCH_LIMIT = 450; // under Firestore's 500 writes per batch
+    public static final int PAGE_SIZE = 20;
+
+    // users whose backfill is known to be done, so the check is one read per process
+    private static final Set<String> backfilledUsers = new HashSet<>();
+
+    private final FirebaseFirestore db;
+
+    public ActivityInbox() {
+        this(FirebaseFirestore.getInstance());
+    }
+
+    public ActivityInbox(FirebaseFirestore db) {
+        this.db = db;
+    }
+
+    public interface ActivityPageCallback {
+        void onSuccess(List<ActivityItem> activities, DocumentSnapshot nextCursor, boolean hasMore);
+        void onError(Exception e);
+    }
+
+    public interface ActivityChangesListener {
+        void onActivityChanges(List<ActivityItem> added, List<String> removedIds);
+    }
+
+    private CollectionReference activityRef(String userId) {
+        return db.collection(COLLECTION_USERS).document(userId).collection(COLLECTION_ACTIVITY);
+    }
+
+    /**
+     * One document per voter and review, so changing a vote back and forth keeps one entry
+     */
+    static String voteActivityId(String reviewId, String voterId) {
+        return "vote_" + reviewId + "_" + voterId;
+    }
+
+    // comment ids are only unique within their review (migrated ones are legacy-0, legacy-1..)
+    static String commentActivityId(String reviewId, String commentId) {
+        return "comment_" + reviewId + "_" + commentId;
+    }
+
+    private static boolean isOwnReview(Review review, String actorId) {
+        return review.getUserId() == null || review.getUserId().equals(actorId);
+    }
+
+    /**
+     * The inbox document for voterId's vote on review, null on their own review. Written in
+     * the same transaction as the vote: set while it's accurate, deleted otherwise
+     */
+    DocumentReference voteDocument(Review review, String voterId) {
+        if (isOwnReview(review, voterId)) return null;
+        return activityRef(review.getUserId()).document(voteActivityId(review.getId(), voterId));
+    }
+
+    /**
+     * The inbox document for a comment on review, null on the author's own review. Written in
+     * the same batch as the comment
+     */
+    DocumentReference commentDocument(Review review, Comment comment) {
+        if (isOwnReview(review, comment.getUserId())) return null;
+        return activityRef(review.getUserId()).document(commentActivityId(review.getId(), comment.getId()));
+    }
+
+    private static Map<String, Object> reviewData(Review review, ActivityItem.ActivityType type, String actorId,
+                                                  Object timestamp) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("type", type.name());
+        data.put("userId", actorId);
+        data.put("reviewId", review.getId());
+        data.put("restaurantId", review.getRestaurantId());
+        data.put("reviewCaption", review.getCaption());
+        if (review.getImageUrls() != null && !review.getImageUrls().isEmpty()) {
+            data.put("reviewFirstImageUrl", review.getImageUrls().get(0));
+            data.put("reviewFirstThumbnailUrl", review.getImageVariants(0).getThumbnailUrl());
+        }
+        data.put(FIELD_TIMESTAMP, timestamp);
+        return data;
+    }
+
+    static Map<String, Object> voteData(Review review, String voterId, Object timestamp) {
+        Map<String, Object> data = reviewData(review, ActivityItem.ActivityType.VOTE, voterId, timestamp);
+        data.put("voteType", true);
+        return data;
+    }
+
+    static Map<String, Object> commentData(Review review, Comment comment, Object timestamp) {
+        Map<String, Object> data = reviewData(review, ActivityItem.ActivityType.COMMENT, comment.getUserId(), timestamp);
+        data.put("commentText", comment.getText());
+        return data;
+    }
+
+    /**
+     * One page of userId's activity, newest first. Pass the cursor from the previous page to
+     * continue, or null for the first page
+     */
+    public void loadPage(String userId, DocumentSnapshot after, int pageSize, ActivityPageCallback callback) {
+        Query query = activityRef(userId).orderBy(FIELD_TIMESTAMP, Query.Direction.DESCENDING);
+        if (after != null) {
+            query = query.startAfter(after);
+        }
+        query.limit(pageSize)
+                .get()
+                .addOnSuccessListener(snapshots -> {
+                    List<ActivityItem> activities = new ArrayList<>();
+                    DocumentSnapshot nextCursor = after;
+                    for (QueryDocumentSnapshot document : snapshots) {
+                        nextCursor = document;
+                        ActivityItem activity = parseActivity(document);
+                        if (activity != null) {
+                            activities.add(activity);
+                        }
+                    }
+                    callback.onSuccess(activities, nextCursor, snapshots.size() >= pageSize);
+                })
+                .addOnFailureListener(e -> {
+                    Log.w(TAG, "Error loading activity page for user: " + userId, e);
+                    callback.onError(e);
+                });
+    }
+
+    /**
+     * Activity written after since, as it arrives. Only the new documents are read, so an
+     * entry from before since that is deleted, a withdrawn vote on an older page, is not
+     * reported and stays shown until the next first page is loaded
+     */
+    public ListenerRegistration listenForNew(String userId, Date since, ActivityChangesListener listener) {
+        return activityRef(userId)
+                .whereGreaterThan(FIELD_TIMESTAMP, since)
+                .orderBy(FIELD_TIMESTAMP, Query.Direction.DESCENDING)
+                .addSnapshotListener((snapshots, error) -> {
+                    if (error != null) {
+                        Log.w(TAG, "Error listening to activity of user: " + userId, error);
+                        return;
+                    }
+                    if (snapshots == null) return;
+
+                    List<ActivityItem> added = new ArrayList<>();
+                    List<String> removedIds = new ArrayList<>();
+                    for (DocumentChange change : snapshots.getDocumentChanges()) {
+                        if (change.getType() == DocumentChange.Type.REMOVED) {
+                            removedIds.add(change.getDocument().getId());
+                            continue;
+                        }
+                        ActivityItem activity = parseActivity(change.getDocument());
+                        if (activity != null) {
+                            added.add(activity);
+                        }
+                    }
+                    if (!added.isEmpty() || !removedIds.isEmpty()) {
+                        listener.onActivityChanges(added, removedIds);
+                    }
+                });
+    }
+
+    private static ActivityItem parseActivity(DocumentSnapshot document) {
+        try {
+            ActivityItem activity = document.toObject(ActivityItem.class);
+            if (activity == null) return null;
+            activity.setId(document.getId());
+            return activity;
+        } catch (Exception e) {
+            Log.w(TAG, "Error parsing activity: " + document.getId(), e);
+            return null;
+        }
+    }
+
+    /**
+     * Fill userId's inbox once with the last 30 days of activity on their reviews from before
+     * the inbox existed, then run onDone. Later calls only check the flag on the user document
+     */
+    public void backfillIfNeeded(String userId, Runnable onDone) {
+        synchronized (backfilledUsers) {
+            if (backfilledUsers.contains(userId)) {
+                onDone.run();
+                return;
+            }
+        }
+
+        db.collection(COLLECTION_USERS).document(userId)
+                .get()
+                .addOnSuccessListener(user -> {
+                    Long version = user.getLong(FIELD_INBOX_VERSION);
+                    if (version != null && version >= INBOX_VERSION) {
+                        markBackfilled(userId);
+                        onDone.run();
+                    } else {
+                        backfill(userId, onDone);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    Log.w(TAG, "Error checking activity inbox of user: " + userId, e);
+                    onDone.run();
+                });
+    }
+
+    private static void markBackfilled(String userId) {
+        synchronized (backfilledUsers) {
+            backfilledUsers.add(userId);
+        }
+    }
+
+    private void backfill(String userId, Runnable onDone) {
+        long since = System.currentTimeMillis() - BACKFILL_WINDOW;
+        db.collection("reviews")
+                .whereEqualTo("userId", userId)
+                .get()
+                .addOnSuccessListener(reviewSnapshots -> {
+                    Map<String, Review> reviews = new HashMap<>();
+                    for (QueryDocumentSnapshot document : reviewSnapshots) {
+                        try {
+                            Review review = document.toObject(Review.class);
+                            review.setId(document.getId());
+                            reviews.put(review.getId(), review);
+                        } catch (Exception e) {
+                            Log.w(TAG, "Error parsing review: " + document.getId(), e);
+                        }
+                    }
+                    Map<String, Map<String, Object>> activities =
+                            activitiesFromReviews(new ArrayList<>(reviews.values()), userId, since);
+
+                    // comments already in the subcollections
+                    db.collectionGroup(ReviewService.COLLECTION_COMMENTS)
+                            .whereEqualTo("reviewUserId", userId)
+                            .get()
+                            .addOnSuccessListener(commentSnapshots -> {
+                                for (QueryDocumentSnapshot document : commentSnapshots) {
+                                    Review review = reviews.get(document.getReference().getParent().getParent().getId());
+                                    Comment comment = document.toObject(Comment.class);
+                                    if (review == null || comment == null) continue;
+                                    comment.setId(document.getId());
+                                    addComment(activities, review, comment, userId, since);
+                                }
+                                writeBackfill(userId, activities, onDone);
+                            })
+                            .addOnFailureListener(e -> {
+                                Log.w(TAG, "Error reading comments for activity backfill", e);
+                                writeBackfill(userId, activities, onDone);
+                            });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error reading reviews for activity backfill", e);
+                    onDone.run();
+                });
+    }
+
+    /**
+     * Inbox documents, by id, for the accurate votes and inline comments others left on
+     * userId's reviews since the given time
+     */
+    static Map<String, Map<String, Object>> activitiesFromReviews(List<Review> reviews, String userId, long since) {
+        Map<String, Map<String, Object>> activities = new LinkedHashMap<>();
+        for (Review review : reviews) {
+            if (review.getVotes() != null) {
+                for (Map.Entry<String, Map<String, Object>> vote : review.getVotes().entrySet()) {
+                    String voterId = vote.getKey();
+                    Date timestamp = toDate(vote.getValue() != null ? vote.getValue().get("timestamp") : null);
+                    if (voterId.equals(userId) || timestamp == null || timestamp.getTime() < since
+                            || !Boolean.TRUE.equals(vote.getValue().get("accurate"))) {
+                        continue;
+                    }
+                    activities.put(voteActivityId(review.getId(), voterId), voteData(review, voterId, timestamp));
+                }
+            }
+            // ids as migrateComments will give them
+            List<Comment> comments = review.getComments() != null ? review.getComments() : Collections.emptyList();
+            for (int i = 0; i < comments.size(); i++) {
+                Comment comment = comments.get(i);
+                comment.setId(ReviewService.LEGACY_COMMENT_ID_PREFIX + i);
+                addComment(activities, review, comment, userId, since);
+            }
+        }
+        return activities;
+    }
+
+    private static void addComment(Map<String, Map<String, Object>> activities, Review review, Comment comment,
+                                   String userId, long since) {
+        if (userId.equals(comment.getUserId()) || comment.getCreatedAt() == null
+                || comment.getCreatedAt().getTime() < since) {
+            return;
+        }
+        activities.put(commentActivityId(review.getId(), comment.getId()),
+                commentData(review, comment, comment.getCreatedAt()));
+    }
+
+    private static Date toDate(Object value) {
+        if (value instanceof Timestamp) return ((Timestamp) value).toDate();
+        if (value instanceof Date) return (Date) value;
+        return null;
+    }
+
+    // Batches of writes, the last one also sets the flag on the user document
+    private void writeBackfill(String userId, Map<String, Map<String, Object>> activities, Runnable onDone) {
+        List<Map.Entry<String, Map<String, Object>>> entries = new ArrayList<>(activities.entrySet());
+        List<Task<Void>> commits = new ArrayList<>();
+        WriteBatch batch = db.batch();
+        int writes = 0;
+        for (Map.Entry<String, Map<String, Object>> entry : entries) {
+            batch.set(activityRef(userId).document(entry.getKey()), entry.getValue());
+            if (++writes == BATCH_LIMIT) {
+                commits.add(batch.commit());
+                batch = db.batch();
+                writes = 0;
+            }
+        }
+        Map<String, Object> flag = new HashMap<>();
+        flag.put(FIELD_INBOX_VERSION, INBOX_VERSION);
+        batch.set(db.collection(COLLECTION_USERS).document(userId), flag, SetOptions.merge());
+        commits.add(batch.commit());
+
+        Tasks.whenAll(commits)
+                .addOnSuccessListener(aVoid -> {
+                    markBackfilled(userId);
+                    Log.d(TAG, "Backfilled " + entries.size() + " activities for user: " + userId);
+                    onDone.run();
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error writing activity backfill for user: " + userId, e);
+                    onDone.run();
+                });
+    }
+}
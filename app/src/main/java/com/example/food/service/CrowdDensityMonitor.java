@@ -0,0 +1,446 @@
+package com.example.food.service;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.food.data.CrowdFeedback;
+import com.google.firebase.Timestamp;
+import com.google.firebase.firestore.DocumentChange;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Live crowd density for every restaurant, fed by a snapshot listener on recent crowdFeedback.
+ * Each restaurant keeps running sums per time-weight bucket (same buckets as
+ * CrowdDensityService.calculateTimeWeight), so a new feedback or a feedback ageing into the
+ * next bucket is an O(1) update. Only results that actually changed are pushed to the listener.
+ * Not thread-safe, call it from the main thread.
+ */
+public class CrowdDensityMonitor {
+    private static final String TAG = "CrowdDensityMonitor";
+    private static final long MINUTE_MILLIS = 60 * 1000;
+
+    // Feedback younger than BUCKET_END_MILLIS[i] falls into bucket i. The bounds match the
+    // whole-minute thresholds in calculateTimeWeight (<= 15 minutes means younger than 16)
+    private static final long[] BUCKET_END_MILLIS = {
+        16 * MINUTE_MILLIS, 31 * MINUTE_MILLIS, 46 * MINUTE_MILLIS, CrowdDensityService.WINDOW_MILLIS
+    };
+    private static final int[] BUCKET_WEIGHTS = {4, 3, 2, 1};
+    private static final int EXPIRED = -1;
+
+    // The listener query window is fixed when it is attached, so re-attach it once it has
+    // accumulated this much expired feedback
+    private static final long RESUBSCRIBE_AFTER_MILLIS = 2 * CrowdDensityService.WINDOW_MILLIS;
+
+    private final FeedbackSource source;
+    private final Clock clock;
+    private final Scheduler scheduler;
+
+    // feedbackId -> entry for every feedback currently counted
+    private final Map<String, Entry> entries = new HashMap<>();
+    private final Map<String, RestaurantWindow> windows = new HashMap<>();
+    // Active entries ordered by when they move to their next bucket
+    private final PriorityQueue<Entry> transitions =
+        new PriorityQueue<>((a, b) -> Long.compare(a.nextTransitionAt, b.nextTransitionAt));
+    private final Map<String, CrowdDensityService.CrowdDensityResult> published = new HashMap<>();
+    private final Set<String> dirty = new HashSet<>();
+    private final Runnable tickTask = this::tick;
+
+    private OnCrowdDensityChangedListener listener;
+    private boolean running = false;
+    private boolean ready = false;
+    private long subscribedAt;
+
+    public interface OnCrowdDensityChangedListener {
+        void onCrowdDensityChanged(Map<String, CrowdDensityService.CrowdDensityResult> changed);
+        void onError(Exception e);
+    }
+
+    interface Clock {
+        long now();
+    }
+
+    interface Scheduler {
+        void schedule(Runnable task, long delayMillis);
+        void cancel(Runnable task);
+    }
+
+    interface FeedbackSource {
+        void start(long windowStartMillis, FeedbackListener listener);
+        void stop();
+    }
+
+    interface FeedbackListener {
+        void onFeedbackChanged(List<CrowdFeedback> added, List<String> removedIds);
+        void onError(Exception e);
+    }
+
+    private static class Entry {
+        final String id;
+        final String restaurantId;
+        final String userId;
+        final int crowdingLevel;
+        final long timestampMillis;
+        int bucket;
+        long nextTransitionAt;
+        boolean active = true;
+
+        Entry(CrowdFeedback feedback) {
+            this.id = feedback.getId();
+            this.restaurantId = feedback.getRestaurantId();
+            this.userId = feedback.getUserId();
+            this.crowdingLevel = feedback.getCrowdingLevel();
+            this.timestampMillis = feedback.getTimestamp().toDate().getTime();
+        }
+    }
+
+    // Running sums for one restaurant, only each user's latest feedback is counted
+    private static class RestaurantWindow {
+        final Map<String, Entry> latestByUser = new HashMap<>();
+        final int[] counts = new int[BUCKET_WEIGHTS.length];
+        final long[] levelSums = new long[BUCKET_WEIGHTS.length];
+
+        void add(Entry entry) {
+            counts[entry.bucket]++;
+            levelSums[entry.bucket] += entry.crowdingLevel;
+        }
+
+        void remove(Entry entry) {
+            counts[entry.bucket]--;
+            levelSums[entry.bucket] -= entry.crowdingLevel;
+        }
+
+        CrowdDensityService.CrowdDensityResult toResult() {
+            int feedbackCount = 0;
+            double weightedSum = 0;
+            double totalWeight = 0;
+            for (int i = 0; i < BUCKET_WEIGHTS.length; i++) {
+                feedbackCount += counts[i];
+                weightedSum += BUCKET_WEIGHTS[i] * levelSums[i];
+                totalWeight += BUCKET_WEIGHTS[i] * counts[i];
+            }
+            if (feedbackCount == 0) {
+                return CrowdDensityService.createNoDataResult();
+            }
+            int crowdingLevel = CrowdDensityService.mapScoreToLevel(weightedSum / totalWeight);
+            return CrowdDensityService.createCrowdDensityResult(crowdingLevel, feedbackCount);
+        }
+    }
+
+    CrowdDensityMonitor(FeedbackSource source, Clock clock, Scheduler scheduler) {
+        this.source = source;
+        this.clock = clock;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Monitor backed by Firestore, the system clock and the main looper
+     */
+    public static CrowdDensityMonitor create() {
+        Handler handler = new Handler(Looper.getMainLooper());
+        return new CrowdDensityMonitor(
+            new FirestoreFeedbackSource(),
+            System::currentTimeMillis,
+            new Scheduler() {
+                @Override
+                public void schedule(Runnable task, long delayMillis) {
+                    handler.postDelayed(task, delayMillis);
+                }
+
+                @Override
+                public void cancel(Runnable task) {
+                    handler.removeCallbacks(task);
+                }
+            });
+    }
+
+    public void start(OnCrowdDensityChangedListener listener) {
+        this.listener = listener;
+        if (running) return;
+        running = true;
+        subscribe();
+    }
+
+    /**
+     * Detach the feedback listener. Aggregates are kept so a restart only delivers the difference
+     */
+    public void stop() {
+        if (!running) return;
+        running = false;
+        listener = null;
+        source.stop();
+        scheduler.cancel(tickTask);
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Latest published result, or the no-data result if the restaurant has no recent feedback
+     */
+    public CrowdDensityService.CrowdDensityResult getResult(String restaurantId) {
+        CrowdDensityService.CrowdDensityResult result = published.get(restaurantId);
+        return result != null ? result : CrowdDensityService.createNoDataResult();
+    }
+
+    public Map<String, CrowdDensityService.CrowdDensityResult> getResults() {
+        return Collections.unmodifiableMap(published);
+    }
+
+    private void subscribe() {
+        subscribedAt = clock.now();
+        source.start(subscribedAt - CrowdDensityService.WINDOW_MILLIS, new FeedbackListener() {
+            @Override
+            public void onFeedbackChanged(List<CrowdFeedback> added, List<String> removedIds) {
+                applyChanges(added, removedIds);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Crowd feedback listener failed", e);
+                if (listener != null) {
+                    listener.onError(e);
+                }
+            }
+        });
+    }
+
+    void applyChanges(List<CrowdFeedback> added, List<String> removedIds) {
+        if (!running) return;
+        long now = clock.now();
+        advanceTo(now);
+
+        for (String feedbackId : removedIds) {
+            remove(feedbackId);
+        }
+        for (CrowdFeedback feedback : added) {
+            add(feedback, now);
+        }
+
+        ready = true;
+        publishChanges();
+        scheduleNextTick(now);
+    }
+
+    /**
+     * Move feedback whose age crossed a bucket boundary, then publish what changed
+     */
+    void tick() {
+        if (!running) return;
+        long now = clock.now();
+        if (now - subscribedAt >= RESUBSCRIBE_AFTER_MILLIS) {
+            // already counted feedback is skipped by id when the new listener replays it
+            source.stop();
+            subscribe();
+        }
+        advanceTo(now);
+        publishChanges();
+        scheduleNextTick(now);
+    }
+
+    private void add(CrowdFeedback feedback, long now) {
+        if (feedback.getId() == null || feedback.getRestaurantId() == null || feedback.getTimestamp() == null) {
+            return;
+        }
+        if (entries.containsKey(feedback.getId())) {
+            return;
+        }
+
+        Entry entry = new Entry(feedback);
+        entry.bucket = bucketFor(now - entry.timestampMillis);
+        if (entry.bucket == EXPIRED) {
+            return;
+        }
+
+        RestaurantWindow window = windows.get(entry.restaurantId);
+        if (window == null) {
+            window = new RestaurantWindow();
+            windows.put(entry.restaurantId, window);
+        }
+
+        // Only the latest feedback from each user counts
+        Entry previous = window.latestByUser.get(entry.userId);
+        if (previous != null) {
+            if (previous.timestampMillis >= entry.timestampMillis) {
+                return;
+            }
+            deactivate(window, previous);
+        }
+
+        window.add(entry);
+        window.latestByUser.put(entry.userId, entry);
+        entries.put(entry.id, entry);
+        entry.nextTransitionAt = entry.timestampMillis + BUCKET_END_MILLIS[entry.bucket];
+        transitions.add(entry);
+        dirty.add(entry.restaurantId);
+    }
+
+    private void remove(String feedbackId) {
+        Entry entry = entries.get(feedbackId);
+        if (entry == null) return;
+        RestaurantWindow window = windows.get(entry.restaurantId);
+        if (window != null) {
+            deactivate(window, entry);
+        }
+    }
+
+    // Drop an entry from the sums, its queued transition is skipped lazily
+    private void deactivate(RestaurantWindow window, Entry entry) {
+        window.remove(entry);
+        if (window.latestByUser.get(entry.userId) == entry) {
+            window.latestByUser.remove(entry.userId);
+        }
+        entries.remove(entry.id);
+        entry.active = false;
+        dirty.add(entry.restaurantId);
+    }
+
+    private void advanceTo(long now) {
+        while (!transitions.isEmpty() && transitions.peek().nextTransitionAt <= now) {
+            Entry entry = transitions.poll();
+            if (!entry.active) continue;
+
+            RestaurantWindow window = windows.get(entry.restaurantId);
+            int bucket = bucketFor(now - entry.timestampMillis);
+            if (bucket == EXPIRED) {
+                deactivate(window, entry);
+                continue;
+            }
+
+            window.remove(entry);
+            entry.bucket = bucket;
+            window.add(entry);
+            entry.nextTransitionAt = entry.timestampMillis + BUCKET_END_MILLIS[bucket];
+            transitions.add(entry);
+            dirty.add(entry.restaurantId);
+        }
+    }
+
+    private void publishChanges() {
+        if (dirty.isEmpty()) return;
+
+        Map<String, CrowdDensityService.CrowdDensityResult> changed = new HashMap<>();
+        for (String restaurantId : dirty) {
+            RestaurantWindow window = windows.get(restaurantId);
+            CrowdDensityService.CrowdDensityResult result = window != null
+                ? window.toResult()
+                : CrowdDensityService.createNoDataResult();
+            if (window != null && window.latestByUser.isEmpty()) {
+                windows.remove(restaurantId);
+            }
+
+            CrowdDensityService.CrowdDensityResult previous = published.get(restaurantId);
+            if (previous == null && !result.hasRecentData()) {
+                continue; // never had data, nothing to repaint
+            }
+            if (previous != null && sameResult(previous, result)) {
+                continue;
+            }
+
+            if (result.hasRecentData()) {
+                published.put(restaurantId, result);
+            } else {
+                published.remove(restaurantId);
+            }
+            changed.put(restaurantId, result);
+        }
+        dirty.clear();
+
+        if (!changed.isEmpty() && listener != null) {
+            Log.d(TAG, "Crowd density changed for " + changed.size() + " restaurants");
+            listener.onCrowdDensityChanged(changed);
+        }
+    }
+
+    private void scheduleNextTick(long now) {
+        scheduler.cancel(tickTask);
+        // superseded entries are only skipped when polled, drop them from the head first
+        while (!transitions.isEmpty() && !transitions.peek().active) {
+            transitions.poll();
+        }
+        long delay = RESUBSCRIBE_AFTER_MILLIS - (now - subscribedAt);
+        if (!transitions.isEmpty()) {
+            delay = Math.min(delay, transitions.peek().nextTransitionAt - now);
+        }
+        scheduler.schedule(tickTask, Math.max(0, delay));
+    }
+
+    private static boolean sameResult(CrowdDensityService.CrowdDensityResult a,
+                                      CrowdDensityService.CrowdDensityResult b) {
+        return a.getCrowdingLevel() == b.getCrowdingLevel()
+            && a.getFeedbackCount() == b.getFeedbackCount()
+            && a.hasRecentData() == b.hasRecentData();
+    }
+
+    private static int bucketFor(long ageMillis) {
+        for (int i = 0; i < BUCKET_END_MILLIS.length; i++) {
+            if (ageMillis < BUCKET_END_MILLIS[i]) {
+                return i;
+            }
+        }
+        return EXPIRED;
+    }
+
+    /**
+     * Snapshot listener on feedback newer than the window start
+     */
+    private static class FirestoreFeedbackSource implements FeedbackSource {
+        private ListenerRegistration registration;
+
+        @Override
+        public void start(long windowStartMillis, FeedbackListener feedbackListener) {
+            stop();
+            Timestamp windowStart = new Timestamp(new java.util.Date(windowStartMillis));
+            registration = FirebaseFirestore.getInstance()
+                .collection("crowdFeedback")
+                .whereGreaterThan("timestamp", windowStart)
+                .addSnapshotListener((snapshots, error) -> {
+                    if (error != null) {
+                        feedbackListener.onError(error);
+                        return;
+                    }
+                    if (snapshots == null) return;
+
+                    List<CrowdFeedback> added = new ArrayList<>();
+                    List<String> removedIds = new ArrayList<>();
+                    for (DocumentChange change : snapshots.getDocumentChanges()) {
+                        QueryDocumentSnapshot document = change.getDocument();
+                        if (change.getType() != DocumentChange.Type.ADDED) {
+                            removedIds.add(document.getId());
+                        }
+                        if (change.getType() == DocumentChange.Type.REMOVED) {
+                            continue;
+                        }
+                        try {
+                            CrowdFeedback feedback = document.toObject(CrowdFeedback.class);
+                            feedback.setId(document.getId());
+                            added.add(feedback);
+                        } catch (Exception e) {
+                            Log.w(TAG, "Error parsing crowd feedback: " + document.getId(), e);
+                        }
+                    }
+                    feedbackListener.onFeedbackChanged(added, removedIds);
+                });
+        }
+
+        @Override
+        public void stop() {
+            if (registration != null) {
+                registration.remove();
+                registration = null;
+            }
+        }
+    }
+}
@@ -5,11 +5,14 @@ import android.util.Log;
 import com.example.food.data.CrowdFeedback;
 import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -17,6 +20,13 @@ import java.util.Map;
 public class CrowdDensityService {
     private static final String TAG = "CrowdDensityService";
     private static final String COLLECTION_CROWD_FEEDBACK = "crowdFeedback";
+    private static final String COLLECTION_FEEDBACK_MARKERS = "crowdFeedbackMarkers";
+    static final long WINDOW_MILLIS = 60 * 60 * 1000; // feedback older than an hour is ignored
+    private static final long RESUBMIT_INTERVAL_MILLIS = 15 * 60 * 1000;
+    private static final String RESUBMIT_ERROR = "You cannot resubmit within 15 minutes!";
+
+    // restaurantId_userId -> time of the last accepted submission in this session
+    private static final Map<String, Long> recentSubmissions = new HashMap<>();
     
     private FirebaseFirestore db;
     private CollectionReference crowdFeedbackRef;
@@ -31,6 +41,11 @@ public class CrowdDensityService {
         void onError(Exception e);
     }
 
+    public interface CrowdDensityBatchCallback {
+        void onSuccess(Map<String, CrowdDensityResult> results);
+        void onError(Exception e);
+    }
+
     public interface FeedbackSubmitCallback {
         void onSuccess();
         void onError(Exception e);
@@ -68,7 +83,8 @@ public class CrowdDensityService {
      */
     public void calculateCrowdDensity(String restaurantId, CrowdDensityCallback callback) {
         // Get feedback from the last 60 minutes
-        Timestamp oneHourAgo = new Timestamp(new java.util.Date(System.currentTimeMillis() - 60 * 60 * 1000));
+        long now = System.currentTimeMillis();
+        Timestamp oneHourAgo = new Timestamp(new java.util.Date(now - WINDOW_MILLIS));
         
         // First try a simple query without orderBy to avoid index issues
         crowdFeedbackRef
@@ -105,32 +121,13 @@ public class CrowdDensityService {
                 if (recentFeedbacks.isEmpty()) {
                     // No recent data - show default state instead of error
                     Log.d(TAG, "No recent feedback data for restaurant: " + restaurantId);
-                    CrowdDensityResult result = new CrowdDensityResult(
-                        0, "No Recent Data", "Be the first to share crowd status!", 
-                        android.R.color.darker_gray, 0, false
-                    );
-                    callback.onSuccess(result);
-                    return;
-                }
-                
-                // Calculate weighted average
-                double weightedSum = 0;
-                double totalWeight = 0;
-                
-                for (CrowdFeedback feedback : recentFeedbacks) {
-                    double weight = calculateTimeWeight(feedback.getTimestamp());
-                    weightedSum += feedback.getCrowdingLevel() * weight;
-                    totalWeight += weight;
                 }
                 
-                double averageScore = totalWeight > 0 ? weightedSum / totalWeight : 0;
-                int crowdingLevel = mapScoreToLevel(averageScore);
-                
-                CrowdDensityResult result = createCrowdDensityResult(crowdingLevel, recentFeedbacks.size());
+                CrowdDensityResult result = calculateFromFeedback(recentFeedbacks, now);
                 callback.onSuccess(result);
                 
                 Log.d(TAG, "Calculated crowd density for restaurant " + restaurantId + 
-                      ": level=" + crowdingLevel + ", feedbacks=" + recentFeedbacks.size());
+                      ": level=" + result.getCrowdingLevel() + ", feedbacks=" + recentFeedbacks.size());
             })
             .addOnFailureListener(e -> {
                 Log.e(TAG, "Error calculating crowd density for restaurant: " + restaurantId, e);
@@ -143,63 +140,164 @@ public class CrowdDensityService {
     }
 
     /**
-     * Submit crowd feedback
+     * Calculate crowd density for every restaurant in one query.
+     * Only the last hour of feedback is fetched (filtered server-side); restaurants without
+     * recent feedback are left out of the result
      */
-    public void submitFeedback(String restaurantId, String userId, int crowdingLevel, 
-                              FeedbackSubmitCallback callback) {
-        // Check if user has already submitted feedback recently (within 15 minutes)
-        Timestamp fifteenMinutesAgo = new Timestamp(new java.util.Date(System.currentTimeMillis() - 15 * 60 * 1000));
-        
+    public void calculateAllCrowdDensities(CrowdDensityBatchCallback callback) {
+        long now = System.currentTimeMillis();
+        Timestamp oneHourAgo = new Timestamp(new java.util.Date(now - WINDOW_MILLIS));
+
         crowdFeedbackRef
-            .whereEqualTo("restaurantId", restaurantId)
-            .whereEqualTo("userId", userId)
+            .whereGreaterThan("timestamp", oneHourAgo)
             .get()
             .addOnSuccessListener(queryDocumentSnapshots -> {
-                // Check if user has submitted feedback within the last 15 minutes
-                boolean hasRecentFeedback = false;
+                List<CrowdFeedback> recentFeedback = new ArrayList<>();
                 for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
                     try {
                         CrowdFeedback feedback = document.toObject(CrowdFeedback.class);
-                        if (feedback.getTimestamp() != null && 
-                            feedback.getTimestamp().compareTo(fifteenMinutesAgo) > 0) {
-                            hasRecentFeedback = true;
-                            break;
-                        }
+                        feedback.setId(document.getId());
+                        recentFeedback.add(feedback);
                     } catch (Exception e) {
-                        Log.w(TAG, "Error parsing feedback for duplicate check: " + document.getId(), e);
+                        Log.w(TAG, "Error parsing crowd feedback: " + document.getId(), e);
                     }
                 }
-                
-                if (hasRecentFeedback) {
-                    // User has already submitted feedback recently
+                Map<String, CrowdDensityResult> results = calculateByRestaurant(recentFeedback, now);
+
+                Log.d(TAG, "Calculated crowd density for " + results.size() + " restaurants from "
+                        + queryDocumentSnapshots.size() + " recent feedbacks");
+                callback.onSuccess(results);
+            })
+            .addOnFailureListener(e -> {
+                Log.e(TAG, "Error calculating crowd density for all restaurants", e);
+                callback.onError(e);
+            });
+    }
+
+    /**
+     * Submit crowd feedback, at most once per user and restaurant every 15 minutes.
+     * The check reads one marker document (crowdFeedbackMarkers/{restaurantId}_{userId}) that is
+     * written in the same transaction as the feedback, so it costs the same however much
+     * feedback the user has given before
+     */
+    public void submitFeedback(String restaurantId, String userId, int crowdingLevel, 
+                              FeedbackSubmitCallback callback) {
+        String markerId = restaurantId + "_" + userId;
+
+        // Repeated taps are rejected locally without a round trip
+        Long lastSubmitted = recentSubmissions.get(markerId);
+        if (lastSubmitted != null && System.currentTimeMillis() - lastSubmitted < RESUBMIT_INTERVAL_MILLIS) {
+            Log.w(TAG, "User " + userId + " already submitted feedback recently");
+            callback.onError(new Exception(RESUBMIT_ERROR));
+            return;
+        }
+
+        CrowdFeedback feedback = new CrowdFeedback(restaurantId, userId, crowdingLevel);
+        DocumentReference feedbackRef = crowdFeedbackRef.document();
+        DocumentReference markerRef = db.collection(COLLECTION_FEEDBACK_MARKERS).document(markerId);
+        long submittedAt = feedback.getTimestamp().toDate().getTime();
+
+        // A rejection is returned, not thrown: the SDK retries transactions that fail with
+        // codes like ALREADY_EXISTS. The result is the stored submission time, null if accepted
+        db.runTransaction(transaction -> {
+                DocumentSnapshot marker = transaction.get(markerRef);
+                Timestamp previous = marker.getTimestamp("lastSubmittedAt");
+                if (previous != null && submittedAt - previous.toDate().getTime() < RESUBMIT_INTERVAL_MILLIS) {
+                    return previous.toDate().getTime();
+                }
+
+                Map<String, Object> markerData = new HashMap<>();
+                markerData.put("restaurantId", restaurantId);
+                markerData.put("userId", userId);
+                markerData.put("lastSubmittedAt", feedback.getTimestamp());
+                transaction.set(feedbackRef, feedback);
+                transaction.set(markerRef, markerData);
+                return (Long) null;
+            })
+            .addOnSuccessListener(storedSubmission -> {
+                if (storedSubmission != null) {
+                    // Submitted from another device or an earlier session, the lockout runs from then
+                    recentSubmissions.put(markerId, storedSubmission);
                     Log.w(TAG, "User " + userId + " already submitted feedback recently");
-                    callback.onError(new Exception("You cannot resubmit within 15 minutes!"));
+                    callback.onError(new Exception(RESUBMIT_ERROR));
                     return;
                 }
-                
-                // Submit new feedback
-                CrowdFeedback feedback = new CrowdFeedback(restaurantId, userId, crowdingLevel);
-                crowdFeedbackRef.add(feedback)
-                    .addOnSuccessListener(documentReference -> {
-                        Log.d(TAG, "Feedback submitted successfully: " + documentReference.getId());
-                        callback.onSuccess();
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Error submitting feedback", e);
-                        callback.onError(e);
-                    });
+                recentSubmissions.put(markerId, submittedAt);
+                Log.d(TAG, "Feedback submitted successfully: " + feedbackRef.getId());
+                callback.onSuccess();
             })
             .addOnFailureListener(e -> {
-                Log.e(TAG, "Error checking recent feedback", e);
+                Log.e(TAG, "Error submitting feedback", e);
                 callback.onError(e);
             });
     }
 
+    /**
+     * Results for every restaurant in the feedback, from each user's latest feedback there.
+     * Restaurants without feedback are left out
+     */
+    static Map<String, CrowdDensityResult> calculateByRestaurant(Collection<CrowdFeedback> feedbacks, long currentTime) {
+        // restaurantId -> (userId -> latest feedback)
+        Map<String, Map<String, CrowdFeedback>> latestByRestaurant = new HashMap<>();
+        for (CrowdFeedback feedback : feedbacks) {
+            if (feedback.getRestaurantId() == null || feedback.getTimestamp() == null) {
+                continue;
+            }
+
+            Map<String, CrowdFeedback> latestUserFeedback = latestByRestaurant.get(feedback.getRestaurantId());
+            if (latestUserFeedback == null) {
+                latestUserFeedback = new HashMap<>();
+                latestByRestaurant.put(feedback.getRestaurantId(), latestUserFeedback);
+            }
+
+            // Keep only the latest feedback from each user
+            CrowdFeedback previous = latestUserFeedback.get(feedback.getUserId());
+            if (previous == null || feedback.getTimestamp().compareTo(previous.getTimestamp()) > 0) {
+                latestUserFeedback.put(feedback.getUserId(), feedback);
+            }
+        }
+
+        Map<String, CrowdDensityResult> results = new HashMap<>();
+        for (Map.Entry<String, Map<String, CrowdFeedback>> entry : latestByRestaurant.entrySet()) {
+            results.put(entry.getKey(), calculateFromFeedback(entry.getValue().values(), currentTime));
+        }
+        return results;
+    }
+
+    /**
+     * Time-weighted average of each user's latest feedback, mapped to a level
+     */
+    static CrowdDensityResult calculateFromFeedback(Collection<CrowdFeedback> latestFeedback, long currentTime) {
+        if (latestFeedback.isEmpty()) {
+            return createNoDataResult();
+        }
+
+        // Calculate weighted average
+        double weightedSum = 0;
+        double totalWeight = 0;
+
+        for (CrowdFeedback feedback : latestFeedback) {
+            double weight = calculateTimeWeight(feedback.getTimestamp(), currentTime);
+            weightedSum += feedback.getCrowdingLevel() * weight;
+            totalWeight += weight;
+        }
+
+        double averageScore = totalWeight > 0 ? weightedSum / totalWeight : 0;
+        int crowdingLevel = mapScoreToLevel(averageScore);
+        return createCrowdDensityResult(crowdingLevel, latestFeedback.size());
+    }
+
+    static CrowdDensityResult createNoDataResult() {
+        return new CrowdDensityResult(
+            0, "No Recent Data", "Be the first to share crowd status!", 
+            android.R.color.darker_gray, 0, false
+        );
+    }
+
     /**
      * Calculate time weight based on how recent the feedback is
      */
-    private double calculateTimeWeight(Timestamp feedbackTime) {
-        long currentTime = System.currentTimeMillis();
+    static double calculateTimeWeight(Timestamp feedbackTime, long currentTime) {
         long feedbackTimeMillis = feedbackTime.toDate().getTime();
         long timeDiffMinutes = (currentTime - feedbackTimeMillis) / (60 * 1000);
         
@@ -219,7 +317,7 @@ public class CrowdDensityService {
     /**
      * Map calculated score to crowding level
      */
-    private int mapScoreToLevel(double score) {
+    static int mapScoreToLevel(double score) {
         if (score <= 1.5) {
             return 1; // Not Crowded
         } else if (score <= 2.5) {
@@ -232,7 +330,7 @@ public class CrowdDensityService {
     /**
      * Create CrowdDensityResult based on crowding level
      */
-    private CrowdDensityResult createCrowdDensityResult(int crowdingLevel, int feedbackCount) {
+    static CrowdDensityResult createCrowdDensityResult(int crowdingLevel, int feedbackCount) {
         switch (crowdingLevel) {
             case 1:
                 return new CrowdDensityResult(
@@ -0,0 +1,381 @@
+package com.example.food.service;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.food.cache.LocalDatabase;
+import com.example.food.model.Restaurant;
+import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Process-wide restaurant catalogue.
+ * Loads the whole restaurants collection with a single query per session, keeps it in memory
+ * and persists a snapshot in the LocalDatabase so the next launch can serve lookups before the
+ * network answers.
+ * Restaurants that show up after the catalogue was loaded are fetched by id in batches.
+ */
+public class RestaurantRepository {
+    private static final String TAG = "RestaurantRepository";
+    private static final String COLLECTION_RESTAURANTS = "restaurants";
+    private static final int WHERE_IN_LIMIT = 10; // Firestore whereIn limit
+    static final long SNAPSHOT_MAX_AGE = 24 * 60 * 60 * 1000; // 24 hours
+
+    private static RestaurantRepository instance;
+
+    private final RestaurantSource source;
+    private SnapshotStore snapshotStore;
+
+    private final Map<String, Restaurant> restaurants = new HashMap<>(128);
+    private final List<OnRestaurantsLoadedListener> pendingListeners = new ArrayList<>();
+    private final Set<String> pendingIds = new LinkedHashSet<>();
+    private boolean catalogueLoaded;
+    private boolean catalogueLoading;
+    private boolean snapshotLoading;
+    private long snapshotTimestamp;
+
+    public interface OnRestaurantsLoadedListener {
+        void onRestaurantsLoaded(Map<String, Restaurant> restaurants);
+    }
+
+    // Where restaurants come from. Firestore in the app, a fake in unit tests
+    interface RestaurantSource {
+        void loadAll(SourceCallback callback);
+        void loadByIds(List<String> ids, SourceCallback callback);
+    }
+
+    interface SourceCallback {
+        void onLoaded(List<Restaurant> restaurants);
+        void onError(Exception e);
+    }
+
+    // Persisted copy of the catalogue
+    interface SnapshotStore {
+        // calls back later with the stored restaurants (null if none) and when they were loaded
+        void read(SnapshotCallback callback);
+        void write(Collection<Restaurant> restaurants, long timestamp);
+    }
+
+    interface SnapshotCallback {
+        void onRead(List<Restaurant> restaurants, long timestamp);
+    }
+
+    RestaurantRepository(RestaurantSource source, SnapshotStore snapshotStore) {
+        this.source = source;
+        attachSnapshotStore(snapshotStore);
+    }
+
+    public static synchronized RestaurantRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new RestaurantRepository(new FirestoreRestaurantSource(),
+                    new DatabaseSnapshotStore(context.getApplicationContext()));
+        } else if (instance.snapshotStore == null) {
+            instance.attachSnapshotStore(new DatabaseSnapshotStore(context.getApplicationContext()));
+        }
+        return instance;
+    }
+
+    /**
+     * For callers without a Context (e.g. ScoreCalculator). The on-disk snapshot is attached
+     * as soon as any screen asks for the repository with a Context.
+     */
+    public static synchronized RestaurantRepository getInstance() {
+        if (instance == null) {
+            instance = new RestaurantRepository(new FirestoreRestaurantSource(), null);
+        }
+        return instance;
+    }
+
+    // Requests made while the snapshot is being read wait for it rather than start a query
+    private void attachSnapshotStore(SnapshotStore store) {
+        synchronized (this) {
+            this.snapshotStore = store;
+            if (store == null) return;
+            snapshotLoading = true;
+        }
+        store.read(this::onSnapshotRead);
+    }
+
+    private void onSnapshotRead(List<Restaurant> snapshot, long timestamp) {
+        boolean startCatalogueLoad = false;
+        synchronized (this) {
+            snapshotLoading = false;
+            if (snapshot != null && !snapshot.isEmpty()) {
+                for (Restaurant restaurant : snapshot) {
+                    // never overwrite fresher data already loaded this session
+                    if (restaurant.getId() != null && !restaurants.containsKey(restaurant.getId())) {
+                        restaurants.put(restaurant.getId(), restaurant);
+                    }
+                }
+                if (!catalogueLoaded) {
+                    snapshotTimestamp = timestamp;
+                }
+                Log.d(TAG, "Restored " + snapshot.size() + " restaurants from snapshot");
+            }
+            if (catalogueLoading || pendingListeners.isEmpty()) return;
+            if (!catalogueLoaded && !isSnapshotFresh()) {
+                catalogueLoading = true;
+                startCatalogueLoad = true;
+            }
+        }
+
+        if (startCatalogueLoad) {
+            loadCatalogue();
+        } else {
+            flushPending();
+        }
+    }
+
+    private boolean isSnapshotFresh() {
+        return snapshotTimestamp > 0 && System.currentTimeMillis() - snapshotTimestamp < SNAPSHOT_MAX_AGE;
+    }
+
+    /**
+     * Synchronous lookup, returns null if the restaurant is not known yet
+     */
+    public synchronized Restaurant getRestaurant(String restaurantId) {
+        return restaurantId != null ? restaurants.get(restaurantId) : null;
+    }
+
+    public synchronized Map<String, Restaurant> getRestaurantMap() {
+        return new HashMap<>(restaurants);
+    }
+
+    public synchronized List<Restaurant> getAllRestaurants() {
+        return new ArrayList<>(restaurants.values());
+    }
+
+    /**
+     * Make sure the full catalogue is available, then call back with it
+     */
+    public void loadRestaurants(OnRestaurantsLoadedListener listener) {
+        getRestaurants(Collections.emptyList(), listener);
+    }
+
+    /**
+     * Resolve the given restaurant ids. Served from memory when possible; ids that are still
+     * unknown after the catalogue load are fetched by id
+     */
+    public void getRestaurants(Collection<String> restaurantIds, OnRestaurantsLoadedListener listener) {
+        boolean queued = false;
+        boolean startCatalogueLoad = false;
+        List<String> missingIds = new ArrayList<>();
+
+        synchronized (this) {
+            if (!catalogueLoaded && (snapshotLoading || !isSnapshotFresh())) {
+                // queue until the snapshot is read or the one catalogue query of this session returns
+                pendingIds.addAll(restaurantIds);
+                pendingListeners.add(listener);
+                queued = true;
+                if (!catalogueLoading && !snapshotLoading) {
+                    catalogueLoading = true;
+                    startCatalogueLoad = true;
+                }
+            } else {
+                for (String id : restaurantIds) {
+                    if (id != null && !restaurants.containsKey(id)) {
+                        missingIds.add(id);
+                    }
+                }
+            }
+        }
+
+        if (startCatalogueLoad) {
+            loadCatalogue();
+        }
+        if (queued) return;
+
+        if (missingIds.isEmpty()) {
+            listener.onRestaurantsLoaded(getRestaurantMap());
+        } else {
+            fetchMissing(missingIds, listener);
+        }
+    }
+
+    private void loadCatalogue() {
+        source.loadAll(new SourceCallback() {
+            @Override
+            public void onLoaded(List<Restaurant> loaded) {
+                synchronized (RestaurantRepository.this) {
+                    restaurants.clear();
+                    for (Restaurant restaurant : loaded) {
+                        restaurants.put(restaurant.getId(), restaurant);
+                    }
+                    catalogueLoaded = true;
+                    catalogueLoading = false;
+                    snapshotTimestamp = System.currentTimeMillis();
+                    if (snapshotStore != null) {
+                        snapshotStore.write(restaurants.values(), snapshotTimestamp);
+                    }
+                }
+                Log.d(TAG, "Loaded restaurant catalogue: " + loaded.size() + " restaurants");
+                flushPending();
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Error loading restaurant catalogue", e);
+                synchronized (RestaurantRepository.this) {
+                    // allow a retry on the next request, serve whatever the snapshot had
+                    catalogueLoading = false;
+                }
+                flushPending();
+            }
+        });
+    }
+
+    private void flushPending() {
+        List<OnRestaurantsLoadedListener> listeners;
+        List<String> missingIds = new ArrayList<>();
+        boolean fetchMissing;
+        synchronized (this) {
+            // without the catalogue or a fresh snapshot, unknown ids aren't worth a query each
+            fetchMissing = catalogueLoaded || isSnapshotFresh();
+            listeners = new ArrayList<>(pendingListeners);
+            pendingListeners.clear();
+            for (String id : pendingIds) {
+                if (id != null && !restaurants.containsKey(id)) {
+                    missingIds.add(id);
+                }
+            }
+            pendingIds.clear();
+        }
+
+        if (missingIds.isEmpty() || !fetchMissing) {
+            Map<String, Restaurant> result = getRestaurantMap();
+            for (OnRestaurantsLoadedListener listener : listeners) {
+                listener.onRestaurantsLoaded(result);
+            }
+            return;
+        }
+
+        fetchMissing(missingIds, result -> {
+            for (OnRestaurantsLoadedListener listener : listeners) {
+                listener.onRestaurantsLoaded(result);
+            }
+        });
+    }
+
+    // Incremental refresh for restaurants added after the catalogue/snapshot was taken
+    private void fetchMissing(List<String> missingIds, OnRestaurantsLoadedListener listener) {
+        int batches = (missingIds.size() + WHERE_IN_LIMIT - 1) / WHERE_IN_LIMIT;
+        int[] completed = {0};
+
+        for (int i = 0; i < missingIds.size(); i += WHERE_IN_LIMIT) {
+            List<String> batch = new ArrayList<>(missingIds.subList(i, Math.min(i + WHERE_IN_LIMIT, missingIds.size())));
+            source.loadByIds(batch, new SourceCallback() {
+                @Override
+                public void onLoaded(List<Restaurant> loaded) {
+                    synchronized (RestaurantRepository.this) {
+                        for (Restaurant restaurant : loaded) {
+                            restaurants.put(restaurant.getId(), restaurant);
+                        }
+                        if (snapshotStore != null && !loaded.isEmpty()) {
+                            snapshotStore.write(restaurants.values(), snapshotTimestamp);
+                        }
+                    }
+                    onBatchDone();
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    Log.e(TAG, "Error loading restaurants: " + batch, e);
+                    onBatchDone();
+                }
+
+                private void onBatchDone() {
+                    completed[0]++;
+                    if (completed[0] >= batches) {
+                        listener.onRestaurantsLoaded(getRestaurantMap());
+                    }
+                }
+            });
+        }
+    }
+
+    private static class FirestoreRestaurantSource implements RestaurantSource {
+        private final CollectionReference restaurantsRef =
+                FirebaseFirestore.getInstance().collection(COLLECTION_RESTAURANTS);
+
+        @Override
+        public void loadAll(SourceCallback callback) {
+            restaurantsRef.get()
+                    .addOnSuccessListener(queryDocumentSnapshots -> callback.onLoaded(parse(queryDocumentSnapshots)))
+                    .addOnFailureListener(callback::onError);
+        }
+
+        @Override
+        public void loadByIds(List<String> ids, SourceCallback callback) {
+            restaurantsRef.whereIn(FieldPath.documentId(), ids)
+                    .get()
+                    .addOnSuccessListener(queryDocumentSnapshots -> callback.onLoaded(parse(queryDocumentSnapshots)))
+                    .addOnFailureListener(callback::onError);
+        }
+
+        private List<Restaurant> parse(Iterable<QueryDocumentSnapshot> documents) {
+            List<Restaurant> result = new ArrayList<>();
+            for (QueryDocumentSnapshot document : documents) {
+                try {
+                    Restaurant restaurant = document.toObject(Restaurant.class);
+                    restaurant.setId(document.getId());
+                    result.add(restaurant);
+                } catch (Exception e) {
+                    Log.e(TAG, "Error parsing restaurant: " + document.getId(), e);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class DatabaseSnapshotStore implements SnapshotStore {
+        private static final String KEY_SYNCED_AT = "restaurants_synced_at";
+
+        private final LocalDatabase database;
+        private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+        DatabaseSnapshotStore(Context context) {
+            database = LocalDatabase.getInstance(context);
+        }
+
+        @Override
+        public void read(SnapshotCallback callback) {
+            // the first read may create the database, never on the main thread
+            database.execute(() -> {
+                List<Restaurant> restaurants = null;
+                long timestamp = 0;
+                try {
+                    restaurants = database.readRestaurants();
+                    timestamp = database.readSyncValue(KEY_SYNCED_AT, 0);
+                } catch (RuntimeException e) {
+                    // unreadable snapshot, the next catalogue load will overwrite it
+                    Log.w(TAG, "Error reading restaurant snapshot", e);
+                }
+                List<Restaurant> snapshot = restaurants;
+                long syncedAt = timestamp;
+                mainHandler.post(() -> callback.onRead(snapshot, syncedAt));
+            });
+        }
+
+        @Override
+        public void write(Collection<Restaurant> restaurants, long timestamp) {
+            List<Restaurant> copy = new ArrayList<>(restaurants);
+            database.execute(() -> {
+                database.replaceRestaurants(copy);
+                database.writeSyncValue(KEY_SYNCED_AT, timestamp);
+            });
+        }
+    }
+}
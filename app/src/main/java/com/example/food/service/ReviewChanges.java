@@ -0,0 +1,119 @@
+package com.example.food.service;
+
+import com.example.food.data.Review;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Reviews created, edited or deleted since a high-water mark, see ReviewService.loadReviewChanges.
+ * Deleted reviews arrive as tombstones and only their ids are kept.
+ */
+public class ReviewChanges {
+    // Feed order: newest first, document id breaks ties like the page query
+    static final Comparator<Review> FEED_ORDER = (a, b) -> {
+        Date aCreated = a.getCreatedAt();
+        Date bCreated = b.getCreatedAt();
+        if (aCreated != null && bCreated != null && !aCreated.equals(bCreated)) {
+            return bCreated.compareTo(aCreated);
+        }
+        if (aCreated == null && bCreated != null) return 1;
+        if (aCreated != null && bCreated == null) return -1;
+        String aId = a.getId() != null ? a.getId() : "";
+        String bId = b.getId() != null ? b.getId() : "";
+        return bId.compareTo(aId);
+    };
+
+    private final List<Review> changed;
+    private final List<String> deletedIds;
+    private final Date highWaterMark;
+    private final boolean complete;
+
+    ReviewChanges(List<Review> changed, List<String> deletedIds, Date highWaterMark, boolean complete) {
+        this.changed = changed;
+        this.deletedIds = deletedIds;
+        this.highWaterMark = highWaterMark;
+        this.complete = complete;
+    }
+
+    public List<Review> getChanged() { return Collections.unmodifiableList(changed); }
+    public List<String> getDeletedIds() { return Collections.unmodifiableList(deletedIds); }
+
+    /**
+     * Newest updatedAt among the changes, the mark to ask from next time
+     */
+    public Date getHighWaterMark() { return highWaterMark; }
+
+    /**
+     * False when more documents changed than one delta fetches; reload the feed instead
+     */
+    public boolean isComplete() { return complete; }
+
+    public boolean isEmpty() {
+        return changed.isEmpty() && deletedIds.isEmpty();
+    }
+
+    /**
+     * Merge into a feed held in feed order. Deleted reviews are removed, known reviews replaced
+     * in place (keeping the names already resolved for them) and new reviews inserted where
+     * they belong. A review older than the last loaded one is left for its page to bring,
+     * unless the feed has no more pages.
+     *
+     * @return the reviews that were replaced or inserted
+     */
+    public List<Review> applyTo(List<Review> feed, boolean feedHasMorePages) {
+        Set<String> deleted = new HashSet<>(deletedIds);
+        List<Review> applied = new ArrayList<>();
+        if (!deleted.isEmpty()) {
+            feed.removeIf(review -> review.getId() != null && deleted.contains(review.getId()));
+        }
+
+        for (Review review : changed) {
+            int index = indexOf(feed, review.getId());
+            if (index >= 0) {
+                Review previous = feed.get(index);
+                copyDisplayFields(previous, review);
+                if (FEED_ORDER.compare(previous, review) == 0) {
+                    feed.set(index, review);
+                } else {
+                    // createdAt changed, move it
+                    feed.remove(index);
+                    insertSorted(feed, review);
+                }
+                applied.add(review);
+            } else if (!feedHasMorePages || feed.isEmpty()
+                    || FEED_ORDER.compare(review, feed.get(feed.size() - 1)) < 0) {
+                insertSorted(feed, review);
+                applied.add(review);
+            }
+        }
+        return applied;
+    }
+
+    private static int indexOf(List<Review> feed, String reviewId) {
+        if (reviewId == null) return -1;
+        for (int i = 0; i < feed.size(); i++) {
+            if (reviewId.equals(feed.get(i).getId())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static void insertSorted(List<Review> feed, Review review) {
+        int index = Collections.binarySearch(feed, review, FEED_ORDER);
+        feed.add(index >= 0 ? index : -index - 1, review);
+    }
+
+    // Firestore doesn't store these, the fresh copy would otherwise render without names
+    private static void copyDisplayFields(Review from, Review to) {
+        if (to.getUserName() == null) to.setUserName(from.getUserName());
+        if (to.getUserAvatarUrl() == null) to.setUserAvatarUrl(from.getUserAvatarUrl());
+        if (to.getRestaurantName() == null) to.setRestaurantName(from.getRestaurantName());
+    }
+}
@@ -2,16 +2,33 @@ package com.example.food.service;
 
 import android.util.Log;
 
+import com.example.food.data.Comment;
 import com.example.food.data.Review;
+import com.example.food.services.RestaurantAggregateDelta;
+import com.example.food.utils.ReviewSearchIndex;
+import com.google.firebase.Timestamp;
 import com.google.firebase.firestore.CollectionReference;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FieldValue;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
 import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.firestore.Transaction;
+import com.google.firebase.firestore.WriteBatch;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 
 /**
  * Service for loading review data from Firebase Firestore
@@ -20,13 +37,61 @@ import java.util.Map;
 public class ReviewService {
     private static final String TAG = "ReviewService";
     private static final String COLLECTION_REVIEWS = "reviews";
+    private static final String COLLECTION_RESTAURANTS = "restaurants";
+    private static final String FIELD_AGGREGATES = "aggregates";
+    // bumped by every write that finds the aggregates unmaintained and leaves them to a rebuild
+    private static final String FIELD_AGGREGATES_GENERATION = "aggregatesGeneration";
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    static final String FIELD_UPDATED_AT = "updatedAt";
+    static final String FIELD_DELETED = "deleted";
+    static final String FIELD_VOTES = "votes";
+    static final String FIELD_ACCURATE_VOTE_COUNT = "accurateVoteCount";
+    static final String FIELD_TOTAL_VOTE_COUNT = "totalVoteCount";
+    static final String COLLECTION_COMMENTS = "comments";
+    static final String FIELD_COMMENT_COUNT = "commentCount";
+    // inline array on reviews from before the comments subcollection, see migrateComments
+    static final String FIELD_LEGACY_COMMENTS = "comments";
+    static final String LEGACY_COMMENT_ID_PREFIX = "legacy-";
+    public static final int COMMENTS_PAGE_SIZE = 20;
+    static final int DELTA_LIMIT = 200; // more changes than this and a reload is cheaper
+
+    // collection -> newest updatedAt the feed has seen, deltas are asked from here
+    private static final Map<String, Date> highWaterMarks = new HashMap<>();
+    // newest updatedAt in the collection when a delta was too large, the reload that follows
+    // must not set the mark below it
+    private static Date highWaterMarkFloor;
     
     private FirebaseFirestore db;
     private CollectionReference reviewsRef;
+    private ActivityInbox activityInbox;
 
     public ReviewService() {
-        db = FirebaseFirestore.getInstance();
+        this(FirebaseFirestore.getInstance());
+    }
+
+    /**
+     * Against a specific Firestore instance, e.g. one pointed at the emulator
+     */
+    public ReviewService(FirebaseFirestore db) {
+        this.db = db;
         reviewsRef = db.collection(COLLECTION_REVIEWS);
+        activityInbox = new ActivityInbox(db);
+    }
+
+    /**
+     * Position of the last review of a page in the feed ordering
+     */
+    public static class PageCursor {
+        private final Date createdAt;
+        private final String reviewId;
+
+        public PageCursor(Date createdAt, String reviewId) {
+            this.createdAt = createdAt;
+            this.reviewId = reviewId;
+        }
+
+        public Date getCreatedAt() { return createdAt; }
+        public String getReviewId() { return reviewId; }
     }
 
     public interface ReviewsLoadCallback {
@@ -38,12 +103,91 @@ public class ReviewService {
         void onSuccess();
         void onError(Exception e);
     }
+
+    public interface VoteSaveCallback {
+        void onSuccess(VoteResult result);
+        void onError(Exception e);
+    }
+    
+    public interface ReviewsPageCallback {
+        void onSuccess(List<Review> reviews, PageCursor nextCursor, boolean hasMore);
+        void onError(Exception e);
+    }
     
     public interface OnReviewsLoadedListener {
         void onReviewsLoaded(List<Review> reviews);
         void onError(String error);
     }
 
+    public interface RestaurantAggregatesCallback {
+        void onSuccess(Map<String, Object> aggregates);
+        void onError(Exception e);
+    }
+
+    public interface ReviewChangesCallback {
+        void onSuccess(ReviewChanges changes);
+        void onError(Exception e);
+    }
+
+    public interface CommentsCallback {
+        /**
+         * @param oldest the oldest comment's document, where loadOlderComments continues
+         */
+        void onComments(List<Comment> comments, DocumentSnapshot oldest, boolean hasMore);
+        void onError(Exception e);
+    }
+
+    /**
+     * Newest updatedAt covered by the loaded feed, null until a first page or delta was loaded
+     */
+    public static synchronized Date getHighWaterMark() {
+        return highWaterMarks.get(COLLECTION_REVIEWS);
+    }
+
+    /**
+     * Resume from a mark saved with the reviews cached on disk
+     */
+    public static synchronized void restoreHighWaterMark(Date mark) {
+        setHighWaterMark(mark);
+    }
+
+    private static synchronized void setHighWaterMark(Date mark) {
+        if (mark == null) {
+            highWaterMarks.remove(COLLECTION_REVIEWS);
+        } else {
+            highWaterMarks.put(COLLECTION_REVIEWS, mark);
+        }
+    }
+
+    // The first page's newest change can be older than edits to reviews further down
+    private static synchronized void resetHighWaterMark(Date firstPageNewest) {
+        setHighWaterMark(later(firstPageNewest, highWaterMarkFloor));
+        highWaterMarkFloor = null;
+    }
+
+    private static synchronized void raiseHighWaterMarkFloor(Date mark) {
+        highWaterMarkFloor = later(highWaterMarkFloor, mark);
+    }
+
+    private static synchronized void advanceHighWaterMark(Date mark) {
+        Date current = highWaterMarks.get(COLLECTION_REVIEWS);
+        if (mark != null && (current == null || mark.after(current))) {
+            highWaterMarks.put(COLLECTION_REVIEWS, mark);
+        }
+    }
+
+    // Reviews written before updatedAt existed only have createdAt
+    private static Date lastChange(QueryDocumentSnapshot document) {
+        Date updatedAt = document.getDate(FIELD_UPDATED_AT);
+        return updatedAt != null ? updatedAt : document.getDate("createdAt");
+    }
+
+    private static Date later(Date a, Date b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        return b.after(a) ? b : a;
+    }
+
     /**
      * Load all reviews ordered by createdAt (newest first)
      */
@@ -55,9 +199,7 @@ public class ReviewService {
                         List<Review> reviews = new ArrayList<>();
                         for (QueryDocumentSnapshot document : task.getResult()) {
                             try {
-                                Review review = document.toObject(Review.class);
-                                review.setId(document.getId());
-                                review.refreshAccuracyFromVotes(); // Calculate accuracy from votes
+                                Review review = parseReview(document);
                                 reviews.add(review);
                             } catch (Exception e) {
                                 Log.w(TAG, "Error parsing review: " + document.getId(), e);
@@ -73,61 +215,181 @@ public class ReviewService {
     }
 
     /**
-     * Load reviews with pagination limit
+     * Load the first page of reviews (newest first)
      */
     public void loadReviewsWithLimit(int limit, ReviewsLoadCallback callback) {
-        reviewsRef.orderBy("createdAt", Query.Direction.DESCENDING)
-                .limit(limit)
+        loadReviewsPage(null, limit, new ReviewsPageCallback() {
+            @Override
+            public void onSuccess(List<Review> reviews, PageCursor nextCursor, boolean hasMore) {
+                callback.onSuccess(reviews);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                callback.onError(e);
+            }
+        });
+    }
+
+    /**
+     * Load one page of reviews ordered by createdAt then document id (newest first).
+     * Pass the cursor from the previous page to continue, or null for the first page.
+     * A first page restarts the high-water mark from the newest change on it
+     */
+    public void loadReviewsPage(PageCursor after, int pageSize, ReviewsPageCallback callback) {
+        loadPage(reviewsRef, after, pageSize, true, callback);
+    }
+
+    /**
+     * One page of a restaurant's reviews in feed order, so the map sheet reads only what it
+     * shows. Needs the composite index restaurantId, createdAt desc, __name__ desc
+     */
+    public void loadRestaurantReviewsPage(String restaurantId, PageCursor after, int pageSize,
+                                          ReviewsPageCallback callback) {
+        loadPage(reviewsRef.whereEqualTo("restaurantId", restaurantId), after, pageSize, false, callback);
+    }
+
+    private void loadPage(Query base, PageCursor after, int pageSize, boolean tracksHighWaterMark,
+                          ReviewsPageCallback callback) {
+        Query query = base.orderBy("createdAt", Query.Direction.DESCENDING)
+                .orderBy(FieldPath.documentId(), Query.Direction.DESCENDING);
+        if (after != null) {
+            // keyset pagination, id breaks ties between reviews with the same createdAt
+            query = query.startAfter(after.getCreatedAt(), after.getReviewId());
+        }
+
+        query.limit(pageSize)
                 .get()
                 .addOnCompleteListener(task -> {
                     if (task.isSuccessful()) {
                         List<Review> reviews = new ArrayList<>();
+                        PageCursor nextCursor = after;
+                        Date newestChange = null;
+                        int documentCount = 0;
                         for (QueryDocumentSnapshot document : task.getResult()) {
+                            documentCount++;
+                            newestChange = later(newestChange, lastChange(document));
                             try {
-                                Review review = document.toObject(Review.class);
-                                review.setId(document.getId());
-                                review.refreshAccuracyFromVotes(); // Calculate accuracy from votes
+                                Review review = parseReview(document);
                                 reviews.add(review);
                             } catch (Exception e) {
                                 Log.w(TAG, "Error parsing review: " + document.getId(), e);
                             }
+                            Date createdAt = document.getDate("createdAt");
+                            if (createdAt != null) {
+                                nextCursor = new PageCursor(createdAt, document.getId());
+                            }
                         }
-                        callback.onSuccess(reviews);
-                        Log.d(TAG, "Loaded " + reviews.size() + " reviews with limit " + limit);
+                        if (tracksHighWaterMark && after == null) {
+                            // later pages don't move the mark: a review on an earlier page may
+                            // have changed before the newest change on a later one
+                            resetHighWaterMark(newestChange);
+                        }
+                        callback.onSuccess(reviews, nextCursor, documentCount >= pageSize);
+                        Log.d(TAG, "Loaded page of " + reviews.size() + " reviews");
                     } else {
-                        Log.w(TAG, "Error getting reviews with limit", task.getException());
+                        Log.w(TAG, "Error getting review page", task.getException());
                         callback.onError(task.getException());
                     }
                 });
     }
 
     /**
-     * Search reviews by description, caption, or restaurant name (client-side filtering)
+     * Load the reviews created, edited or deleted since the high-water mark, oldest change
+     * first, and advance the mark past them. An unchanged collection downloads no documents.
+     * Call only once a first page or a restored mark exists
      */
-    public void searchReviews(String query, ReviewsLoadCallback callback) {
-        // Load all reviews first, then filter on client side
-        loadReviews(new ReviewsLoadCallback() {
-            @Override
-            public void onSuccess(List<Review> reviews) {
-                List<Review> filteredReviews = new ArrayList<>();
-                String lowerQuery = query.toLowerCase().trim();
-                
-                for (Review review : reviews) {
-                    if ((review.getDescription() != null && review.getDescription().toLowerCase().contains(lowerQuery)) ||
-                        (review.getCaption() != null && review.getCaption().toLowerCase().contains(lowerQuery)) ||
-                        (review.getRestaurantName() != null && review.getRestaurantName().toLowerCase().contains(lowerQuery))) {
-                        filteredReviews.add(review);
+    public void loadReviewChanges(ReviewChangesCallback callback) {
+        Date since = getHighWaterMark();
+        if (since == null) {
+            callback.onSuccess(new ReviewChanges(new ArrayList<>(), new ArrayList<>(), null, false));
+            return;
+        }
+
+        reviewsRef.whereGreaterThan(FIELD_UPDATED_AT, since)
+                .orderBy(FIELD_UPDATED_AT, Query.Direction.ASCENDING)
+                .limit(DELTA_LIMIT)
+                .get()
+                .addOnCompleteListener(task -> {
+                    if (!task.isSuccessful()) {
+                        Log.w(TAG, "Error getting review changes", task.getException());
+                        callback.onError(task.getException());
+                        return;
                     }
-                }
-                
-                callback.onSuccess(filteredReviews);
-                Log.d(TAG, "Search returned " + filteredReviews.size() + " reviews for query: " + query);
-            }
 
-            @Override
-            public void onError(Exception e) {
-                callback.onError(e);
-            }
+                    List<Review> changed = new ArrayList<>();
+                    List<String> deletedIds = new ArrayList<>();
+                    Date newestChange = since;
+                    int documentCount = 0;
+                    for (QueryDocumentSnapshot document : task.getResult()) {
+                        documentCount++;
+                        newestChange = later(newestChange, document.getDate(FIELD_UPDATED_AT));
+                        if (Boolean.TRUE.equals(document.getBoolean(FIELD_DELETED))) {
+                            deletedIds.add(document.getId());
+                            continue;
+                        }
+                        try {
+                            changed.add(parseReview(document));
+                        } catch (Exception e) {
+                            Log.w(TAG, "Error parsing review: " + document.getId(), e);
+                        }
+                    }
+
+                    // whoever syncs, search sees the same reviews as the feed
+                    ReviewSearchIndex searchIndex = ReviewSearchIndex.getInstance();
+                    for (String deletedId : deletedIds) {
+                        searchIndex.removeReview(deletedId);
+                    }
+                    searchIndex.indexReviews(changed);
+
+                    Log.d(TAG, "Loaded " + documentCount + " review changes since " + since);
+                    ReviewChanges changes = new ReviewChanges(changed, deletedIds, newestChange, documentCount < DELTA_LIMIT);
+                    if (changes.isComplete()) {
+                        advanceHighWaterMark(newestChange);
+                        callback.onSuccess(changes);
+                        return;
+                    }
+                    // the caller reloads from the first page, after which only changes newer
+                    // than everything in the collection now are worth a delta
+                    raiseHighWaterMarkFloor(newestChange);
+                    loadNewestChange(newest -> {
+                        raiseHighWaterMarkFloor(newest);
+                        callback.onSuccess(changes);
+                    });
+                });
+    }
+
+    private interface NewestChangeCallback {
+        void onNewestChange(Date newest);
+    }
+
+    // One document: the review changed last, null if it can't be read
+    private void loadNewestChange(NewestChangeCallback callback) {
+        reviewsRef.orderBy(FIELD_UPDATED_AT, Query.Direction.DESCENDING)
+                .limit(1)
+                .get()
+                .addOnCompleteListener(task -> {
+                    Date newest = null;
+                    if (task.isSuccessful()) {
+                        for (QueryDocumentSnapshot document : task.getResult()) {
+                            newest = document.getDate(FIELD_UPDATED_AT);
+                        }
+                    } else {
+                        Log.w(TAG, "Error getting newest review change", task.getException());
+                    }
+                    callback.onNewestChange(newest);
+                });
+    }
+
+    /**
+     * Search reviews by description, caption, restaurant or user name, among the reviews in
+     * the shared search index: the feed pages loaded so far, kept current by saves, deletes
+     * and delta syncs. Nothing is downloaded for a search
+     */
+    public void searchReviews(String query, ReviewsLoadCallback callback) {
+        ReviewSearchIndex.getInstance().search(query, (searchedQuery, results) -> {
+            callback.onSuccess(results);
+            Log.d(TAG, "Search returned " + results.size() + " reviews for query: " + query);
         });
     }
     
@@ -143,9 +405,7 @@ public class ReviewService {
                         List<Review> reviews = new ArrayList<>();
                         for (QueryDocumentSnapshot document : task.getResult()) {
                             try {
-                                Review review = document.toObject(Review.class);
-                                review.setId(document.getId());
-                                review.refreshAccuracyFromVotes(); // Calculate accuracy from votes
+                                Review review = parseReview(document);
                                 reviews.add(review);
                             } catch (Exception e) {
                                 Log.w(TAG, "Error parsing review: " + document.getId(), e);
@@ -173,16 +433,35 @@ public class ReviewService {
         reviewData.put("rating", review.getRating());
         reviewData.put("accuracyPercent", review.getAccuracyPercent());
         reviewData.put("imageUrls", review.getImageUrls());
+        reviewData.put("thumbnailUrls", review.getThumbnailUrls());
+        reviewData.put("mediumUrls", review.getMediumUrls());
         reviewData.put("firstImageType", review.getFirstImageType());
         reviewData.put("createdAt", review.getCreatedAt());
+        reviewData.put(FIELD_UPDATED_AT, FieldValue.serverTimestamp());
         reviewData.put("votes", review.getVotes());
-        reviewData.put("comments", review.getComments());
+        long[] counts = countVotes(review.getVotes());
+        reviewData.put(FIELD_ACCURATE_VOTE_COUNT, counts[0]);
+        reviewData.put(FIELD_TOTAL_VOTE_COUNT, counts[1]);
+        reviewData.put(FIELD_COMMENT_COUNT, 0);
         
         // Use auto-generated document ID. Do not store an explicit id/helpfulCount field
-        reviewsRef
-                .add(reviewData)
-                .addOnSuccessListener(aVoid -> {
+        DocumentReference reviewRef = reviewsRef.document();
+        review.setId(reviewRef.getId());
+        DocumentReference restaurantRef = restaurantRef(review.getRestaurantId());
+        RestaurantAggregateDelta delta = RestaurantAggregateDelta.forReviewAdded(review);
+
+        // the review and its restaurant's aggregates change together or not at all
+        db.runTransaction(transaction -> {
+                    DocumentSnapshot restaurant = restaurantRef != null ? transaction.get(restaurantRef) : null;
+                    transaction.set(reviewRef, reviewData);
+                    return applyAggregateDelta(transaction, restaurantRef, restaurant, delta);
+                })
+                .addOnSuccessListener(aggregated -> {
                     Log.d(TAG, "Review saved successfully");
+                    ReviewSearchIndex.getInstance().indexReviews(Collections.singletonList(review));
+                    if (restaurantRef != null && !Boolean.TRUE.equals(aggregated)) {
+                        rebuildRestaurantAggregates(review.getRestaurantId(), null);
+                    }
                     callback.onSuccess();
                 })
                 .addOnFailureListener(e -> {
@@ -190,4 +469,613 @@ public class ReviewService {
                     callback.onError(e);
                 });
     }
+
+    /**
+     * Delete a review by replacing it with a tombstone, so feeds syncing by updatedAt learn
+     * about the deletion. The tombstone keeps no content, userId or createdAt, which also
+     * keeps it out of every query other than the delta
+     */
+    public void deleteReview(String reviewId, ReviewSaveCallback callback) {
+        Map<String, Object> tombstone = new HashMap<>();
+        tombstone.put(FIELD_DELETED, true);
+        tombstone.put(FIELD_UPDATED_AT, FieldValue.serverTimestamp());
+
+        DocumentReference reviewRef = reviewsRef.document(reviewId);
+        String[] restaurantId = new String[1];
+        db.runTransaction(transaction -> {
+                    // the stored review, not the caller's copy, is what the aggregates counted
+                    DocumentSnapshot stored = transaction.get(reviewRef);
+                    Review review = null;
+                    if (stored.exists() && !Boolean.TRUE.equals(stored.getBoolean(FIELD_DELETED))) {
+                        review = stored.toObject(Review.class);
+                    }
+                    DocumentReference restaurantRef = review != null ? restaurantRef(review.getRestaurantId()) : null;
+                    DocumentSnapshot restaurant = restaurantRef != null ? transaction.get(restaurantRef) : null;
+
+                    transaction.set(reviewRef, tombstone);
+                    if (review == null) {
+                        return true;
+                    }
+                    review.setId(reviewId);
+                    restaurantId[0] = review.getRestaurantId();
+                    return applyAggregateDelta(transaction, restaurantRef, restaurant,
+                            RestaurantAggregateDelta.forReviewRemoved(review));
+                })
+                .addOnSuccessListener(aggregated -> {
+                    Log.d(TAG, "Review deleted: " + reviewId);
+                    ReviewSearchIndex.getInstance().removeReview(reviewId);
+                    if (restaurantId[0] != null && !Boolean.TRUE.equals(aggregated)) {
+                        rebuildRestaurantAggregates(restaurantId[0], null);
+                    }
+                    callback.onSuccess();
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error deleting review", e);
+                    callback.onError(e);
+                });
+    }
+
+    /**
+     * Record voterId's vote on a review: true or false, or null to withdraw it. Only the
+     * voter's own entry is written, so the write is the same size however many votes the
+     * review has. The counters are incremented by the change from the vote stored for the
+     * voter, read in the same transaction, not from the caller's copy, which may be stale;
+     * reviews from before the counters get them counted from their votes. The restaurant's
+     * aggregates and the author's activity inbox entry change in the same transaction.
+     * Fails with NOT_FOUND if the review was deleted. The callback gets what was read from
+     * the stored review
+     */
+    public void setVote(Review review, String voterId, Boolean vote, VoteSaveCallback callback) {
+        DocumentReference reviewRef = reviewsRef.document(review.getId());
+        FieldPath voterPath = FieldPath.of(FIELD_VOTES, voterId);
+        Object voteValue = vote != null ? voteData(vote) : FieldValue.delete();
+        // the author's activity inbox changes with the vote
+        DocumentReference activity = activityInbox.voteDocument(review, voterId);
+
+        db.runTransaction(transaction -> {
+                    DocumentSnapshot stored = transaction.get(reviewRef);
+                    if (isMissingOrDeleted(stored)) {
+                        throw reviewDeleted(reviewRef.getId());
+                    }
+                    Review current = stored.toObject(Review.class);
+                    Map<String, Map<String, Object>> votes = current != null && current.getVotes() != null
+                            ? new HashMap<>(current.getVotes()) : new HashMap<>();
+                    // same reading as countVotes, an entry without accurate=true is a false vote
+                    Map<String, Object> storedVote = votes.get(voterId);
+                    Boolean previousVote = storedVote != null ? Boolean.TRUE.equals(storedVote.get("accurate")) : null;
+                    String restaurantId = current != null ? current.getRestaurantId() : null;
+                    DocumentReference restaurantRef = restaurantRef(restaurantId);
+                    DocumentSnapshot restaurant = restaurantRef != null ? transaction.get(restaurantRef) : null;
+
+                    VoteResult result = new VoteResult(previousVote, restaurantId);
+                    if (current != null && current.hasVoteCounters()) {
+                        long[] change = Review.voteCounterChange(previousVote, vote);
+                        result.countsBefore = new long[]{current.getAccurateVoteCount(), current.getTotalVoteCount()};
+                        result.countsAfter = new long[]{result.countsBefore[0] + change[0],
+                                result.countsBefore[1] + change[1]};
+                        transaction.update(reviewRef, voterPath, voteValue,
+                                FIELD_ACCURATE_VOTE_COUNT, FieldValue.increment(change[0]),
+                                FIELD_TOTAL_VOTE_COUNT, FieldValue.increment(change[1]),
+                                FIELD_UPDATED_AT, FieldValue.serverTimestamp());
+                    } else {
+                        result.countsBefore = countVotes(votes);
+                        applyVote(votes, voterId, vote);
+                        result.countsAfter = countVotes(votes);
+                        transaction.update(reviewRef, voterPath, voteValue,
+                                FIELD_ACCURATE_VOTE_COUNT, result.countsAfter[0],
+                                FIELD_TOTAL_VOTE_COUNT, result.countsAfter[1],
+                                FIELD_UPDATED_AT, FieldValue.serverTimestamp());
+                    }
+
+                    RestaurantAggregateDelta delta = RestaurantAggregateDelta.forVoteCountChange(
+                            result.countsBefore[0], result.countsBefore[1],
+                            result.countsAfter[0], result.countsAfter[1]);
+                    result.aggregated = delta.isEmpty()
+                            || applyAggregateDelta(transaction, restaurantRef, restaurant, delta);
+
+                    if (activity != null) {
+                        if (Boolean.TRUE.equals(vote)) {
+                            transaction.set(activity, ActivityInbox.voteData(review, voterId, FieldValue.serverTimestamp()));
+                        } else {
+                            transaction.delete(activity);
+                        }
+                    }
+                    return result;
+                })
+                .addOnSuccessListener(result -> {
+                    if (!result.aggregated) {
+                        rebuildRestaurantAggregates(result.restaurantId, null);
+                    }
+                    callback.onSuccess(result);
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error saving vote on review: " + review.getId(), e);
+                    callback.onError(e);
+                });
+    }
+
+    /**
+     * What a vote transaction read from the stored review: the voter's previous vote and the
+     * {accurate, total} counts before and after the vote
+     */
+    public static class VoteResult {
+        private final Boolean previousVote;
+        private final String restaurantId;
+        private long[] countsBefore;
+        private long[] countsAfter;
+        // whether the restaurant's aggregates took the change
+        private boolean aggregated;
+
+        VoteResult(Boolean previousVote, String restaurantId) {
+            this.previousVote = previousVote;
+            this.restaurantId = restaurantId;
+        }
+
+        /** The voter's vote the review had stored, null if none */
+        public Boolean getPreviousVote() { return previousVote; }
+        public long[] getCountsBefore() { return countsBefore; }
+        public long[] getCountsAfter() { return countsAfter; }
+    }
+
+    // a caller holding a stale copy must not write onto a deleted review's tombstone
+    private static boolean isMissingOrDeleted(DocumentSnapshot review) {
+        return !review.exists() || Boolean.TRUE.equals(review.getBoolean(FIELD_DELETED));
+    }
+
+    private static FirebaseFirestoreException reviewDeleted(String reviewId) {
+        return new FirebaseFirestoreException("Review was deleted: " + reviewId,
+                FirebaseFirestoreException.Code.NOT_FOUND);
+    }
+
+    private static Map<String, Object> voteData(boolean accurate) {
+        Map<String, Object> voteData = new HashMap<>();
+        voteData.put("accurate", accurate);
+        voteData.put("timestamp", FieldValue.serverTimestamp());
+        return voteData;
+    }
+
+    private static void applyVote(Map<String, Map<String, Object>> votes, String voterId, Boolean vote) {
+        if (vote == null) {
+            votes.remove(voterId);
+        } else {
+            Map<String, Object> placeholder = new HashMap<>();
+            placeholder.put("accurate", vote);
+            votes.put(voterId, placeholder);
+        }
+    }
+
+    /**
+     * {accurate, total} for a votes map
+     */
+    static long[] countVotes(Map<String, Map<String, Object>> votes) {
+        long accurate = 0;
+        long total = 0;
+        if (votes != null) {
+            for (Map<String, Object> voteData : votes.values()) {
+                total++;
+                if (voteData != null && Boolean.TRUE.equals(voteData.get("accurate"))) {
+                    accurate++;
+                }
+            }
+        }
+        return new long[]{accurate, total};
+    }
+
+    /**
+     * Live view of a review's newest COMMENTS_PAGE_SIZE comments, newest first. Older ones
+     * are read a page at a time with loadOlderComments, so paging back reads each comment
+     * once. Remove the returned registration when the view closes
+     */
+    public ListenerRegistration listenToComments(String reviewId, CommentsCallback callback) {
+        return commentsQuery(reviewId)
+                .limit(COMMENTS_PAGE_SIZE)
+                .addSnapshotListener((snapshots, error) -> {
+                    if (error != null) {
+                        Log.w(TAG, "Error listening to comments of review: " + reviewId, error);
+                        callback.onError(error);
+                        return;
+                    }
+                    if (snapshots == null) return;
+                    deliverComments(snapshots, callback);
+                });
+    }
+
+    /**
+     * The page of comments older than after, newest first
+     */
+    public void loadOlderComments(String reviewId, DocumentSnapshot after, CommentsCallback callback) {
+        commentsQuery(reviewId)
+                .startAfter(after)
+                .limit(COMMENTS_PAGE_SIZE)
+                .get()
+                .addOnSuccessListener(snapshots -> deliverComments(snapshots, callback))
+                .addOnFailureListener(e -> {
+                    Log.w(TAG, "Error loading older comments of review: " + reviewId, e);
+                    callback.onError(e);
+                });
+    }
+
+    private Query commentsQuery(String reviewId) {
+        return reviewsRef.document(reviewId)
+                .collection(COLLECTION_COMMENTS)
+                .orderBy("createdAt", Query.Direction.DESCENDING);
+    }
+
+    private static void deliverComments(QuerySnapshot snapshots, CommentsCallback callback) {
+        List<Comment> comments = new ArrayList<>();
+        DocumentSnapshot oldest = null;
+        for (QueryDocumentSnapshot document : snapshots) {
+            oldest = document;
+            try {
+                Comment comment = document.toObject(Comment.class);
+                comment.setId(document.getId());
+                comments.add(comment);
+            } catch (Exception e) {
+                Log.w(TAG, "Error parsing comment: " + document.getId(), e);
+            }
+        }
+        callback.onComments(comments, oldest, snapshots.size() >= COMMENTS_PAGE_SIZE);
+    }
+
+    /**
+     * Add a comment to the review's comments subcollection, count it on the review and add it
+     * to the author's activity inbox in the same batch. Fails with NOT_FOUND if the review was
+     * deleted. The comment's id is set to its new document id
+     */
+    public void addComment(Review review, Comment comment, ReviewSaveCallback callback) {
+        DocumentReference reviewRef = reviewsRef.document(review.getId());
+        DocumentReference commentRef = reviewRef.collection(COLLECTION_COMMENTS).document();
+        comment.setId(commentRef.getId());
+        comment.setReviewUserId(review.getUserId());
+
+        Map<String, Object> reviewUpdates = new HashMap<>();
+        reviewUpdates.put(FIELD_COMMENT_COUNT, FieldValue.increment(1));
+        reviewUpdates.put(FIELD_UPDATED_AT, FieldValue.serverTimestamp());
+
+        reviewRef.get()
+                .addOnSuccessListener(stored -> {
+                    if (isMissingOrDeleted(stored)) {
+                        Log.w(TAG, "Not commenting on deleted review: " + review.getId());
+                        callback.onError(reviewDeleted(review.getId()));
+                        return;
+                    }
+
+                    WriteBatch batch = db.batch();
+                    batch.set(commentRef, commentData(comment));
+                    batch.update(reviewRef, reviewUpdates);
+                    DocumentReference activity = activityInbox.commentDocument(review, comment);
+                    if (activity != null) {
+                        batch.set(activity, ActivityInbox.commentData(review, comment, FieldValue.serverTimestamp()));
+                    }
+                    batch.commit()
+                            .addOnSuccessListener(aVoid -> {
+                                review.setCommentCount(review.getCommentCount() + 1);
+                                callback.onSuccess();
+                            })
+                            .addOnFailureListener(e -> {
+                                Log.e(TAG, "Error adding comment to review: " + review.getId(), e);
+                                callback.onError(e);
+                            });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error reading review before commenting: " + review.getId(), e);
+                    callback.onError(e);
+                });
+    }
+
+    /**
+     * Move a review's inline comments array into its comments subcollection, once. Comment
+     * ids come from their position in the array, so clients migrating the same review at
+     * the same time write the same documents. Reviews without the array are left as they are
+     */
+    public void migrateComments(Review review, ReviewSaveCallback callback) {
+        DocumentReference reviewRef = reviewsRef.document(review.getId());
+        CollectionReference commentsRef = reviewRef.collection(COLLECTION_COMMENTS);
+        db.runTransaction(transaction -> {
+                    DocumentSnapshot stored = transaction.get(reviewRef);
+                    Map<String, Map<String, Object>> legacy =
+                            legacyCommentDocuments(stored.get(FIELD_LEGACY_COMMENTS), stored.getString("userId"));
+                    Long counted = stored.getLong(FIELD_COMMENT_COUNT);
+                    if (legacy.isEmpty()) {
+                        return counted;
+                    }
+
+                    for (Map.Entry<String, Map<String, Object>> comment : legacy.entrySet()) {
+                        transaction.set(commentsRef.document(comment.getKey()), comment.getValue());
+                    }
+                    // comments added after the array stopped growing are already counted
+                    long commentCount = (counted != null ? counted : 0) + legacy.size();
+                    transaction.update(reviewRef,
+                            FIELD_LEGACY_COMMENTS, FieldValue.delete(),
+                            FIELD_COMMENT_COUNT, commentCount,
+                            FIELD_UPDATED_AT, FieldValue.serverTimestamp());
+                    return commentCount;
+                })
+                .addOnSuccessListener(commentCount -> {
+                    if (commentCount != null) {
+                        review.setCommentCount(commentCount.intValue());
+                    }
+                    review.setComments(new ArrayList<>());
+                    Log.d(TAG, "Migrated comments of review: " + review.getId());
+                    callback.onSuccess();
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error migrating comments of review: " + review.getId(), e);
+                    callback.onError(e);
+                });
+    }
+
+    /**
+     * Subcollection documents for an inline comments array, keyed by their stable ids
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Map<String, Object>> legacyCommentDocuments(Object stored, String reviewUserId) {
+        Map<String, Map<String, Object>> documents = new LinkedHashMap<>();
+        if (!(stored instanceof List)) return documents;
+
+        List<Object> items = (List<Object>) stored;
+        for (int i = 0; i < items.size(); i++) {
+            if (!(items.get(i) instanceof Map)) continue;
+            Map<String, Object> data = new HashMap<>((Map<String, Object>) items.get(i));
+            data.remove("id");
+            data.put("reviewUserId", reviewUserId);
+            documents.put(LEGACY_COMMENT_ID_PREFIX + i, data);
+        }
+        return documents;
+    }
+
+    // reviewUserId lets the review's author find comments on their reviews across reviews
+    private static Map<String, Object> commentData(Comment comment) {
+        Map<String, Object> data = new HashMap<>();
+        data.put("userId", comment.getUserId());
+        data.put("userName", comment.getUserName());
+        data.put("text", comment.getText());
+        data.put("createdAt", comment.getCreatedAt());
+        data.put("reviewUserId", comment.getReviewUserId());
+        return data;
+    }
+
+    /**
+     * Review from a snapshot for lists. Reviews with stored counters skip the votes map, so
+     * parsing and holding one costs the same however many votes it has; load the map with
+     * loadVotes when it's needed. Older reviews without counters are read in full
+     */
+    public static Review parseReview(DocumentSnapshot document) {
+        Review review = new Review();
+        review.setId(document.getId());
+        review.setUserId(document.getString("userId"));
+        review.setRestaurantId(document.getString("restaurantId"));
+        review.setCaption(document.getString("caption"));
+        review.setDescription(document.getString("description"));
+        Double rating = document.getDouble("rating");
+        review.setRating(rating != null ? rating.floatValue() : 0f);
+        Long accuracy = document.getLong("accuracy");
+        review.setAccuracy(accuracy != null ? accuracy.intValue() : 0);
+        review.setImageUrls(stringList(document.get("imageUrls")));
+        review.setThumbnailUrls(stringList(document.get("thumbnailUrls")));
+        review.setMediumUrls(stringList(document.get("mediumUrls")));
+        review.setFirstImageType(document.getString("firstImageType"));
+        review.setCreatedAt(document.getDate("createdAt"));
+        review.setUpdatedAt(document.getDate(FIELD_UPDATED_AT));
+        review.setComments(parseComments(document.get(FIELD_LEGACY_COMMENTS)));
+        Long commentCount = document.getLong(FIELD_COMMENT_COUNT);
+        review.setCommentCount(commentCount != null ? commentCount.intValue() : review.getComments().size());
+
+        review.setAccurateVoteCount(document.getLong(FIELD_ACCURATE_VOTE_COUNT));
+        review.setTotalVoteCount(document.getLong(FIELD_TOTAL_VOTE_COUNT));
+        if (review.hasVoteCounters()) {
+            review.markVotesNotLoaded();
+        } else {
+            review.setVotes(parseVotes(document.get(FIELD_VOTES)));
+        }
+        review.refreshAccuracyFromVotes();
+        return review;
+    }
+
+    /**
+     * Read the votes map of a review parsed without it. The counters are refreshed from the
+     * same read so they agree with the map
+     */
+    public void loadVotes(Review review, ReviewSaveCallback callback) {
+        reviewsRef.document(review.getId())
+                .get()
+                .addOnSuccessListener(document -> {
+                    review.setVotes(parseVotes(document.get(FIELD_VOTES)));
+                    Long accurate = document.getLong(FIELD_ACCURATE_VOTE_COUNT);
+                    Long total = document.getLong(FIELD_TOTAL_VOTE_COUNT);
+                    if (accurate != null && total != null) {
+                        review.setAccurateVoteCount(accurate);
+                        review.setTotalVoteCount(total);
+                    }
+                    review.refreshAccuracyFromVotes();
+                    callback.onSuccess();
+                })
+                .addOnFailureListener(e -> {
+                    Log.w(TAG, "Error loading votes for review: " + review.getId(), e);
+                    callback.onError(e);
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Map<String, Object>> parseVotes(Object stored) {
+        Map<String, Map<String, Object>> votes = new HashMap<>();
+        if (!(stored instanceof Map)) return votes;
+        for (Map.Entry<String, Object> voter : ((Map<String, Object>) stored).entrySet()) {
+            if (voter.getValue() instanceof Map) {
+                votes.put(voter.getKey(), new HashMap<>((Map<String, Object>) voter.getValue()));
+            }
+        }
+        return votes;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<Comment> parseComments(Object stored) {
+        List<Comment> comments = new ArrayList<>();
+        if (!(stored instanceof List)) return comments;
+        for (Object item : (List<Object>) stored) {
+            if (!(item instanceof Map)) continue;
+            Map<String, Object> commentMap = (Map<String, Object>) item;
+            Comment comment = new Comment();
+            comment.setId((String) commentMap.get("id"));
+            comment.setUserId((String) commentMap.get("userId"));
+            comment.setUserName((String) commentMap.get("userName"));
+            comment.setText((String) commentMap.get("text"));
+            Object createdAt = commentMap.get("createdAt");
+            if (createdAt instanceof Timestamp) {
+                comment.setCreatedAt(((Timestamp) createdAt).toDate());
+            } else if (createdAt instanceof Date) {
+                comment.setCreatedAt((Date) createdAt);
+            }
+            comments.add(comment);
+        }
+        return comments;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<String> stringList(Object stored) {
+        if (!(stored instanceof List)) return null;
+        List<String> strings = new ArrayList<>();
+        for (Object item : (List<Object>) stored) {
+            if (item instanceof String) {
+                strings.add((String) item);
+            }
+        }
+        return strings;
+    }
+
+    private DocumentReference restaurantRef(String restaurantId) {
+        if (restaurantId == null || restaurantId.trim().isEmpty()) return null;
+        return db.collection(COLLECTION_RESTAURANTS).document(restaurantId);
+    }
+
+    /**
+     * Stage an aggregate update in a transaction. False if the restaurant has no maintained
+     * aggregates yet: their generation is bumped instead, and the caller rebuilds them once
+     * the transaction is through
+     */
+    private static boolean applyAggregateDelta(Transaction transaction, DocumentReference restaurantRef,
+                                               DocumentSnapshot restaurant, RestaurantAggregateDelta delta) {
+        // no restaurant document to keep aggregates on, so nothing to rebuild either
+        if (restaurantRef == null || restaurant == null || !restaurant.exists()) return true;
+
+        Map<String, Object> aggregates = copyAggregates(restaurant.get(FIELD_AGGREGATES));
+        if (!RestaurantAggregateDelta.isMaintained(aggregates)) {
+            transaction.update(restaurantRef, FIELD_AGGREGATES_GENERATION, FieldValue.increment(1));
+            return false;
+        }
+
+        delta.applyTo(aggregates);
+        transaction.update(restaurantRef, FIELD_AGGREGATES, aggregates);
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> copyAggregates(Object stored) {
+        if (stored instanceof Map) {
+            return new HashMap<>((Map<String, Object>) stored);
+        }
+        return new HashMap<>();
+    }
+
+    /**
+     * Review count, average rating and accuracy and the newest review ids of a restaurant,
+     * one document read. Restaurants that predate the aggregates are rebuilt from their
+     * reviews once
+     */
+    public void loadRestaurantAggregates(String restaurantId, RestaurantAggregatesCallback callback) {
+        DocumentReference restaurantRef = restaurantRef(restaurantId);
+        if (restaurantRef == null) {
+            callback.onSuccess(RestaurantAggregateDelta.createEmptyAggregates());
+            return;
+        }
+
+        restaurantRef.get()
+                .addOnSuccessListener(snapshot -> {
+                    Map<String, Object> aggregates = copyAggregates(snapshot.get(FIELD_AGGREGATES));
+                    if (RestaurantAggregateDelta.isMaintained(aggregates)) {
+                        callback.onSuccess(aggregates);
+                    } else {
+                        rebuildRestaurantAggregates(restaurantId, callback);
+                    }
+                })
+                .addOnFailureListener(callback::onError);
+    }
+
+    /**
+     * Recount a restaurant's aggregates from all of its reviews. The count is only saved if
+     * the aggregates are still unmaintained and no write bumped their generation since the
+     * scan started; such a write runs its own rebuild, whose scan sees it. Restaurants without
+     * a document get the count without it being saved
+     */
+    private void rebuildRestaurantAggregates(String restaurantId, RestaurantAggregatesCallback callback) {
+        DocumentReference restaurantRef = restaurantRef(restaurantId);
+        restaurantRef.get()
+                .addOnSuccessListener(restaurant -> {
+                    // read before the scan, every write the scan may miss changes it
+                    Long generation = restaurant.getLong(FIELD_AGGREGATES_GENERATION);
+                    reviewsRef.whereEqualTo("restaurantId", restaurantId)
+                            .get()
+                            .addOnSuccessListener(snapshots -> {
+                                List<Review> reviews = new ArrayList<>();
+                                for (QueryDocumentSnapshot document : snapshots) {
+                                    try {
+                                        reviews.add(parseReview(document));
+                                    } catch (Exception e) {
+                                        Log.w(TAG, "Error parsing review: " + document.getId(), e);
+                                    }
+                                }
+                                Map<String, Object> counted = RestaurantAggregateDelta.fromReviews(reviews);
+                                if (!restaurant.exists()) {
+                                    if (callback != null) {
+                                        callback.onSuccess(counted);
+                                    }
+                                    return;
+                                }
+                                saveRebuiltAggregates(restaurantRef, generation, counted, callback);
+                            })
+                            .addOnFailureListener(e -> {
+                                Log.e(TAG, "Error rebuilding aggregates for restaurant: " + restaurantId, e);
+                                if (callback != null) {
+                                    callback.onError(e);
+                                }
+                            });
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error reading restaurant: " + restaurantId, e);
+                    if (callback != null) {
+                        callback.onError(e);
+                    }
+                });
+    }
+
+    private void saveRebuiltAggregates(DocumentReference restaurantRef, Long generation,
+                                       Map<String, Object> counted, RestaurantAggregatesCallback callback) {
+        db.runTransaction(transaction -> {
+                    DocumentSnapshot restaurant = transaction.get(restaurantRef);
+                    if (!restaurant.exists()) {
+                        return counted;
+                    }
+                    Map<String, Object> stored = copyAggregates(restaurant.get(FIELD_AGGREGATES));
+                    if (RestaurantAggregateDelta.isMaintained(stored)) {
+                        // another rebuild got there first, deltas have kept them since
+                        return stored;
+                    }
+                    if (Objects.equals(generation, restaurant.getLong(FIELD_AGGREGATES_GENERATION))) {
+                        transaction.update(restaurantRef, FIELD_AGGREGATES, counted);
+                    }
+                    return counted;
+                })
+                .addOnSuccessListener(aggregates -> {
+                    Log.d(TAG, "Rebuilt aggregates for restaurant: " + restaurantRef.getId());
+                    if (callback != null) {
+                        callback.onSuccess(aggregates);
+                    }
+                })
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Error saving aggregates for restaurant: " + restaurantRef.getId(), e);
+                    if (callback != null) {
+                        callback.onSuccess(counted);
+                    }
+                });
+    }
 }
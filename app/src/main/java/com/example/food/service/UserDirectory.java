@@ -0,0 +1,338 @@
+package com.example.food.service;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import com.example.food.cache.LocalDatabase;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QueryDocumentSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Resolves user ids to display name and avatar for feeds, comments and activity.
+ * Lookups made in the same frame are merged, misses are fetched in whereIn batches of 10
+ * and results are kept in an LRU with a TTL. Fetched users are also written to the
+ * LocalDatabase, so a relaunch within the TTL starts with them. Main thread only.
+ */
+public class UserDirectory {
+    private static final String TAG = "UserDirectory";
+    private static final String COLLECTION_USERS = "users";
+    static final int WHERE_IN_LIMIT = 10; // Firestore whereIn limit
+    private static final int MAX_ENTRIES = 500;
+    private static final long ENTRY_TTL = 10 * 60 * 1000; // 10 minutes
+
+    private static UserDirectory instance;
+
+    private final UserFetcher fetcher;
+    private final FlushScheduler scheduler;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private final LinkedHashMap<String, UserInfo> cache = new LinkedHashMap<String, UserInfo>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, UserInfo> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final Map<String, List<LookupRequest>> waiters = new HashMap<>();
+    private final Set<String> queuedIds = new LinkedHashSet<>();
+    private final Set<String> inFlightIds = new HashSet<>();
+    private boolean flushScheduled;
+    private LocalDatabase database;
+
+    public interface OnUsersResolvedListener {
+        void onUsersResolved(Map<String, UserInfo> users);
+    }
+
+    public interface OnUserResolvedListener {
+        void onUserResolved(UserInfo user);
+    }
+
+    /**
+     * Loads one batch of at most WHERE_IN_LIMIT users, users without a document are left out
+     */
+    interface UserFetcher {
+        void fetch(List<String> userIds, FetchCallback callback);
+    }
+
+    interface FetchCallback {
+        void onFetched(Map<String, UserInfo> users);
+
+        void onError(Exception e);
+    }
+
+    interface FlushScheduler {
+        void scheduleFlush(Runnable flush);
+    }
+
+    /**
+     * Cached view of a user document, name and avatarUrl can be null
+     */
+    public static class UserInfo {
+        private final String userId;
+        private final String name;
+        private final String avatarUrl;
+        private final long fetchedAt;
+
+        public UserInfo(String userId, String name, String avatarUrl, long fetchedAt) {
+            this.userId = userId;
+            this.name = name;
+            this.avatarUrl = avatarUrl;
+            this.fetchedAt = fetchedAt;
+        }
+
+        public String getUserId() { return userId; }
+        public String getName() { return name; }
+        public String getAvatarUrl() { return avatarUrl; }
+        public long getFetchedAt() { return fetchedAt; }
+
+        public boolean hasName() {
+            return name != null && !name.trim().isEmpty();
+        }
+
+        public boolean hasAvatar() {
+            return avatarUrl != null && !avatarUrl.trim().isEmpty();
+        }
+    }
+
+    private static class LookupRequest {
+        final Set<String> remaining = new HashSet<>();
+        final Map<String, UserInfo> result = new HashMap<>();
+        final OnUsersResolvedListener listener;
+
+        LookupRequest(OnUsersResolvedListener listener) {
+            this.listener = listener;
+        }
+    }
+
+    private UserDirectory() {
+        this.fetcher = new FirestoreUserFetcher(FirebaseFirestore.getInstance());
+        this.scheduler = mainHandler::post;
+    }
+
+    UserDirectory(UserFetcher fetcher, FlushScheduler scheduler) {
+        this.fetcher = fetcher;
+        this.scheduler = scheduler;
+    }
+
+    public static synchronized UserDirectory getInstance() {
+        if (instance == null) {
+            instance = new UserDirectory();
+        }
+        return instance;
+    }
+
+    /**
+     * Same instance, with the on-disk copy attached the first time a Context is available
+     */
+    public static synchronized UserDirectory getInstance(Context context) {
+        UserDirectory directory = getInstance();
+        if (directory.database == null) {
+            directory.attachDatabase(LocalDatabase.getInstance(context));
+        }
+        return directory;
+    }
+
+    private void attachDatabase(LocalDatabase database) {
+        this.database = database;
+        long freshAfter = System.currentTimeMillis() - ENTRY_TTL;
+        database.execute(() -> {
+            List<UserInfo> stored = database.readUsers(freshAfter);
+            database.deleteUsersFetchedBefore(freshAfter);
+            mainHandler.post(() -> {
+                for (UserInfo info : stored) {
+                    // never overwrite a fresher lookup from this session
+                    if (!cache.containsKey(info.getUserId())) {
+                        cache.put(info.getUserId(), info);
+                    }
+                }
+                Log.d(TAG, "Restored " + stored.size() + " users from disk");
+            });
+        });
+    }
+
+    /**
+     * Synchronous lookup, returns null on a miss or expired entry
+     */
+    public UserInfo getCached(String userId) {
+        if (userId == null) return null;
+        UserInfo info = cache.get(userId);
+        if (info != null && System.currentTimeMillis() - info.getFetchedAt() > ENTRY_TTL) {
+            cache.remove(userId);
+            return null;
+        }
+        return info;
+    }
+
+    public void resolve(String userId, OnUserResolvedListener listener) {
+        resolve(Collections.singletonList(userId), users -> listener.onUserResolved(users.get(userId)));
+    }
+
+    /**
+     * Resolve a set of users. Cached users are returned straight away, the rest join the next
+     * batch or an in-flight request for the same id. Users that could not be loaded are absent
+     * from the result map
+     */
+    public void resolve(Collection<String> userIds, OnUsersResolvedListener listener) {
+        LookupRequest request = new LookupRequest(listener);
+
+        for (String userId : userIds) {
+            if (userId == null || userId.trim().isEmpty()) continue;
+
+            UserInfo cached = getCached(userId);
+            if (cached != null) {
+                request.result.put(userId, cached);
+                continue;
+            }
+
+            if (request.remaining.add(userId)) {
+                List<LookupRequest> list = waiters.get(userId);
+                if (list == null) {
+                    list = new ArrayList<>();
+                    waiters.put(userId, list);
+                }
+                list.add(request);
+                if (!inFlightIds.contains(userId)) {
+                    queuedIds.add(userId);
+                }
+            }
+        }
+
+        if (request.remaining.isEmpty()) {
+            listener.onUsersResolved(request.result);
+            return;
+        }
+        scheduleFlush();
+    }
+
+    /**
+     * Put a freshly written profile into the cache (e.g. after an avatar change)
+     */
+    public void update(String userId, String name, String avatarUrl) {
+        if (userId == null) return;
+        UserInfo info = new UserInfo(userId, name, avatarUrl, System.currentTimeMillis());
+        cache.put(userId, info);
+        if (database != null) {
+            database.execute(() -> database.upsertUsers(Collections.singletonList(info)));
+        }
+    }
+
+    /**
+     * Forget a user here and on disk, so a relaunch doesn't bring the old copy back
+     */
+    public void invalidate(String userId) {
+        cache.remove(userId);
+        if (database != null) {
+            database.execute(() -> database.deleteUser(userId));
+        }
+    }
+
+    // Post so binds and loads from the same frame end up in the same batch
+    private void scheduleFlush() {
+        if (flushScheduled) return;
+        flushScheduled = true;
+        scheduler.scheduleFlush(this::flush);
+    }
+
+    private void flush() {
+        flushScheduled = false;
+        if (queuedIds.isEmpty()) return;
+
+        List<String> ids = new ArrayList<>(queuedIds);
+        queuedIds.clear();
+        inFlightIds.addAll(ids);
+
+        for (int i = 0; i < ids.size(); i += WHERE_IN_LIMIT) {
+            List<String> batch = new ArrayList<>(ids.subList(i, Math.min(i + WHERE_IN_LIMIT, ids.size())));
+            fetchBatch(batch);
+        }
+    }
+
+    private void fetchBatch(List<String> batch) {
+        fetcher.fetch(batch, new FetchCallback() {
+            @Override
+            public void onFetched(Map<String, UserInfo> loaded) {
+                if (database != null && !loaded.isEmpty()) {
+                    List<UserInfo> fetched = new ArrayList<>(loaded.values());
+                    database.execute(() -> database.upsertUsers(fetched));
+                }
+
+                long now = System.currentTimeMillis();
+                for (String userId : batch) {
+                    UserInfo info = loaded.get(userId);
+                    if (info == null) {
+                        // deleted user, cache the miss so rows stop asking
+                        info = new UserInfo(userId, null, null, now);
+                    }
+                    cache.put(userId, info);
+                    complete(userId, info);
+                }
+            }
+
+            @Override
+            public void onError(Exception e) {
+                Log.e(TAG, "Error loading user batch: " + batch, e);
+                for (String userId : batch) {
+                    complete(userId, null);
+                }
+            }
+        });
+    }
+
+    private void complete(String userId, UserInfo info) {
+        inFlightIds.remove(userId);
+        List<LookupRequest> list = waiters.remove(userId);
+        if (list == null) return;
+
+        for (LookupRequest request : list) {
+            if (info != null) {
+                request.result.put(userId, info);
+            }
+            request.remaining.remove(userId);
+            if (request.remaining.isEmpty()) {
+                request.listener.onUsersResolved(request.result);
+            }
+        }
+    }
+
+    private static class FirestoreUserFetcher implements UserFetcher {
+        private final FirebaseFirestore db;
+
+        FirestoreUserFetcher(FirebaseFirestore db) {
+            this.db = db;
+        }
+
+        @Override
+        public void fetch(List<String> userIds, FetchCallback callback) {
+            db.collection(COLLECTION_USERS)
+                .whereIn(FieldPath.documentId(), userIds)
+                .get()
+                .addOnSuccessListener(querySnapshot -> {
+                    long now = System.currentTimeMillis();
+                    Map<String, UserInfo> loaded = new HashMap<>();
+                    for (QueryDocumentSnapshot document : querySnapshot) {
+                        String userName = document.getString("name");
+                        if (userName == null || userName.trim().isEmpty()) {
+                            userName = document.getString("username");
+                        }
+                        loaded.put(document.getId(),
+                                new UserInfo(document.getId(), userName, document.getString("avatarUrl"), now));
+                    }
+                    callback.onFetched(loaded);
+                })
+                .addOnFailureListener(callback::onError);
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.example.food.services;
+
+import com.example.food.data.Review;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Change to a restaurant's review aggregates caused by one event (review added or deleted,
+ * votes changed). Aggregates live in restaurants/{id}.aggregates; applyTo updates them in
+ * place so the map sheet can show count, averages and the newest reviews without reading
+ * the restaurant's reviews.
+ */
+public class RestaurantAggregateDelta {
+    // Bumped when the stored aggregates change shape, older ones are rebuilt in full first
+    public static final int AGGREGATES_VERSION = 1;
+    public static final int LATEST_REVIEWS = 10;
+
+    private int reviews;
+    private double ratingSum;
+    private double accuracyPercentSum;
+    private int reviewsWithVotes;
+    private String addedReviewId;
+    private String removedReviewId;
+
+    private RestaurantAggregateDelta() {
+    }
+
+    /**
+     * A vote moved one review's stored {accurate, total} counters from before to after
+     */
+    public static RestaurantAggregateDelta forVoteCountChange(long accurateBefore, long totalBefore,
+                                                              long accurateAfter, long totalAfter) {
+        RestaurantAggregateDelta delta = new RestaurantAggregateDelta();
+        delta.addVoteCounts(accurateAfter, totalAfter, 1);
+        delta.addVoteCounts(accurateBefore, totalBefore, -1);
+        return delta;
+    }
+
+    /**
+     * A new review, which is always the restaurant's newest
+     */
+    public static RestaurantAggregateDelta forReviewAdded(Review review) {
+        RestaurantAggregateDelta delta = forReview(review, 1);
+        delta.addedReviewId = review.getId();
+        return delta;
+    }
+
+    public static RestaurantAggregateDelta forReviewRemoved(Review review) {
+        RestaurantAggregateDelta delta = forReview(review, -1);
+        delta.removedReviewId = review.getId();
+        return delta;
+    }
+
+    private static RestaurantAggregateDelta forReview(Review review, int sign) {
+        RestaurantAggregateDelta delta = new RestaurantAggregateDelta();
+        delta.reviews = sign;
+        delta.ratingSum = sign * review.getRating();
+        if (review.hasVoteCounters()) {
+            delta.addVoteCounts(review.getAccurateVoteCount(), review.getTotalVoteCount(), sign);
+        } else {
+            delta.addVotes(review.getVotes(), sign);
+        }
+        return delta;
+    }
+
+    // Same accuracy rule as Review.calculateAccuracyFromVotes, reviews without votes don't count
+    private void addVotes(Map<String, Map<String, Object>> votes, int sign) {
+        if (votes == null || votes.isEmpty()) return;
+        accuracyPercentSum += sign * Review.calculateAccuracyFromVotes(votes);
+        reviewsWithVotes += sign;
+    }
+
+    private void addVoteCounts(long accurate, long total, int sign) {
+        if (total <= 0) return;
+        accuracyPercentSum += sign * Review.calculateAccuracyFromCounts(accurate, total);
+        reviewsWithVotes += sign;
+    }
+
+    public boolean isEmpty() {
+        return reviews == 0 && ratingSum == 0 && accuracyPercentSum == 0 && reviewsWithVotes == 0
+                && addedReviewId == null && removedReviewId == null;
+    }
+
+    public static Map<String, Object> createEmptyAggregates() {
+        Map<String, Object> aggregates = new HashMap<>();
+        aggregates.put("reviewCount", 0);
+        aggregates.put("ratingSum", 0.0);
+        aggregates.put("averageRating", 0.0);
+        aggregates.put("accuracyPercentSum", 0.0);
+        aggregates.put("reviewsWithVotes", 0);
+        aggregates.put("averageAccuracy", 0.0);
+        aggregates.put("latestReviewIds", new ArrayList<String>());
+        aggregates.put("aggregatesVersion", AGGREGATES_VERSION);
+        return aggregates;
+    }
+
+    /**
+     * Aggregates for a restaurant from all of its reviews, for restaurants that predate them
+     */
+    public static Map<String, Object> fromReviews(List<Review> reviews) {
+        // oldest first, each added review goes to the front of latestReviewIds
+        List<Review> oldestFirst = new ArrayList<>(reviews);
+        oldestFirst.sort((a, b) -> {
+            if (a.getCreatedAt() == null) return b.getCreatedAt() == null ? 0 : -1;
+            if (b.getCreatedAt() == null) return 1;
+            return a.getCreatedAt().compareTo(b.getCreatedAt());
+        });
+
+        Map<String, Object> aggregates = createEmptyAggregates();
+        for (Review review : oldestFirst) {
+            forReviewAdded(review).applyTo(aggregates);
+        }
+        return aggregates;
+    }
+
+    public static boolean isMaintained(Map<String, Object> aggregates) {
+        return aggregates != null && getLong(aggregates, "aggregatesVersion") >= AGGREGATES_VERSION;
+    }
+
+    /**
+     * Apply this delta to stored aggregates in place and refresh the averages
+     */
+    public void applyTo(Map<String, Object> aggregates) {
+        int reviewCount = (int) getLong(aggregates, "reviewCount") + reviews;
+        double ratings = getDouble(aggregates, "ratingSum") + ratingSum;
+        double percentSum = getDouble(aggregates, "accuracyPercentSum") + accuracyPercentSum;
+        int withVotes = (int) getLong(aggregates, "reviewsWithVotes") + reviewsWithVotes;
+
+        reviewCount = Math.max(0, reviewCount);
+        withVotes = Math.max(0, withVotes);
+        ratings = reviewCount > 0 ? Math.max(0.0, ratings) : 0.0;
+        percentSum = withVotes > 0 ? Math.max(0.0, percentSum) : 0.0;
+
+        aggregates.put("reviewCount", reviewCount);
+        aggregates.put("ratingSum", ratings);
+        aggregates.put("averageRating", reviewCount > 0 ? ratings / reviewCount : 0.0);
+        aggregates.put("accuracyPercentSum", percentSum);
+        aggregates.put("reviewsWithVotes", withVotes);
+        aggregates.put("averageAccuracy", withVotes > 0 ? percentSum / withVotes : 0.0);
+
+        if (addedReviewId != null || removedReviewId != null) {
+            // copy, Firestore hands back lists that are not ours to mutate
+            List<String> latest = new ArrayList<>(getLatestReviewIds(aggregates));
+            if (removedReviewId != null) {
+                latest.remove(removedReviewId);
+            }
+            if (addedReviewId != null && !latest.contains(addedReviewId)) {
+                latest.add(0, addedReviewId);
+            }
+            while (latest.size() > LATEST_REVIEWS) {
+                latest.remove(latest.size() - 1);
+            }
+            aggregates.put("latestReviewIds", latest);
+        }
+        aggregates.put("aggregatesVersion", AGGREGATES_VERSION);
+    }
+
+    public static int getReviewCount(Map<String, Object> aggregates) {
+        return (int) getLong(aggregates, "reviewCount");
+    }
+
+    public static double getAverageRating(Map<String, Object> aggregates) {
+        return getDouble(aggregates, "averageRating");
+    }
+
+    /**
+     * Mean accuracy of the reviews that have votes, 0 if none do
+     */
+    public static double getAverageAccuracy(Map<String, Object> aggregates) {
+        return getDouble(aggregates, "averageAccuracy");
+    }
+
+    public static boolean hasVotedReviews(Map<String, Object> aggregates) {
+        return getLong(aggregates, "reviewsWithVotes") > 0;
+    }
+
+    /**
+     * Ids of the newest reviews, newest first. A deleted review leaves the list short until
+     * newer reviews fill it again
+     */
+    @SuppressWarnings("unchecked")
+    public static List<String> getLatestReviewIds(Map<String, Object> aggregates) {
+        Object stored = aggregates.get("latestReviewIds");
+        return stored instanceof List ? (List<String>) stored : Collections.emptyList();
+    }
+
+    private static long getLong(Map<String, Object> aggregates, String key) {
+        Object value = aggregates.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static double getDouble(Map<String, Object> aggregates, String key) {
+        Object value = aggregates.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0.0;
+    }
+}
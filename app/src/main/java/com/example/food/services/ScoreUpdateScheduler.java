@@ -0,0 +1,176 @@
+package com.example.food.services;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Coalesces score updates per user. Requests arriving within the window are merged into one
+ * run, at most one run per user is in flight, and a full recompute that was overtaken by a
+ * newer request is dropped instead of written. Call from the main thread.
+ */
+public class ScoreUpdateScheduler {
+    private static final String TAG = "ScoreUpdateScheduler";
+    public static final long DEFAULT_WINDOW_MILLIS = 2000;
+
+    private final Timer timer;
+    private final Worker worker;
+    private long windowMillis = DEFAULT_WINDOW_MILLIS;
+
+    private final Map<String, PendingUpdate> pending = new HashMap<>();
+    private final Set<String> inFlight = new HashSet<>();
+
+    private int requestCount;
+    private int mergedCount;
+    private int runCount;
+    private int droppedCount;
+
+    interface Timer {
+        void schedule(Runnable task, long delayMillis);
+    }
+
+    interface Worker {
+        void applyDeltas(String userId, List<StatsDelta> deltas, Runnable onComplete);
+        void recompute(String userId, OnRecomputedListener listener);
+        void save(String userId, Map<String, Object> stats, double credibilityScore,
+                  double experienceScore, Runnable onComplete);
+    }
+
+    interface OnRecomputedListener {
+        void onRecomputed(Map<String, Object> stats, double credibilityScore, double experienceScore);
+        void onError();
+    }
+
+    private static class PendingUpdate {
+        final List<StatsDelta> deltas = new ArrayList<>();
+        boolean fullRecompute;
+        boolean flushScheduled;
+    }
+
+    ScoreUpdateScheduler(Timer timer, Worker worker) {
+        this.timer = timer;
+        this.worker = worker;
+    }
+
+    public void setWindowMillis(long windowMillis) {
+        this.windowMillis = Math.max(0, windowMillis);
+    }
+
+    /**
+     * Queue an event delta, deltas for the same user within the window share one transaction
+     */
+    public void requestDelta(String userId, StatsDelta delta) {
+        PendingUpdate update = enqueue(userId);
+        if (!update.fullRecompute) {
+            update.deltas.add(delta);
+        }
+        scheduleFlush(userId, update);
+    }
+
+    /**
+     * Queue a full recompute. It covers any deltas already queued for the user
+     */
+    public void requestRecompute(String userId) {
+        PendingUpdate update = enqueue(userId);
+        update.fullRecompute = true;
+        update.deltas.clear();
+        scheduleFlush(userId, update);
+    }
+
+    private PendingUpdate enqueue(String userId) {
+        requestCount++;
+        PendingUpdate update = pending.get(userId);
+        if (update == null) {
+            update = new PendingUpdate();
+            pending.put(userId, update);
+        } else {
+            mergedCount++;
+        }
+        return update;
+    }
+
+    private void scheduleFlush(String userId, PendingUpdate update) {
+        // the window starts at the first request, so a steady stream cannot starve the user
+        if (update.flushScheduled) return;
+        update.flushScheduled = true;
+        timer.schedule(() -> {
+            update.flushScheduled = false;
+            if (!inFlight.contains(userId)) {
+                run(userId);
+            }
+        }, windowMillis);
+    }
+
+    private void run(String userId) {
+        PendingUpdate update = pending.remove(userId);
+        if (update == null) return;
+
+        inFlight.add(userId);
+        runCount++;
+        if (update.fullRecompute) {
+            worker.recompute(userId, new OnRecomputedListener() {
+                @Override
+                public void onRecomputed(Map<String, Object> stats, double credibilityScore, double experienceScore) {
+                    if (pending.containsKey(userId)) {
+                        // events since the recompute started may or may not be in its reads,
+                        // rebuild once more rather than write a result that could be off
+                        droppedCount++;
+                        pending.get(userId).fullRecompute = true;
+                        pending.get(userId).deltas.clear();
+                        Log.d(TAG, "Dropped superseded recompute for user: " + userId);
+                        finish(userId);
+                        return;
+                    }
+                    worker.save(userId, stats, credibilityScore, experienceScore, () -> finish(userId));
+                }
+
+                @Override
+                public void onError() {
+                    finish(userId);
+                }
+            });
+        } else {
+            worker.applyDeltas(userId, update.deltas, () -> finish(userId));
+        }
+    }
+
+    private void finish(String userId) {
+        inFlight.remove(userId);
+        PendingUpdate next = pending.get(userId);
+        // requests that waited on the in-flight run have already sat out their window
+        if (next != null && !next.flushScheduled) {
+            run(userId);
+        }
+    }
+
+    public int getRequestCount() {
+        return requestCount;
+    }
+
+    /**
+     * Requests folded into an update that was already pending for the same user
+     */
+    public int getMergedCount() {
+        return mergedCount;
+    }
+
+    public int getRunCount() {
+        return runCount;
+    }
+
+    /**
+     * Recompute results thrown away because a newer request arrived while they ran
+     */
+    public int getDroppedCount() {
+        return droppedCount;
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+}
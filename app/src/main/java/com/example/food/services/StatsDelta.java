@@ -0,0 +1,217 @@
+package com.example.food.services;
+
+import com.example.food.data.Review;
+import com.example.food.model.Restaurant;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Change to a user's stats caused by one event (vote, unvote, review added or deleted).
+ * applyTo updates the stored counters in place, so a single event never needs the
+ * user's other reviews or restaurants.
+ */
+public class StatsDelta {
+    // Bumped when the stored counters change shape, older stats are rebuilt in full first
+    public static final int STATS_VERSION = 1;
+    private static final long DAY_MILLIS = 1000L * 60 * 60 * 24;
+
+    private int reviews;
+    private int accurateVotes;
+    private int inaccurateVotes;
+    private double accuracyPercentSum;
+    private int reviewsWithVotes;
+    private String restaurantId;
+    private String category;
+    private String region;
+    private Long reviewCreatedAt;
+
+    private StatsDelta() {
+    }
+
+    /**
+     * A vote moved one review's stored {accurate, total} counters from before to after
+     */
+    public static StatsDelta forVoteCountChange(long accurateBefore, long totalBefore,
+                                                long accurateAfter, long totalAfter) {
+        StatsDelta delta = new StatsDelta();
+        delta.addVoteCounts(accurateAfter, totalAfter, 1);
+        delta.addVoteCounts(accurateBefore, totalBefore, -1);
+        return delta;
+    }
+
+    public static StatsDelta forReviewAdded(Review review, Restaurant restaurant) {
+        return forReview(review, restaurant, 1);
+    }
+
+    public static StatsDelta forReviewRemoved(Review review, Restaurant restaurant) {
+        return forReview(review, restaurant, -1);
+    }
+
+    private static StatsDelta forReview(Review review, Restaurant restaurant, int sign) {
+        StatsDelta delta = new StatsDelta();
+        delta.reviews = sign;
+        if (review.hasVoteCounters()) {
+            // the stored counters, so reviews read without their votes map still count
+            delta.addVoteCounts(review.getAccurateVoteCount(), review.getTotalVoteCount(), sign);
+        } else {
+            delta.addVotes(review.getVotes(), sign);
+        }
+        delta.restaurantId = review.getRestaurantId();
+        if (restaurant != null) {
+            delta.category = restaurant.getCategory();
+            delta.region = restaurant.getRegion();
+        }
+        if (sign > 0 && review.getCreatedAt() != null) {
+            delta.reviewCreatedAt = review.getCreatedAt().getTime();
+        }
+        return delta;
+    }
+
+    // Contribution of one review's votes, same rules as ScoreCalculator's full pass
+    private void addVotes(Map<String, Map<String, Object>> votes, int sign) {
+        if (votes == null || votes.isEmpty()) return;
+
+        int accurate = 0;
+        for (Map<String, Object> voteData : votes.values()) {
+            Boolean vote = voteData != null ? (Boolean) voteData.get("accurate") : null;
+            if (vote != null && vote) {
+                accurate++;
+            }
+        }
+        addVoteCounts(accurate, votes.size(), sign);
+    }
+
+    private void addVoteCounts(long accurate, long total, int sign) {
+        if (total <= 0) return;
+
+        accurateVotes += sign * (int) accurate;
+        inaccurateVotes += sign * (int) (total - accurate);
+        accuracyPercentSum += sign * Review.calculateAccuracyFromCounts(accurate, total);
+        reviewsWithVotes += sign;
+    }
+
+    public boolean isEmpty() {
+        return reviews == 0 && accurateVotes == 0 && inaccurateVotes == 0
+                && reviewsWithVotes == 0 && accuracyPercentSum == 0;
+    }
+
+    /**
+     * Stats in the shape applyTo expects, for a user with no reviews
+     */
+    public static Map<String, Object> createEmptyStats() {
+        Map<String, Object> stats = new HashMap<>();
+        stats.put("totalReviews", 0);
+        stats.put("daysActive", 0);
+        stats.put("totalVotes", 0);
+        stats.put("accurateVotes", 0);
+        stats.put("inaccurateVotes", 0);
+        stats.put("avgAccuracyPercent", 0.0);
+        stats.put("uniqueRestaurants", 0);
+        stats.put("uniqueCategories", 0);
+        stats.put("uniqueRegions", 0);
+        stats.put("categoriesList", new ArrayList<String>());
+        stats.put("regionsList", new ArrayList<String>());
+        stats.put("repeatedRestaurants", 0);
+        stats.put("totalCommentsMade", 0);
+        stats.put("totalCommentsReceived", 0);
+        stats.put("totalCommentLikesReceived", 0);
+        // running counters the derived values above are rebuilt from
+        stats.put("accuracyPercentSum", 0.0);
+        stats.put("reviewsWithVotes", 0);
+        stats.put("restaurantReviewCounts", new HashMap<String, Object>());
+        stats.put("categoryReviewCounts", new HashMap<String, Object>());
+        stats.put("regionReviewCounts", new HashMap<String, Object>());
+        stats.put("statsVersion", STATS_VERSION);
+        return stats;
+    }
+
+    public static boolean isIncremental(Map<String, Object> stats) {
+        return stats != null && getLong(stats, "statsVersion") >= STATS_VERSION;
+    }
+
+    /**
+     * Apply this delta to stored stats in place and refresh the derived values
+     */
+    public void applyTo(Map<String, Object> stats, long now) {
+        int totalReviews = (int) getLong(stats, "totalReviews") + reviews;
+        int accurate = (int) getLong(stats, "accurateVotes") + accurateVotes;
+        int inaccurate = (int) getLong(stats, "inaccurateVotes") + inaccurateVotes;
+        double percentSum = getDouble(stats, "accuracyPercentSum") + accuracyPercentSum;
+        int withVotes = (int) getLong(stats, "reviewsWithVotes") + reviewsWithVotes;
+
+        stats.put("totalReviews", Math.max(0, totalReviews));
+        stats.put("accurateVotes", Math.max(0, accurate));
+        stats.put("inaccurateVotes", Math.max(0, inaccurate));
+        stats.put("totalVotes", Math.max(0, accurate + inaccurate));
+        stats.put("accuracyPercentSum", withVotes > 0 ? Math.max(0.0, percentSum) : 0.0);
+        stats.put("reviewsWithVotes", Math.max(0, withVotes));
+        stats.put("avgAccuracyPercent", withVotes > 0 ? Math.max(0.0, percentSum) / withVotes : 0.0);
+
+        if (reviews != 0) {
+            Map<String, Object> restaurantCounts = adjustCount(stats, "restaurantReviewCounts", restaurantId, reviews);
+            Map<String, Object> categoryCounts = adjustCount(stats, "categoryReviewCounts", category, reviews);
+            Map<String, Object> regionCounts = adjustCount(stats, "regionReviewCounts", region, reviews);
+
+            int repeatedRestaurants = 0;
+            for (Object count : restaurantCounts.values()) {
+                if (count instanceof Number && ((Number) count).intValue() > 1) {
+                    repeatedRestaurants++;
+                }
+            }
+            stats.put("uniqueRestaurants", restaurantCounts.size());
+            stats.put("repeatedRestaurants", repeatedRestaurants);
+            stats.put("uniqueCategories", categoryCounts.size());
+            stats.put("categoriesList", new ArrayList<>(categoryCounts.keySet()));
+            stats.put("uniqueRegions", regionCounts.size());
+            stats.put("regionsList", new ArrayList<>(regionCounts.keySet()));
+
+            if (reviewCreatedAt != null) {
+                long firstReviewAt = getLong(stats, "firstReviewAt");
+                if (firstReviewAt == 0 || reviewCreatedAt < firstReviewAt) {
+                    stats.put("firstReviewAt", reviewCreatedAt);
+                }
+            }
+        }
+
+        // A deleted first review leaves firstReviewAt early until the next reconciliation
+        long firstReviewAt = getLong(stats, "firstReviewAt");
+        long daysActive = 0;
+        if (totalReviews > 0 && firstReviewAt > 0) {
+            daysActive = Math.max(1, (now - firstReviewAt) / DAY_MILLIS);
+        }
+        stats.put("daysActive", daysActive);
+        stats.put("statsVersion", STATS_VERSION);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> adjustCount(Map<String, Object> stats, String field, String key, int change) {
+        Object stored = stats.get(field);
+        // copy, Firestore hands back maps that are not ours to mutate
+        Map<String, Object> counts = stored instanceof Map
+                ? new HashMap<>((Map<String, Object>) stored)
+                : new HashMap<>();
+        if (key != null) {
+            Object current = counts.get(key);
+            int count = (current instanceof Number ? ((Number) current).intValue() : 0) + change;
+            if (count > 0) {
+                counts.put(key, count);
+            } else {
+                counts.remove(key);
+            }
+        }
+        stats.put(field, counts);
+        return counts;
+    }
+
+    private static long getLong(Map<String, Object> stats, String key) {
+        Object value = stats.get(key);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    private static double getDouble(Map<String, Object> stats, String key) {
+        Object value = stats.get(key);
+        return value instanceof Number ? ((Number) value).doubleValue() : 0.0;
+    }
+}
@@ -1,76 +1,206 @@
 package com.example.food.services;
 
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
+import com.example.food.data.Review;
+import com.example.food.model.Restaurant;
+import com.example.food.service.RestaurantRepository;
 import com.example.food.utils.ScoreCalculator;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class UserStatsService {
     private static final String TAG = "UserStatsService";
     private static final FirebaseFirestore db = FirebaseFirestore.getInstance();
+    private static final long RECONCILE_INTERVAL_MILLIS = 24 * 60 * 60 * 1000;
 
-    public static void updateUserScores(String userId) {
-        if (userId == null || userId.trim().isEmpty()) {
-            Log.w(TAG, "Cannot update scores: userId is null or empty");
-            return;
-        }
+    // Bursts of votes on one author's reviews become one transaction per window
+    private static final ScoreUpdateScheduler scheduler = createScheduler();
 
-        Log.d(TAG, "Updating scores for user: " + userId);
+    private static ScoreUpdateScheduler createScheduler() {
+        Handler handler = new Handler(Looper.getMainLooper());
+        return new ScoreUpdateScheduler(handler::postDelayed, new ScoreUpdateScheduler.Worker() {
+            @Override
+            public void applyDeltas(String userId, List<StatsDelta> deltas, Runnable onComplete) {
+                applyDeltasNow(userId, deltas, onComplete);
+            }
 
-        // Recalculate scores and save to Firestore
-        ScoreCalculator.calculateUserStats(userId, db, new ScoreCalculator.OnStatsCalculatedListener() {
             @Override
-            public void onStatsCalculated(Map<String, Object> stats, double credibilityScore, double experienceScore) {
-                saveScoresToFirestore(userId, stats, credibilityScore, experienceScore);
+            public void recompute(String userId, ScoreUpdateScheduler.OnRecomputedListener listener) {
+                ScoreCalculator.calculateUserStats(userId, db, new ScoreCalculator.OnStatsCalculatedListener() {
+                    @Override
+                    public void onStatsCalculated(Map<String, Object> stats, double credibilityScore, double experienceScore) {
+                        listener.onRecomputed(stats, credibilityScore, experienceScore);
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        Log.e(TAG, "Error calculating stats for user " + userId + ": " + error);
+                        listener.onError();
+                    }
+                });
             }
 
             @Override
-            public void onError(String error) {
-                Log.e(TAG, "Error calculating stats for user " + userId + ": " + error);
+            public void save(String userId, Map<String, Object> stats, double credibilityScore,
+                             double experienceScore, Runnable onComplete) {
+                saveScoresToFirestore(userId, stats, credibilityScore, experienceScore, onComplete);
             }
         });
     }
 
+    public static ScoreUpdateScheduler getUpdateScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Full recompute of the user's stats and scores, coalesced with other pending updates
+     */
+    public static void updateUserScores(String userId) {
+        if (userId == null || userId.trim().isEmpty()) {
+            Log.w(TAG, "Cannot update scores: userId is null or empty");
+            return;
+        }
+
+        Log.d(TAG, "Updating scores for user: " + userId);
+        scheduler.requestRecompute(userId);
+    }
+
     public static void updateUserScoresOnReviewChange(String userId) {
         Log.d(TAG, "Review change detected for user: " + userId);
         updateUserScores(userId);
     }
 
-    public static void updateUserScoresOnVoteChange(String reviewId) {
-        if (reviewId == null || reviewId.trim().isEmpty()) {
-            Log.w(TAG, "Cannot update scores: reviewId is null or empty");
+    /**
+     * A vote on one of userId's reviews moved its stored {accurate, total} counts from
+     * countsBefore to countsAfter, as ReviewService.setVote read them
+     */
+    public static void updateUserScoresOnVoteChange(String userId, long[] countsBefore, long[] countsAfter) {
+        if (userId == null || userId.trim().isEmpty()) {
+            Log.w(TAG, "Cannot update scores: userId is null or empty");
             return;
         }
 
-        Log.d(TAG, "Vote change detected for review: " + reviewId);
+        Log.d(TAG, "Vote change detected for review author: " + userId);
+        applyDelta(userId, StatsDelta.forVoteCountChange(countsBefore[0], countsBefore[1],
+                countsAfter[0], countsAfter[1]));
+    }
 
-        // Find the review author and update their scores
-        db.collection("reviews")
-                .document(reviewId)
-                .get()
-                .addOnSuccessListener(documentSnapshot -> {
-                    if (documentSnapshot.exists()) {
-                        String userId = documentSnapshot.getString("userId");
-                        if (userId != null) {
-                            Log.d(TAG, "Updating scores for review author: " + userId);
-                            updateUserScores(userId);
-                        } else {
-                            Log.w(TAG, "Review has no userId: " + reviewId);
-                        }
+    public static void updateUserScoresOnReviewAdded(Review review) {
+        applyReviewDelta(review, true);
+    }
+
+    public static void updateUserScoresOnReviewDeleted(Review review) {
+        applyReviewDelta(review, false);
+    }
+
+    private static void applyReviewDelta(Review review, boolean added) {
+        if (review == null || review.getUserId() == null || review.getUserId().trim().isEmpty()) {
+            Log.w(TAG, "Cannot update scores: review has no author");
+            return;
+        }
+        if (review.getRestaurantId() == null) {
+            applyDelta(review.getUserId(), added
+                    ? StatsDelta.forReviewAdded(review, null)
+                    : StatsDelta.forReviewRemoved(review, null));
+            return;
+        }
+
+        // category and region come from the shared restaurant catalogue, usually already cached
+        RestaurantRepository.getInstance().getRestaurants(Collections.singleton(review.getRestaurantId()), restaurants -> {
+            Restaurant restaurant = restaurants.get(review.getRestaurantId());
+            applyDelta(review.getUserId(), added
+                    ? StatsDelta.forReviewAdded(review, restaurant)
+                    : StatsDelta.forReviewRemoved(review, restaurant));
+        });
+    }
+
+    static void applyDelta(String userId, StatsDelta delta) {
+        if (delta.isEmpty()) return;
+        scheduler.requestDelta(userId, delta);
+    }
+
+    /**
+     * Apply queued events to users/{userId}.stats and the scores in a single transaction:
+     * one read and one write whatever the size of the user's history.
+     * Stats stored before the counters existed are rebuilt in full once instead
+     */
+    private static void applyDeltasNow(String userId, List<StatsDelta> deltas, Runnable onComplete) {
+        DocumentReference userRef = db.collection("users").document(userId);
+        db.runTransaction(transaction -> {
+                    DocumentSnapshot snapshot = transaction.get(userRef);
+                    if (!snapshot.exists()) {
+                        return false;
+                    }
+
+                    Map<String, Object> stats = copyStats(snapshot.get("stats"));
+                    if (!StatsDelta.isIncremental(stats)) {
+                        return false;
+                    }
+
+                    long now = System.currentTimeMillis();
+                    for (StatsDelta delta : deltas) {
+                        delta.applyTo(stats, now);
+                    }
+                    Map<String, Object> updates = new HashMap<>();
+                    updates.put("credibilityScore", ScoreCalculator.calculateCredibilityScore(stats));
+                    updates.put("experienceScore", ScoreCalculator.calculateExperienceScore(stats));
+                    updates.put("stats", stats);
+                    updates.put("updatedAt", System.currentTimeMillis());
+                    transaction.update(userRef, updates);
+                    return true;
+                })
+                .addOnSuccessListener(applied -> {
+                    onComplete.run();
+                    if (Boolean.TRUE.equals(applied)) {
+                        Log.d(TAG, "Applied " + deltas.size() + " stats deltas for user: " + userId);
                     } else {
-                        Log.w(TAG, "Review not found: " + reviewId);
+                        Log.d(TAG, "Stats for user " + userId + " predate incremental counters, rebuilding");
+                        updateUserScores(userId);
                     }
                 })
                 .addOnFailureListener(e -> {
-                    Log.e(TAG, "Error fetching review for vote update: " + reviewId, e);
+                    Log.e(TAG, "Error applying stats delta for user: " + userId, e);
+                    onComplete.run();
                 });
     }
 
+    /**
+     * Full recompute, only when the stored stats are missing, predate the incremental
+     * counters or were last reconciled more than RECONCILE_INTERVAL_MILLIS ago
+     */
+    public static void reconcileUserScoresIfStale(String userId, Map<String, Object> stats) {
+        if (stats != null && StatsDelta.isIncremental(stats)) {
+            Object reconciledAt = stats.get("reconciledAt");
+            if (reconciledAt instanceof Number
+                    && System.currentTimeMillis() - ((Number) reconciledAt).longValue() < RECONCILE_INTERVAL_MILLIS) {
+                return;
+            }
+        }
+        updateUserScores(userId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> copyStats(Object stored) {
+        if (stored instanceof Map) {
+            return new HashMap<>((Map<String, Object>) stored);
+        }
+        return new HashMap<>();
+    }
+
     private static void saveScoresToFirestore(String userId, Map<String, Object> stats, 
-                                            double credibilityScore, double experienceScore) {
+                                            double credibilityScore, double experienceScore,
+                                            Runnable onComplete) {
+        stats.put("reconciledAt", System.currentTimeMillis());
+
         Map<String, Object> updates = new HashMap<>();
         updates.put("credibilityScore", credibilityScore);
         updates.put("experienceScore", experienceScore);
@@ -85,9 +215,11 @@ public class UserStatsService {
                 .update(updates)
                 .addOnSuccessListener(aVoid -> {
                     Log.d(TAG, "Successfully updated scores for user: " + userId);
+                    onComplete.run();
                 })
                 .addOnFailureListener(e -> {
                     Log.e(TAG, "Error updating scores for user: " + userId, e);
+                    onComplete.run();
                 });
     }
 
@@ -0,0 +1,106 @@
+package com.example.food.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Collects model updates posted by async callbacks and applies them together at the next frame,
+ * followed by one run of the batch action (typically an adapter refresh). A burst of responses
+ * then costs one refresh per frame instead of one per response. Updates can be posted from any
+ * thread, they and the batch action run on the main thread.
+ */
+public class FrameUpdateCoalescer {
+    private final Runnable batchAction;
+    private final FrameScheduler scheduler;
+
+    // pending, frameScheduled and postCount are guarded by pending
+    private final List<Runnable> pending = new ArrayList<>();
+    private boolean frameScheduled;
+    private int postCount;
+    // main thread only
+    private int batchCount;
+
+    interface FrameScheduler {
+        void scheduleFrame(Runnable frame);
+    }
+
+    public FrameUpdateCoalescer(Runnable batchAction) {
+        this(batchAction, new ChoreographerScheduler());
+    }
+
+    FrameUpdateCoalescer(Runnable batchAction, FrameScheduler scheduler) {
+        this.batchAction = batchAction;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Queue a model update, it runs before the next batch action
+     */
+    public void post(Runnable update) {
+        enqueue(update);
+    }
+
+    /**
+     * Run the batch action at the next frame without a model update
+     */
+    public void requestBatch() {
+        enqueue(null);
+    }
+
+    private void enqueue(Runnable update) {
+        synchronized (pending) {
+            postCount++;
+            if (update != null) {
+                pending.add(update);
+            }
+            if (frameScheduled) return;
+            frameScheduled = true;
+        }
+        scheduler.scheduleFrame(this::runBatch);
+    }
+
+    private void runBatch() {
+        List<Runnable> updates;
+        synchronized (pending) {
+            frameScheduled = false;
+            updates = new ArrayList<>(pending);
+            pending.clear();
+        }
+        for (Runnable update : updates) {
+            update.run();
+        }
+        batchCount++;
+        batchAction.run();
+    }
+
+    public int getPostCount() {
+        synchronized (pending) {
+            return postCount;
+        }
+    }
+
+    /**
+     * Batch actions run so far, at most one per frame however many updates were posted
+     */
+    public int getBatchCount() {
+        return batchCount;
+    }
+
+    private static class ChoreographerScheduler implements FrameScheduler {
+        private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+        @Override
+        public void scheduleFrame(Runnable frame) {
+            // Choreographer is per thread, the main one has to be used from the main thread
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                Choreographer.getInstance().postFrameCallback(frameTimeNanos -> frame.run());
+            } else {
+                mainHandler.post(() -> Choreographer.getInstance().postFrameCallback(frameTimeNanos -> frame.run()));
+            }
+        }
+    }
+}
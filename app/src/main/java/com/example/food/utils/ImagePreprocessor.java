@@ -0,0 +1,234 @@
+package com.example.food.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.net.Uri;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Shrinks photos before upload: decodes with a sample size, scales to a max edge, applies the
+ * EXIF rotation and re-encodes. The re-encoded file carries no EXIF (location, camera data).
+ * Also produces a medium copy for feed cards and a small thumbnail for icons.
+ */
+public class ImagePreprocessor {
+    private static final String TAG = "ImagePreprocessor";
+
+    public static final int DEFAULT_MAX_EDGE = 1600;
+    public static final int DEFAULT_MEDIUM_EDGE = 800;
+    public static final int DEFAULT_THUMBNAIL_EDGE = 400;
+    public static final int DEFAULT_QUALITY = 82;
+
+    private final int maxEdge;
+    private final int mediumEdge;
+    private final int thumbnailEdge;
+    private final int quality;
+    private final Bitmap.CompressFormat format;
+
+    public static class Result {
+        private final byte[] imageBytes;
+        private final byte[] mediumBytes;
+        private final byte[] thumbnailBytes;
+        private final int width;
+        private final int height;
+
+        Result(byte[] imageBytes, byte[] mediumBytes, byte[] thumbnailBytes, int width, int height) {
+            this.imageBytes = imageBytes;
+            this.mediumBytes = mediumBytes;
+            this.thumbnailBytes = thumbnailBytes;
+            this.width = width;
+            this.height = height;
+        }
+
+        public byte[] getImageBytes() { return imageBytes; }
+        /** Null when the preprocessor was built without a medium size */
+        public byte[] getMediumBytes() { return mediumBytes; }
+        public byte[] getThumbnailBytes() { return thumbnailBytes; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+    }
+
+    /**
+     * @param mediumEdge long edge of the medium copy, 0 to skip it
+     */
+    public ImagePreprocessor(int maxEdge, int mediumEdge, int thumbnailEdge, int quality,
+                             Bitmap.CompressFormat format) {
+        this.maxEdge = maxEdge;
+        this.mediumEdge = mediumEdge;
+        this.thumbnailEdge = thumbnailEdge;
+        this.quality = quality;
+        this.format = format;
+    }
+
+    /**
+     * JPEG keeps the existing .jpg paths and every client decoder happy
+     */
+    public static ImagePreprocessor createDefault() {
+        return new ImagePreprocessor(DEFAULT_MAX_EDGE, DEFAULT_MEDIUM_EDGE, DEFAULT_THUMBNAIL_EDGE,
+                DEFAULT_QUALITY, Bitmap.CompressFormat.JPEG);
+    }
+
+    /**
+     * Blocking, call from a background thread
+     */
+    public Result process(Context context, Uri uri) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream stream = open(context, uri)) {
+            BitmapFactory.decodeStream(stream, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            throw new IOException("Not a decodable image: " + uri);
+        }
+
+        int rotation = readRotationDegrees(context, uri);
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = calculateInSampleSize(bounds.outWidth, bounds.outHeight, maxEdge);
+        Bitmap sampled;
+        try (InputStream stream = open(context, uri)) {
+            sampled = BitmapFactory.decodeStream(stream, null, options);
+        }
+        if (sampled == null) {
+            throw new IOException("Failed to decode image: " + uri);
+        }
+
+        Bitmap image = scaleAndRotate(sampled, maxEdge, rotation);
+        if (image != sampled) {
+            sampled.recycle();
+        }
+        byte[] imageBytes = encode(image);
+
+        // each smaller variant is scaled from the full image, not from the previous variant
+        byte[] mediumBytes = null;
+        if (mediumEdge > 0) {
+            Bitmap medium = scaleAndRotate(image, mediumEdge, 0);
+            mediumBytes = encode(medium);
+            if (medium != image) {
+                medium.recycle();
+            }
+        }
+
+        Bitmap thumbnail = scaleAndRotate(image, thumbnailEdge, 0);
+        byte[] thumbnailBytes = encode(thumbnail);
+        if (thumbnail != image) {
+            thumbnail.recycle();
+        }
+
+        Log.d(TAG, String.format("Preprocessed %dx%d -> %dx%d (%d KB, medium %d KB, thumbnail %d KB)",
+                bounds.outWidth, bounds.outHeight, image.getWidth(), image.getHeight(),
+                imageBytes.length / 1024, mediumBytes != null ? mediumBytes.length / 1024 : 0,
+                thumbnailBytes.length / 1024));
+        Result result = new Result(imageBytes, mediumBytes, thumbnailBytes, image.getWidth(), image.getHeight());
+        image.recycle();
+        return result;
+    }
+
+    private byte[] encode(Bitmap bitmap) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        bitmap.compress(format, quality, out);
+        return out.toByteArray();
+    }
+
+    private static InputStream open(Context context, Uri uri) throws IOException {
+        InputStream stream = context.getContentResolver().openInputStream(uri);
+        if (stream == null) {
+            throw new IOException("Failed to open input stream for " + uri);
+        }
+        return stream;
+    }
+
+    /**
+     * Clockwise rotation the EXIF orientation tag asks for, 0 if there is none
+     */
+    public static int readRotationDegrees(Context context, Uri uri) {
+        try (InputStream stream = open(context, uri)) {
+            ExifInterface exif = new ExifInterface(stream);
+            switch (exif.getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL)) {
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                case ExifInterface.ORIENTATION_TRANSPOSE:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                case ExifInterface.ORIENTATION_TRANSVERSE:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Could not read EXIF orientation: " + uri, e);
+            return 0;
+        }
+    }
+
+    /**
+     * Displayed width and height from the header and EXIF only, no pixels are decoded.
+     * Null if the stream is not an image
+     */
+    public static int[] readOrientedSize(Context context, Uri uri) throws IOException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        try (InputStream stream = open(context, uri)) {
+            BitmapFactory.decodeStream(stream, null, bounds);
+        }
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+            return null;
+        }
+        int rotation = readRotationDegrees(context, uri);
+        if (rotation == 90 || rotation == 270) {
+            return new int[]{bounds.outHeight, bounds.outWidth};
+        }
+        return new int[]{bounds.outWidth, bounds.outHeight};
+    }
+
+    /**
+     * HORIZONTAL, PORTRAIT or SQUARE as stored in Review.firstImageType
+     */
+    public static String classifyOrientation(int width, int height) {
+        if (width <= 0 || height <= 0) {
+            return "SQUARE";
+        }
+        float aspectRatio = (float) width / height;
+        if (aspectRatio > 1.2f) {
+            return "HORIZONTAL";
+        } else if (aspectRatio < 0.8f) {
+            return "PORTRAIT";
+        }
+        return "SQUARE";
+    }
+
+    private static Bitmap scaleAndRotate(Bitmap source, int targetMaxEdge, int rotation) {
+        float scale = scaleFactor(source.getWidth(), source.getHeight(), targetMaxEdge);
+        if (scale == 1f && rotation == 0) {
+            return source;
+        }
+        Matrix matrix = new Matrix();
+        matrix.postScale(scale, scale);
+        matrix.postRotate(rotation);
+        return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+    }
+
+    /**
+     * Largest power of two that keeps the decoded long edge at or above maxEdge
+     */
+    static int calculateInSampleSize(int width, int height, int maxEdge) {
+        int longEdge = Math.max(width, height);
+        int sampleSize = 1;
+        while (longEdge / (sampleSize * 2) >= maxEdge) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    static float scaleFactor(int width, int height, int maxEdge) {
+        int longEdge = Math.max(width, height);
+        return longEdge > maxEdge ? (float) maxEdge / longEdge : 1f;
+    }
+}
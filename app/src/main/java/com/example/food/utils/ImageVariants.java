@@ -0,0 +1,64 @@
+package com.example.food.utils;
+
+import java.util.List;
+
+/**
+ * The sizes a review photo is stored at: a thumbnail, a medium copy and the full image.
+ * Older reviews only have the full URL, the other variants are null for them.
+ */
+public class ImageVariants {
+    // long edges the variants are encoded at, see ImagePreprocessor
+    public static final int THUMBNAIL_EDGE = ImagePreprocessor.DEFAULT_THUMBNAIL_EDGE;
+    public static final int MEDIUM_EDGE = ImagePreprocessor.DEFAULT_MEDIUM_EDGE;
+
+    private final String thumbnailUrl;
+    private final String mediumUrl;
+    private final String fullUrl;
+
+    public ImageVariants(String thumbnailUrl, String mediumUrl, String fullUrl) {
+        this.thumbnailUrl = thumbnailUrl;
+        this.mediumUrl = mediumUrl;
+        this.fullUrl = fullUrl;
+    }
+
+    /**
+     * Variants at index, tolerating variant lists that are missing or shorter than the full list
+     */
+    public static ImageVariants at(List<String> thumbnailUrls, List<String> mediumUrls,
+                                   List<String> fullUrls, int index) {
+        return new ImageVariants(get(thumbnailUrls, index), get(mediumUrls, index), get(fullUrls, index));
+    }
+
+    public String getThumbnailUrl() { return thumbnailUrl; }
+    public String getMediumUrl() { return mediumUrl; }
+    public String getFullUrl() { return fullUrl; }
+
+    /**
+     * Smallest stored variant whose long edge covers requiredEdgePx, the full image otherwise
+     */
+    public String pick(int requiredEdgePx) {
+        return pick(thumbnailUrl, mediumUrl, fullUrl, requiredEdgePx);
+    }
+
+    public static String pick(String thumbnailUrl, String mediumUrl, String fullUrl, int requiredEdgePx) {
+        if (requiredEdgePx <= THUMBNAIL_EDGE && !isEmpty(thumbnailUrl)) {
+            return thumbnailUrl;
+        }
+        if (requiredEdgePx <= MEDIUM_EDGE && !isEmpty(mediumUrl)) {
+            return mediumUrl;
+        }
+        if (!isEmpty(fullUrl)) {
+            return fullUrl;
+        }
+        // full URL missing, a smaller variant beats no image
+        return !isEmpty(mediumUrl) ? mediumUrl : thumbnailUrl;
+    }
+
+    private static String get(List<String> urls, int index) {
+        return urls != null && index >= 0 && index < urls.size() ? urls.get(index) : null;
+    }
+
+    private static boolean isEmpty(String url) {
+        return url == null || url.trim().isEmpty();
+    }
+}
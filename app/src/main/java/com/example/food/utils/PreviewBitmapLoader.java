@@ -0,0 +1,178 @@
+package com.example.food.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.widget.ImageView;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Decodes picked photos at preview size on a background thread. Bitmaps for the current
+ * selection are kept so re-laying out the previews does not decode again, and bitmaps of
+ * removed photos go to a small pool that later decodes reuse through inBitmap.
+ */
+public class PreviewBitmapLoader {
+    private static final String TAG = "PreviewBitmapLoader";
+    private static final int POOL_SIZE = 5;
+
+    private final Context context;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // uri -> decoded preview, main thread only
+    private final Map<Uri, Bitmap> loaded = new HashMap<>();
+    // guarded by itself, taken from the decode thread
+    private final ArrayDeque<Bitmap> pool = new ArrayDeque<>();
+    private boolean closed = false;
+
+    public PreviewBitmapLoader(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Show the photo in target, decoded so its short edge is at least targetSizePx
+     */
+    public void load(Uri uri, ImageView target, int targetSizePx) {
+        target.setTag(uri);
+        Bitmap cached = loaded.get(uri);
+        if (cached != null) {
+            target.setImageBitmap(cached);
+            return;
+        }
+
+        target.setImageDrawable(null);
+        executor.execute(() -> {
+            Bitmap bitmap = decode(uri, targetSizePx);
+            if (bitmap == null) return;
+            mainHandler.post(() -> {
+                if (closed || loaded.containsKey(uri)) {
+                    release(bitmap);
+                    return;
+                }
+                loaded.put(uri, bitmap);
+                // the view may have been given another photo meanwhile
+                if (uri.equals(target.getTag())) {
+                    target.setImageBitmap(bitmap);
+                }
+            });
+        });
+    }
+
+    /**
+     * Pool the bitmaps of photos that are no longer selected.
+     * Views showing them must have been cleared first
+     */
+    public void retainOnly(Collection<Uri> uris) {
+        Iterator<Map.Entry<Uri, Bitmap>> iterator = loaded.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Uri, Bitmap> entry = iterator.next();
+            if (!uris.contains(entry.getKey())) {
+                iterator.remove();
+                release(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Stop decoding, call when the previews go away
+     */
+    public void close() {
+        closed = true;
+        executor.shutdownNow();
+        // views may still draw these until they are detached, leave them to the GC
+        loaded.clear();
+        synchronized (pool) {
+            pool.clear();
+        }
+    }
+
+    private Bitmap decode(Uri uri, int targetSizePx) {
+        try {
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            try (InputStream stream = context.getContentResolver().openInputStream(uri)) {
+                BitmapFactory.decodeStream(stream, null, bounds);
+            }
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+                return null;
+            }
+
+            // previews are center-cropped, so the short edge has to cover the view
+            int shortEdge = Math.min(bounds.outWidth, bounds.outHeight);
+            int sampleSize = ImagePreprocessor.calculateInSampleSize(shortEdge, shortEdge, targetSizePx);
+            long expectedBytes = (long) ceilDiv(bounds.outWidth, sampleSize) * ceilDiv(bounds.outHeight, sampleSize) * 4;
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            options.inMutable = true;
+            options.inBitmap = takeFromPool(expectedBytes);
+            Bitmap bitmap;
+            try (InputStream stream = context.getContentResolver().openInputStream(uri)) {
+                bitmap = BitmapFactory.decodeStream(stream, null, options);
+            } catch (IllegalArgumentException e) {
+                // pooled bitmap did not fit after all, decode into a fresh one
+                options.inBitmap = null;
+                try (InputStream stream = context.getContentResolver().openInputStream(uri)) {
+                    bitmap = BitmapFactory.decodeStream(stream, null, options);
+                }
+            }
+            if (bitmap == null) return null;
+
+            int rotation = ImagePreprocessor.readRotationDegrees(context, uri);
+            if (rotation == 0) {
+                return bitmap;
+            }
+            Matrix matrix = new Matrix();
+            matrix.postRotate(rotation);
+            Bitmap rotated = Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+            if (rotated != bitmap) {
+                release(bitmap);
+            }
+            return rotated;
+        } catch (IOException | SecurityException e) {
+            Log.e(TAG, "Error decoding preview: " + uri, e);
+            return null;
+        }
+    }
+
+    private Bitmap takeFromPool(long minBytes) {
+        synchronized (pool) {
+            Iterator<Bitmap> iterator = pool.iterator();
+            while (iterator.hasNext()) {
+                Bitmap bitmap = iterator.next();
+                if (bitmap.getAllocationByteCount() >= minBytes) {
+                    iterator.remove();
+                    return bitmap;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) return;
+        synchronized (pool) {
+            if (!closed && pool.size() < POOL_SIZE) {
+                pool.add(bitmap);
+            }
+        }
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
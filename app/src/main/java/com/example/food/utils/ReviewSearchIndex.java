@@ -0,0 +1,241 @@
+package com.example.food.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import com.example.food.data.Review;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * In-memory inverted index over review caption, description, restaurant name and author name.
+ * Tokens are case-folded, every query token matches as a prefix and all query tokens must match.
+ * Indexing and queries run on one background thread, results are posted to the main thread.
+ */
+public class ReviewSearchIndex {
+    // Field weights used for ranking
+    private static final int WEIGHT_CAPTION = 3;
+    private static final int WEIGHT_RESTAURANT = 3;
+    private static final int WEIGHT_USER = 2;
+    private static final int WEIGHT_DESCRIPTION = 1;
+    private static final int EXACT_TOKEN_BONUS = 1;
+
+    private static ReviewSearchIndex instance;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // token -> (reviewId -> weight), sorted so a prefix is a contiguous range
+    private final TreeMap<String, Map<String, Integer>> postings = new TreeMap<>();
+    // reviewId -> tokens, lets an update remove the old postings
+    private final Map<String, Set<String>> tokensByReview = new HashMap<>();
+    private final Map<String, Review> reviews = new HashMap<>();
+    private final Map<String, Long> createdAtByReview = new HashMap<>();
+
+    public interface OnSearchResultsListener {
+        void onSearchResults(String query, List<Review> results);
+    }
+
+    // Immutable copy of the searchable fields, taken on the caller's thread
+    private static class Entry {
+        final Review review;
+        final String id;
+        final String caption;
+        final String description;
+        final String restaurantName;
+        final String userName;
+        final long createdAt;
+
+        Entry(Review review) {
+            this.review = review;
+            this.id = review.getId();
+            this.caption = review.getCaption();
+            this.description = review.getDescription();
+            this.restaurantName = review.getRestaurantName();
+            this.userName = review.getUserName();
+            this.createdAt = review.getCreatedAt() != null ? review.getCreatedAt().getTime() : 0;
+        }
+    }
+
+    ReviewSearchIndex() {
+    }
+
+    public static synchronized ReviewSearchIndex getInstance() {
+        if (instance == null) {
+            instance = new ReviewSearchIndex();
+        }
+        return instance;
+    }
+
+    /**
+     * Add or re-index reviews, e.g. after a page loads or author/restaurant names resolve
+     */
+    public void indexReviews(Collection<Review> reviewsToIndex) {
+        List<Entry> entries = new ArrayList<>(reviewsToIndex.size());
+        for (Review review : reviewsToIndex) {
+            if (review != null && review.getId() != null) {
+                entries.add(new Entry(review));
+            }
+        }
+        if (entries.isEmpty()) return;
+        executor.execute(() -> {
+            for (Entry entry : entries) {
+                upsert(entry);
+            }
+        });
+    }
+
+    public void removeReview(String reviewId) {
+        if (reviewId == null) return;
+        executor.execute(() -> remove(reviewId));
+    }
+
+    /**
+     * Run a query in the background and deliver ranked results on the main thread
+     */
+    public void search(String query, OnSearchResultsListener listener) {
+        executor.execute(() -> {
+            List<Review> results = searchNow(query);
+            mainHandler.post(() -> listener.onSearchResults(query, results));
+        });
+    }
+
+    void upsert(Entry entry) {
+        remove(entry.id);
+
+        Map<String, Integer> weights = new HashMap<>();
+        addTokens(weights, entry.caption, WEIGHT_CAPTION);
+        addTokens(weights, entry.restaurantName, WEIGHT_RESTAURANT);
+        addTokens(weights, entry.userName, WEIGHT_USER);
+        addTokens(weights, entry.description, WEIGHT_DESCRIPTION);
+
+        for (Map.Entry<String, Integer> weight : weights.entrySet()) {
+            Map<String, Integer> posting = postings.get(weight.getKey());
+            if (posting == null) {
+                posting = new HashMap<>();
+                postings.put(weight.getKey(), posting);
+            }
+            posting.put(entry.id, weight.getValue());
+        }
+        tokensByReview.put(entry.id, weights.keySet());
+        reviews.put(entry.id, entry.review);
+        createdAtByReview.put(entry.id, entry.createdAt);
+    }
+
+    void upsert(Review review) {
+        upsert(new Entry(review));
+    }
+
+    private void remove(String reviewId) {
+        Set<String> tokens = tokensByReview.remove(reviewId);
+        if (tokens != null) {
+            for (String token : tokens) {
+                Map<String, Integer> posting = postings.get(token);
+                if (posting != null) {
+                    posting.remove(reviewId);
+                    if (posting.isEmpty()) {
+                        postings.remove(token);
+                    }
+                }
+            }
+        }
+        reviews.remove(reviewId);
+        createdAtByReview.remove(reviewId);
+    }
+
+    /**
+     * Synchronous query, only call on the index thread (or from tests)
+     */
+    List<Review> searchNow(String query) {
+        List<String> queryTokens = tokenize(query);
+        if (queryTokens.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        Map<String, Integer> scores = null;
+        for (String queryToken : queryTokens) {
+            Map<String, Integer> tokenScores = new HashMap<>();
+            SortedMap<String, Map<String, Integer>> range = postings.subMap(queryToken, queryToken + Character.MAX_VALUE);
+            for (Map.Entry<String, Map<String, Integer>> posting : range.entrySet()) {
+                int bonus = posting.getKey().equals(queryToken) ? EXACT_TOKEN_BONUS : 0;
+                for (Map.Entry<String, Integer> hit : posting.getValue().entrySet()) {
+                    int score = hit.getValue() + bonus;
+                    Integer previous = tokenScores.get(hit.getKey());
+                    if (previous == null || previous < score) {
+                        tokenScores.put(hit.getKey(), score);
+                    }
+                }
+            }
+
+            if (scores == null) {
+                scores = tokenScores;
+            } else {
+                // every query token has to match
+                Map<String, Integer> intersection = new HashMap<>();
+                for (Map.Entry<String, Integer> score : scores.entrySet()) {
+                    Integer tokenScore = tokenScores.get(score.getKey());
+                    if (tokenScore != null) {
+                        intersection.put(score.getKey(), score.getValue() + tokenScore);
+                    }
+                }
+                scores = intersection;
+            }
+            if (scores.isEmpty()) {
+                return Collections.emptyList();
+            }
+        }
+
+        List<String> ids = new ArrayList<>(scores.keySet());
+        Map<String, Integer> finalScores = scores;
+        // best score first, newest first on ties
+        Collections.sort(ids, (a, b) -> {
+            int byScore = Integer.compare(finalScores.get(b), finalScores.get(a));
+            if (byScore != 0) return byScore;
+            return Long.compare(createdAtByReview.get(b), createdAtByReview.get(a));
+        });
+
+        List<Review> results = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            results.add(reviews.get(id));
+        }
+        return results;
+    }
+
+    private static void addTokens(Map<String, Integer> weights, String text, int weight) {
+        for (String token : tokenize(text)) {
+            Integer previous = weights.get(token);
+            if (previous == null || previous < weight) {
+                weights.put(token, weight);
+            }
+        }
+    }
+
+    static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null) return tokens;
+
+        String folded = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= folded.length(); i++) {
+            boolean tokenChar = i < folded.length() && Character.isLetterOrDigit(folded.charAt(i));
+            if (tokenChar && start < 0) {
+                start = i;
+            } else if (!tokenChar && start >= 0) {
+                tokens.add(folded.substring(start, i));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+}
@@ -4,6 +4,9 @@ import android.util.Log;
 
 import com.example.food.data.Review;
 import com.example.food.model.Restaurant;
+import com.example.food.service.RestaurantRepository;
+import com.example.food.service.ReviewService;
+import com.example.food.services.StatsDelta;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 
@@ -156,9 +159,8 @@ public class ScoreCalculator {
                     List<Review> reviews = new ArrayList<>();
                     for (QueryDocumentSnapshot document : queryDocumentSnapshots) {
                         try {
-                            Review review = document.toObject(Review.class);
-                            review.setId(document.getId());
-                            review.refreshAccuracyFromVotes(); // Calculate accuracy from votes
+                            // counters are enough for the stats, the votes maps aren't read
+                            Review review = ReviewService.parseReview(document);
                             reviews.add(review);
                         } catch (Exception e) {
                             Log.e(TAG, "Error parsing review: " + document.getId(), e);
@@ -197,10 +199,8 @@ public class ScoreCalculator {
     private static void fetchRestaurantsAndCalculateStats(FirebaseFirestore db, List<Review> reviews, 
                                                          Set<String> restaurantIds, OnStatsCalculatedListener listener) {
         Map<String, Restaurant> restaurantMap = new HashMap<>();
-        int[] fetchCount = {0};
-        int totalRestaurants = restaurantIds.size();
 
-        if (totalRestaurants == 0) {
+        if (restaurantIds.isEmpty()) {
             Map<String, Object> stats = calculateStatsFromData(reviews, restaurantMap);
             double credibilityScore = calculateCredibilityScore(stats);
             double experienceScore = calculateExperienceScore(stats);
@@ -208,170 +208,40 @@ public class ScoreCalculator {
             return;
         }
 
-        for (String restaurantId : restaurantIds) {
-            db.collection("restaurants")
-                    .document(restaurantId)
-                    .get()
-                    .addOnSuccessListener(documentSnapshot -> {
-                        if (documentSnapshot.exists()) {
-                            try {
-                                Restaurant restaurant = documentSnapshot.toObject(Restaurant.class);
-                                if (restaurant != null) {
-                                    restaurant.setId(documentSnapshot.getId());
-                                    restaurantMap.put(restaurantId, restaurant);
-                                }
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error parsing restaurant: " + restaurantId, e);
-                            }
-                        }
-
-                        fetchCount[0]++;
-                        if (fetchCount[0] >= totalRestaurants) {
-                            // All restaurants fetched, calculate stats
-                            Map<String, Object> stats = calculateStatsFromData(reviews, restaurantMap);
-                            double credibilityScore = calculateCredibilityScore(stats);
-                            double experienceScore = calculateExperienceScore(stats);
-                            listener.onStatsCalculated(stats, credibilityScore, experienceScore);
-                        }
-                    })
-                    .addOnFailureListener(e -> {
-                        Log.e(TAG, "Error fetching restaurant: " + restaurantId, e);
-                        fetchCount[0]++;
-                        if (fetchCount[0] >= totalRestaurants) {
-                            // Continue with partial data
-                            Map<String, Object> stats = calculateStatsFromData(reviews, restaurantMap);
-                            double credibilityScore = calculateCredibilityScore(stats);
-                            double experienceScore = calculateExperienceScore(stats);
-                            listener.onStatsCalculated(stats, credibilityScore, experienceScore);
-                        }
-                    });
-        }
-    }
-
-    private static Map<String, Object> calculateStatsFromData(List<Review> reviews, Map<String, Restaurant> restaurantMap) {
-        Map<String, Object> stats = new HashMap<>();
-
-        int totalReviews = reviews.size();
-        stats.put("totalReviews", totalReviews);
-
-        // how long user been active
-        long daysActive = 0;
-        if (!reviews.isEmpty()) {
-            long firstReviewTime = Long.MAX_VALUE;
-            for (Review review : reviews) {
-                if (review.getCreatedAt() != null) {
-                    firstReviewTime = Math.min(firstReviewTime, review.getCreatedAt().getTime());
+        // Shared catalogue, missing ids are fetched in whereIn batches
+        RestaurantRepository.getInstance().getRestaurants(restaurantIds, restaurants -> {
+            for (String restaurantId : restaurantIds) {
+                Restaurant restaurant = restaurants.get(restaurantId);
+                if (restaurant != null) {
+                    restaurantMap.put(restaurantId, restaurant);
                 }
             }
-            if (firstReviewTime != Long.MAX_VALUE) {
-                long currentTime = System.currentTimeMillis();
-                daysActive = Math.max(1, (currentTime - firstReviewTime) / (1000 * 60 * 60 * 24));
-            }
-        }
-        stats.put("daysActive", daysActive);
-
-        // count votes
-        int totalVotes = 0;
-        int accurateVotes = 0;
-        int inaccurateVotes = 0;
-        double totalAccuracyPercent = 0.0;
-        int reviewsWithVotes = 0;
-
-        for (Review review : reviews) {
-            if (review.getVotes() != null && !review.getVotes().isEmpty()) {
-                int reviewVotes = review.getVotes().size();
-                totalVotes += reviewVotes;
-
-                int reviewAccurate = 0;
-                for (Map<String, Object> voteData : review.getVotes().values()) {
-                    Boolean vote = (Boolean) voteData.get("accurate");
-                    if (vote != null && vote) {
-                        reviewAccurate++;
-                    }
-                }
-                int reviewInaccurate = reviewVotes - reviewAccurate;
-
-                accurateVotes += reviewAccurate;
-                inaccurateVotes += reviewInaccurate;
 
-                if (reviewVotes > 0) {
-                    double reviewAccuracy = (reviewAccurate * 100.0) / reviewVotes;
-                    totalAccuracyPercent += reviewAccuracy;
-                    reviewsWithVotes++;
-                }
-            }
-        }
-
-        stats.put("totalVotes", totalVotes);
-        stats.put("accurateVotes", accurateVotes);
-        stats.put("inaccurateVotes", inaccurateVotes);
-        stats.put("avgAccuracyPercent", reviewsWithVotes > 0 ? totalAccuracyPercent / reviewsWithVotes : 0.0);
-
-        // count variety
-        Set<String> uniqueRestaurantIds = new HashSet<>();
-        Set<String> uniqueCategories = new HashSet<>();
-        Set<String> uniqueRegions = new HashSet<>();
-        Map<String, Integer> restaurantReviewCount = new HashMap<>();
+            Map<String, Object> stats = calculateStatsFromData(reviews, restaurantMap);
+            double credibilityScore = calculateCredibilityScore(stats);
+            double experienceScore = calculateExperienceScore(stats);
+            listener.onStatsCalculated(stats, credibilityScore, experienceScore);
+        });
+    }
 
+    /**
+     * Full pass over a user's reviews. Built from the same per-review deltas the incremental
+     * updates apply, so a reconciliation and a run of events end up with the same counters
+     */
+    private static Map<String, Object> calculateStatsFromData(List<Review> reviews, Map<String, Restaurant> restaurantMap) {
+        Map<String, Object> stats = createEmptyStats();
+        long now = System.currentTimeMillis();
         for (Review review : reviews) {
-            if (review.getRestaurantId() != null) {
-                uniqueRestaurantIds.add(review.getRestaurantId());
-                
-                restaurantReviewCount.put(review.getRestaurantId(), 
-                    restaurantReviewCount.getOrDefault(review.getRestaurantId(), 0) + 1);
-
-                Restaurant restaurant = restaurantMap.get(review.getRestaurantId());
-                if (restaurant != null) {
-                    if (restaurant.getCategory() != null) {
-                        uniqueCategories.add(restaurant.getCategory());
-                    }
-                    if (restaurant.getRegion() != null) {
-                        uniqueRegions.add(restaurant.getRegion());
-                    }
-                }
-            }
+            Restaurant restaurant = review.getRestaurantId() != null ? restaurantMap.get(review.getRestaurantId()) : null;
+            StatsDelta.forReviewAdded(review, restaurant).applyTo(stats, now);
         }
 
-        stats.put("uniqueRestaurants", uniqueRestaurantIds.size());
-        stats.put("uniqueCategories", uniqueCategories.size());
-        stats.put("uniqueRegions", uniqueRegions.size());
-        stats.put("categoriesList", new ArrayList<>(uniqueCategories));
-        stats.put("regionsList", new ArrayList<>(uniqueRegions));
-
-        // restaurants reviewed more than once
-        int repeatedRestaurants = 0;
-        for (int count : restaurantReviewCount.values()) {
-            if (count > 1) {
-                repeatedRestaurants++;
-            }
-        }
-        stats.put("repeatedRestaurants", repeatedRestaurants);
-
-        // comments default to 0
-        stats.put("totalCommentsMade", 0);
-        stats.put("totalCommentsReceived", 0);
-        stats.put("totalCommentLikesReceived", 0);
-
         Log.d(TAG, "Calculated stats: " + stats);
         return stats;
     }
 
     private static Map<String, Object> createEmptyStats() {
-        Map<String, Object> stats = new HashMap<>();
-        stats.put("totalReviews", 0);
-        stats.put("daysActive", 0);
-        stats.put("totalVotes", 0);
-        stats.put("accurateVotes", 0);
-        stats.put("inaccurateVotes", 0);
-        stats.put("avgAccuracyPercent", 0.0);
-        stats.put("uniqueRestaurants", 0);
-        stats.put("uniqueCategories", 0);
-        stats.put("uniqueRegions", 0);
-        stats.put("repeatedRestaurants", 0);
-        stats.put("totalCommentsMade", 0);
-        stats.put("totalCommentsReceived", 0);
-        stats.put("totalCommentLikesReceived", 0);
-        return stats;
+        return StatsDelta.createEmptyStats();
     }
 
     private static int getIntValue(Map<String, Object> map, String key, int defaultValue) {
@@ -0,0 +1,193 @@
+package com.example.food.adapters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+import com.example.food.data.ActivityItem;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+public class ActivityRowsTest {
+    private static final long NOW = 100L * 24 * 60 * 60 * 1000;
+    private static final long HOUR = 60 * 60 * 1000;
+
+    /** Records the notifications as "+position,count", "-position,count" and "~position" */
+    private static class Recorder implements ListUpdateCallback {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onInserted(int position, int count) {
+            events.add("+" + position + "," + count);
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            events.add("-" + position + "," + count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            events.add(">" + fromPosition + "," + toPosition);
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            events.add("~" + position);
+        }
+    }
+
+    private static ActivityItem activity(String id, long hoursAgo) {
+        ActivityItem activity = new ActivityItem(ActivityItem.ActivityType.VOTE, "voter", null, null,
+                "review", null, null, new Date(NOW - hoursAgo * HOUR));
+        activity.setId(id);
+        activity.setVoteType(true);
+        return activity;
+    }
+
+    private static List<String> keys(ActivityRows rows) {
+        List<String> keys = new ArrayList<>();
+        for (int i = 0; i < rows.size(); i++) {
+            ActivityRows.Row row = rows.get(i);
+            keys.add(row.activity == null ? row.header : row.key);
+        }
+        return keys;
+    }
+
+    @Test
+    public void activitiesAreGroupedNewestFirstUnderDateHeaders() {
+        ActivityRows rows = new ActivityRows(new Recorder(), NOW);
+
+        rows.replaceAll(Arrays.asList(activity("old", 24 * 40), activity("today", 1), activity("yesterday", 30)), NOW);
+
+        assertEquals(Arrays.asList("Today", "today", "Yesterday", "yesterday", "Older", "old"), keys(rows));
+    }
+
+    @Test
+    public void addingToAnExistingGroupInsertsOneRow() {
+        Recorder recorder = new Recorder();
+        ActivityRows rows = new ActivityRows(recorder, NOW);
+        rows.replaceAll(Arrays.asList(activity("a", 1), activity("b", 3), activity("c", 30)), NOW);
+        recorder.events.clear();
+
+        rows.add(activity("between", 2));
+
+        assertEquals(Arrays.asList("+2,1"), recorder.events);
+        assertEquals(Arrays.asList("Today", "a", "between", "b", "Yesterday", "c"), keys(rows));
+    }
+
+    @Test
+    public void firstActivityOfADateBringsItsHeader() {
+        Recorder recorder = new Recorder();
+        ActivityRows rows = new ActivityRows(recorder, NOW);
+        rows.replaceAll(Arrays.asList(activity("a", 1), activity("old", 24 * 40)), NOW);
+        recorder.events.clear();
+
+        rows.add(activity("lastWeek", 24 * 3));
+
+        assertEquals(Arrays.asList("+2,2"), recorder.events);
+        assertEquals(Arrays.asList("Today", "a", "This Week", "lastWeek", "Older", "old"), keys(rows));
+    }
+
+    @Test
+    public void removingTheLastActivityOfADateRemovesItsHeader() {
+        Recorder recorder = new Recorder();
+        ActivityRows rows = new ActivityRows(recorder, NOW);
+        rows.replaceAll(Arrays.asList(activity("a", 1), activity("b", 30), activity("c", 31)), NOW);
+        recorder.events.clear();
+
+        rows.remove("a");
+        rows.remove("c");
+
+        assertEquals(Arrays.asList("-0,2", "-2,1"), recorder.events);
+        assertEquals(Arrays.asList("Yesterday", "b"), keys(rows));
+        assertFalse(rows.remove("missing"));
+    }
+
+    @Test
+    public void sameIdReplacesTheEarlierRow() {
+        Recorder recorder = new Recorder();
+        ActivityRows rows = new ActivityRows(recorder, NOW);
+        rows.replaceAll(Arrays.asList(activity("a", 1), activity("vote", 30)), NOW);
+        recorder.events.clear();
+
+        // the voter voted again, the entry comes back with a new timestamp
+        rows.add(activity("vote", 0));
+
+        assertEquals(Arrays.asList("-2,2", "+1,1"), recorder.events);
+        assertEquals(Arrays.asList("Today", "vote", "a"), keys(rows));
+    }
+
+    @Test
+    public void anOlderPageDoesNotReplaceTheListenersNewerEntry() {
+        Recorder recorder = new Recorder();
+        ActivityRows rows = new ActivityRows(recorder, NOW);
+        rows.replaceAll(Arrays.asList(activity("a", 1), activity("vote", 0)), NOW);
+        recorder.events.clear();
+
+        // the page was read before the voter voted again
+        rows.add(activity("vote", 30));
+
+        assertEquals(Arrays.asList(), recorder.events);
+        assertEquals(Arrays.asList("Today", "vote", "a"), keys(rows));
+    }
+
+    @Test
+    public void changesToAReplacedCopyAreIgnored() {
+        Recorder recorder = new Recorder();
+        ActivityRows rows = new ActivityRows(recorder, NOW);
+        ActivityItem replaced = activity("vote", 30);
+        rows.replaceAll(Arrays.asList(activity("a", 1), replaced), NOW);
+        rows.add(activity("vote", 0));
+        recorder.events.clear();
+
+        // names arrive for the copy that is no longer shown, under a different date
+        replaced.setUserName("Sam");
+        rows.changed(replaced);
+        rows.add(activity("later", 2));
+
+        assertEquals(Arrays.asList("+3,1"), recorder.events);
+        assertEquals(Arrays.asList("Today", "vote", "a", "later"), keys(rows));
+    }
+
+    @Test
+    public void filledInNamesRebindOnlyThatRow() {
+        Recorder recorder = new Recorder();
+        ActivityRows rows = new ActivityRows(recorder, NOW);
+        ActivityItem named = activity("b", 2);
+        rows.replaceAll(Arrays.asList(activity("a", 1), named), NOW);
+        recorder.events.clear();
+
+        named.setUserName("Sam");
+        rows.changed(named);
+        rows.changed(named);
+
+        assertEquals(Arrays.asList("~2"), recorder.events);
+    }
+
+    @Test
+    public void pagesWithEqualTimestampsKeepTheirOrder() {
+        ActivityRows rows = new ActivityRows(new Recorder(), NOW);
+
+        rows.add(activity("first", 5));
+        rows.add(activity("second", 5));
+
+        assertEquals(Arrays.asList("Today", "first", "second"), keys(rows));
+    }
+
+    @Test
+    public void headerRowsCarryNoActivity() {
+        ActivityRows rows = new ActivityRows(new Recorder(), NOW);
+        rows.add(activity("a", 1));
+
+        assertNull(rows.get(0).activity);
+        assertEquals(2, rows.size());
+    }
+}
@@ -0,0 +1,55 @@
+package com.example.food.adapters;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.food.data.Review;
+
+import org.junit.Test;
+
+import java.util.Collections;
+
+public class ReviewCardTest {
+
+    @Test
+    public void voteOnlyChangesAccuracy() {
+        Review review = review();
+        ReviewCard before = new ReviewCard(review);
+        review.setAccuracyPercent(75.0);
+        ReviewCard after = new ReviewCard(review);
+
+        assertTrue(before.isSameReview(after));
+        assertEquals(ReviewCard.CHANGED_ACCURACY, (int) ReviewCard.changes(before, after));
+    }
+
+    @Test
+    public void resolvedAuthorOnlyChangesUser() {
+        Review review = review();
+        ReviewCard before = new ReviewCard(review);
+        review.setUserName("Sam");
+        review.setUserAvatarUrl("https://example.com/sam.jpg");
+
+        assertEquals(ReviewCard.CHANGED_USER, (int) ReviewCard.changes(before, new ReviewCard(review)));
+        assertEquals(0, (int) ReviewCard.changes(before, new ReviewCard(review())));
+    }
+
+    @Test
+    public void imageChangeNeedsFullRebind() {
+        Review review = review();
+        ReviewCard before = new ReviewCard(review);
+        review.setFirstImageType("PORTRAIT");
+
+        assertNull(ReviewCard.changes(before, new ReviewCard(review)));
+    }
+
+    private static Review review() {
+        Review review = new Review();
+        review.setId("r1");
+        review.setCaption("Laksa");
+        review.setRating(4.5f);
+        review.setFirstImageType("SQUARE");
+        review.setImageUrls(Collections.singletonList("https://example.com/laksa.jpg"));
+        return review;
+    }
+}
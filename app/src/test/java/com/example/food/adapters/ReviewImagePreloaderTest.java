@@ -0,0 +1,19 @@
+package com.example.food.adapters;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ReviewImagePreloaderTest {
+
+    @Test
+    public void looksFurtherAheadWhenScrollingFaster() {
+        // slow drag, less than a card per frame
+        assertEquals(4, ReviewImagePreloader.calculateAhead(20, 600, 4, 16));
+        // a card height per frame brings two cards per frame
+        assertEquals(16, ReviewImagePreloader.calculateAhead(600, 600, 4, 16));
+        assertEquals(12, ReviewImagePreloader.calculateAhead(300, 600, 4, 16));
+        // nothing laid out yet
+        assertEquals(4, ReviewImagePreloader.calculateAhead(300, 0, 4, 16));
+    }
+}
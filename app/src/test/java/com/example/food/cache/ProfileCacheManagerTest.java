@@ -0,0 +1,152 @@
+package com.example.food.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.example.food.data.UserProfile;
+import com.google.gson.Gson;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ProfileCacheManagerTest {
+    private final FakeProfileStore store = new FakeProfileStore();
+    private final List<Runnable> posted = new ArrayList<>();
+    private ProfileCacheManager cache;
+
+    // what the listener was last given
+    private UserProfile loaded;
+    private Boolean loadedFresh;
+
+    /** Rows by user id, tasks held until run() */
+    private static class FakeProfileStore implements ProfileCacheManager.ProfileStore {
+        final Map<String, LocalDatabase.ProfileRow> rows = new HashMap<>();
+        final List<Runnable> tasks = new ArrayList<>();
+
+        @Override
+        public void execute(Runnable task) {
+            tasks.add(task);
+        }
+
+        @Override
+        public LocalDatabase.ProfileRow read(String userId) {
+            return rows.get(userId);
+        }
+
+        @Override
+        public void write(String userId, String json, long cachedAt) {
+            rows.put(userId, new LocalDatabase.ProfileRow(json, cachedAt));
+        }
+
+        @Override
+        public void delete(String userId) {
+            rows.remove(userId);
+        }
+
+        @Override
+        public void deleteAll() {
+            rows.clear();
+        }
+
+        void run() {
+            List<Runnable> pending = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Runnable task : pending) {
+                task.run();
+            }
+        }
+    }
+
+    @Before
+    public void setUp() {
+        cache = new ProfileCacheManager(store, posted::add);
+    }
+
+    private void load(String userId) {
+        loaded = null;
+        loadedFresh = null;
+        cache.get(userId, (profile, fresh) -> {
+            loaded = profile;
+            loadedFresh = fresh;
+        });
+    }
+
+    private void runMainThread() {
+        List<Runnable> pending = new ArrayList<>(posted);
+        posted.clear();
+        for (Runnable task : pending) {
+            task.run();
+        }
+    }
+
+    private void storeOnDisk(String userId, String name, long ageMs) {
+        String json = new Gson().toJson(new UserProfile(userId, name, null, null));
+        store.rows.put(userId, new LocalDatabase.ProfileRow(json, System.currentTimeMillis() - ageMs));
+    }
+
+    @Test
+    public void everyResumeRendersTheCachedProfile() {
+        UserProfile profile = new UserProfile("u1", "Sam", null, null);
+        cache.put(profile);
+
+        // first open, then back to the tab: both are answered from memory right away
+        for (int i = 0; i < 2; i++) {
+            load("u1");
+            assertSame(profile, loaded);
+            assertTrue(loadedFresh);
+        }
+        assertEquals(2, cache.getMemoryHitCount());
+    }
+
+    @Test
+    public void anOldDiskCopyIsShownButMarkedStale() {
+        storeOnDisk("u1", "Sam", ProfileCacheManager.FRESH_TTL + 60 * 1000);
+
+        load("u1");
+        store.run();
+        runMainThread();
+
+        assertEquals("Sam", loaded.getName());
+        assertFalse(loadedFresh);
+        assertEquals(1, cache.getStaleHitCount());
+    }
+
+    @Test
+    public void aCopyPastTheMaxStaleAgeIsAMissAndDeleted() {
+        storeOnDisk("u1", "Sam", ProfileCacheManager.MAX_STALE_AGE + 60 * 1000);
+
+        load("u1");
+        store.run();
+        runMainThread();
+
+        assertNull(loaded);
+        assertFalse(loadedFresh);
+        assertFalse(store.rows.containsKey("u1"));
+        assertEquals(1, cache.getMissCount());
+    }
+
+    @Test
+    public void aDiskReadDoesNotReplaceAProfilePutWhileItRan() {
+        storeOnDisk("u1", "Old name", ProfileCacheManager.FRESH_TTL + 60 * 1000);
+        load("u1");
+
+        // the network answers while the disk read is still queued
+        UserProfile newer = new UserProfile("u1", "New name", null, null);
+        cache.put(newer);
+        store.run();
+        runMainThread();
+
+        assertSame(newer, loaded);
+        assertTrue(loadedFresh);
+        load("u1");
+        assertSame(newer, loaded);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.food.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.example.food.data.Comment;
+import com.example.food.data.Review;
+import com.google.firebase.Timestamp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ReviewCodecTest {
+
+    @Test
+    public void roundTripKeepsFeedFields() {
+        Review review = new Review("r1", "u1", "Alice", "rest1", "Noodle Bar", "Great", "Long text",
+                4.5f, 0, Arrays.asList("full0", "full1"), new Date(1700000000123L));
+        review.setUpdatedAt(new Date(1700000005000L));
+        review.setThumbnailUrls(Arrays.asList("thumb0", "thumb1"));
+        review.setUserAvatarUrl("avatar");
+        review.setComments(Collections.singletonList(
+                new Comment("c1", "u2", "Bob", "Agreed", new Date(1700000001000L))));
+
+        Review decoded = ReviewCodec.decode(ReviewCodec.encode(review));
+
+        assertEquals("r1", decoded.getId());
+        assertEquals("Alice", decoded.getUserName());
+        assertEquals("avatar", decoded.getUserAvatarUrl());
+        assertEquals("Noodle Bar", decoded.getRestaurantName());
+        assertEquals(4.5f, decoded.getRating(), 0f);
+        assertEquals(new Date(1700000000123L), decoded.getCreatedAt());
+        assertEquals(new Date(1700000005000L), decoded.getUpdatedAt());
+        assertEquals("thumb1", decoded.getImageVariants(1).getThumbnailUrl());
+        assertEquals(new Date(1700000001000L), decoded.getComments().get(0).getCreatedAt());
+    }
+
+    @Test
+    public void voteTimestampsComeBackAsDates() {
+        Review review = new Review();
+        review.setId("r1");
+        Map<String, Object> vote = new HashMap<>();
+        vote.put("accurate", true);
+        vote.put("timestamp", new Timestamp(new Date(1700000002000L)));
+        review.getVotes().put("voter", vote);
+        review.refreshAccuracyFromVotes();
+
+        Review decoded = ReviewCodec.decode(ReviewCodec.encode(review));
+
+        Map<String, Object> decodedVote = decoded.getVotes().get("voter");
+        assertEquals(Boolean.TRUE, decodedVote.get("accurate"));
+        assertTrue(decodedVote.get("timestamp") instanceof Date);
+        assertEquals(1700000002000L, ((Date) decodedVote.get("timestamp")).getTime());
+        assertEquals(100.0, Review.calculateAccuracyFromVotes(decoded.getVotes()), 0.001);
+    }
+
+    @Test
+    public void unreadableJsonDecodesToNull() {
+        assertNull(ReviewCodec.decode("{\"createdAt\": \"not a date\"}"));
+    }
+}
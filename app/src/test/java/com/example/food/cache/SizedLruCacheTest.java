@@ -0,0 +1,61 @@
+package com.example.food.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public class SizedLruCacheTest {
+
+    @Test
+    public void evictsLeastRecentlyUsedUntilItFits() {
+        SizedLruCache<String, String> cache = new SizedLruCache<>(100);
+        cache.put("a", "A", 40);
+        cache.put("b", "B", 40);
+        cache.get("a"); // b is now the eldest
+
+        cache.put("c", "C", 40);
+
+        assertEquals("A", cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals("C", cache.get("c"));
+        assertEquals(80, cache.size());
+        assertEquals(1, cache.evictionCount());
+    }
+
+    @Test
+    public void oneLargeEntryEvictsSeveralSmallOnes() {
+        SizedLruCache<String, String> cache = new SizedLruCache<>(100);
+        cache.put("a", "A", 30);
+        cache.put("b", "B", 30);
+        cache.put("c", "C", 30);
+
+        cache.put("big", "BIG", 90);
+
+        assertEquals(1, cache.count());
+        assertEquals(90, cache.size());
+    }
+
+    @Test
+    public void replacingAnEntryUpdatesTheSize() {
+        SizedLruCache<String, String> cache = new SizedLruCache<>(100);
+        cache.put("a", "A", 60);
+        cache.put("a", "A2", 20);
+
+        assertEquals("A2", cache.get("a"));
+        assertEquals(20, cache.size());
+        assertEquals(0, cache.evictionCount());
+    }
+
+    @Test
+    public void valueLargerThanTheCacheIsNotKept() {
+        SizedLruCache<String, String> cache = new SizedLruCache<>(100);
+        cache.put("a", "A", 50);
+
+        cache.put("huge", "HUGE", 101);
+
+        assertNull(cache.get("huge"));
+        assertEquals("A", cache.get("a"));
+        assertEquals(50, cache.size());
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.food.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ReviewVoteTest {
+
+    private static Review countedReview() {
+        Review review = new Review();
+        review.setAccurateVoteCount(0L);
+        review.setTotalVoteCount(0L);
+        return review;
+    }
+
+    @Test
+    public void counterChangeForEveryTransition() {
+        assertArrayEquals(new long[]{1, 1}, Review.voteCounterChange(null, true));
+        assertArrayEquals(new long[]{0, 1}, Review.voteCounterChange(null, false));
+        assertArrayEquals(new long[]{-1, 0}, Review.voteCounterChange(true, false));
+        assertArrayEquals(new long[]{1, 0}, Review.voteCounterChange(false, true));
+        assertArrayEquals(new long[]{-1, -1}, Review.voteCounterChange(true, null));
+        assertArrayEquals(new long[]{0, -1}, Review.voteCounterChange(false, null));
+        assertArrayEquals(new long[]{0, 0}, Review.voteCounterChange(true, true));
+    }
+
+    @Test
+    public void applyVoteKeepsCountersInStepWithTheMap() {
+        Review review = countedReview();
+
+        assertNull(review.applyVote("a", true));
+        review.applyVote("b", false);
+        assertEquals(Boolean.FALSE, review.applyVote("b", true));
+        assertEquals(Boolean.TRUE, review.applyVote("a", null));
+
+        assertEquals(1, review.getVotes().size());
+        assertEquals(Long.valueOf(1), review.getAccurateVoteCount());
+        assertEquals(Long.valueOf(1), review.getTotalVoteCount());
+        assertEquals(100.0, review.getAccuracyPercent(), 0.001);
+    }
+
+    @Test
+    public void reviewsWithoutCountersOnlyChangeTheMap() {
+        Review review = new Review();
+
+        review.applyVote("a", true);
+
+        assertFalse(review.hasVoteCounters());
+        assertEquals(1, review.getVotes().size());
+    }
+
+    @Test
+    public void reviewReadWithoutVotesUsesTheCounters() {
+        Review review = new Review();
+        review.setAccurateVoteCount(3L);
+        review.setTotalVoteCount(4L);
+        review.markVotesNotLoaded();
+
+        review.refreshAccuracyFromVotes();
+
+        assertFalse(review.areVotesLoaded());
+        assertEquals(75.0, review.getAccuracyPercent(), 0.001);
+        assertEquals(4, review.getVoteCount());
+
+        review.setVotes(new java.util.HashMap<>());
+        assertTrue(review.areVotesLoaded());
+    }
+
+    @Test
+    public void accuracyFromCounts() {
+        assertEquals(75.0, Review.calculateAccuracyFromCounts(3, 4), 0.001);
+        assertEquals(0.0, Review.calculateAccuracyFromCounts(0, 0), 0.001);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.food.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.example.food.data.Comment;
+import com.example.food.data.Review;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+public class ActivityInboxTest {
+    private static final long SINCE = 1000;
+
+    private static Map<String, Object> vote(boolean accurate, long timestamp) {
+        Map<String, Object> vote = new HashMap<>();
+        vote.put("accurate", accurate);
+        vote.put("timestamp", new Date(timestamp));
+        return vote;
+    }
+
+    private static Review review(String id) {
+        Review review = new Review();
+        review.setId(id);
+        review.setUserId("author");
+        review.setRestaurantId("place");
+        review.setVotes(new HashMap<>());
+        return review;
+    }
+
+    @Test
+    public void backfillKeepsRecentAccurateVotesFromOthers() {
+        Review review = review("r1");
+        review.getVotes().put("fan", vote(true, 2000));
+        review.getVotes().put("critic", vote(false, 2000));
+        review.getVotes().put("author", vote(true, 2000));
+        review.getVotes().put("old fan", vote(true, 500));
+
+        Map<String, Map<String, Object>> activities =
+                ActivityInbox.activitiesFromReviews(Collections.singletonList(review), "author", SINCE);
+
+        assertEquals(Collections.singletonList("vote_r1_fan"), new ArrayList<>(activities.keySet()));
+        Map<String, Object> entry = activities.get("vote_r1_fan");
+        assertEquals("VOTE", entry.get("type"));
+        assertEquals("fan", entry.get("userId"));
+        assertEquals("place", entry.get("restaurantId"));
+        assertEquals(new Date(2000), entry.get("timestamp"));
+    }
+
+    @Test
+    public void inlineCommentsUseTheIdsTheyAreMigratedTo() {
+        Review review = review("r1");
+        review.setComments(Arrays.asList(
+                new Comment(null, "friend", "Friend", "looks great", new Date(2000)),
+                new Comment(null, "author", "Author", "thanks", new Date(3000)),
+                new Comment(null, "friend", "Friend", "went again", new Date(4000))));
+
+        Map<String, Map<String, Object>> activities =
+                ActivityInbox.activitiesFromReviews(Collections.singletonList(review), "author", SINCE);
+
+        assertEquals(Arrays.asList("comment_r1_legacy-0", "comment_r1_legacy-2"), new ArrayList<>(activities.keySet()));
+        assertEquals("went again", activities.get("comment_r1_legacy-2").get("commentText"));
+    }
+
+    @Test
+    public void voteIdIsOnePerVoterAndReview() {
+        assertEquals(ActivityInbox.voteActivityId("r1", "fan"), ActivityInbox.voteActivityId("r1", "fan"));
+        assertFalse(ActivityInbox.voteActivityId("r1", "fan").equals(ActivityInbox.voteActivityId("r2", "fan")));
+    }
+}
@@ -0,0 +1,203 @@
+package com.example.food.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.food.data.CrowdFeedback;
+import com.google.firebase.Timestamp;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+public class CrowdDensityMonitorTest {
+    private static final long MINUTE = 60 * 1000;
+    private static final long START = 1_000_000_000L;
+
+    private long now;
+    private CrowdDensityMonitor.FeedbackListener feedbackListener;
+    private Runnable scheduledTick;
+    private long scheduledAt;
+    private final List<Map<String, CrowdDensityService.CrowdDensityResult>> pushes = new ArrayList<>();
+    private CrowdDensityMonitor monitor;
+
+    @Before
+    public void setUp() {
+        now = START;
+        CrowdDensityMonitor.FeedbackSource source = new CrowdDensityMonitor.FeedbackSource() {
+            @Override
+            public void start(long windowStartMillis, CrowdDensityMonitor.FeedbackListener listener) {
+                feedbackListener = listener;
+            }
+
+            @Override
+            public void stop() {
+                feedbackListener = null;
+            }
+        };
+        CrowdDensityMonitor.Scheduler scheduler = new CrowdDensityMonitor.Scheduler() {
+            @Override
+            public void schedule(Runnable task, long delayMillis) {
+                scheduledTick = task;
+                scheduledAt = now + delayMillis;
+            }
+
+            @Override
+            public void cancel(Runnable task) {
+                scheduledTick = null;
+            }
+        };
+        monitor = new CrowdDensityMonitor(source, () -> now, scheduler);
+        monitor.start(new CrowdDensityMonitor.OnCrowdDensityChangedListener() {
+            @Override
+            public void onCrowdDensityChanged(Map<String, CrowdDensityService.CrowdDensityResult> changed) {
+                pushes.add(changed);
+            }
+
+            @Override
+            public void onError(Exception e) {
+                throw new AssertionError(e);
+            }
+        });
+    }
+
+    @Test
+    public void initialSnapshotPublishesWeightedLevels() {
+        deliver(feedback("f1", "r1", "alice", 3, 0),
+                feedback("f2", "r1", "bob", 1, 40 * MINUTE),
+                feedback("f3", "r2", "carol", 1, 5 * MINUTE));
+
+        assertEquals(1, pushes.size());
+        // (3*4 + 1*2) / 6 = 2.33
+        assertEquals(2, pushes.get(0).get("r1").getCrowdingLevel());
+        assertEquals(2, pushes.get(0).get("r1").getFeedbackCount());
+        assertEquals(1, pushes.get(0).get("r2").getCrowdingLevel());
+        assertTrue(monitor.isReady());
+    }
+
+    @Test
+    public void newFeedbackOnlyPushesItsRestaurant() {
+        deliver(feedback("f1", "r1", "alice", 1, 0),
+                feedback("f2", "r2", "bob", 1, 0));
+        pushes.clear();
+
+        deliver(feedback("f3", "r2", "carol", 3, 0));
+
+        assertEquals(1, pushes.size());
+        assertEquals(1, pushes.get(0).size());
+        assertEquals(2, pushes.get(0).get("r2").getCrowdingLevel());
+    }
+
+    @Test
+    public void unchangedResultIsNotPushed() {
+        deliver(feedback("f1", "r1", "alice", 3, 0));
+        pushes.clear();
+
+        // a replayed document is skipped by id
+        deliver(feedback("f1", "r1", "alice", 3, 0));
+        assertTrue(pushes.isEmpty());
+    }
+
+    @Test
+    public void latestFeedbackPerUserReplacesOlder() {
+        deliver(feedback("f1", "r1", "alice", 3, 10 * MINUTE));
+        deliver(feedback("f2", "r1", "alice", 1, 0));
+
+        CrowdDensityService.CrowdDensityResult result = monitor.getResult("r1");
+        assertEquals(1, result.getCrowdingLevel());
+        assertEquals(1, result.getFeedbackCount());
+    }
+
+    @Test
+    public void ageingMovesFeedbackBetweenBucketsAndExpires() {
+        // 4*3 + 3*1 over weights 4+3 = 2.14 -> moderately crowded
+        deliver(feedback("f1", "r1", "alice", 3, 0),
+                feedback("f2", "r1", "bob", 1, 20 * MINUTE));
+        assertEquals(2, monitor.getResult("r1").getCrowdingLevel());
+        // bob is the next to age, 31 minutes after his report
+        assertEquals(START + 11 * MINUTE, scheduledAt);
+
+        // bob at 45 minutes (weight 2), alice at 25 (weight 3): (9 + 2) / 5 = 2.2
+        advance(25 * MINUTE);
+        assertEquals(2, monitor.getResult("r1").getCrowdingLevel());
+
+        // bob expires, only alice is left
+        advance(15 * MINUTE);
+        CrowdDensityService.CrowdDensityResult result = monitor.getResult("r1");
+        assertEquals(3, result.getCrowdingLevel());
+        assertEquals(1, result.getFeedbackCount());
+
+        pushes.clear();
+        advance(20 * MINUTE);
+        assertEquals(1, pushes.size());
+        assertFalse(pushes.get(0).get("r1").hasRecentData());
+        assertFalse(monitor.getResult("r1").hasRecentData());
+    }
+
+    @Test
+    public void matchesOneShotCalculationAsTimeAdvances() {
+        List<CrowdFeedback> all = Arrays.asList(
+                feedback("f1", "r1", "a", 3, 2 * MINUTE),
+                feedback("f2", "r1", "b", 1, 14 * MINUTE),
+                feedback("f3", "r1", "c", 2, 29 * MINUTE),
+                feedback("f4", "r1", "d", 1, 44 * MINUTE),
+                feedback("f5", "r1", "e", 3, 55 * MINUTE));
+        deliver(all.toArray(new CrowdFeedback[0]));
+
+        for (int minute = 0; minute < 70; minute++) {
+            List<CrowdFeedback> live = new ArrayList<>();
+            for (CrowdFeedback feedback : all) {
+                if (now - feedback.getTimestamp().toDate().getTime() < CrowdDensityService.WINDOW_MILLIS) {
+                    live.add(feedback);
+                }
+            }
+            CrowdDensityService.CrowdDensityResult expected = CrowdDensityService.calculateFromFeedback(live, now);
+            CrowdDensityService.CrowdDensityResult actual = monitor.getResult("r1");
+            assertEquals("minute " + minute, expected.getCrowdingLevel(), actual.getCrowdingLevel());
+            assertEquals("minute " + minute, expected.getFeedbackCount(), actual.getFeedbackCount());
+            advance(MINUTE);
+        }
+    }
+
+    @Test
+    public void removedFeedbackIsSubtracted() {
+        deliver(feedback("f1", "r1", "alice", 3, 0),
+                feedback("f2", "r1", "bob", 3, 0));
+        feedbackListener.onFeedbackChanged(Collections.emptyList(), Collections.singletonList("f2"));
+
+        assertEquals(1, monitor.getResult("r1").getFeedbackCount());
+    }
+
+    private void deliver(CrowdFeedback... feedback) {
+        feedbackListener.onFeedbackChanged(Arrays.asList(feedback), Collections.emptyList());
+    }
+
+    // Run every tick the monitor asks for up to the new time
+    private void advance(long millis) {
+        long target = now + millis;
+        while (scheduledTick != null && scheduledAt <= target) {
+            now = scheduledAt;
+            Runnable tick = scheduledTick;
+            scheduledTick = null;
+            tick.run();
+        }
+        now = target;
+    }
+
+    private CrowdFeedback feedback(String id, String restaurantId, String userId, int level, long ageMillis) {
+        CrowdFeedback feedback = new CrowdFeedback();
+        feedback.setId(id);
+        feedback.setRestaurantId(restaurantId);
+        feedback.setUserId(userId);
+        feedback.setCrowdingLevel(level);
+        feedback.setTimestamp(new Timestamp(new Date(now - ageMillis)));
+        return feedback;
+    }
+}
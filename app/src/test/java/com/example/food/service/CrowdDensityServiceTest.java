@@ -0,0 +1,67 @@
+package com.example.food.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.example.food.data.CrowdFeedback;
+import com.google.firebase.Timestamp;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Map;
+
+public class CrowdDensityServiceTest {
+    private static final long MINUTE = 60 * 1000;
+    private static final long NOW = 1_000_000_000L;
+
+    private static CrowdFeedback feedback(String restaurantId, String userId, int level, long minutesAgo) {
+        CrowdFeedback feedback = new CrowdFeedback(restaurantId, userId, level);
+        feedback.setTimestamp(new Timestamp(new Date(NOW - minutesAgo * MINUTE)));
+        return feedback;
+    }
+
+    @Test
+    public void oneBatchOfFeedbackGivesEveryRestaurantItsResult() {
+        Map<String, CrowdDensityService.CrowdDensityResult> results = CrowdDensityService.calculateByRestaurant(
+                Arrays.asList(
+                        feedback("busy", "a", 3, 5),
+                        feedback("busy", "b", 3, 20),
+                        feedback("quiet", "a", 1, 10),
+                        feedback("mixed", "a", 1, 50),
+                        feedback("mixed", "b", 3, 5)),
+                NOW);
+
+        assertEquals(3, results.size());
+        assertEquals(3, results.get("busy").getCrowdingLevel());
+        assertEquals(2, results.get("busy").getFeedbackCount());
+        assertEquals(1, results.get("quiet").getCrowdingLevel());
+        // (1 * 1 + 3 * 4) / 5 = 2.6, the recent feedback outweighs the old one
+        assertEquals(3, results.get("mixed").getCrowdingLevel());
+    }
+
+    @Test
+    public void onlyEachUsersLatestFeedbackCounts() {
+        Map<String, CrowdDensityService.CrowdDensityResult> results = CrowdDensityService.calculateByRestaurant(
+                Arrays.asList(
+                        feedback("place", "a", 3, 40),
+                        feedback("place", "a", 1, 5)),
+                NOW);
+
+        assertEquals(1, results.get("place").getCrowdingLevel());
+        assertEquals(1, results.get("place").getFeedbackCount());
+    }
+
+    @Test
+    public void feedbackWithoutRestaurantOrTimeIsSkipped() {
+        CrowdFeedback noTime = feedback("place", "a", 3, 5);
+        noTime.setTimestamp(null);
+
+        Map<String, CrowdDensityService.CrowdDensityResult> results = CrowdDensityService.calculateByRestaurant(
+                Arrays.asList(noTime, feedback(null, "b", 3, 5)), NOW);
+
+        assertFalse(results.containsKey("place"));
+        assertEquals(0, results.size());
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.food.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class LegacyCommentsTest {
+
+    private static Map<String, Object> comment(String userId, String text) {
+        Map<String, Object> comment = new HashMap<>();
+        comment.put("userId", userId);
+        comment.put("text", text);
+        return comment;
+    }
+
+    @Test
+    public void idsFollowArrayPositionSoRetriesWriteTheSameDocuments() {
+        List<Object> stored = Arrays.asList(comment("u1", "first"), comment("u2", "second"));
+
+        Map<String, Map<String, Object>> documents = ReviewService.legacyCommentDocuments(stored, "author");
+
+        assertEquals(Arrays.asList("legacy-0", "legacy-1"), new ArrayList<>(documents.keySet()));
+        assertEquals(documents, ReviewService.legacyCommentDocuments(stored, "author"));
+        assertEquals("second", documents.get("legacy-1").get("text"));
+    }
+
+    @Test
+    public void documentsCarryTheReviewAuthor() {
+        Map<String, Object> withId = comment("u1", "hi");
+        withId.put("id", "stale");
+
+        Map<String, Object> document = ReviewService.legacyCommentDocuments(
+                Arrays.asList(withId), "author").get("legacy-0");
+
+        assertEquals("author", document.get("reviewUserId"));
+        assertFalse(document.containsKey("id"));
+        // the stored array is left untouched
+        assertTrue(withId.containsKey("id"));
+    }
+
+    @Test
+    public void missingOrMalformedArrayMigratesNothing() {
+        assertTrue(ReviewService.legacyCommentDocuments(null, "author").isEmpty());
+        assertTrue(ReviewService.legacyCommentDocuments("not a list", "author").isEmpty());
+        assertEquals(1, ReviewService.legacyCommentDocuments(
+                Arrays.asList("junk", comment("u1", "ok")), "author").size());
+    }
+}
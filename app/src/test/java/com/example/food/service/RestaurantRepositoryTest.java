@@ -0,0 +1,185 @@
+package com.example.food.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import com.example.food.model.Restaurant;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Checks that every screen shares one catalogue query per session.
+ */
+public class RestaurantRepositoryTest {
+
+    private FakeSource source;
+    private FakeSnapshotStore snapshotStore;
+
+    @Before
+    public void setUp() {
+        source = new FakeSource();
+        source.catalogue.add(new Restaurant("r1", "Pho Hung", "1 Main St", 0, 0, "Vietnamese", "CBD"));
+        source.catalogue.add(new Restaurant("r2", "Tipo 00", "2 Main St", 0, 0, "Italian", "CBD"));
+        source.catalogue.add(new Restaurant("r3", "Shujinko", "3 Main St", 0, 0, "Japanese", "Carlton"));
+        snapshotStore = new FakeSnapshotStore();
+    }
+
+    @Test
+    public void screensShareOneCatalogueQuery() {
+        RestaurantRepository repository = new RestaurantRepository(source, snapshotStore);
+        int[] callbacks = {0};
+
+        // home, profile, activity, stats and the review dialog all ask while the query is in flight
+        repository.getRestaurants(Arrays.asList("r1", "r2"), r -> callbacks[0]++);
+        repository.getRestaurants(Collections.singletonList("r3"), r -> callbacks[0]++);
+        repository.getRestaurants(Arrays.asList("r1", "r3"), r -> callbacks[0]++);
+        repository.loadRestaurants(r -> callbacks[0]++);
+        repository.getRestaurants(Collections.singletonList("r2"), r -> callbacks[0]++);
+        source.completeLoadAll();
+
+        // later screens in the same session
+        repository.getRestaurants(Arrays.asList("r1", "r2", "r3"), r -> callbacks[0]++);
+        repository.loadRestaurants(r -> callbacks[0]++);
+
+        assertEquals(1, source.loadAllCount);
+        assertEquals(0, source.loadByIdsCount);
+        assertEquals(7, callbacks[0]);
+        assertEquals("Tipo 00", repository.getRestaurant("r2").getName());
+    }
+
+    @Test
+    public void freshSnapshotServesWithoutQuery() {
+        new RestaurantRepository(source, snapshotStore).loadRestaurants(r -> {});
+        source.completeLoadAll();
+
+        // next launch
+        FakeSource nextSource = new FakeSource();
+        RestaurantRepository repository = new RestaurantRepository(nextSource, snapshotStore);
+        Map<String, Restaurant>[] result = new Map[1];
+        repository.getRestaurants(Arrays.asList("r1", "r3"), r -> result[0] = r);
+
+        assertEquals(0, nextSource.loadAllCount);
+        assertNotNull(result[0]);
+        assertEquals("Shujinko", result[0].get("r3").getName());
+    }
+
+    @Test
+    public void requestsWaitForTheSnapshotInsteadOfQuerying() {
+        new RestaurantRepository(source, snapshotStore).loadRestaurants(r -> {});
+        source.completeLoadAll();
+
+        // next launch, the snapshot is still being read when the first screen asks
+        snapshotStore.deferReads = true;
+        FakeSource nextSource = new FakeSource();
+        RestaurantRepository repository = new RestaurantRepository(nextSource, snapshotStore);
+        Map<String, Restaurant>[] result = new Map[1];
+        repository.getRestaurants(Collections.singletonList("r2"), r -> result[0] = r);
+        assertNull(result[0]);
+
+        snapshotStore.completeRead();
+
+        assertEquals(0, nextSource.loadAllCount);
+        assertEquals("Tipo 00", result[0].get("r2").getName());
+    }
+
+    @Test
+    public void staleSnapshotStartsTheQueryOnceRead() {
+        snapshotStore.deferReads = true;
+        RestaurantRepository repository = new RestaurantRepository(source, snapshotStore);
+        int[] callbacks = {0};
+        repository.loadRestaurants(r -> callbacks[0]++);
+        assertEquals(0, source.loadAllCount);
+
+        snapshotStore.completeRead();
+        source.completeLoadAll();
+
+        assertEquals(1, source.loadAllCount);
+        assertEquals(1, callbacks[0]);
+    }
+
+    @Test
+    public void unknownIdsAreFetchedInBatches() {
+        RestaurantRepository repository = new RestaurantRepository(source, snapshotStore);
+        repository.loadRestaurants(r -> {});
+        source.completeLoadAll();
+
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            ids.add("new" + i);
+        }
+        repository.getRestaurants(ids, r -> {});
+
+        assertEquals(1, source.loadAllCount);
+        assertEquals(2, source.loadByIdsCount); // 10 + 2
+        assertNull(repository.getRestaurant("new0"));
+    }
+
+    private static class FakeSource implements RestaurantRepository.RestaurantSource {
+        final List<Restaurant> catalogue = new ArrayList<>();
+        final List<RestaurantRepository.SourceCallback> pendingLoadAll = new ArrayList<>();
+        int loadAllCount;
+        int loadByIdsCount;
+
+        @Override
+        public void loadAll(RestaurantRepository.SourceCallback callback) {
+            loadAllCount++;
+            pendingLoadAll.add(callback);
+        }
+
+        @Override
+        public void loadByIds(List<String> ids, RestaurantRepository.SourceCallback callback) {
+            loadByIdsCount++;
+            List<Restaurant> found = new ArrayList<>();
+            for (Restaurant restaurant : catalogue) {
+                if (ids.contains(restaurant.getId())) {
+                    found.add(restaurant);
+                }
+            }
+            callback.onLoaded(found);
+        }
+
+        void completeLoadAll() {
+            for (RestaurantRepository.SourceCallback callback : pendingLoadAll) {
+                callback.onLoaded(new ArrayList<>(catalogue));
+            }
+            pendingLoadAll.clear();
+        }
+    }
+
+    private static class FakeSnapshotStore implements RestaurantRepository.SnapshotStore {
+        List<Restaurant> restaurants;
+        long timestamp;
+        // reads wait for completeRead() when set, as they do on the database thread
+        boolean deferReads;
+        RestaurantRepository.SnapshotCallback pendingRead;
+
+        @Override
+        public void read(RestaurantRepository.SnapshotCallback callback) {
+            if (deferReads) {
+                pendingRead = callback;
+            } else {
+                callback.onRead(restaurants, timestamp);
+            }
+        }
+
+        void completeRead() {
+            pendingRead.onRead(restaurants, timestamp);
+            pendingRead = null;
+        }
+
+        @Override
+        public void write(Collection<Restaurant> restaurants, long timestamp) {
+            this.restaurants = new ArrayList<>(restaurants);
+            this.timestamp = timestamp;
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.food.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.food.data.Review;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+public class ReviewChangesTest {
+
+    private static Review review(String id, long createdAt) {
+        Review review = new Review();
+        review.setId(id);
+        review.setCreatedAt(new Date(createdAt));
+        return review;
+    }
+
+    private static List<String> ids(List<Review> reviews) {
+        List<String> ids = new ArrayList<>();
+        for (Review review : reviews) {
+            ids.add(review.getId());
+        }
+        return ids;
+    }
+
+    private static List<Review> feed() {
+        return new ArrayList<>(Arrays.asList(review("c", 300), review("b", 200), review("a", 100)));
+    }
+
+    @Test
+    public void editedReviewReplacedInPlaceKeepsResolvedNames() {
+        List<Review> feed = feed();
+        feed.get(1).setUserName("Alice");
+        feed.get(1).setRestaurantName("Noodle Bar");
+        Review edited = review("b", 200);
+        edited.setCaption("Edited");
+
+        List<Review> applied = new ReviewChanges(Collections.singletonList(edited),
+                Collections.emptyList(), new Date(500), true).applyTo(feed, true);
+
+        assertEquals(Arrays.asList("c", "b", "a"), ids(feed));
+        assertEquals("Edited", feed.get(1).getCaption());
+        assertEquals("Alice", feed.get(1).getUserName());
+        assertEquals("Noodle Bar", feed.get(1).getRestaurantName());
+        assertEquals(Collections.singletonList(edited), applied);
+    }
+
+    @Test
+    public void newReviewsInsertedInFeedOrder() {
+        List<Review> feed = feed();
+
+        new ReviewChanges(Arrays.asList(review("d", 400), review("e", 150)),
+                Collections.emptyList(), new Date(500), true).applyTo(feed, true);
+
+        assertEquals(Arrays.asList("d", "c", "b", "e", "a"), ids(feed));
+    }
+
+    @Test
+    public void deletedReviewsRemoved() {
+        List<Review> feed = feed();
+
+        new ReviewChanges(Collections.emptyList(), Arrays.asList("b", "unknown"),
+                new Date(500), true).applyTo(feed, true);
+
+        assertEquals(Arrays.asList("c", "a"), ids(feed));
+    }
+
+    @Test
+    public void reviewOlderThanLoadedPagesLeftForItsPage() {
+        List<Review> feed = feed();
+        ReviewChanges changes = new ReviewChanges(Collections.singletonList(review("old", 50)),
+                Collections.emptyList(), new Date(500), true);
+
+        assertTrue(changes.applyTo(feed, true).isEmpty());
+        assertEquals(Arrays.asList("c", "b", "a"), ids(feed));
+
+        // the whole collection is loaded, nothing else will bring it
+        changes.applyTo(feed, false);
+        assertEquals(Arrays.asList("c", "b", "a", "old"), ids(feed));
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.food.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class UserDirectoryTest {
+    private final List<Runnable> flushes = new ArrayList<>();
+    // one entry per whereIn query, with the ids it asked for
+    private final List<List<String>> fetches = new ArrayList<>();
+    private UserDirectory directory;
+
+    @Before
+    public void setUp() {
+        directory = new UserDirectory((userIds, callback) -> {
+            fetches.add(new ArrayList<>(userIds));
+            Map<String, UserDirectory.UserInfo> users = new HashMap<>();
+            for (String userId : userIds) {
+                users.put(userId, new UserDirectory.UserInfo(userId, "name of " + userId, null,
+                        System.currentTimeMillis()));
+            }
+            callback.onFetched(users);
+        }, flushes::add);
+    }
+
+    private void runFlushes() {
+        List<Runnable> pending = new ArrayList<>(flushes);
+        flushes.clear();
+        for (Runnable flush : pending) {
+            flush.run();
+        }
+    }
+
+    @Test
+    public void twoHundredCommentsFromDistinctUsersTakeTwentyReads() {
+        int[] resolved = {0};
+        // each comment row asks for its author as it binds, all in the same frame
+        for (int i = 0; i < 200; i++) {
+            directory.resolve("user" + i, user -> resolved[0]++);
+        }
+
+        runFlushes();
+
+        assertEquals(20, fetches.size());
+        for (List<String> batch : fetches) {
+            assertTrue(batch.size() <= UserDirectory.WHERE_IN_LIMIT);
+        }
+        assertEquals(200, resolved[0]);
+    }
+
+    @Test
+    public void repeatedAuthorsAreFetchedOnce() {
+        for (int i = 0; i < 200; i++) {
+            directory.resolve("user" + (i % 15), user -> { });
+        }
+
+        runFlushes();
+
+        assertEquals(2, fetches.size());
+        assertEquals(15, fetches.get(0).size() + fetches.get(1).size());
+    }
+
+    @Test
+    public void cachedUsersAreNotFetchedAgain() {
+        directory.resolve(Collections.singletonList("user1"), users -> { });
+        runFlushes();
+
+        String[] name = {null};
+        directory.resolve("user1", user -> name[0] = user.getName());
+        runFlushes();
+
+        assertEquals(1, fetches.size());
+        assertEquals("name of user1", name[0]);
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.food.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.example.food.data.Review;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class RestaurantAggregateDeltaTest {
+
+    private static Review review(String id, float rating, long createdAt, Boolean... votes) {
+        Review review = new Review();
+        review.setId(id);
+        review.setRating(rating);
+        review.setCreatedAt(new Date(createdAt));
+        Map<String, Map<String, Object>> voteMap = new HashMap<>();
+        for (int i = 0; i < votes.length; i++) {
+            Map<String, Object> vote = new HashMap<>();
+            vote.put("accurate", votes[i]);
+            voteMap.put("voter" + i, vote);
+        }
+        review.setVotes(voteMap);
+        return review;
+    }
+
+    @Test
+    public void addingReviewsUpdatesCountAndAverages() {
+        Map<String, Object> aggregates = RestaurantAggregateDelta.createEmptyAggregates();
+
+        RestaurantAggregateDelta.forReviewAdded(review("r1", 4f, 100, true, false)).applyTo(aggregates);
+        RestaurantAggregateDelta.forReviewAdded(review("r2", 2f, 200)).applyTo(aggregates);
+
+        assertEquals(2, RestaurantAggregateDelta.getReviewCount(aggregates));
+        assertEquals(3.0, RestaurantAggregateDelta.getAverageRating(aggregates), 0.001);
+        // r2 has no votes and doesn't count towards accuracy
+        assertEquals(50.0, RestaurantAggregateDelta.getAverageAccuracy(aggregates), 0.001);
+        assertEquals(Arrays.asList("r2", "r1"), RestaurantAggregateDelta.getLatestReviewIds(aggregates));
+    }
+
+    @Test
+    public void removingAReviewUndoesItsContribution() {
+        Review first = review("r1", 4f, 100, true);
+        Review second = review("r2", 2f, 200, false);
+        Map<String, Object> aggregates = RestaurantAggregateDelta.fromReviews(Arrays.asList(first, second));
+
+        RestaurantAggregateDelta.forReviewRemoved(second).applyTo(aggregates);
+
+        assertEquals(1, RestaurantAggregateDelta.getReviewCount(aggregates));
+        assertEquals(4.0, RestaurantAggregateDelta.getAverageRating(aggregates), 0.001);
+        assertEquals(100.0, RestaurantAggregateDelta.getAverageAccuracy(aggregates), 0.001);
+        assertEquals(Arrays.asList("r1"), RestaurantAggregateDelta.getLatestReviewIds(aggregates));
+    }
+
+    @Test
+    public void voteChangeMovesAccuracyOnly() {
+        Review reviewed = review("r1", 5f, 100, true);
+        Map<String, Object> aggregates = RestaurantAggregateDelta.fromReviews(Arrays.asList(reviewed));
+
+        // a late voter votes false, the stored counters go from 1 of 1 to 1 of 2
+        RestaurantAggregateDelta.forVoteCountChange(1, 1, 1, 2).applyTo(aggregates);
+
+        assertEquals(1, RestaurantAggregateDelta.getReviewCount(aggregates));
+        assertEquals(5.0, RestaurantAggregateDelta.getAverageRating(aggregates), 0.001);
+        assertEquals(50.0, RestaurantAggregateDelta.getAverageAccuracy(aggregates), 0.001);
+    }
+
+    @Test
+    public void firstAndWithdrawnVotesMoveTheReviewInAndOutOfTheAverage() {
+        Map<String, Object> aggregates = RestaurantAggregateDelta.fromReviews(
+                Arrays.asList(review("r1", 5f, 100, true), review("r2", 3f, 200)));
+
+        RestaurantAggregateDelta.forVoteCountChange(0, 0, 0, 1).applyTo(aggregates);
+        assertEquals(50.0, RestaurantAggregateDelta.getAverageAccuracy(aggregates), 0.001);
+
+        RestaurantAggregateDelta.forVoteCountChange(0, 1, 0, 0).applyTo(aggregates);
+        assertEquals(100.0, RestaurantAggregateDelta.getAverageAccuracy(aggregates), 0.001);
+        assertTrue(RestaurantAggregateDelta.hasVotedReviews(aggregates));
+    }
+
+    @Test
+    public void reviewReadWithoutVotesCountsFromItsCounters() {
+        Review counted = review("r1", 4f, 100);
+        counted.setAccurateVoteCount(1L);
+        counted.setTotalVoteCount(4L);
+        counted.markVotesNotLoaded();
+        Map<String, Object> aggregates = RestaurantAggregateDelta.createEmptyAggregates();
+
+        RestaurantAggregateDelta.forReviewAdded(counted).applyTo(aggregates);
+
+        assertTrue(RestaurantAggregateDelta.hasVotedReviews(aggregates));
+        assertEquals(25.0, RestaurantAggregateDelta.getAverageAccuracy(aggregates), 0.001);
+    }
+
+    @Test
+    public void latestReviewIdsKeepTheNewestOnly() {
+        List<Review> reviews = new ArrayList<>();
+        for (int i = 0; i < RestaurantAggregateDelta.LATEST_REVIEWS + 5; i++) {
+            reviews.add(review("r" + i, 3f, 1000 - i)); // r0 is the newest
+        }
+
+        Map<String, Object> aggregates = RestaurantAggregateDelta.fromReviews(reviews);
+
+        List<String> latest = RestaurantAggregateDelta.getLatestReviewIds(aggregates);
+        assertEquals(RestaurantAggregateDelta.LATEST_REVIEWS, latest.size());
+        assertEquals("r0", latest.get(0));
+        assertEquals("r" + (RestaurantAggregateDelta.LATEST_REVIEWS - 1), latest.get(latest.size() - 1));
+    }
+
+    @Test
+    public void onlyVersionedAggregatesAreMaintained() {
+        assertFalse(RestaurantAggregateDelta.isMaintained(new HashMap<>()));
+        assertFalse(RestaurantAggregateDelta.isMaintained(null));
+        assertTrue(RestaurantAggregateDelta.isMaintained(RestaurantAggregateDelta.createEmptyAggregates()));
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.food.services;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class ScoreUpdateSchedulerTest {
+    private final List<Runnable> timers = new ArrayList<>();
+    private final List<String> deltaRuns = new ArrayList<>();
+    private final List<Integer> deltaBatchSizes = new ArrayList<>();
+    private final List<Runnable> pendingCompletions = new ArrayList<>();
+    private final List<ScoreUpdateScheduler.OnRecomputedListener> recomputes = new ArrayList<>();
+    private final List<String> saves = new ArrayList<>();
+    private ScoreUpdateScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new ScoreUpdateScheduler((task, delayMillis) -> timers.add(task),
+                new ScoreUpdateScheduler.Worker() {
+                    @Override
+                    public void applyDeltas(String userId, List<StatsDelta> deltas, Runnable onComplete) {
+                        deltaRuns.add(userId);
+                        deltaBatchSizes.add(deltas.size());
+                        pendingCompletions.add(onComplete);
+                    }
+
+                    @Override
+                    public void recompute(String userId, ScoreUpdateScheduler.OnRecomputedListener listener) {
+                        recomputes.add(listener);
+                    }
+
+                    @Override
+                    public void save(String userId, Map<String, Object> stats, double credibilityScore,
+                                     double experienceScore, Runnable onComplete) {
+                        saves.add(userId);
+                        onComplete.run();
+                    }
+                });
+    }
+
+    @Test
+    public void burstForOneAuthorRunsOnce() {
+        for (int i = 0; i < 10; i++) {
+            scheduler.requestDelta("author", vote());
+        }
+        scheduler.requestDelta("other", vote());
+        fireTimers();
+
+        assertEquals(2, deltaRuns.size());
+        assertEquals(10, (int) deltaBatchSizes.get(deltaRuns.indexOf("author")));
+        assertEquals(11, scheduler.getRequestCount());
+        assertEquals(9, scheduler.getMergedCount());
+        assertEquals(2, scheduler.getRunCount());
+    }
+
+    @Test
+    public void onlyOneRunInFlightPerUser() {
+        scheduler.requestDelta("author", vote());
+        fireTimers();
+        assertEquals(1, deltaRuns.size());
+
+        // arrives while the first transaction is still running
+        scheduler.requestDelta("author", vote());
+        scheduler.requestDelta("author", vote());
+        fireTimers();
+        assertEquals(1, deltaRuns.size());
+
+        pendingCompletions.get(0).run();
+        assertEquals(2, deltaRuns.size());
+        assertEquals(2, (int) deltaBatchSizes.get(1));
+    }
+
+    @Test
+    public void recomputeCoversQueuedDeltas() {
+        scheduler.requestDelta("author", vote());
+        scheduler.requestRecompute("author");
+        scheduler.requestDelta("author", vote());
+        fireTimers();
+
+        assertEquals(0, deltaRuns.size());
+        assertEquals(1, recomputes.size());
+    }
+
+    @Test
+    public void supersededRecomputeIsDropped() {
+        scheduler.requestRecompute("author");
+        fireTimers();
+
+        scheduler.requestDelta("author", vote());
+        recomputes.get(0).onRecomputed(new HashMap<>(), 1, 1);
+
+        // stale result is not written, a fresh recompute replaces it
+        assertEquals(0, saves.size());
+        assertEquals(1, scheduler.getDroppedCount());
+        fireTimers();
+        assertEquals(2, recomputes.size());
+
+        recomputes.get(1).onRecomputed(new HashMap<>(), 1, 1);
+        assertEquals(1, saves.size());
+        assertEquals(0, scheduler.getPendingCount());
+    }
+
+    private void fireTimers() {
+        List<Runnable> due = new ArrayList<>(timers);
+        timers.clear();
+        for (Runnable task : due) {
+            task.run();
+        }
+    }
+
+    private static StatsDelta vote() {
+        return StatsDelta.forVoteCountChange(0, 0, 1, 1);
+    }
+}
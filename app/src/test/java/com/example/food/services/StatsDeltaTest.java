@@ -0,0 +1,119 @@
+package com.example.food.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.food.data.Review;
+import com.example.food.model.Restaurant;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StatsDeltaTest {
+    private static final long DAY = 24L * 60 * 60 * 1000;
+    private static final long NOW = 100 * DAY;
+
+    private final Restaurant cafe = new Restaurant("r1", "Cafe", "1 Main St", 0, 0, "Cafe", "CBD");
+    private final Restaurant ramen = new Restaurant("r2", "Ramen", "2 Main St", 0, 0, "Japanese", "Carlton");
+
+    @Test
+    public void reviewsAddUpToFullPass() {
+        Map<String, Object> stats = build(
+                review("r1", 90 * DAY, votes(true, true, false)),
+                review("r1", 95 * DAY, votes()),
+                review("r2", 80 * DAY, votes(false)));
+
+        assertEquals(3, ((Number) stats.get("totalReviews")).intValue());
+        assertEquals(4, ((Number) stats.get("totalVotes")).intValue());
+        assertEquals(2, ((Number) stats.get("accurateVotes")).intValue());
+        // per-review accuracy 66.7% and 0%
+        assertEquals(100.0 / 3, ((Number) stats.get("avgAccuracyPercent")).doubleValue(), 0.001);
+        assertEquals(2, ((Number) stats.get("uniqueRestaurants")).intValue());
+        assertEquals(1, ((Number) stats.get("repeatedRestaurants")).intValue());
+        assertEquals(2, ((Number) stats.get("uniqueCategories")).intValue());
+        assertEquals(20L, ((Number) stats.get("daysActive")).longValue());
+    }
+
+    @Test
+    public void voteDeltaMatchesRebuild() {
+        Map<String, Map<String, Object>> before = votes(true, false);
+        Map<String, Map<String, Object>> after = votes(true, false, true);
+
+        Map<String, Object> incremental = build(review("r1", 90 * DAY, before), review("r2", 90 * DAY, votes()));
+        // the stored counters go from 1 of 2 to 2 of 3
+        StatsDelta.forVoteCountChange(1, 2, 2, 3).applyTo(incremental, NOW);
+
+        Map<String, Object> rebuilt = build(review("r1", 90 * DAY, after), review("r2", 90 * DAY, votes()));
+        assertSameCounters(rebuilt, incremental);
+
+        // unvoting the last vote takes the review out of the accuracy average
+        Map<String, Object> none = build(review("r1", 90 * DAY, votes(true)));
+        StatsDelta.forVoteCountChange(1, 1, 0, 0).applyTo(none, NOW);
+        assertEquals(0, ((Number) none.get("reviewsWithVotes")).intValue());
+        assertEquals(0.0, ((Number) none.get("avgAccuracyPercent")).doubleValue(), 0.0);
+    }
+
+    @Test
+    public void removingReviewUndoesAdd() {
+        Review removed = review("r2", 85 * DAY, votes(false, false));
+        Map<String, Object> stats = build(review("r1", 90 * DAY, votes(true)), removed);
+        StatsDelta.forReviewRemoved(removed, ramen).applyTo(stats, NOW);
+
+        Map<String, Object> expected = build(review("r1", 90 * DAY, votes(true)));
+        assertSameCounters(expected, stats);
+        assertTrue(((List<?>) stats.get("categoriesList")).contains("Cafe"));
+        assertEquals(1, ((List<?>) stats.get("categoriesList")).size());
+    }
+
+    @Test
+    public void countersMatchTheVotesMap() {
+        Review counted = review("r1", 90 * DAY, votes());
+        counted.setAccurateVoteCount(2L);
+        counted.setTotalVoteCount(3L);
+        counted.markVotesNotLoaded();
+
+        assertSameCounters(build(review("r1", 90 * DAY, votes(true, true, false))), build(counted));
+    }
+
+    private Map<String, Object> build(Review... reviews) {
+        Map<String, Object> stats = StatsDelta.createEmptyStats();
+        for (Review review : reviews) {
+            Restaurant restaurant = "r1".equals(review.getRestaurantId()) ? cafe : ramen;
+            StatsDelta.forReviewAdded(review, restaurant).applyTo(stats, NOW);
+        }
+        return stats;
+    }
+
+    private static void assertSameCounters(Map<String, Object> expected, Map<String, Object> actual) {
+        for (String key : Arrays.asList("totalReviews", "totalVotes", "accurateVotes", "inaccurateVotes",
+                "reviewsWithVotes", "uniqueRestaurants", "repeatedRestaurants", "uniqueCategories", "uniqueRegions")) {
+            assertEquals(key, ((Number) expected.get(key)).longValue(), ((Number) actual.get(key)).longValue());
+        }
+        assertEquals(((Number) expected.get("avgAccuracyPercent")).doubleValue(),
+                ((Number) actual.get("avgAccuracyPercent")).doubleValue(), 0.001);
+    }
+
+    private static Review review(String restaurantId, long createdAt, Map<String, Map<String, Object>> votes) {
+        Review review = new Review();
+        review.setUserId("author");
+        review.setRestaurantId(restaurantId);
+        review.setCreatedAt(new Date(createdAt));
+        review.setVotes(votes);
+        return review;
+    }
+
+    private static Map<String, Map<String, Object>> votes(boolean... accurate) {
+        Map<String, Map<String, Object>> votes = new HashMap<>();
+        for (int i = 0; i < accurate.length; i++) {
+            Map<String, Object> vote = new HashMap<>();
+            vote.put("accurate", accurate[i]);
+            votes.put("voter" + i, vote);
+        }
+        return votes;
+    }
+}
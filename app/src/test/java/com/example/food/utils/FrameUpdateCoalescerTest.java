@@ -0,0 +1,81 @@
+package com.example.food.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class FrameUpdateCoalescerTest {
+    private final List<Runnable> frames = new ArrayList<>();
+    private final List<String> model = new ArrayList<>();
+    private final List<Integer> refreshedSizes = new ArrayList<>();
+    private FrameUpdateCoalescer coalescer;
+
+    @Before
+    public void setUp() {
+        coalescer = new FrameUpdateCoalescer(() -> refreshedSizes.add(model.size()), frames::add);
+    }
+
+    @Test
+    public void burstOfResponsesRefreshesOncePerFrame() {
+        for (int i = 0; i < 50; i++) {
+            String name = "restaurant" + i;
+            coalescer.post(() -> model.add(name));
+        }
+        assertEquals(1, frames.size());
+        assertEquals(0, model.size());
+
+        runFrames();
+
+        assertEquals(50, model.size());
+        assertEquals(1, refreshedSizes.size());
+        assertEquals(50, (int) refreshedSizes.get(0));
+        assertEquals(50, coalescer.getPostCount());
+        assertEquals(1, coalescer.getBatchCount());
+    }
+
+    @Test
+    public void updatesPostedDuringABatchGoToTheNextFrame() {
+        coalescer.post(() -> {
+            model.add("first");
+            coalescer.post(() -> model.add("second"));
+        });
+
+        runFrames();
+        assertEquals(1, (int) refreshedSizes.get(0));
+
+        runFrames();
+        assertEquals(2, refreshedSizes.size());
+        assertEquals(2, (int) refreshedSizes.get(1));
+    }
+
+    @Test
+    public void requestBatchRefreshesWithoutUpdates() {
+        coalescer.requestBatch();
+        coalescer.requestBatch();
+
+        runFrames();
+
+        assertEquals(1, refreshedSizes.size());
+        assertEquals(0, (int) refreshedSizes.get(0));
+    }
+
+    @Test
+    public void nothingPostedNothingScheduled() {
+        runFrames();
+
+        assertEquals(0, frames.size());
+        assertEquals(0, coalescer.getBatchCount());
+    }
+
+    private void runFrames() {
+        List<Runnable> due = new ArrayList<>(frames);
+        frames.clear();
+        for (Runnable frame : due) {
+            frame.run();
+        }
+    }
+}
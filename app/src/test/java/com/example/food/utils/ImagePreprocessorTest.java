@@ -0,0 +1,33 @@
+package com.example.food.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public class ImagePreprocessorTest {
+
+    @Test
+    public void sampleSizeKeepsLongEdgeAboveTarget() {
+        // 12 MP camera photo to a 1600px edge decodes at 1/2 (2016px), never below the target
+        assertEquals(2, ImagePreprocessor.calculateInSampleSize(4032, 3024, 1600));
+        assertEquals(4, ImagePreprocessor.calculateInSampleSize(3024, 8000, 1600));
+        assertEquals(1, ImagePreprocessor.calculateInSampleSize(1200, 900, 1600));
+        assertEquals(1, ImagePreprocessor.calculateInSampleSize(3199, 2000, 1600));
+    }
+
+    @Test
+    public void scaleFactorOnlyShrinks() {
+        assertEquals(0.5f, ImagePreprocessor.scaleFactor(3200, 2400, 1600), 0.0001f);
+        assertEquals(0.5f, ImagePreprocessor.scaleFactor(2400, 3200, 1600), 0.0001f);
+        assertEquals(1f, ImagePreprocessor.scaleFactor(800, 600, 1600), 0.0001f);
+    }
+
+    @Test
+    public void orientationUsesDisplayedSize() {
+        assertEquals("HORIZONTAL", ImagePreprocessor.classifyOrientation(4032, 3024));
+        // same photo tagged ROTATE_90 arrives here with the edges swapped
+        assertEquals("PORTRAIT", ImagePreprocessor.classifyOrientation(3024, 4032));
+        assertEquals("SQUARE", ImagePreprocessor.classifyOrientation(1000, 1100));
+        assertEquals("SQUARE", ImagePreprocessor.classifyOrientation(0, 0));
+    }
+}
@@ -0,0 +1,33 @@
+package com.example.food.utils;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+public class ImageVariantsTest {
+    private final ImageVariants image = new ImageVariants("thumb", "medium", "full");
+
+    @Test
+    public void picksSmallestVariantThatCovers() {
+        assertEquals("thumb", image.pick(165));
+        assertEquals("thumb", image.pick(ImageVariants.THUMBNAIL_EDGE));
+        // two-column card on a 1080px screen
+        assertEquals("medium", image.pick(550));
+        assertEquals("full", image.pick(1080));
+    }
+
+    @Test
+    public void olderReviewsFallBackToFullImage() {
+        ImageVariants legacy = ImageVariants.at(null, null, Arrays.asList("a", "b"), 1);
+        assertEquals("b", legacy.pick(100));
+
+        // variant list shorter than the full list
+        ImageVariants partial = ImageVariants.at(Collections.singletonList("a_thumb"), null,
+                Arrays.asList("a", "b"), 1);
+        assertEquals("b", partial.pick(100));
+        assertEquals("medium", new ImageVariants(null, "medium", "full").pick(100));
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.food.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.example.food.data.Review;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Date;
+import java.util.List;
+
+public class ReviewSearchIndexTest {
+
+    private ReviewSearchIndex index;
+
+    @Before
+    public void setUp() {
+        index = new ReviewSearchIndex();
+        index.upsert(review("a", "Best PHO in town", "Rich broth, fresh herbs", "Pho Hung", "Alice", 1000));
+        index.upsert(review("b", "Late night ramen", "Tonkotsu, pho-level comfort", "Shujinko", "Bob", 2000));
+        index.upsert(review("c", "Pizza night", "Wood fired", "Tipo 00", "Phoebe", 3000));
+    }
+
+    @Test
+    public void tokenizeFoldsCaseAndSplitsOnPunctuation() {
+        List<String> tokens = ReviewSearchIndex.tokenize("Pho-Level, COMFORT!");
+        assertEquals(3, tokens.size());
+        assertEquals("pho", tokens.get(0));
+        assertEquals("level", tokens.get(1));
+        assertEquals("comfort", tokens.get(2));
+    }
+
+    @Test
+    public void prefixMatchesAreRankedByFieldWeight() {
+        List<Review> results = index.searchNow("ph");
+
+        // caption/restaurant hit beats author name beats description
+        assertEquals(3, results.size());
+        assertEquals("a", results.get(0).getId());
+        assertEquals("c", results.get(1).getId());
+        assertEquals("b", results.get(2).getId());
+    }
+
+    @Test
+    public void allQueryTokensMustMatch() {
+        List<Review> results = index.searchNow("night piz");
+        assertEquals(1, results.size());
+        assertEquals("c", results.get(0).getId());
+    }
+
+    @Test
+    public void upsertReplacesOldTokens() {
+        index.upsert(review("c", "Burger night", "Smash patties", "Tipo 00", "Phoebe", 3000));
+
+        assertTrue(index.searchNow("pizza").isEmpty());
+        assertEquals(1, index.searchNow("burger").size());
+    }
+
+    private static Review review(String id, String caption, String description,
+                                 String restaurantName, String userName, long createdAt) {
+        Review review = new Review();
+        review.setId(id);
+        review.setCaption(caption);
+        review.setDescription(description);
+        review.setRestaurantName(restaurantName);
+        review.setUserName(userName);
+        review.setCreatedAt(new Date(createdAt));
+        return review;
+    }
+}